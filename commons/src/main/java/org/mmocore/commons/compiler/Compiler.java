@@ -1,6 +1,7 @@
 package org.mmocore.commons.compiler;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.nio.charset.Charset;
@@ -14,6 +15,7 @@ import javax.tools.DiagnosticListener;
 import javax.tools.JavaCompiler;
 import javax.tools.JavaFileObject;
 import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
 
 import org.eclipse.jdt.internal.compiler.tool.EclipseCompiler;
 import org.eclipse.jdt.internal.compiler.tool.EclipseFileManager;
@@ -39,6 +41,32 @@ public class Compiler
 
 	public boolean compile(File... files)
 	{
+		return compile(null, files);
+	}
+
+	/**
+	 * Компилирует файлы, дополнительно разрешая ссылки на уже скомпилированные классы из указанного каталога.
+	 * @param classPath каталог с .class файлами или null
+	 */
+	public boolean compile(File classPath, File... files)
+	{
+		if(classPath != null)
+			try
+			{
+				List<File> path = new ArrayList<File>();
+				Iterable<? extends File> location = fileManager.getLocation(StandardLocation.CLASS_PATH);
+				if(location != null)
+					for(File file : location)
+						path.add(file);
+				path.add(classPath);
+				fileManager.setLocation(StandardLocation.CLASS_PATH, path);
+			}
+			catch(IOException e)
+			{
+				_log.error("Compiler: can't set class path: " + classPath, e);
+				return false;
+			}
+
 		// javac options
 		List<String> options = new ArrayList<String>();
                 //options.add("-version:1.7");
@@ -62,6 +90,11 @@ public class Compiler
 		return compile(files.toArray(new File[files.size()]));
 	}
 
+	public boolean compile(File classPath, Collection<File> files)
+	{
+		return compile(classPath, files.toArray(new File[files.size()]));
+	}
+
 	public MemoryClassLoader getClassLoader()
 	{
 		return memClassLoader;
@@ -9,12 +9,32 @@ import javax.tools.SimpleJavaFileObject;
 public class MemoryByteCode extends SimpleJavaFileObject
 {
 	private ByteArrayOutputStream oStream;
+	private byte[] bytes;
 	private final String className;
+	private final String sourceName;
 
 	public MemoryByteCode(String className, URI uri)
+	{
+		this(className, uri, null);
+	}
+
+	/**
+	 * @param sourceName имя исходного файла, из которого получен класс, или null
+	 */
+	public MemoryByteCode(String className, URI uri, String sourceName)
 	{
 		super(uri, Kind.CLASS);
 		this.className = className;
+		this.sourceName = sourceName;
+	}
+
+	/**
+	 * Класс, загруженный из готового байткода.
+	 */
+	public MemoryByteCode(String className, byte[] bytes)
+	{
+		this(className, URI.create("file:///" + className.replace('.', '/') + Kind.CLASS.extension), null);
+		this.bytes = bytes;
 	}
 
 	@Override
@@ -26,7 +46,14 @@ public class MemoryByteCode extends SimpleJavaFileObject
 
 	public byte[] getBytes()
 	{
-		return oStream.toByteArray();
+		if(bytes == null)
+			bytes = oStream.toByteArray();
+		return bytes;
+	}
+
+	public String getSourceName()
+	{
+		return sourceName;
 	}
 
 	@Override
@@ -22,7 +22,7 @@ public class MemoryJavaFileManager extends ForwardingJavaFileManager<StandardJav
 	@Override
 	public JavaFileObject getJavaFileForOutput(Location location, String className, Kind kind, FileObject sibling) throws IOException
 	{
-		MemoryByteCode mbc = new MemoryByteCode(className.replace('/', '.').replace('\\', '.'), URI.create("file:///" + className.replace('.', '/').replace('\\', '/') + kind.extension));
+		MemoryByteCode mbc = new MemoryByteCode(className.replace('/', '.').replace('\\', '.'), URI.create("file:///" + className.replace('.', '/').replace('\\', '/') + kind.extension), sibling == null ? null : sibling.toUri().getPath());
 		cl.addClass(mbc);
 
 		return mbc;
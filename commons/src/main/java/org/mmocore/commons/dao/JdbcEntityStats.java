@@ -6,4 +6,10 @@ public interface JdbcEntityStats
 	public long getInsertCount();
 	public long getUpdateCount();
 	public long getDeleteCount();
+	/** количество пакетных выборок */
+	public long getBatchLoadCount();
+	/** количество сущностей, загруженных пакетными выборками */
+	public long getBatchLoadEntityCount();
+	/** наибольший размер пакетной выборки */
+	public long getBatchLoadMaxSize();
 }
@@ -0,0 +1,178 @@
+package org.mmocore.commons.lang;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Гистограмма времени выполнения без блокировок.<BR>
+ * Значения раскладываются по логарифмическим корзинам: каждая степень двойки делится на {@link #SUB_COUNT} равных частей,
+ * поэтому погрешность перцентилей не превышает 1/{@link #SUB_COUNT} от значения. Значения от 2^{@link #MAX_BITS} учитываются в отдельной корзине,
+ * перцентиль, попавший в нее, равен максимуму.<BR>
+ * Счетчики разнесены по полосам по идентификатору потока, чтобы потоки не конкурировали за одни и те же ячейки,
+ * полоса создается при первой записи из потока, который на нее попал.
+ */
+public final class LatencyHistogram
+{
+	private static final int SUB_BITS = 3;
+	public static final int SUB_COUNT = 1 << SUB_BITS;
+	/** в наносекундах около 18 минут */
+	public static final int MAX_BITS = 40;
+
+	/** корзины значений меньше 2^MAX_BITS и одна корзина для всех больших */
+	private static final int OVERFLOW = (MAX_BITS - SUB_BITS + 1) * SUB_COUNT;
+	private static final int BUCKETS = OVERFLOW + 1;
+	private static final int COUNT = BUCKETS;
+	private static final int SUM = BUCKETS + 1;
+	private static final int MIN = BUCKETS + 2;
+	private static final int MAX = BUCKETS + 3;
+	private static final int SIZE = BUCKETS + 4;
+
+	private static final int STRIPES;
+	static
+	{
+		int stripes = 1;
+		while(stripes < Runtime.getRuntime().availableProcessors() && stripes < 16)
+			stripes <<= 1;
+		STRIPES = stripes;
+	}
+
+	private final AtomicReferenceArray<AtomicLongArray> _stripes = new AtomicReferenceArray<AtomicLongArray>(STRIPES);
+
+	public void record(long value)
+	{
+		if(value < 0)
+			value = 0;
+
+		AtomicLongArray stripe = getStripe();
+		stripe.incrementAndGet(index(value));
+		stripe.incrementAndGet(COUNT);
+		stripe.addAndGet(SUM, value);
+
+		long current;
+		while(value < (current = stripe.get(MIN)))
+			if(stripe.compareAndSet(MIN, current, value))
+				break;
+		while(value > (current = stripe.get(MAX)))
+			if(stripe.compareAndSet(MAX, current, value))
+				break;
+	}
+
+	private AtomicLongArray getStripe()
+	{
+		int i = (int) Thread.currentThread().getId() & (STRIPES - 1);
+		AtomicLongArray stripe = _stripes.get(i);
+		if(stripe == null)
+		{
+			stripe = new AtomicLongArray(SIZE);
+			stripe.set(MIN, Long.MAX_VALUE);
+			if(!_stripes.compareAndSet(i, null, stripe))
+				stripe = _stripes.get(i);
+		}
+		return stripe;
+	}
+
+	private static int index(long value)
+	{
+		if(value < SUB_COUNT)
+			return (int) value;
+
+		int bits = 63 - Long.numberOfLeadingZeros(value);
+		if(bits >= MAX_BITS)
+			return OVERFLOW;
+		int sub = (int) (value >>> (bits - SUB_BITS)) & (SUB_COUNT - 1);
+		return (bits - SUB_BITS + 1) * SUB_COUNT + sub;
+	}
+
+	/**
+	 * @return наибольшее значение, попадающее в корзину
+	 */
+	private static long highestValue(int index)
+	{
+		if(index < SUB_COUNT)
+			return index;
+
+		int octave = index / SUB_COUNT;
+		int sub = index % SUB_COUNT;
+		return ((long) (SUB_COUNT + sub + 1) << (octave - 1)) - 1;
+	}
+
+	/**
+	 * @return согласованный на момент чтения каждой полосы снимок гистограммы
+	 */
+	public Snapshot getSnapshot()
+	{
+		Snapshot snapshot = new Snapshot();
+		for(int i = 0; i < STRIPES; i++)
+		{
+			AtomicLongArray stripe = _stripes.get(i);
+			if(stripe == null)
+				continue;
+
+			for(int b = 0; b < BUCKETS; b++)
+				snapshot._counts[b] += stripe.get(b);
+			snapshot._count += stripe.get(COUNT);
+			snapshot._sum += stripe.get(SUM);
+			snapshot._min = Math.min(snapshot._min, stripe.get(MIN));
+			snapshot._max = Math.max(snapshot._max, stripe.get(MAX));
+		}
+		return snapshot;
+	}
+
+	public static class Snapshot
+	{
+		private final long[] _counts = new long[BUCKETS];
+		private long _count;
+		private long _sum;
+		private long _min = Long.MAX_VALUE;
+		private long _max;
+
+		public long getCount()
+		{
+			return _count;
+		}
+
+		public long getSum()
+		{
+			return _sum;
+		}
+
+		public long getMin()
+		{
+			return _count == 0 ? 0 : _min;
+		}
+
+		public long getMax()
+		{
+			return _max;
+		}
+
+		public long getMean()
+		{
+			return _count == 0 ? 0 : _sum / _count;
+		}
+
+		/**
+		 * @param percentile от 0 до 100
+		 * @return значение, не меньше которого percentile процентов записей, с точностью до корзины
+		 */
+		public long getValueAtPercentile(double percentile)
+		{
+			long total = 0;
+			for(long c : _counts)
+				total += c;
+			if(total == 0)
+				return 0;
+
+			long target = Math.max(1, (long) Math.ceil(total * percentile / 100.));
+			long seen = 0;
+			for(int i = 0; i < BUCKETS; i++)
+			{
+				seen += _counts[i];
+				// корзина переполнения не ограничена сверху
+				if(seen >= target)
+					return i == OVERFLOW ? _max : Math.min(highestValue(i), _max);
+			}
+			return _max;
+		}
+	}
+}
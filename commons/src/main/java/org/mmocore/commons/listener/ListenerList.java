@@ -1,25 +1,79 @@
 package org.mmocore.commons.listener;
 
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 /**
  * Класс реализующий список слушателей для каждого типа интерфейса.
- * 
+ *
  * @author G1ta0
  *
  * @param <T> базовый интерфейс слушателя
  */
 public class ListenerList<T>
 {
+	@SuppressWarnings("rawtypes")
+	private static final Listener[] EMPTY_LISTENERS = new Listener[0];
+	@SuppressWarnings("rawtypes")
+	private static final Map EMPTY_INDEX = new HashMap(0);
+	@SuppressWarnings("rawtypes")
+	private static final AtomicReferenceFieldUpdater<ListenerList, Map> indexUpdater = AtomicReferenceFieldUpdater.newUpdater(ListenerList.class, Map.class, "index");
+
 	protected Set<Listener<T>> listeners = new CopyOnWriteArraySet<Listener<T>>();
 
+	/** слушатели, разложенные по интерфейсам, заменяется новым экземпляром при каждом изменении списка */
+	@SuppressWarnings("unchecked")
+	private volatile Map<Class<?>, Listener<T>[]> index = EMPTY_INDEX;
+
 	public Collection<Listener<T>> getListeners()
 	{
 		return listeners;
 	}
-	
+
+	/**
+	 * Получить слушатели, реализующие указанный интерфейс.
+	 * Результат кэшируется до следующего изменения списка, массив изменять нельзя.
+	 * @param type интерфейс слушателя
+	 * @return массив слушателей, пустой, если таких нет
+	 */
+	@SuppressWarnings("unchecked")
+	public Listener<T>[] getListeners(Class<?> type)
+	{
+		if(listeners.isEmpty())
+			return EMPTY_LISTENERS;
+
+		// индекс читается до списка, поэтому изменение списка после чтения индекса не даст закэшировать устаревший результат
+		Map<Class<?>, Listener<T>[]> current = index;
+		Listener<T>[] result = current.get(type);
+		if(result != null)
+			return result;
+
+		Object[] snapshot = listeners.toArray();
+		int count = 0;
+		for(Object listener : snapshot)
+			if(type.isInstance(listener))
+				count++;
+
+		result = count == 0 ? EMPTY_LISTENERS : new Listener[count];
+		if(count > 0)
+		{
+			int i = 0;
+			for(Object listener : snapshot)
+				if(type.isInstance(listener))
+					result[i++] = (Listener<T>) listener;
+		}
+
+		Map<Class<?>, Listener<T>[]> updated = new HashMap<Class<?>, Listener<T>[]>(current);
+		updated.put(type, result);
+		indexUpdater.compareAndSet(this, current, updated);
+
+		return result;
+	}
+
 	/**
 	 * Добавить слушатель в список
 	 * @param listener
@@ -27,7 +81,10 @@ public class ListenerList<T>
 	 */
 	public boolean add(Listener<T> listener)
 	{
-		return listeners.add(listener);
+		if(!listeners.add(listener))
+			return false;
+		index = new HashMap<Class<?>, Listener<T>[]>(0);
+		return true;
 	}
 
 	/**
@@ -37,7 +94,10 @@ public class ListenerList<T>
 	 */
 	public boolean remove(Listener<T> listener)
 	{
-		return listeners.remove(listener);
+		if(!listeners.remove(listener))
+			return false;
+		index = new HashMap<Class<?>, Listener<T>[]>(0);
+		return true;
 	}
 
 }
@@ -187,7 +187,10 @@ public class MMOConnection<T extends MMOClient> implements Lockable
 	protected void scheduleWriteInterest()
 	{
 		if (_isPengingWrite.compareAndSet(false, true))
+		{
 			_pendingWriteTime = System.currentTimeMillis();
+			_selectorThread.wakeup();
+		}
 	}
 
 	/**
@@ -355,6 +358,7 @@ public class MMOConnection<T extends MMOClient> implements Lockable
 
 		disableReadInterest();
 		disableWriteInterest();
+		_selectorThread.wakeup();
 	}
 
 	public void close(SendablePacket<T> sp)
@@ -395,6 +399,8 @@ public class MMOConnection<T extends MMOClient> implements Lockable
 		{
 			unlock();
 		}
+
+		_selectorThread.wakeup();
 	}
 
 	protected void releaseBuffers()
@@ -20,6 +20,18 @@ public class SelectorConfig
 	 * Задержка в миллимекундах после каждого прохода в цикле SelectorThread
 	 */
 	public long SLEEP_TIME = 10;
+	/**
+	 * Использовать блокирующий select() с пробуждением при постановке пакетов в очередь вместо selectNow() + SLEEP_TIME
+	 */
+	public boolean BLOCKING_SELECT = false;
+	/**
+	 * Максимальное время ожидания блокирующего select() в миллисекундах, ограничивает задержку проверки таймаутов соединений
+	 */
+	public long SELECT_TIMEOUT = 100;
+	/**
+	 * Количество потоков SelectorThread на один порт, соединения распределяются между ними
+	 */
+	public int SELECTOR_THREAD_COUNT = 1;
 	/**
 	 * Задержка перед сменой запланированного интересуемого действия
 	 */
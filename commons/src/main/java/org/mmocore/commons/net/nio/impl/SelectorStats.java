@@ -1,6 +1,10 @@
 package org.mmocore.commons.net.nio.impl;
 
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 public class SelectorStats
 {
@@ -13,6 +17,112 @@ public class SelectorStats
 	private final AtomicLong _outgoingPacketsTotal = new AtomicLong();
 	private final AtomicLong _bytesMaxPerRead = new AtomicLong();
 	private final AtomicLong _bytesMaxPerWrite = new AtomicLong();
+	private final AtomicLong _sharedPacketsSerialized = new AtomicLong();
+	private final AtomicLong _sharedPacketsReused = new AtomicLong();
+
+	/** наибольшее количество колец удаления при рассылке окружающим */
+	public static final int MAX_INTEREST_RINGS = 8;
+	private final AtomicLongArray _interestSent = new AtomicLongArray(MAX_INTEREST_RINGS);
+	private final AtomicLongArray _interestDeferred = new AtomicLongArray(MAX_INTEREST_RINGS);
+	private final AtomicLongArray _interestDropped = new AtomicLongArray(MAX_INTEREST_RINGS);
+
+	private final List<SelectorLoad> _selectorLoads = new CopyOnWriteArrayList<SelectorLoad>();
+
+	/**
+	 * Нагрузка отдельного SelectorThread. Счетчики изменяются только из потока селектора,
+	 * читаются из любого потока.
+	 */
+	public static class SelectorLoad
+	{
+		private final SelectorThread<?> _selector;
+		private final long _startTime = System.nanoTime();
+		private final AtomicLong _connections = new AtomicLong();
+		private final AtomicLong _loops = new AtomicLong();
+		private final AtomicLong _selectedKeys = new AtomicLong();
+		private final AtomicLong _wakeups = new AtomicLong();
+		private final AtomicLong _busyTime = new AtomicLong();
+
+		private SelectorLoad(SelectorThread<?> selector)
+		{
+			_selector = selector;
+		}
+
+		protected void increaseConnections()
+		{
+			_connections.incrementAndGet();
+		}
+
+		protected void decreaseConnections()
+		{
+			_connections.decrementAndGet();
+		}
+
+		protected void increaseWakeups()
+		{
+			_wakeups.incrementAndGet();
+		}
+
+		protected void addLoop(int selectedKeys, long busyTime)
+		{
+			_loops.incrementAndGet();
+			_selectedKeys.addAndGet(selectedKeys);
+			_busyTime.addAndGet(busyTime);
+		}
+
+		public String getName()
+		{
+			return _selector.getName();
+		}
+
+		public long getCurrentConnections()
+		{
+			return _connections.get();
+		}
+
+		public long getLoops()
+		{
+			return _loops.get();
+		}
+
+		public long getSelectedKeys()
+		{
+			return _selectedKeys.get();
+		}
+
+		public long getWakeups()
+		{
+			return _wakeups.get();
+		}
+
+		/**
+		 * @return время в миллисекундах, проведенное в обработке I/O (без ожидания в select/sleep)
+		 */
+		public long getBusyTime()
+		{
+			return TimeUnit.NANOSECONDS.toMillis(_busyTime.get());
+		}
+
+		/**
+		 * @return доля времени работы потока, проведенная в обработке I/O, в процентах
+		 */
+		public double getLoad()
+		{
+			long total = System.nanoTime() - _startTime;
+			return total > 0 ? _busyTime.get() * 100. / total : 0.;
+		}
+	}
+
+	protected SelectorLoad registerSelector(SelectorThread<?> selector)
+	{
+		SelectorLoad load = new SelectorLoad(selector);
+		_selectorLoads.add(load);
+		return load;
+	}
+
+	public List<SelectorLoad> getSelectorLoads()
+	{
+		return _selectorLoads;
+	}
 
 	public void increaseOpenedConnections()
 	{
@@ -50,6 +160,33 @@ public class SelectorStats
 		_outgoingPacketsTotal.incrementAndGet();
 	}
 
+	public void increaseSharedPacketsSerialized()
+	{
+		_sharedPacketsSerialized.incrementAndGet();
+	}
+
+	public void increaseSharedPacketsReused()
+	{
+		_sharedPacketsReused.incrementAndGet();
+	}
+
+	/**
+	 * Учет рассылки окружающим по кольцам удаления от источника.
+	 * @param ring номер кольца, 0 - ближайшее
+	 * @param sent отправлено сразу
+	 * @param deferred отложено, будет отправлено позже одним последним пакетом
+	 * @param dropped не отправлено
+	 */
+	public void increaseInterestPackets(int ring, int sent, int deferred, int dropped)
+	{
+		if(sent > 0)
+			_interestSent.addAndGet(ring, sent);
+		if(deferred > 0)
+			_interestDeferred.addAndGet(ring, deferred);
+		if(dropped > 0)
+			_interestDropped.addAndGet(ring, dropped);
+	}
+
 	public long getTotalConnections()
 	{
 		return _connectionsTotal.get();
@@ -94,4 +231,38 @@ public class SelectorStats
 	{
 		return _bytesMaxPerWrite.get();
 	}
+
+	/**
+	 * @return количество общих пакетов, сериализованных для рассылки
+	 */
+	public long getSharedPacketsSerialized()
+	{
+		return _sharedPacketsSerialized.get();
+	}
+
+	/**
+	 * @return количество сэкономленных сериализаций общих пакетов
+	 */
+	public long getSharedPacketsReused()
+	{
+		return _sharedPacketsReused.get();
+	}
+
+	public long getInterestSent(int ring)
+	{
+		return _interestSent.get(ring);
+	}
+
+	/**
+	 * @return количество получателей, которым пакет был отложен, сюда же попадают отложенные пакеты, замененные более новыми
+	 */
+	public long getInterestDeferred(int ring)
+	{
+		return _interestDeferred.get(ring);
+	}
+
+	public long getInterestDropped(int ring)
+	{
+		return _interestDropped.get(ring);
+	}
 }
@@ -14,6 +14,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.slf4j.Logger;
@@ -46,6 +47,11 @@ public class SelectorThread<T extends MMOClient> extends Thread
 	private final List<MMOConnection<T>> _connections;
 
 	private final SelectorStats _stats;
+	private final SelectorStats.SelectorLoad _load;
+
+	// Selector group: соединения, принятые этим потоком, распределяются между потоками группы
+	private SelectorThread<T>[] _group;
+	private final Queue<SocketChannel> _pendingChannels = new ConcurrentLinkedQueue<SocketChannel>();
 
 	private boolean _shutdown;
 
@@ -59,6 +65,7 @@ public class SelectorThread<T extends MMOClient> extends Thread
 		_packetHandler = packetHandler;
 		_clientFactory = clientFactory;
 		_executor = executor;
+		_load = stats.registerSelector(this);
 
 		_bufferPool = new ArrayDeque<ByteBuffer>(_sc.HELPER_BUFFER_COUNT);
 		_connections = new CopyOnWriteArrayList<MMOConnection<T>>();
@@ -73,6 +80,17 @@ public class SelectorThread<T extends MMOClient> extends Thread
 	}
 
 	public void openServerSocket(InetAddress address, int tcpPort) throws IOException
+	{
+		openServerSocket(address, tcpPort, null);
+	}
+
+	/**
+	 * Открывает серверный сокет, принятые соединения распределяются между потоками группы.
+	 * Группа может включать и сам поток, принимающий соединения.
+	 *
+	 * @param group потоки, обслуживающие соединения порта, null - все соединения обслуживаются этим потоком
+	 */
+	public void openServerSocket(InetAddress address, int tcpPort, SelectorThread<T>[] group) throws IOException
 	{
 		ServerSocketChannel selectable = ServerSocketChannel.open();
 		selectable.configureBlocking(false);
@@ -80,6 +98,14 @@ public class SelectorThread<T extends MMOClient> extends Thread
 		selectable.socket().bind(address == null ? new InetSocketAddress(tcpPort) : new InetSocketAddress(address, tcpPort), _sc.BACKLOG);
 		selectable.register(getSelector(), selectable.validOps());
 		setName("SelectorThread:" + selectable.socket().getLocalPort());
+
+		if(group != null && group.length > 0)
+		{
+			_group = group;
+			for(int i = 0; i < group.length; i++)
+				if(group[i] != this)
+					group[i].setName(getName() + "-" + i);
+		}
 	}
 
 	protected ByteBuffer getPooledBuffer()
@@ -119,6 +145,10 @@ public class SelectorThread<T extends MMOClient> extends Thread
 		SelectionKey key = null;
 		MMOConnection<T> con = null;
 		long currentMillis = 0L;
+		long selectTimeout = 0L;
+		long delay = 0L;
+		long loopStart = 0L;
+		long selectTime = 0L;
 
 		// main loop
 		for(;;)
@@ -131,7 +161,11 @@ public class SelectorThread<T extends MMOClient> extends Thread
 					break;
 				}
 
+				loopStart = System.nanoTime();
 				currentMillis = System.currentTimeMillis();
+				selectTimeout = _sc.SELECT_TIMEOUT;
+
+				registerPendingChannels();
 
 				conItr = _connections.iterator();
 				while(conItr.hasNext())
@@ -149,11 +183,21 @@ public class SelectorThread<T extends MMOClient> extends Thread
 							continue;
 						}
 					if (con.isPendingWrite())
-						if (currentMillis - con.getPendingWriteTime() >= _sc.INTEREST_DELAY)
+					{
+						delay = _sc.INTEREST_DELAY - (currentMillis - con.getPendingWriteTime());
+						if (delay <= 0)
 							con.enableWriteInterest();
+						else if (delay < selectTimeout)
+							selectTimeout = delay;
+					}
 				}
 
-				totalKeys = getSelector().selectNow();
+				selectTime = System.nanoTime();
+				if(_sc.BLOCKING_SELECT)
+					totalKeys = getSelector().select(Math.max(1L, selectTimeout));
+				else
+					totalKeys = getSelector().selectNow();
+				selectTime = System.nanoTime() - selectTime;
 
 				if(totalKeys > 0)
 				{
@@ -191,10 +235,13 @@ public class SelectorThread<T extends MMOClient> extends Thread
 
 						}
 					}
+				}
+
+				_load.addLoop(totalKeys, System.nanoTime() - loopStart - selectTime);
 
-					//не делаем паузы, в случае если были какие-либо операции I/O
+				//не делаем паузы, в случае если были какие-либо операции I/O или select() сам ожидает событий
+				if(totalKeys > 0 || _sc.BLOCKING_SELECT)
 					continue;
-				}
 
 				try
 				{
@@ -239,23 +286,19 @@ public class SelectorThread<T extends MMOClient> extends Thread
 	{
 		ServerSocketChannel ssc = (ServerSocketChannel) key.channel();
 		SocketChannel sc;
-		SelectionKey clientKey;
+		SelectorThread<T> selector;
 		try
 		{
 			while((sc = ssc.accept()) != null)
 				if(getAcceptFilter() == null || getAcceptFilter().accept(sc))
 				{
 					sc.configureBlocking(false);
-					clientKey = sc.register(getSelector(), SelectionKey.OP_READ);
-
-					MMOConnection<T> con = new MMOConnection<T>(this, sc.socket(), clientKey);
-					T client = getClientFactory().create(con);
-					client.setConnection(con);
-					con.setClient(client);
-					clientKey.attach(con);
 
-					_connections.add(con);
-					_stats.increaseOpenedConnections();
+					selector = nextSelector();
+					if(selector == this)
+						registerChannel(sc);
+					else
+						selector.addPendingChannel(sc);
 				}
 				else
 				{
@@ -268,6 +311,88 @@ public class SelectorThread<T extends MMOClient> extends Thread
 		}
 	}
 
+	/**
+	 * @return наименее загруженный поток группы, которому будет передано новое соединение
+	 */
+	protected SelectorThread<T> nextSelector()
+	{
+		if(_group == null)
+			return this;
+
+		SelectorThread<T> selector = _group[0];
+		long connections = selector.getConnectionsCount();
+		for(int i = 1; i < _group.length; i++)
+			if(_group[i].getConnectionsCount() < connections)
+			{
+				selector = _group[i];
+				connections = selector.getConnectionsCount();
+			}
+		return selector;
+	}
+
+	protected long getConnectionsCount()
+	{
+		return _load.getCurrentConnections() + _pendingChannels.size();
+	}
+
+	/**
+	 * Передает принятый канал этому потоку, регистрация в селекторе выполняется в его цикле.
+	 */
+	protected void addPendingChannel(SocketChannel sc)
+	{
+		_pendingChannels.add(sc);
+		getSelector().wakeup();
+	}
+
+	protected void registerPendingChannels()
+	{
+		SocketChannel sc;
+		while((sc = _pendingChannels.poll()) != null)
+			try
+			{
+				registerChannel(sc);
+			}
+			catch(IOException e)
+			{
+				_log.error("Error in " + getName(), e);
+				try
+				{
+					sc.close();
+				}
+				catch(IOException ioe)
+				{
+					// ignore
+				}
+			}
+	}
+
+	protected void registerChannel(SocketChannel sc) throws IOException
+	{
+		SelectionKey clientKey = sc.register(getSelector(), SelectionKey.OP_READ);
+
+		MMOConnection<T> con = new MMOConnection<T>(this, sc.socket(), clientKey);
+		T client = getClientFactory().create(con);
+		client.setConnection(con);
+		con.setClient(client);
+		clientKey.attach(con);
+
+		_connections.add(con);
+		_stats.increaseOpenedConnections();
+		_load.increaseConnections();
+	}
+
+	/**
+	 * Прерывает ожидание блокирующего select(), если вызвано не из потока селектора.
+	 */
+	protected void wakeup()
+	{
+		if(_sc.BLOCKING_SELECT && Thread.currentThread() != this)
+		{
+			_load.increaseWakeups();
+			getSelector().wakeup();
+		}
+	}
+
 	protected void readPacket(SelectionKey key)
 	{
 		MMOConnection<T> con = (MMOConnection<T>) key.attachment();
@@ -533,7 +658,10 @@ public class SelectorThread<T extends MMOClient> extends Thread
 		WRITE_BUFFER.position(headerPos + _sc.HEADER_SIZE);
 
 		// write content to buffer
-		sp.write();
+		if(sp.isShared())
+			writeSharedPacket(sp);
+		else
+			sp.write();
 
 		// size (incl header)
 		int dataSize = WRITE_BUFFER.position() - headerPos - _sc.HEADER_SIZE;
@@ -556,6 +684,35 @@ public class SelectorThread<T extends MMOClient> extends Thread
 		WRITE_BUFFER.position(headerPos + _sc.HEADER_SIZE + dataSize);
 	}
 
+	/**
+	 * Записывает тело пакета, общего для нескольких получателей. Первый записавший сохраняет копию тела,
+	 * остальные только копируют ее в буфер. При одновременной записи из разных потоков пакет может быть
+	 * сериализован несколько раз, результат при этом одинаков.
+	 */
+	protected void writeSharedPacket(SendablePacket<T> sp)
+	{
+		byte[] data = sp.getSharedData();
+		if(data != null)
+		{
+			WRITE_BUFFER.put(data);
+			_stats.increaseSharedPacketsReused();
+			return;
+		}
+
+		int pos = WRITE_BUFFER.position();
+		if(!sp.write())
+			return;
+
+		int size = WRITE_BUFFER.position() - pos;
+		if(size == 0)
+			return;
+
+		data = new byte[size];
+		System.arraycopy(WRITE_BUFFER.array(), WRITE_BUFFER.arrayOffset() + pos, data, 0, size);
+		sp.setSharedData(data);
+		_stats.increaseSharedPacketsSerialized();
+	}
+
 	protected SelectorConfig getConfig()
 	{
 		return _sc;
@@ -623,6 +780,7 @@ public class SelectorThread<T extends MMOClient> extends Thread
 				{
 					_connections.remove(con);
 					_stats.decreaseOpenedConnections();
+					_load.decreaseConnections();
 				}
 			}
 		}
@@ -631,6 +789,7 @@ public class SelectorThread<T extends MMOClient> extends Thread
 	public void shutdown()
 	{
 		_shutdown = true;
+		getSelector().wakeup();
 	}
 
 	public boolean isShuttingDown()
@@ -654,6 +813,17 @@ public class SelectorThread<T extends MMOClient> extends Thread
 
 	protected void closeSelectorThread()
 	{
+		SocketChannel sc;
+		while((sc = _pendingChannels.poll()) != null)
+			try
+			{
+				sc.close();
+			}
+			catch(IOException e)
+			{
+				// ignore
+			}
+
 		closeAllChannels();
 
 		try
@@ -4,6 +4,9 @@ import java.nio.ByteBuffer;
 
 public abstract class SendablePacket<T extends MMOClient> extends org.mmocore.commons.net.nio.SendablePacket<T>
 {
+	private volatile boolean _shared;
+	private volatile byte[] _sharedData;
+
 	@Override
 	protected ByteBuffer getByteBuffer()
 	{
@@ -16,6 +19,31 @@ public abstract class SendablePacket<T extends MMOClient> extends org.mmocore.co
 	{
 		return (T) ((SelectorThread) Thread.currentThread()).getWriteClient();
 	}
+
+	/**
+	 * Помечает пакет как рассылаемый нескольким получателям: тело пакета будет сериализовано один раз,
+	 * остальным получателям копируется уже готовый (незашифрованный) массив байт.
+	 * Содержимое пакета не должно зависеть от получателя и изменяться после рассылки.
+	 */
+	public void share()
+	{
+		_shared = true;
+	}
+
+	public boolean isShared()
+	{
+		return _shared;
+	}
+
+	protected byte[] getSharedData()
+	{
+		return _sharedData;
+	}
+
+	protected void setSharedData(byte[] data)
+	{
+		_sharedData = data;
+	}
 	
 	protected abstract boolean write();
-}
\ No newline at end of file
+}
@@ -1,15 +1,26 @@
 package org.mmocore.commons.threading;
 
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.io.FileUtils;
+import org.mmocore.commons.lang.LatencyHistogram;
+import org.mmocore.commons.net.nio.impl.ReceivablePacket;
 
 /**
+ * Статистика времени выполнения задач по классам.<BR>
+ * Запись выполняется без блокировок, время каждого класса хранится в {@link LatencyHistogram}.
+ * Пакеты от клиентов учитываются отдельно от остальных задач.
+ *
  * @author NB4L1
  */
 public final class RunnableStatsManager
@@ -21,70 +32,61 @@ public final class RunnableStatsManager
 		return _instance;
 	}
 
-	private final Map<Class<?>, ClassStat> classStats = new HashMap<Class<?>, ClassStat>();
-	private final Lock lock = new ReentrantLock();
+	private final ConcurrentMap<Class<?>, ClassStat> classStats = new ConcurrentHashMap<Class<?>, ClassStat>();
 
-	private class ClassStat
+	private static class ClassStat
 	{
 		private final Class<?> clazz;
-		private long runCount = 0;
-		private long runTime = 0;
-		private long minTime = Long.MAX_VALUE;
-		private long maxTime = Long.MIN_VALUE;
+		private final boolean packet;
+		private final LatencyHistogram histogram = new LatencyHistogram();
 
 		private ClassStat(Class<?> cl)
 		{
 			clazz = cl;
-			classStats.put(cl, this);
+			packet = ReceivablePacket.class.isAssignableFrom(cl);
 		}
 	}
 
-	public void handleStats(Class<?> cl, long runTime)
+	private static class Snapshot
 	{
-		try
-		{
-			lock.lock();
-
-			ClassStat stat = classStats.get(cl);
-
-			if(stat == null)
-				stat = new ClassStat(cl);
+		private final Class<?> clazz;
+		private final LatencyHistogram.Snapshot histogram;
 
-			stat.runCount++;
-			stat.runTime += runTime;
-			if(stat.minTime > runTime)
-				stat.minTime = runTime;
-			if(stat.maxTime < runTime)
-				stat.maxTime = runTime;
-		}
-		finally
+		private Snapshot(ClassStat stat)
 		{
-			lock.unlock();
+			clazz = stat.clazz;
+			histogram = stat.histogram.getSnapshot();
 		}
 	}
 
-	private List<ClassStat> getSortedClassStats()
+	public void handleStats(Class<?> cl, long runTime)
 	{
-		List<ClassStat> result = Collections.emptyList();
-
-		try
-		{
-			lock.lock();
-
-			result = Arrays.asList(classStats.values().toArray(new ClassStat[classStats.size()]));
-		}
-		finally
+		ClassStat stat = classStats.get(cl);
+		if(stat == null)
 		{
-			lock.unlock();
+			stat = new ClassStat(cl);
+			ClassStat old = classStats.putIfAbsent(cl, stat);
+			if(old != null)
+				stat = old;
 		}
 
-		Collections.sort(result, new Comparator<ClassStat>(){
+		stat.histogram.record(runTime);
+	}
+
+	private List<Snapshot> getSortedClassStats(boolean packets)
+	{
+		List<Snapshot> result = new ArrayList<Snapshot>(classStats.size());
+		for(ClassStat stat : classStats.values())
+			if(stat.packet == packets)
+				result.add(new Snapshot(stat));
+
+		Collections.sort(result, new Comparator<Snapshot>(){
 			@Override
-			public int compare(ClassStat c1, ClassStat c2)
+			public int compare(Snapshot c1, Snapshot c2)
 			{
-				if(c1.maxTime < c2.maxTime)
+				if(c1.histogram.getMax() < c2.histogram.getMax())
 					return 1;
-				if(c1.maxTime == c2.maxTime)
+				if(c1.histogram.getMax() == c2.histogram.getMax())
 					return 0;
 				return -1;
 			}
@@ -93,23 +95,126 @@ public final class RunnableStatsManager
 		return result;
 	}
 
+	/**
+	 * @return подробная статистика задач, кроме пакетов, время в наносекундах
+	 */
 	public CharSequence getStats()
 	{
-		StringBuilder list = new StringBuilder();
+		return getStats(false);
+	}
+
+	/**
+	 * @return подробная статистика пакетов от клиентов, время в наносекундах
+	 */
+	public CharSequence getPacketStats()
+	{
+		return getStats(true);
+	}
 
-		List<ClassStat> stats = getSortedClassStats();
+	private CharSequence getStats(boolean packets)
+	{
+		StringBuilder list = new StringBuilder();
 
-		for(ClassStat stat : stats)
+		for(Snapshot stat : getSortedClassStats(packets))
 		{
+			LatencyHistogram.Snapshot h = stat.histogram;
 			list.append(stat.clazz.getName()).append(":\n");
 
-			list.append("\tRun: ............ ").append(stat.runCount).append("\n");
-			list.append("\tTime: ........... ").append(stat.runTime).append("\n");
-			list.append("\tMin: ............ ").append(stat.minTime).append("\n");
-			list.append("\tMax: ............ ").append(stat.maxTime).append("\n");
-			list.append("\tAverage: ........ ").append(stat.runTime / stat.runCount).append("\n");
+			list.append("\tRun: ............ ").append(h.getCount()).append("\n");
+			list.append("\tTime: ........... ").append(h.getSum()).append("\n");
+			list.append("\tMin: ............ ").append(h.getMin()).append("\n");
+			list.append("\tMax: ............ ").append(h.getMax()).append("\n");
+			list.append("\tAverage: ........ ").append(h.getMean()).append("\n");
+			list.append("\tp50: ............ ").append(h.getValueAtPercentile(50.)).append("\n");
+			list.append("\tp99: ............ ").append(h.getValueAtPercentile(99.)).append("\n");
+			list.append("\tp99.9: .......... ").append(h.getValueAtPercentile(99.9)).append("\n");
+		}
+
+		return list;
+	}
+
+	/**
+	 * Краткая таблица по классам с наибольшим суммарным временем, время в микросекундах.
+	 * @param packets пакеты от клиентов или остальные задачи
+	 * @param limit количество строк
+	 */
+	public CharSequence getSummary(boolean packets, int limit)
+	{
+		List<Snapshot> stats = getSortedClassStats(packets);
+		Collections.sort(stats, new Comparator<Snapshot>(){
+			@Override
+			public int compare(Snapshot c1, Snapshot c2)
+			{
+				if(c1.histogram.getSum() < c2.histogram.getSum())
+					return 1;
+				if(c1.histogram.getSum() == c2.histogram.getSum())
+					return 0;
+				return -1;
+			}
+		});
+
+		StringBuilder list = new StringBuilder();
+		list.append(String.format("%-40s %10s %9s %9s %9s %9s %9s", "Class", "count", "avg", "p50", "p99", "p99.9", "max")).append("\n");
+		for(int i = 0; i < stats.size() && i < limit; i++)
+		{
+			LatencyHistogram.Snapshot h = stats.get(i).histogram;
+			list.append(String.format("%-40s %10d %9.1f %9.1f %9.1f %9.1f %9.1f", stats.get(i).clazz.getSimpleName(), h.getCount(), h.getMean() / 1000., h.getValueAtPercentile(50.) / 1000., h.getValueAtPercentile(99.) / 1000., h.getValueAtPercentile(99.9) / 1000., h.getMax() / 1000.)).append("\n");
 		}
 
 		return list;
 	}
+
+	/**
+	 * Сохранить подробную статистику задач и пакетов в файлы в указанном каталоге.
+	 */
+	public void dump(File dir) throws IOException
+	{
+		dump(dir, 0);
+	}
+
+	/**
+	 * Сохранить подробную статистику задач и пакетов в файлы в указанном каталоге.
+	 * @param keep сколько последних файлов каждого вида оставить в каталоге, 0 - не удалять
+	 */
+	public void dump(File dir, int keep) throws IOException
+	{
+		String date = new SimpleDateFormat("yyyyMMddHHmmss").format(System.currentTimeMillis());
+		dir.mkdirs();
+		FileUtils.writeStringToFile(new File(dir, "RunnableStats-" + date + ".txt"), getStats().toString());
+		FileUtils.writeStringToFile(new File(dir, "PacketStats-" + date + ".txt"), getPacketStats().toString());
+
+		if(keep > 0)
+		{
+			deleteOld(dir, "RunnableStats-", keep);
+			deleteOld(dir, "PacketStats-", keep);
+		}
+	}
+
+	private static void deleteOld(File dir, final String prefix, int keep)
+	{
+		File[] files = dir.listFiles(new FilenameFilter()
+		{
+			@Override
+			public boolean accept(File dir, String name)
+			{
+				return name.startsWith(prefix) && name.endsWith(".txt");
+			}
+		});
+		if(files == null || files.length <= keep)
+			return;
+
+		Arrays.sort(files, new Comparator<File>()
+		{
+			@Override
+			public int compare(File o1, File o2)
+			{
+				long t1 = o1.lastModified(), t2 = o2.lastModified();
+				if(t1 != t2)
+					return t1 < t2 ? -1 : 1;
+				return o1.getName().compareTo(o2.getName());
+			}
+		});
+		for(int i = 0; i < files.length - keep; i++)
+			files[i].delete();
+	}
 }
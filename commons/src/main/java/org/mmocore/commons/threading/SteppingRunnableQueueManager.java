@@ -1,23 +1,26 @@
 package org.mmocore.commons.threading;
 
-import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.TreeMap;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Delayed;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.RunnableScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.lang3.mutable.MutableLong;
-import org.mmocore.commons.collections.LazyArrayList;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Менеджер очереди задач с кратным запланированным временем выполнения.
+ * Менеджер очереди задач с кратным запланированным временем выполнения.<BR>
+ * Задачи хранятся в колесе таймеров: каждая задача лежит в ячейке, соответствующей шагу ее выполнения,
+ * за тик просматривается только одна ячейка. Задачи, до выполнения которых больше одного оборота колеса,
+ * остаются в ячейке и пропускаются до нужного оборота. Отмененные задачи удаляются при просмотре их ячейки.
  *
  * @author G1ta0
  */
@@ -25,13 +28,37 @@ public abstract class SteppingRunnableQueueManager implements Runnable
 {
 	private static final Logger _log = LoggerFactory.getLogger(SteppingRunnableQueueManager.class);
 
+	/** количество ячеек колеса по умолчанию, степень двойки */
+	private static final int DEFAULT_WHEEL_SIZE = 512;
+
 	protected final long tickPerStepInMillis;
-	private final List<SteppingScheduledFuture<?>> queue = new CopyOnWriteArrayList<SteppingScheduledFuture<?>>();
+	/** новые задачи, добавляются из любых потоков и раскладываются по ячейкам в начале тика */
+	private final Queue<SteppingScheduledFuture<?>> pending = new ConcurrentLinkedQueue<SteppingScheduledFuture<?>>();
+	/** ячейки колеса, односвязные списки задач, изменяются только в потоке тика */
+	private final SteppingScheduledFuture<?>[] wheel;
+	private final int mask;
+	/** номер текущего шага */
+	private volatile long currentStep;
+	/** количество задач в колесе, включая ожидающие раскладки */
+	private final AtomicInteger size = new AtomicInteger();
 	private final AtomicBoolean isRunning = new AtomicBoolean();
 
 	public SteppingRunnableQueueManager(long tickPerStepInMillis)
 	{
+		this(tickPerStepInMillis, DEFAULT_WHEEL_SIZE);
+	}
+
+	/**
+	 * @param wheelSize количество ячеек колеса, степень двойки
+	 */
+	public SteppingRunnableQueueManager(long tickPerStepInMillis, int wheelSize)
+	{
+		if(wheelSize <= 0 || (wheelSize & (wheelSize - 1)) != 0)
+			throw new IllegalArgumentException("Wheel size should be power of 2!");
+
 		this.tickPerStepInMillis = tickPerStepInMillis;
+		this.wheel = new SteppingScheduledFuture<?>[wheelSize];
+		this.mask = wheelSize - 1;
 	}
 
 	public class SteppingScheduledFuture<V> implements RunnableScheduledFuture<V>
@@ -40,8 +67,12 @@ public abstract class SteppingRunnableQueueManager implements Runnable
 		private final long stepping;
 		private final boolean isPeriodic;
 
-		private long step;
-		private boolean isCancelled;
+		/** шаг, на котором задача выполнится, до раскладки - количество шагов от следующего тика */
+		private volatile long step;
+		private volatile boolean isCancelled;
+		private volatile boolean isDone;
+		/** следующая задача в ячейке */
+		private SteppingScheduledFuture<?> next;
 
 		public SteppingScheduledFuture(Runnable r, long initial, long stepping, boolean isPeriodic)
 		{
@@ -54,26 +85,27 @@ public abstract class SteppingRunnableQueueManager implements Runnable
 		@Override
 		public void run()
 		{
-			if(--step == 0)
-				try
-				{
-					r.run();
-				}
-				catch(Exception e)
-				{
-					_log.error("SteppingScheduledFuture.run():" + e, e);
-				}
-				finally
-				{
-					if (isPeriodic)
-						step = stepping;
-				}
+			try
+			{
+				r.run();
+			}
+			catch(Exception e)
+			{
+				_log.error("SteppingScheduledFuture.run():" + e, e);
+			}
+			finally
+			{
+				if(isPeriodic)
+					step += stepping;
+				else
+					isDone = true;
+			}
 		}
 
 		@Override
 		public boolean isDone()
 		{
-			return isCancelled || !isPeriodic && step == 0;
+			return isCancelled || isDone;
 		}
 
 		@Override
@@ -103,7 +135,7 @@ public abstract class SteppingRunnableQueueManager implements Runnable
 		@Override
 		public long getDelay(TimeUnit unit)
 		{
-			return unit.convert(step * tickPerStepInMillis, TimeUnit.MILLISECONDS);
+			return unit.convert(Math.max(0, step - currentStep) * tickPerStepInMillis, TimeUnit.MILLISECONDS);
 		}
 
 		@Override
@@ -149,7 +181,10 @@ public abstract class SteppingRunnableQueueManager implements Runnable
 		long initialStepping = getStepping(initial);
 		long stepping = getStepping(delay);
 
-		queue.add(sr = new SteppingScheduledFuture<Boolean>(r, initialStepping, stepping, isPeriodic));
+		// задача будет разложена в следующем тике, который и считается ее первым шагом
+		sr = new SteppingScheduledFuture<Boolean>(r, currentStep + initialStepping, stepping, isPeriodic);
+		size.incrementAndGet();
+		pending.add(sr);
 
 		return sr;
 	}
@@ -165,23 +200,68 @@ public abstract class SteppingRunnableQueueManager implements Runnable
 		return delay % tickPerStepInMillis > tickPerStepInMillis / 2 ? delay / tickPerStepInMillis + 1 : delay < tickPerStepInMillis ? 1 : delay / tickPerStepInMillis;
 	}
 
+	private void add(SteppingScheduledFuture<?> sr)
+	{
+		int index = (int) (sr.step & mask);
+		sr.next = wheel[index];
+		wheel[index] = sr;
+	}
+
 	@Override
 	public void run()
 	{
 		if (!isRunning.compareAndSet(false, true))
 		{
-			_log.warn("Slow running queue, managed by " + this + ", queue size : " + queue.size() + "!");
+			_log.warn("Slow running queue, managed by " + this + ", queue size : " + size.get() + "!");
 			return;
 		}
 
 		try
 		{
-			if (queue.isEmpty())
-				return;
+			long step = currentStep + 1;
+
+			// шаг задачи отсчитан от номера шага на момент планирования, поэтому задача,
+			// запланированная во время предыдущего тика, может оказаться уже в прошлом
+			SteppingScheduledFuture<?> sr;
+			while((sr = pending.poll()) != null)
+			{
+				if(sr.step < step)
+					sr.step = step;
+				add(sr);
+			}
+
+			currentStep = step;
+
+			int index = (int) (step & mask);
+			SteppingScheduledFuture<?> list = wheel[index];
+			wheel[index] = null;
+
+			SteppingScheduledFuture<?> next;
+			for(sr = list; sr != null; sr = next)
+			{
+				next = sr.next;
+				sr.next = null;
 
-			for(SteppingScheduledFuture<?> sr: queue)
-				if(!sr.isDone())
-					sr.run();
+				if(sr.isDone())
+				{
+					size.decrementAndGet();
+					continue;
+				}
+
+				// задача на одном из следующих оборотов
+				if(sr.step > step)
+				{
+					add(sr);
+					continue;
+				}
+
+				sr.run();
+
+				if(sr.isDone())
+					size.decrementAndGet();
+				else
+					add(sr);
+			}
 		}
 		finally
 		{
@@ -190,19 +270,39 @@ public abstract class SteppingRunnableQueueManager implements Runnable
 	}
 
 	/**
-	 * Очистить очередь от выполенных и отмененных задач.
+	 * Очистить очередь от выполенных и отмененных задач.<BR>
+	 * Отмененные задачи и так удаляются при просмотре их ячейки, очистка нужна только для освобождения памяти
+	 * от задач с большой задержкой. Если в этот момент идет тик, очистка пропускается.
 	 */
 	public void purge()
 	{
-		LazyArrayList<SteppingScheduledFuture<?>> purge = LazyArrayList.newInstance();
-
-		for(SteppingScheduledFuture<?> sr: queue)
-			if (sr.isDone())
-				purge.add(sr);
-
-		queue.removeAll(purge);
+		if (!isRunning.compareAndSet(false, true))
+			return;
 
-		LazyArrayList.recycle(purge);
+		try
+		{
+			for(int i = 0; i < wheel.length; i++)
+			{
+				SteppingScheduledFuture<?> prev = null;
+				for(SteppingScheduledFuture<?> sr = wheel[i]; sr != null; sr = sr.next)
+				{
+					if(sr.isDone())
+					{
+						size.decrementAndGet();
+						if(prev == null)
+							wheel[i] = sr.next;
+						else
+							prev.next = sr.next;
+						continue;
+					}
+					prev = sr;
+				}
+			}
+		}
+		finally
+		{
+			isRunning.set(false);
+		}
 	}
 
 	public CharSequence getStats()
@@ -213,7 +313,25 @@ public abstract class SteppingRunnableQueueManager implements Runnable
 		int total = 0;
 		int done = 0;
 
-		for(SteppingScheduledFuture<?> sr: queue)
+		// ячейки изменяются в потоке тика, поэтому обход ограничен и статистика приблизительна
+		int limit = size.get() + pending.size() + wheel.length;
+		for(int i = 0; i < wheel.length && limit > 0; i++)
+			for(SteppingScheduledFuture<?> sr = wheel[i]; sr != null && limit-- > 0; sr = sr.next)
+			{
+				if (sr.isDone())
+				{
+					done++;
+					continue;
+				}
+				total++;
+				MutableLong count = stats.get(sr.r.getClass().getName());
+				if (count == null)
+					stats.put(sr.r.getClass().getName(), count = new MutableLong(1L));
+				else
+					count.increment();
+			}
+
+		for(SteppingScheduledFuture<?> sr : pending)
 		{
 			if (sr.isDone())
 			{
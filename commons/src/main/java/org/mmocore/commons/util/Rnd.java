@@ -105,6 +105,50 @@ public class Rnd
 		return rnd().nextDouble() <= chance / 100.;
 	}
 
+	/**
+	 * Число успехов в n независимых испытаниях с вероятностью успеха p (биномиальное распределение).<br>
+	 * При n не больше 16 испытания разыгрываются по одному. Если среднее число успехов или неудач меньше 30, значение
+	 * вычисляется точно по функции распределения за время, пропорциональное среднему, иначе используется нормальное приближение.
+	 */
+	public static long binomial(long n, double p)
+	{
+		if(n <= 0 || p <= 0)
+			return 0;
+		if(p >= 1)
+			return n;
+		// при малом n испытания дешевле разыграть по одному
+		if(n <= 16)
+		{
+			long k = 0;
+			for(long i = 0; i < n; i++)
+				if(rnd().nextDouble() < p)
+					k++;
+			return k;
+		}
+		if(p > 0.5)
+			return n - binomial(n, 1. - p);
+
+		double mean = n * p;
+		if(mean < 30)
+		{
+			double q = 1. - p;
+			double r = p / q;
+			double pk = Math.pow(q, n);
+			double u = rnd().nextDouble();
+			long k = 0;
+			while(u > pk && pk > 0 && k < n)
+			{
+				u -= pk;
+				pk *= (double) (n - k) / (k + 1) * r;
+				k++;
+			}
+			return k;
+		}
+
+		long k = Math.round(mean + Math.sqrt(mean * (1. - p)) * rnd().nextGaussian());
+		return Math.max(0, Math.min(n, k));
+	}
+
 	public static <E> E get(E[] list)
 	{
 		return list[get(list.length)];
@@ -0,0 +1,59 @@
+package org.mmocore.commons.lang;
+
+/**
+ * Проверка {@link LatencyHistogram}: значения на границе и за границей {@link LatencyHistogram#MAX_BITS},
+ * точность перцентилей для обычных значений. Запуск без параметров, при ошибке завершается с исключением.
+ */
+public class LatencyHistogramCheck
+{
+	public static void main(String[] args)
+	{
+		checkLargeValues();
+		checkPrecision();
+		System.out.println("LatencyHistogramCheck: OK");
+	}
+
+	private static void checkLargeValues()
+	{
+		long[] values = { (1L << 40) - 1, 1L << 40, (1L << 40) + (5L << 37), (1L << 41) + 123, 1L << 62, Long.MAX_VALUE };
+
+		LatencyHistogram h = new LatencyHistogram();
+		long sum = 0;
+		for(long v : values)
+		{
+			h.record(v);
+			sum += v;
+		}
+
+		LatencyHistogram.Snapshot s = h.getSnapshot();
+		// значение 2^40 раньше попадало в ячейку счетчика
+		check(s.getCount() == values.length, "count " + s.getCount());
+		check(s.getSum() == sum, "sum " + s.getSum());
+		check(s.getMin() == values[0], "min " + s.getMin());
+		check(s.getMax() == Long.MAX_VALUE, "max " + s.getMax());
+		check(s.getValueAtPercentile(100.) == Long.MAX_VALUE, "p100 " + s.getValueAtPercentile(100.));
+		// 2^40 - 1 - в своей корзине, все остальное - в последней
+		long p = s.getValueAtPercentile(10.);
+		check(p >= values[0] && p < 1L << 40, "p10 " + p);
+		p = s.getValueAtPercentile(30.);
+		check(p == Long.MAX_VALUE, "p30 " + p);
+	}
+
+	private static void checkPrecision()
+	{
+		for(long v = 1; v < 1L << 40; v = v * 3 + 1)
+		{
+			LatencyHistogram h = new LatencyHistogram();
+			h.record(v);
+			h.record(Long.MAX_VALUE);
+			long p = h.getSnapshot().getValueAtPercentile(50.);
+			check(p >= v && p <= v + v / LatencyHistogram.SUB_COUNT, "value " + v + ", p50 " + p);
+		}
+	}
+
+	private static void check(boolean condition, String message)
+	{
+		if(!condition)
+			throw new IllegalStateException(message);
+	}
+}
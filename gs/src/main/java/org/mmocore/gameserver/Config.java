@@ -18,6 +18,7 @@ import org.apache.commons.lang3.math.NumberUtils;
 import org.apache.commons.lang3.reflect.FieldUtils;
 import org.mmocore.commons.configuration.ExProperties;
 import org.mmocore.commons.net.nio.impl.SelectorConfig;
+import org.mmocore.commons.net.nio.impl.SelectorStats;
 import org.mmocore.gameserver.config.parser.ChatFilterParser;
 import org.mmocore.gameserver.data.htm.HtmCache;
 import org.mmocore.gameserver.model.actor.instances.player.Bonus;
@@ -62,6 +63,8 @@ public class Config
 	public static final String GM_ACCESS_FILES_DIR = "config/GMAccess.d/";
 
 	public static int HTM_CACHE_MODE;
+	/** Размер кэшей разобранных шаблонов Velocity и готовых диалогов */
+	public static int HTM_TEMPLATE_CACHE_SIZE;
         
         /**Endless resources*/
         public static boolean NOT_DESTROY_ARROWS;
@@ -80,11 +83,26 @@ public class Config
 
 	// Database additional options
 	public static boolean AUTOSAVE;
+	public static boolean ASYNC_PERSISTENCE;
+	public static int ASYNC_PERSISTENCE_THREADS;
+	public static int ASYNC_PERSISTENCE_QUEUE_SIZE;
+	public static int ASYNC_PERSISTENCE_BATCH_SIZE;
+	public static int LOGIN_RESTORE_THREADS;
+	public static long QUEST_STATE_FLUSH_INTERVAL;
 
 	public static long USER_INFO_INTERVAL;
 	public static long BROADCAST_CHAR_INFO_INTERVAL;
+	public static long STATUS_UPDATE_INTERVAL;
+	public static int REPLICATION_MANAGER_COUNT;
+	public static long REPLICATION_MANAGER_TICK;
+	public static boolean BROADCAST_INTEREST_MANAGEMENT;
+	public static int BROADCAST_INTEREST_MIN_OBSERVERS;
+	public static int[] BROADCAST_INTEREST_RINGS;
+	public static int[] BROADCAST_INTEREST_INTERVALS;
 
 	public static int EFFECT_TASK_MANAGER_COUNT;
+	public static int MOVE_TASK_MANAGER_COUNT;
+	public static long MOVE_TASK_MANAGER_TICK;
 
 	public static int MAXIMUM_ONLINE_USERS;
 
@@ -149,6 +167,11 @@ public class Config
 	public static int EXECUTOR_THREAD_POOL_SIZE;
 
 	public static boolean ENABLE_RUNNABLE_STATS;
+	/** периодическая запись статистики задач, 0 - выключена */
+	public static long RUNNABLE_STATS_DUMP_INTERVAL;
+	public static String RUNNABLE_STATS_DUMP_DIR;
+	/** сколько последних записей хранить, 0 - все */
+	public static int RUNNABLE_STATS_DUMP_KEEP;
 
 	/** Network settings */
 	public static SelectorConfig SELECTOR_CONFIG = new SelectorConfig();
@@ -471,6 +494,9 @@ public class Config
 
 	/** Datapack root directory */
 	public static File DATAPACK_ROOT;
+	/** Кэш скомпилированных скриптов */
+	public static boolean SCRIPTS_CACHE;
+	public static String SCRIPTS_CACHE_DIR;
 
 	public static double CLANHALL_BUFFTIME_MODIFIER;
 	public static double SONGDANCETIME_MODIFIER;
@@ -857,6 +883,10 @@ public class Config
 	public static int PATHFIND_MAX_Z_DIFF;
 	public static long PATHFIND_MAX_TIME;
 	public static String PATHFIND_BUFFERS;
+	public static boolean PATHFIND_HIERARCHICAL;
+	public static int PATHFIND_CLUSTER_SIZE;
+	public static int PATHFIND_HIERARCHICAL_MAX_DISTANCE;
+	public static int PATHFIND_ROUTE_CACHE_SIZE;
 
 	public static boolean DEBUG;
 
@@ -989,6 +1019,9 @@ public class Config
 			throw new Error(e);
 		}
 
+		SCRIPTS_CACHE = serverSettings.getProperty("ScriptsCache", true);
+		SCRIPTS_CACHE_DIR = serverSettings.getProperty("ScriptsCacheDir", "cache/scripts");
+
 		ALLOW_DISCARDITEM = serverSettings.getProperty("AllowDiscardItem", true);
 		ALLOW_MAIL = serverSettings.getProperty("AllowMail", true);
 		ALLOW_WAREHOUSE = serverSettings.getProperty("AllowWarehouse", true);
@@ -1006,6 +1039,12 @@ public class Config
 		SERVER_SIDE_NPC_TITLE = serverSettings.getProperty("ServerSideNpcTitle", false);
 
 		AUTOSAVE = serverSettings.getProperty("Autosave", true);
+		ASYNC_PERSISTENCE = serverSettings.getProperty("AsyncPersistence", false);
+		ASYNC_PERSISTENCE_THREADS = serverSettings.getProperty("AsyncPersistenceThreads", 2);
+		ASYNC_PERSISTENCE_QUEUE_SIZE = serverSettings.getProperty("AsyncPersistenceQueueSize", 10000);
+		ASYNC_PERSISTENCE_BATCH_SIZE = serverSettings.getProperty("AsyncPersistenceBatchSize", 100);
+		LOGIN_RESTORE_THREADS = serverSettings.getProperty("LoginRestoreThreads", NCPUS);
+		QUEST_STATE_FLUSH_INTERVAL = serverSettings.getProperty("QuestStateFlushInterval", 5000L);
 
 		MAXIMUM_ONLINE_USERS = serverSettings.getProperty("MaximumOnlineUsers", 3000);
 
@@ -1020,17 +1059,39 @@ public class Config
 
 		USER_INFO_INTERVAL = serverSettings.getProperty("UserInfoInterval", 100L);
 		BROADCAST_CHAR_INFO_INTERVAL = serverSettings.getProperty("BroadcastCharInfoInterval", 100L);
+		STATUS_UPDATE_INTERVAL = serverSettings.getProperty("StatusUpdateInterval", 100L);
+		REPLICATION_MANAGER_COUNT = serverSettings.getProperty("ReplicationManagers", 2);
+		if(!isPowerOfTwo(REPLICATION_MANAGER_COUNT))
+			throw new RuntimeException("ReplicationManagers value should be power of 2!");
+		REPLICATION_MANAGER_TICK = serverSettings.getProperty("ReplicationManagerTick", 50L);
+		BROADCAST_INTEREST_MANAGEMENT = serverSettings.getProperty("BroadcastInterestManagement", false);
+		BROADCAST_INTEREST_MIN_OBSERVERS = serverSettings.getProperty("BroadcastInterestMinObservers", 50);
+		BROADCAST_INTEREST_RINGS = serverSettings.getProperty("BroadcastInterestRings", new int[] { 1500, 3000 });
+		BROADCAST_INTEREST_INTERVALS = serverSettings.getProperty("BroadcastInterestIntervals", new int[] { 300, 1000 });
+		if(BROADCAST_INTEREST_RINGS.length != BROADCAST_INTEREST_INTERVALS.length || BROADCAST_INTEREST_RINGS.length >= SelectorStats.MAX_INTEREST_RINGS)
+			throw new RuntimeException("BroadcastInterestRings and BroadcastInterestIntervals should have the same length, less than " + SelectorStats.MAX_INTEREST_RINGS + "!");
 
 		EFFECT_TASK_MANAGER_COUNT = serverSettings.getProperty("EffectTaskManagers", 2);
 		if(!isPowerOfTwo(EFFECT_TASK_MANAGER_COUNT))
 			throw new RuntimeException("EffectTaskManagers value should be power of 2!");
 
+		MOVE_TASK_MANAGER_COUNT = serverSettings.getProperty("MoveTaskManagers", Integer.highestOneBit(NCPUS));
+		if(!isPowerOfTwo(MOVE_TASK_MANAGER_COUNT))
+			throw new RuntimeException("MoveTaskManagers value should be power of 2!");
+		MOVE_TASK_MANAGER_TICK = serverSettings.getProperty("MoveTaskManagerTick", 50L);
+
 		SCHEDULED_THREAD_POOL_SIZE = serverSettings.getProperty("ScheduledThreadPoolSize", NCPUS * 4);
 		EXECUTOR_THREAD_POOL_SIZE = serverSettings.getProperty("ExecutorThreadPoolSize", NCPUS * 2);
 
 		ENABLE_RUNNABLE_STATS = serverSettings.getProperty("EnableRunnableStats", false);
+		RUNNABLE_STATS_DUMP_INTERVAL = serverSettings.getProperty("RunnableStatsDumpInterval", 0L);
+		RUNNABLE_STATS_DUMP_DIR = serverSettings.getProperty("RunnableStatsDumpDir", "stats");
+		RUNNABLE_STATS_DUMP_KEEP = serverSettings.getProperty("RunnableStatsDumpKeep", 24);
 
 		SELECTOR_CONFIG.SLEEP_TIME = serverSettings.getProperty("SelectorSleepTime", 10L);
+		SELECTOR_CONFIG.BLOCKING_SELECT = serverSettings.getProperty("SelectorBlockingSelect", false);
+		SELECTOR_CONFIG.SELECT_TIMEOUT = serverSettings.getProperty("SelectorSelectTimeout", 100L);
+		SELECTOR_CONFIG.SELECTOR_THREAD_COUNT = Math.max(1, serverSettings.getProperty("SelectorThreadsPerPort", 1));
 		SELECTOR_CONFIG.INTEREST_DELAY = serverSettings.getProperty("InterestDelay", 30L);
 		SELECTOR_CONFIG.MAX_SEND_PER_PASS = serverSettings.getProperty("MaxSendPerPass", 32);
 		SELECTOR_CONFIG.READ_BUFFER_SIZE = serverSettings.getProperty("ReadBufferSize", 65536);
@@ -1072,6 +1133,7 @@ public class Config
 		COMMUNITYBOARD_ENABLED = serverSettings.getProperty("AllowCommunityBoard", true);
 		BBS_DEFAULT = serverSettings.getProperty("BBSDefault", "_bbshome");
 		HTM_CACHE_MODE = serverSettings.getProperty("HtmCacheMode", HtmCache.LAZY);
+		HTM_TEMPLATE_CACHE_SIZE = serverSettings.getProperty("HtmTemplateCacheSize", 1000);
                 
                 NOT_DESTROY_ARROWS = serverSettings.getProperty("InfiniteArrows", true);
 	}
@@ -1702,6 +1764,10 @@ public class Config
 		REGION_EDGE_MAX_Z_DIFF = geodataSettings.getProperty("RegionEdgeMaxZDiff", 128);
 		PATHFIND_MAX_TIME = geodataSettings.getProperty("PathFindMaxTime", 10000000);
 		PATHFIND_BUFFERS = geodataSettings.getProperty("PathFindBuffers", "8x96;8x128;8x160;8x192;4x224;4x256;4x288;2x320;2x384;2x352;1x512");
+		PATHFIND_HIERARCHICAL = geodataSettings.getProperty("PathFindHierarchical", false);
+		PATHFIND_CLUSTER_SIZE = geodataSettings.getProperty("PathFindClusterSize", 64);
+		PATHFIND_HIERARCHICAL_MAX_DISTANCE = geodataSettings.getProperty("PathFindHierarchicalMaxDistance", 2048);
+		PATHFIND_ROUTE_CACHE_SIZE = geodataSettings.getProperty("PathFindRouteCacheSize", 4096);
 	}
 
 	public static void loadEventsSettings()
@@ -300,12 +300,16 @@ public class GameServer
 
 		InetAddress serverAddr = Config.GAMESERVER_HOSTNAME.equalsIgnoreCase("*") ? null : InetAddress.getByName(Config.GAMESERVER_HOSTNAME);
 
-		_selectorThreads = new SelectorThread[Config.PORTS_GAME.length];
+		int groupSize = Config.SELECTOR_CONFIG.SELECTOR_THREAD_COUNT;
+		_selectorThreads = new SelectorThread[Config.PORTS_GAME.length * groupSize];
 		for(int i = 0; i < Config.PORTS_GAME.length; i++)
 		{
-			_selectorThreads[i] = new SelectorThread<GameClient>(Config.SELECTOR_CONFIG, _selectorStats, gph, gph, gph, null);
-			_selectorThreads[i].openServerSocket(serverAddr, Config.PORTS_GAME[i]);
-			_selectorThreads[i].start();
+			SelectorThread<GameClient>[] group = new SelectorThread[groupSize];
+			for(int j = 0; j < groupSize; j++)
+				group[j] = _selectorThreads[i * groupSize + j] = new SelectorThread<GameClient>(Config.SELECTOR_CONFIG, _selectorStats, gph, gph, gph, null);
+			group[0].openServerSocket(serverAddr, Config.PORTS_GAME[i], groupSize > 1 ? group : null);
+			for(SelectorThread<GameClient> st : group)
+				st.start();
 		}
 
 		getListeners().onStart();
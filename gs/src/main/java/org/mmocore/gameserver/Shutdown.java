@@ -6,7 +6,9 @@ import java.util.TimerTask;
 import org.mmocore.commons.net.nio.impl.SelectorThread;
 import org.mmocore.commons.time.cron.SchedulingPattern;
 import org.mmocore.commons.time.cron.SchedulingPattern.InvalidPatternException;
+import org.mmocore.gameserver.dao.CharacterQuestDAO;
 import org.mmocore.gameserver.database.DatabaseFactory;
+import org.mmocore.gameserver.database.PersistenceService;
 import org.mmocore.gameserver.instancemanager.CoupleManager;
 import org.mmocore.gameserver.instancemanager.CursedWeaponsManager;
 import org.mmocore.gameserver.instancemanager.games.FishingChampionShipManager;
@@ -209,6 +211,17 @@ public class Shutdown extends Thread
 					e.printStackTrace();
 				}
 
+		try
+		{
+			System.out.println("Flushing pending database writes...");
+			PersistenceService.getInstance().shutdown();
+			CharacterQuestDAO.getInstance().flushAll();
+		}
+		catch(Exception e)
+		{
+			e.printStackTrace();
+		}
+
 		try
 		{
 			System.out.println("Shutting down database communication...");
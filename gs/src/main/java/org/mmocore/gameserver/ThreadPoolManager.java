@@ -1,5 +1,6 @@
 package org.mmocore.gameserver;
 
+import java.io.File;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
@@ -8,6 +9,7 @@ import java.util.concurrent.TimeUnit;
 
 import org.mmocore.commons.threading.PriorityThreadFactory;
 import org.mmocore.commons.threading.RunnableImpl;
+import org.mmocore.commons.threading.RunnableStatsManager;
 import org.mmocore.commons.threading.RunnableStatsWrapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,6 +47,17 @@ public class ThreadPoolManager
 				_executor.purge();
 			}
 		}, 300000L, 300000L);
+
+		//Периодическое сохранение статистики выполнения задач и пакетов
+		if(Config.ENABLE_RUNNABLE_STATS && Config.RUNNABLE_STATS_DUMP_INTERVAL > 0)
+			scheduleAtFixedRate(new RunnableImpl()
+			{
+				@Override
+				public void runImpl() throws Exception
+				{
+					RunnableStatsManager.getInstance().dump(new File(Config.RUNNABLE_STATS_DUMP_DIR), Config.RUNNABLE_STATS_DUMP_KEEP);
+				}
+			}, Config.RUNNABLE_STATS_DUMP_INTERVAL, Config.RUNNABLE_STATS_DUMP_INTERVAL);
 	}
 
 	private long validate(long delay)
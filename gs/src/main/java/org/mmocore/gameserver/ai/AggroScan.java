@@ -0,0 +1,174 @@
+package org.mmocore.gameserver.ai;
+
+import java.util.Arrays;
+
+import org.mmocore.gameserver.model.Creature;
+import org.mmocore.gameserver.model.GameObjectVisitor;
+import org.mmocore.gameserver.model.World;
+import org.mmocore.gameserver.model.instances.NpcInstance;
+
+/**
+ * Перебор кандидатов на агрессию в порядке удаления от NPC.<BR>
+ * Кандидаты собираются за один обход мира вместе с квадратами расстояний и выдаются через двоичную кучу,
+ * поэтому упорядочивается только та часть, которая действительно просматривается до первой подходящей цели.
+ * Буферы свои у каждого потока, обход не создает объектов.
+ * <pre>
+ * AggroScan scan = AggroScan.start(actor, aggressive, radius);
+ * try
+ * {
+ *     Creature target;
+ *     while((target = scan.next()) != null)
+ *         ...
+ * }
+ * finally
+ * {
+ *     scan.finish();
+ * }
+ * </pre>
+ */
+public final class AggroScan implements GameObjectVisitor<Creature>
+{
+	private static final ThreadLocal<AggroScan> _scans = new ThreadLocal<AggroScan>()
+	{
+		@Override
+		protected AggroScan initialValue()
+		{
+			return new AggroScan();
+		}
+	};
+
+	private Creature[] _targets = new Creature[64];
+	/** куча индексов в _targets и квадраты расстояний до них */
+	private int[] _heap = new int[64];
+	private long[] _distances = new long[64];
+	/** размер кучи */
+	private int _size;
+	/** сколько элементов было собрано, для очистки ссылок */
+	private int _count;
+	private boolean _inUse;
+
+	private NpcInstance _actor;
+	private boolean _aggressive;
+
+	AggroScan()
+	{}
+
+	/**
+	 * Собрать кандидатов вокруг NPC.
+	 * @param aggressive если false, собираются только цели из списка агрессии
+	 * @param radius радиус поиска от NPC, отрицательный - все персонажи в текущем и соседних регионах
+	 */
+	public static AggroScan start(NpcInstance actor, boolean aggressive, int radius)
+	{
+		AggroScan scan = _scans.get();
+		// вложенный перебор в том же потоке
+		if(scan._inUse)
+			scan = new AggroScan();
+
+		scan._inUse = true;
+		scan._actor = actor;
+		scan._aggressive = aggressive;
+		if(radius < 0)
+			World.forEachAroundCharacters(actor, scan);
+		else
+			World.forEachAroundCharacters(actor, radius, radius, scan);
+		scan.heapify();
+		return scan;
+	}
+
+	@Override
+	public boolean visit(Creature target)
+	{
+		if(!_aggressive && _actor.getAggroList().get(target) == null)
+			return true;
+
+		add(target, _actor.getXYZDeltaSq(target.getX(), target.getY(), target.getZ()));
+		return true;
+	}
+
+	/**
+	 * Добавить кандидата, индексы выдаются по порядку добавления начиная с 0.
+	 */
+	void add(Creature target, long distance)
+	{
+		if(_count == _targets.length)
+		{
+			_targets = Arrays.copyOf(_targets, _count * 2);
+			_heap = Arrays.copyOf(_heap, _count * 2);
+			_distances = Arrays.copyOf(_distances, _count * 2);
+		}
+
+		_targets[_count] = target;
+		_heap[_size] = _count;
+		_distances[_size] = distance;
+		_size++;
+		_count++;
+	}
+
+	void heapify()
+	{
+		for(int i = _size / 2 - 1; i >= 0; i--)
+			siftDown(i);
+	}
+
+	/**
+	 * @return ближайший из еще не выданных кандидатов, null если кандидатов больше нет
+	 */
+	public Creature next()
+	{
+		int index = nextIndex();
+		return index < 0 ? null : _targets[index];
+	}
+
+	/**
+	 * @return индекс ближайшего из еще не выданных кандидатов, -1 если кандидатов больше нет
+	 */
+	int nextIndex()
+	{
+		if(_size == 0)
+			return -1;
+
+		int index = _heap[0];
+		_size--;
+		if(_size > 0)
+		{
+			_heap[0] = _heap[_size];
+			_distances[0] = _distances[_size];
+			siftDown(0);
+		}
+		return index;
+	}
+
+	/**
+	 * Завершить перебор и освободить буферы.
+	 */
+	public void finish()
+	{
+		Arrays.fill(_targets, 0, _count, null);
+		_size = 0;
+		_count = 0;
+		_actor = null;
+		_inUse = false;
+	}
+
+	private void siftDown(int i)
+	{
+		int index = _heap[i];
+		long distance = _distances[i];
+		int half = _size / 2;
+		while(i < half)
+		{
+			int child = 2 * i + 1;
+			int right = child + 1;
+			if(right < _size && _distances[right] < _distances[child])
+				child = right;
+			if(distance <= _distances[child])
+				break;
+			_heap[i] = _heap[child];
+			_distances[i] = _distances[child];
+			i = child;
+		}
+		_heap[i] = index;
+		_distances[i] = distance;
+	}
+}
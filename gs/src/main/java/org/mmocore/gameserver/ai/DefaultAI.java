@@ -44,8 +44,8 @@ import org.mmocore.gameserver.skills.SkillEntry;
 import org.mmocore.gameserver.stats.Stats;
 import org.mmocore.gameserver.tables.SkillTable;
 import org.mmocore.gameserver.taskmanager.AiTaskManager;
+import org.mmocore.gameserver.templates.npc.NpcAIParams;
 import org.mmocore.gameserver.utils.Location;
-import org.mmocore.gameserver.utils.Log;
 import org.mmocore.gameserver.utils.NpcUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -186,6 +186,9 @@ public class DefaultAI extends CharacterAI
 		}
 	}
 
+	/** Радиус поиска целей для агрессии: все персонажи в текущем и соседних регионах, без ограничения расстояния */
+	protected static final int AGGRO_SCAN_REGION = -1;
+
 	protected long AI_TASK_ATTACK_DELAY = Config.AI_TASK_ATTACK_DELAY;
 	protected long AI_TASK_ACTIVE_DELAY = Config.AI_TASK_ACTIVE_DELAY;
 	protected long AI_TASK_DELAY_CURRENT = AI_TASK_ACTIVE_DELAY;
@@ -246,11 +249,12 @@ public class DefaultAI extends CharacterAI
 		_healSkills = actor.getTemplate().getHealSkills();
 
 		// Preload some AI params
-		MAX_PURSUE_RANGE = actor.getParameter("MaxPursueRange", actor.isRaid() ? Config.MAX_PURSUE_RANGE_RAID : actor.isUnderground() ? Config.MAX_PURSUE_UNDERGROUND_RANGE : Config.MAX_PURSUE_RANGE);
-		_minFactionNotifyInterval = actor.getParameter("FactionNotifyInterval", 10000);
-		_isGlobal = actor.getParameter("GlobalAI", false);
-		_UDRate = actor.getParameter("LongRangeGuardRate", 0);
-		_isSearchingMaster = actor.getParameter("searchingMaster", false);
+		NpcAIParams params = actor.getTypedAIParams();
+		MAX_PURSUE_RANGE = params.maxPursueRange >= 0 ? params.maxPursueRange : actor.isRaid() ? Config.MAX_PURSUE_RANGE_RAID : actor.isUnderground() ? Config.MAX_PURSUE_UNDERGROUND_RANGE : Config.MAX_PURSUE_RANGE;
+		_minFactionNotifyInterval = params.factionNotifyInterval;
+		_isGlobal = params.globalAI;
+		_UDRate = params.longRangeGuardRate;
+		_isSearchingMaster = params.searchingMaster;
 	}
 
 	@Override
@@ -319,7 +323,7 @@ public class DefaultAI extends CharacterAI
 	 */
 	protected boolean canSeeInSilentMove(Playable target)
 	{
-		if(getActor().getParameter("canSeeInSilentMove", false))
+		if(getActor().getTypedAIParams().canSeeInSilentMove)
 			return true;
 		return !target.isSilentMoving();
 	}
@@ -389,7 +393,7 @@ public class DefaultAI extends CharacterAI
 	{
 		NpcInstance actor = getActor();
 
-		if(actor.getParameter("noRandomAnimation", false))
+		if(actor.getTypedAIParams().noRandomAnimation)
 			return false;
 
 		if(actor.hasRandomAnimation() && !actor.isActionsDisabled() && !actor.isMoving && !actor.isInCombat() && Rnd.chance(Config.RND_ANIMATION_RATE))
@@ -405,7 +409,7 @@ public class DefaultAI extends CharacterAI
 	{
 		NpcInstance actor = getActor();
 
-		if(actor.getParameter("noRandomWalk", false))
+		if(actor.getTypedAIParams().noRandomWalk)
 			return false;
 
 		return !actor.isMoving && maybeMoveToHome();
@@ -424,12 +428,29 @@ public class DefaultAI extends CharacterAI
 			target = targets.get(i);
 			long dist = actor.getXYZDeltaSq(target.getX(), target.getY(), target.getZ());
 			if(dist < minDist)
+			{
+				minDist = dist;
 				nextTarget = target;
+			}
 		}
 
 		return nextTarget;
 	}
 
+	/**
+	 * Радиус поиска целей для агрессии от текущего положения NPC. Дальность агрессии и преследования
+	 * отсчитывается от точки спавна, поэтому к ней добавляется расстояние до точки спавна.<BR>
+	 * AI, у которых {@link #checkAggression(Creature)} не ограничена этими дальностями, должны вернуть {@link #AGGRO_SCAN_REGION}.
+	 */
+	protected int getAggroScanRange(boolean aggressive)
+	{
+		NpcInstance actor = getActor();
+		int range = aggressive ? actor.getAggroRange() : 0;
+		if(!actor.getAggroList().isEmpty())
+			range = Math.max(range, MAX_PURSUE_RANGE);
+		return range + (int) Math.sqrt(actor.getXYZDeltaSq(actor.getSpawnedLoc()));
+	}
+
 	/**
 	 * @return true если действие выполнено, false если нет
 	 */
@@ -454,25 +475,15 @@ public class DefaultAI extends CharacterAI
 		{
 			_checkAggroTimestamp = now;
 
-			boolean aggressive = Rnd.chance(actor.getParameter("SelfAggressive", isAggressive() ? 100 : 0));
+			int selfAggressive = actor.getTypedAIParams().selfAggressive;
+			boolean aggressive = Rnd.chance(selfAggressive >= 0 ? selfAggressive : isAggressive() ? 100 : 0);
 			if(!actor.getAggroList().isEmpty() || aggressive)
 			{
-				int count = 0;
-				List<Creature> targets = World.getAroundCharacters(actor);
-				while(!targets.isEmpty())
+				AggroScan scan = AggroScan.start(actor, aggressive, getAggroScanRange(aggressive));
+				try
 				{
-					count++;
-					if (count > 1000)
-					{
-						Log.debug("AI loop count exceeded, "+getActor()+" "+getActor().getLoc()+" "+targets);
-						return false;
-					}
-
-					Creature target = getNearestTarget(targets);
-					if(target == null)
-						break;
-
-					if(aggressive || actor.getAggroList().get(target) != null)
+					Creature target;
+					while((target = scan.next()) != null)
 						if(checkAggression(target))
 						{
 							actor.getAggroList().addDamageHate(target, 0, 2);
@@ -485,8 +496,10 @@ public class DefaultAI extends CharacterAI
 
 							return true;
 						}
-
-					targets.remove(target);
+				}
+				finally
+				{
+					scan.finish();
 				}
 			}
 		}
@@ -651,7 +664,7 @@ public class DefaultAI extends CharacterAI
 	@Override
 	protected void onEvtSpawn()
 	{
-		setGlobalAggro(System.currentTimeMillis() + getActor().getParameter("globalAggro", 10000L));
+		setGlobalAggro(System.currentTimeMillis() + getActor().getTypedAIParams().globalAggro);
 
 		_UDFlag = UD_NONE;
 
@@ -923,8 +936,9 @@ public class DefaultAI extends CharacterAI
 	{
 		NpcInstance actor = getActor();
 
-		int transformer = actor.getParameter("transformOnDead", 0);
-		int chance = actor.getParameter("transformChance", 100);
+		NpcAIParams params = actor.getTypedAIParams();
+		int transformer = params.transformOnDead;
+		int chance = params.transformChance >= 0 ? params.transformChance : 100;
 		if(transformer > 0 && Rnd.chance(chance))
 		{
 			NpcInstance npc = NpcUtils.spawnSingle(transformer, actor.getLoc(), actor.getReflection()) ;
@@ -956,10 +970,11 @@ public class DefaultAI extends CharacterAI
 		if(attacker == null || actor.isDead())
 			return;
 
-		int transformer = actor.getParameter("transformOnUnderAttack", 0);
+		NpcAIParams params = actor.getTypedAIParams();
+		int transformer = params.transformOnUnderAttack;
 		if(transformer > 0)
 		{
-			int chance = actor.getParameter("transformChance", 5);
+			int chance = params.transformChance >= 0 ? params.transformChance : 5;
 			if(chance == 100 || ((MonsterInstance) actor).getChampion() == 0 && actor.getCurrentHpPercents() > 50 && Rnd.chance(chance))
 			{
 				MonsterInstance npc = (MonsterInstance) NpcHolder.getInstance().getTemplate(transformer).getNewInstance();
@@ -1175,7 +1190,7 @@ public class DefaultAI extends CharacterAI
 			return getAttackTarget();
 
 		// Для "двинутых" боссов, иногда, выбираем случайную цель
-		if(Rnd.chance(actor.getParameter("isMadness", 0)))
+		if(Rnd.chance(actor.getTypedAIParams().madnessChance))
 		{
 			Creature randomHated = actor.getAggroList().getRandomHated();
 			if(randomHated != null && Math.abs(actor.getZ() - randomHated.getZ()) < 1000) // Не прыгаем к случайной цели если слишком большая разница Z.
@@ -1737,7 +1752,7 @@ public class DefaultAI extends CharacterAI
 
 	public boolean getIsMobile()
 	{
-		return !getActor().getParameter("isImmobilized", false);
+		return !getActor().getTypedAIParams().isImmobilized;
 	}
 
 	public int getMaxPathfindFails()
@@ -30,7 +30,7 @@ public class Guard extends Fighter
 
 		if(target.isPlayable())
 		{
-			if(target.getKarma() == 0 || (actor.getParameter("evilGuard", false) && target.getPvpFlag() > 0))
+			if(target.getKarma() == 0 || (actor.getTypedAIParams().evilGuard && target.getPvpFlag() > 0))
 				return false;
 		}
 		if(target.isMonster())
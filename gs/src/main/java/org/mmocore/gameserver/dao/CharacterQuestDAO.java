@@ -3,19 +3,33 @@ package org.mmocore.gameserver.dao;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.mmocore.commons.dbutils.DbUtils;
+import org.mmocore.commons.threading.RunnableImpl;
 import org.mmocore.gameserver.Config;
+import org.mmocore.gameserver.ThreadPoolManager;
 import org.mmocore.gameserver.database.DatabaseFactory;
 import org.mmocore.gameserver.instancemanager.QuestManager;
 import org.mmocore.gameserver.model.Player;
 import org.mmocore.gameserver.model.pledge.Clan;
 import org.mmocore.gameserver.model.quest.Quest;
 import org.mmocore.gameserver.model.quest.QuestState;
+import org.mmocore.gameserver.utils.GameStats;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * Изменения переменных квестов не пишутся в базу сразу, а накапливаются для каждого персонажа,
+ * повторные изменения одной переменной объединяются. Накопленное записывается пачкой раз в QuestStateFlushInterval,
+ * при выходе персонажа, перед загрузкой персонажа и при выключении сервера.<BR>
+ * При падении сервера теряются изменения не более чем за последний интервал, при этом каждая переменная
+ * остается в одном из своих записанных ранее значений. Удаление квеста целиком выполняется сразу.
+ *
  * @author VISTALL
  * @date 18:10/27.08.2011
  */
@@ -29,11 +43,29 @@ public class CharacterQuestDAO
 		return _instance;
 	}
 
+	/** ожидающие записи изменения по objectId персонажа */
+	private final ConcurrentMap<Integer, DirtySet> _dirty = new ConcurrentHashMap<Integer, DirtySet>();
+
+	private CharacterQuestDAO()
+	{
+		if(Config.QUEST_STATE_FLUSH_INTERVAL > 0)
+			ThreadPoolManager.getInstance().scheduleAtFixedRate(new RunnableImpl()
+			{
+				@Override
+				public void runImpl() throws Exception
+				{
+					flushAll();
+				}
+			}, Config.QUEST_STATE_FLUSH_INTERVAL, Config.QUEST_STATE_FLUSH_INTERVAL);
+	}
+
 	public void select(Player player)
 	{
 		if(Config.DONTLOADQUEST)
 			return;
 
+		flush(player.getObjectId());
+
 		Connection con = null;
 		PreparedStatement statement = null;
 		PreparedStatement invalidQuestData = null;
@@ -114,14 +146,22 @@ public class CharacterQuestDAO
 		if(player == null)
 			return;
 
+		if(Config.QUEST_STATE_FLUSH_INTERVAL > 0)
+			put(player.getObjectId(), qs.getQuest().getId(), var, value);
+		else
+			replace0(player.getObjectId(), qs.getQuest().getId(), var, value);
+	}
+
+	private void replace0(int objectId, int questId, String var, String value)
+	{
 		Connection con = null;
 		PreparedStatement statement = null;
 		try
 		{
 			con = DatabaseFactory.getInstance().getConnection();
 			statement = con.prepareStatement("REPLACE INTO character_quests (char_id,quest_id,var,value) VALUES (?,?,?,?)");
-			statement.setInt(1, qs.getPlayer().getObjectId());
-			statement.setInt(2, qs.getQuest().getId());
+			statement.setInt(1, objectId);
+			statement.setInt(2, questId);
 			statement.setString(3, var);
 			statement.setString(4, value);
 			statement.executeUpdate();
@@ -138,6 +178,18 @@ public class CharacterQuestDAO
 
 	public void delete(int objectId, int questId)
 	{
+		DirtySet set = _dirty.get(objectId);
+		if(set != null)
+			synchronized (set)
+			{
+				for(Iterator<QuestVar> iterator = set.keySet().iterator(); iterator.hasNext();)
+					if(iterator.next().questId == questId)
+					{
+						iterator.remove();
+						GameStats.increaseQuestWritesAvoided();
+					}
+			}
+
 		Connection con = null;
 		PreparedStatement statement = null;
 		try
@@ -160,6 +212,12 @@ public class CharacterQuestDAO
 
 	public void delete(int objectId, int questId, String var)
 	{
+		if(Config.QUEST_STATE_FLUSH_INTERVAL > 0)
+		{
+			put(objectId, questId, var, null);
+			return;
+		}
+
 		Connection con = null;
 		PreparedStatement statement = null;
 		try
@@ -181,6 +239,123 @@ public class CharacterQuestDAO
 		}
 	}
 
+	/**
+	 * Запомнить изменение переменной, null - удаление переменной.
+	 */
+	private void put(int objectId, int questId, String var, String value)
+	{
+		GameStats.increaseQuestWritesRequested();
+		for(;;)
+		{
+			DirtySet set = _dirty.get(objectId);
+			if(set == null)
+			{
+				set = new DirtySet();
+				DirtySet old = _dirty.putIfAbsent(objectId, set);
+				if(old != null)
+					set = old;
+			}
+
+			synchronized (set)
+			{
+				// набор уже забран на запись, нужен новый
+				if(set.flushed)
+					continue;
+				if(set.containsKey(new QuestVar(questId, var)))
+					GameStats.increaseQuestWritesAvoided();
+				set.put(new QuestVar(questId, var), value);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Записать накопленные изменения персонажа. Вызывается при выходе и перед загрузкой персонажа.
+	 */
+	public void flush(int objectId)
+	{
+		DirtySet set = _dirty.get(objectId);
+		if(set != null)
+			store(objectId, set);
+	}
+
+	/**
+	 * Записать накопленные изменения всех персонажей. Вызывается периодически и при выключении сервера.
+	 */
+	public void flushAll()
+	{
+		for(Map.Entry<Integer, DirtySet> entry : _dirty.entrySet())
+			store(entry.getKey(), entry.getValue());
+	}
+
+	private void store(int objectId, DirtySet set)
+	{
+		// запись выполняется под блокировкой набора, чтобы flush() перед загрузкой персонажа дождался ее окончания
+		synchronized (set)
+		{
+			if(set.flushed)
+				return;
+			set.flushed = true;
+			try
+			{
+				if(!set.isEmpty())
+					store0(objectId, set);
+			}
+			finally
+			{
+				_dirty.remove(objectId, set);
+			}
+		}
+	}
+
+	private void store0(int objectId, Map<QuestVar, String> changes)
+	{
+		Connection con = null;
+		PreparedStatement replace = null;
+		PreparedStatement delete = null;
+		try
+		{
+			con = DatabaseFactory.getInstance().getConnection();
+			replace = con.prepareStatement("REPLACE INTO character_quests (char_id,quest_id,var,value) VALUES (?,?,?,?)");
+			delete = con.prepareStatement("DELETE FROM character_quests WHERE char_id=? AND quest_id=? AND var=?");
+			int replaces = 0, deletes = 0;
+			for(Map.Entry<QuestVar, String> e : changes.entrySet())
+				if(e.getValue() != null)
+				{
+					replace.setInt(1, objectId);
+					replace.setInt(2, e.getKey().questId);
+					replace.setString(3, e.getKey().var);
+					replace.setString(4, e.getValue());
+					replace.addBatch();
+					replaces++;
+				}
+				else
+				{
+					delete.setInt(1, objectId);
+					delete.setInt(2, e.getKey().questId);
+					delete.setString(3, e.getKey().var);
+					delete.addBatch();
+					deletes++;
+				}
+
+			if(replaces > 0)
+				replace.executeBatch();
+			if(deletes > 0)
+				delete.executeBatch();
+
+			GameStats.increaseQuestWritesFlushed(changes.size());
+		}
+		catch(Exception e)
+		{
+			_log.warn("CharacterQuestDAO.store(int): " + e, e);
+		}
+		finally
+		{
+			DbUtils.closeQuietly(delete);
+			DbUtils.closeQuietly(con, replace);
+		}
+	}
+
 	// Quest: 501
 	public void Q501_removeQuestFromOfflineMembers(QuestState st)
 	{
@@ -370,4 +545,40 @@ public class CharacterQuestDAO
 			DbUtils.closeQuietly(con, offline, rs);
 		}
 	}
+
+	private static class QuestVar
+	{
+		final int questId;
+		final String var;
+
+		QuestVar(int questId, String var)
+		{
+			this.questId = questId;
+			this.var = var;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return questId * 31 + var.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			if(o == this)
+				return true;
+			if(!(o instanceof QuestVar))
+				return false;
+			QuestVar v = (QuestVar) o;
+			return v.questId == questId && v.var.equals(var);
+		}
+	}
+
+	@SuppressWarnings("serial")
+	private static class DirtySet extends HashMap<QuestVar, String>
+	{
+		/** набор записан, изменения в него больше не добавляются */
+		boolean flushed;
+	}
 }
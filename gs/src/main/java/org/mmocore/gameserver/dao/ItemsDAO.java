@@ -7,6 +7,9 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 
 import net.sf.ehcache.Cache;
@@ -18,6 +21,7 @@ import org.mmocore.commons.dao.JdbcEntityState;
 import org.mmocore.commons.dao.JdbcEntityStats;
 import org.mmocore.commons.dbutils.DbUtils;
 import org.mmocore.gameserver.database.DatabaseFactory;
+import org.mmocore.gameserver.database.PersistenceService;
 import org.mmocore.gameserver.model.items.ItemInstance;
 import org.mmocore.gameserver.model.items.ItemInstance.ItemLocation;
 import org.slf4j.Logger;
@@ -28,11 +32,15 @@ public class ItemsDAO implements JdbcDAO<Integer, ItemInstance>
 	private static final Logger _log = LoggerFactory.getLogger(ItemsDAO.class);
 
 	private final static String RESTORE_ITEM = "SELECT object_id, owner_id, item_id, count, enchant_level, loc, loc_data, custom_type1, custom_type2, life_time, custom_flags, augmentation_mineral_id, augmentation_id1, augmentation_id2, attribute_fire, attribute_water, attribute_wind, attribute_earth, attribute_holy, attribute_unholy, agathion_energy FROM items WHERE object_id = ?";
+	private final static String RESTORE_ITEMS = "SELECT object_id, owner_id, item_id, count, enchant_level, loc, loc_data, custom_type1, custom_type2, life_time, custom_flags, augmentation_mineral_id, augmentation_id1, augmentation_id2, attribute_fire, attribute_water, attribute_wind, attribute_earth, attribute_holy, attribute_unholy, agathion_energy FROM items WHERE object_id IN ";
 	private final static String RESTORE_OWNER_ITEMS = "SELECT object_id FROM items WHERE owner_id = ? AND loc = ?";
 	private final static String STORE_ITEM = "INSERT INTO items (object_id, owner_id, item_id, count, enchant_level, loc, loc_data, custom_type1, custom_type2, life_time, custom_flags, augmentation_mineral_id, augmentation_id1, augmentation_id2, attribute_fire, attribute_water, attribute_wind, attribute_earth, attribute_holy, attribute_unholy, agathion_energy) VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
 	private final static String UPDATE_ITEM = "UPDATE items SET owner_id = ?, item_id = ?, count = ?, enchant_level = ?, loc = ?, loc_data = ?, custom_type1 = ?, custom_type2 = ?, life_time = ?, custom_flags = ?, augmentation_mineral_id = ?, augmentation_id1 = ?, augmentation_id2 = ?, attribute_fire = ?, attribute_water = ?, attribute_wind = ?, attribute_earth = ?, attribute_holy = ?, attribute_unholy = ?, agathion_energy=? WHERE object_id = ?";
 	private final static String REMOVE_ITEM = "DELETE FROM items WHERE object_id = ?";
 
+	/** максимальное количество ключей в одной пакетной выборке */
+	private final static int BATCH_LOAD_SIZE = 100;
+
 	private final static ItemsDAO instance = new ItemsDAO();
 
 	public final static ItemsDAO getInstance()
@@ -44,6 +52,9 @@ public class ItemsDAO implements JdbcDAO<Integer, ItemInstance>
 	private AtomicLong insert = new AtomicLong();
 	private AtomicLong update = new AtomicLong();
 	private AtomicLong delete = new AtomicLong();
+	private AtomicLong batchLoad = new AtomicLong();
+	private AtomicLong batchLoadEntities = new AtomicLong();
+	private AtomicLong batchLoadMax = new AtomicLong();
 
 	private final Cache cache;
 
@@ -71,6 +82,24 @@ public class ItemsDAO implements JdbcDAO<Integer, ItemInstance>
 		{
 			return delete.get();
 		}
+
+		@Override
+		public long getBatchLoadCount()
+		{
+			return batchLoad.get();
+		}
+
+		@Override
+		public long getBatchLoadEntityCount()
+		{
+			return batchLoadEntities.get();
+		}
+
+		@Override
+		public long getBatchLoadMaxSize()
+		{
+			return batchLoadMax.get();
+		}
 	};
 
 	private ItemsDAO()
@@ -114,40 +143,45 @@ public class ItemsDAO implements JdbcDAO<Integer, ItemInstance>
 
 	private ItemInstance load0(ResultSet rset) throws SQLException
 	{
-		ItemInstance item = null;
-
 		if(rset.next())
-		{
-			int objectId = rset.getInt(1);
-			item = new ItemInstance(objectId);
-			//item.setObjectId(rset.getInt(1));
-			item.setOwnerId(rset.getInt(2));
-			item.setItemId(rset.getInt(3));
-			item.setCount(rset.getLong(4));
-			item.setEnchantLevel(rset.getInt(5));
-			item.setLocName(rset.getString(6));
-			item.setLocData(rset.getInt(7));
-			item.setCustomType1(rset.getInt(8));
-			item.setCustomType2(rset.getInt(9));
-			item.setLifeTime(rset.getInt(10));
-			item.setCustomFlags(rset.getInt(11));
-			item.setAugmentation(rset.getInt(12), new int[] {rset.getInt(13), rset.getInt(14)});
-			item.getAttributes().setFire(rset.getInt(15));
-			item.getAttributes().setWater(rset.getInt(16));
-			item.getAttributes().setWind(rset.getInt(17));
-			item.getAttributes().setEarth(rset.getInt(18));
-			item.getAttributes().setHoly(rset.getInt(19));
-			item.getAttributes().setUnholy(rset.getInt(20));
-			item.setAgathionEnergy(rset.getInt(21));
-		}
+			return read0(rset);
+
+		return null;
+	}
+
+	private ItemInstance read0(ResultSet rset) throws SQLException
+	{
+		int objectId = rset.getInt(1);
+		ItemInstance item = new ItemInstance(objectId);
+		//item.setObjectId(rset.getInt(1));
+		item.setOwnerId(rset.getInt(2));
+		item.setStoredOwnerId(item.getOwnerId());
+		item.setItemId(rset.getInt(3));
+		item.setCount(rset.getLong(4));
+		item.setEnchantLevel(rset.getInt(5));
+		item.setLocName(rset.getString(6));
+		item.setLocData(rset.getInt(7));
+		item.setCustomType1(rset.getInt(8));
+		item.setCustomType2(rset.getInt(9));
+		item.setLifeTime(rset.getInt(10));
+		item.setCustomFlags(rset.getInt(11));
+		item.setAugmentation(rset.getInt(12), new int[] {rset.getInt(13), rset.getInt(14)});
+		item.getAttributes().setFire(rset.getInt(15));
+		item.getAttributes().setWater(rset.getInt(16));
+		item.getAttributes().setWind(rset.getInt(17));
+		item.getAttributes().setEarth(rset.getInt(18));
+		item.getAttributes().setHoly(rset.getInt(19));
+		item.getAttributes().setUnholy(rset.getInt(20));
+		item.setAgathionEnergy(rset.getInt(21));
 
 		return item;
 	}
 
 	private void save0(ItemInstance item, PreparedStatement statement) throws SQLException
 	{
+		item.setStoredOwnerId(item.getOwnerId());
 		statement.setInt(1, item.getObjectId());
-		statement.setInt(2, item.getOwnerId());
+		statement.setInt(2, item.getStoredOwnerId());
 		statement.setInt(3, item.getItemId());
 		statement.setLong(4, item.getCount());
 		statement.setInt(5, item.getUnlockedEnchantLevel());
@@ -214,7 +248,8 @@ public class ItemsDAO implements JdbcDAO<Integer, ItemInstance>
 
 	private void update0(ItemInstance item, PreparedStatement statement) throws SQLException
 	{
-		statement.setInt(1, item.getOwnerId());
+		item.setStoredOwnerId(item.getOwnerId());
+		statement.setInt(1, item.getStoredOwnerId());
 		statement.setInt(2, item.getItemId());
 		statement.setLong(3, item.getCount());
 		statement.setInt(4, item.getUnlockedEnchantLevel());
@@ -288,6 +323,10 @@ public class ItemsDAO implements JdbcDAO<Integer, ItemInstance>
 		return item;
 	}
 
+	/**
+	 * Загружает предметы, отсутствующие в кэше, пакетными выборками в одном соединении.
+	 * Порядок результата соответствует порядку ключей.
+	 */
 	public Collection<ItemInstance> load(Collection<Integer> objectIds)
 	{
 		Collection<ItemInstance> list = Collections.emptyList();
@@ -295,12 +334,37 @@ public class ItemsDAO implements JdbcDAO<Integer, ItemInstance>
 		if(objectIds.isEmpty())
 			return list;
 
-		list = new ArrayList<ItemInstance>(objectIds.size());
+		Map<Integer, ItemInstance> items = new HashMap<Integer, ItemInstance>(objectIds.size());
+		List<Integer> missed = new ArrayList<Integer>();
 
 		ItemInstance item;
 		for(Integer objectId : objectIds)
 		{
-			item = load(objectId);
+			Element ce = cache.get(objectId);
+			if(ce != null)
+			{
+				item = (ItemInstance) ce.getObjectValue();
+				item.unlockEnchantAndAttribute();
+				items.put(objectId, item);
+			}
+			else
+				missed.add(objectId);
+		}
+
+		if(!missed.isEmpty())
+			try
+			{
+				loadBatch0(missed, items);
+			}
+			catch(SQLException e)
+			{
+				_log.error("Error while restoring items, count: " + missed.size(), e);
+			}
+
+		list = new ArrayList<ItemInstance>(objectIds.size());
+		for(Integer objectId : objectIds)
+		{
+			item = items.get(objectId);
 			if(item != null)
 				list.add(item);
 		}
@@ -308,6 +372,63 @@ public class ItemsDAO implements JdbcDAO<Integer, ItemInstance>
 		return list;
 	}
 
+	private void loadBatch0(List<Integer> objectIds, Map<Integer, ItemInstance> items) throws SQLException
+	{
+		Connection con = null;
+		PreparedStatement statement = null;
+		ResultSet rset = null;
+		try
+		{
+			con = DatabaseFactory.getInstance().getConnection();
+			for(int from = 0; from < objectIds.size(); from += BATCH_LOAD_SIZE)
+			{
+				List<Integer> chunk = objectIds.subList(from, Math.min(objectIds.size(), from + BATCH_LOAD_SIZE));
+
+				StringBuilder sql = new StringBuilder(RESTORE_ITEMS).append('(');
+				for(int i = 0; i < chunk.size(); i++)
+					sql.append(i == 0 ? "?" : ",?");
+				sql.append(')');
+
+				statement = con.prepareStatement(sql.toString());
+				for(int i = 0; i < chunk.size(); i++)
+					statement.setInt(i + 1, chunk.get(i));
+				rset = statement.executeQuery();
+
+				int count = 0;
+				while(rset.next())
+				{
+					ItemInstance item = read0(rset);
+					item.setJdbcState(JdbcEntityState.STORED);
+
+					// предмет мог попасть в кэш из другого потока, используем тот же экземпляр
+					Element ce = cache.putIfAbsent(new Element(item.getObjectId(), item));
+					if(ce != null)
+					{
+						item = (ItemInstance) ce.getObjectValue();
+						item.unlockEnchantAndAttribute();
+					}
+
+					items.put(item.getObjectId(), item);
+					count++;
+				}
+
+				DbUtils.close(statement, rset);
+
+				load.addAndGet(count);
+				batchLoad.incrementAndGet();
+				batchLoadEntities.addAndGet(chunk.size());
+				long max;
+				while(chunk.size() > (max = batchLoadMax.get()))
+					if(batchLoadMax.compareAndSet(max, chunk.size()))
+						break;
+			}
+		}
+		finally
+		{
+			DbUtils.closeQuietly(con, statement, rset);
+		}
+	}
+
 	@Override
 	public void save(ItemInstance item)
 	{
@@ -366,6 +487,54 @@ public class ItemsDAO implements JdbcDAO<Integer, ItemInstance>
 			update(item);
 	}
 
+	/**
+	 * Обновляет предметы одним пакетом JDBC в одном соединении.
+	 */
+	public void updateBatch(Collection<ItemInstance> items)
+	{
+		if(items.isEmpty())
+			return;
+
+		Collection<ItemInstance> updated = new ArrayList<ItemInstance>(items.size());
+
+		Connection con = null;
+		PreparedStatement statement = null;
+		try
+		{
+			con = DatabaseFactory.getInstance().getConnection();
+			statement = con.prepareStatement(UPDATE_ITEM);
+			for(ItemInstance item : items)
+			{
+				if(!item.getJdbcState().isUpdatable())
+					continue;
+				// изменения во время записи снова пометят предмет
+				item.setJdbcState(JdbcEntityState.STORED);
+				update0(item, statement);
+				statement.addBatch();
+				updated.add(item);
+			}
+			if(!updated.isEmpty())
+				statement.executeBatch();
+		}
+		catch(SQLException e)
+		{
+			_log.error("Error while updating items batch, size: " + updated.size(), e);
+			for(ItemInstance item : updated)
+				if(item.getJdbcState() == JdbcEntityState.STORED)
+					item.setJdbcState(JdbcEntityState.UPDATED);
+			return;
+		}
+		finally
+		{
+			DbUtils.closeQuietly(con, statement);
+		}
+
+		update.addAndGet(updated.size());
+
+		for(ItemInstance item : updated)
+			cache.putIfAbsent(new Element(item.getObjectId(), item));
+	}
+
 	@Override
 	public void saveOrUpdate(ItemInstance item)
 	{
@@ -415,6 +584,9 @@ public class ItemsDAO implements JdbcDAO<Integer, ItemInstance>
 
 	public Collection<ItemInstance> getItemsByOwnerIdAndLoc(int ownerId, ItemLocation loc)
 	{
+		// отложенные изменения предметов владельца должны попасть в базу до чтения
+		PersistenceService.getInstance().flushItems(ownerId);
+
 		Collection<Integer> objectIds = Collections.emptyList();
 
 		Connection con = null;
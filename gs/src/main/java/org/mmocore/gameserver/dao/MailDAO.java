@@ -8,7 +8,10 @@ import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 
 import net.sf.ehcache.Cache;
@@ -30,6 +33,7 @@ public class MailDAO implements JdbcDAO<Integer, Mail>
 	private static final Logger _log = LoggerFactory.getLogger(MailDAO.class);
 
 	private final static String RESTORE_MAIL = "SELECT sender_id, sender_name, receiver_id, receiver_name, expire_time, topic, body, price, type, unread FROM mail WHERE message_id = ?";
+	private final static String RESTORE_MAILS = "SELECT sender_id, sender_name, receiver_id, receiver_name, expire_time, topic, body, price, type, unread, message_id FROM mail WHERE message_id IN ";
 	private final static String STORE_MAIL = "INSERT INTO mail(sender_id, sender_name, receiver_id, receiver_name, expire_time, topic, body, price, type, unread) VALUES (?,?,?,?,?,?,?,?,?,?)";
 	private final static String UPDATE_MAIL = "UPDATE mail SET sender_id = ?, sender_name = ?, receiver_id = ?, receiver_name = ?, expire_time = ?, topic = ?, body = ?, price = ?, type = ?, unread = ? WHERE message_id = ?";
 	private final static String REMOVE_MAIL = "DELETE FROM mail WHERE message_id = ?";
@@ -41,9 +45,13 @@ public class MailDAO implements JdbcDAO<Integer, Mail>
 	private final static String REMOVE_OWN_MAIL = "DELETE FROM character_mail WHERE char_id = ? AND message_id = ? AND is_sender = ?";
 
 	private final static String RESTORE_MAIL_ATTACHMENTS = "SELECT item_id FROM mail_attachments WHERE message_id = ?";
+	private final static String RESTORE_MAILS_ATTACHMENTS = "SELECT item_id, message_id FROM mail_attachments WHERE message_id IN ";
 	private final static String STORE_MAIL_ATTACHMENT = "INSERT INTO mail_attachments(message_id, item_id) VALUES (?,?)";
 	private final static String REMOVE_MAIL_ATTACHMENTS = "DELETE FROM mail_attachments WHERE message_id = ?";
 
+	/** максимальное количество ключей в одной пакетной выборке */
+	private final static int BATCH_LOAD_SIZE = 100;
+
 	private final static MailDAO instance = new MailDAO();
 
 	public static MailDAO getInstance()
@@ -55,6 +63,9 @@ public class MailDAO implements JdbcDAO<Integer, Mail>
 	private AtomicLong insert = new AtomicLong();
 	private AtomicLong update = new AtomicLong();
 	private AtomicLong delete = new AtomicLong();
+	private AtomicLong batchLoad = new AtomicLong();
+	private AtomicLong batchLoadEntities = new AtomicLong();
+	private AtomicLong batchLoadMax = new AtomicLong();
 
 	private final Cache cache;
 	private final JdbcEntityStats stats = new JdbcEntityStats(){
@@ -81,6 +92,24 @@ public class MailDAO implements JdbcDAO<Integer, Mail>
 		{
 			return delete.get();
 		}
+
+		@Override
+		public long getBatchLoadCount()
+		{
+			return batchLoad.get();
+		}
+
+		@Override
+		public long getBatchLoadEntityCount()
+		{
+			return batchLoadEntities.get();
+		}
+
+		@Override
+		public long getBatchLoadMaxSize()
+		{
+			return batchLoadMax.get();
+		}
 	};
 
 	private MailDAO()
@@ -182,18 +211,7 @@ public class MailDAO implements JdbcDAO<Integer, Mail>
 			rset = statement.executeQuery();
 			if(rset.next())
 			{
-				mail = new Mail();
-				mail.setMessageId(messageId);
-				mail.setSenderId(rset.getInt(1));
-				mail.setSenderName(rset.getString(2));
-				mail.setReceiverId(rset.getInt(3));
-				mail.setReceiverName(rset.getString(4));
-				mail.setExpireTime(rset.getInt(5));
-				mail.setTopic(rset.getString(6));
-				mail.setBody(rset.getString(7));
-				mail.setPrice(rset.getLong(8));
-				mail.setType(Mail.SenderType.VALUES[rset.getInt(9)]);
-				mail.setUnread(rset.getBoolean(10));
+				mail = read0(rset, messageId);
 
 				DbUtils.close(statement, rset);
 
@@ -222,6 +240,103 @@ public class MailDAO implements JdbcDAO<Integer, Mail>
 		return mail;
 	}
 
+	private Mail read0(ResultSet rset, int messageId) throws SQLException
+	{
+		Mail mail = new Mail();
+		mail.setMessageId(messageId);
+		mail.setSenderId(rset.getInt(1));
+		mail.setSenderName(rset.getString(2));
+		mail.setReceiverId(rset.getInt(3));
+		mail.setReceiverName(rset.getString(4));
+		mail.setExpireTime(rset.getInt(5));
+		mail.setTopic(rset.getString(6));
+		mail.setBody(rset.getString(7));
+		mail.setPrice(rset.getLong(8));
+		mail.setType(Mail.SenderType.VALUES[rset.getInt(9)]);
+		mail.setUnread(rset.getBoolean(10));
+		return mail;
+	}
+
+	/**
+	 * Загружает письма и их вложения пакетными выборками в одном соединении, вложения загружаются одним пакетом.
+	 */
+	private void loadBatch0(List<Integer> messageIds, Map<Integer, Mail> mails) throws SQLException
+	{
+		Map<Integer, Mail> loaded = new HashMap<Integer, Mail>(messageIds.size());
+		Map<Integer, Integer> attachments = new LinkedHashMap<Integer, Integer>();
+
+		Connection con = null;
+		PreparedStatement statement = null;
+		ResultSet rset = null;
+		try
+		{
+			con = DatabaseFactory.getInstance().getConnection();
+			for(int from = 0; from < messageIds.size(); from += BATCH_LOAD_SIZE)
+			{
+				List<Integer> chunk = messageIds.subList(from, Math.min(messageIds.size(), from + BATCH_LOAD_SIZE));
+				String in = getInClause(chunk.size());
+
+				statement = con.prepareStatement(RESTORE_MAILS + in);
+				for(int i = 0; i < chunk.size(); i++)
+					statement.setInt(i + 1, chunk.get(i));
+				rset = statement.executeQuery();
+				while(rset.next())
+				{
+					int messageId = rset.getInt(11);
+					loaded.put(messageId, read0(rset, messageId));
+				}
+
+				DbUtils.close(statement, rset);
+
+				statement = con.prepareStatement(RESTORE_MAILS_ATTACHMENTS + in);
+				for(int i = 0; i < chunk.size(); i++)
+					statement.setInt(i + 1, chunk.get(i));
+				rset = statement.executeQuery();
+				while(rset.next())
+					attachments.put(rset.getInt(1), rset.getInt(2));
+
+				DbUtils.close(statement, rset);
+
+				batchLoad.incrementAndGet();
+				batchLoadEntities.addAndGet(chunk.size());
+				long max;
+				while(chunk.size() > (max = batchLoadMax.get()))
+					if(batchLoadMax.compareAndSet(max, chunk.size()))
+						break;
+			}
+		}
+		finally
+		{
+			DbUtils.closeQuietly(con, statement, rset);
+		}
+
+		if(!attachments.isEmpty())
+			for(ItemInstance item : ItemsDAO.getInstance().load(attachments.keySet()))
+			{
+				Mail mail = loaded.get(attachments.get(item.getObjectId()));
+				if(mail != null)
+					mail.addAttachment(item);
+			}
+
+		load.addAndGet(loaded.size());
+
+		for(Mail mail : loaded.values())
+		{
+			mail.setJdbcState(JdbcEntityState.STORED);
+			// письмо могло попасть в кэш из другого потока, используем тот же экземпляр
+			Element ce = cache.putIfAbsent(new Element(mail.getMessageId(), mail));
+			mails.put(mail.getMessageId(), ce != null ? (Mail) ce.getObjectValue() : mail);
+		}
+	}
+
+	private static String getInClause(int size)
+	{
+		StringBuilder sb = new StringBuilder(size * 2 + 1).append('(');
+		for(int i = 0; i < size; i++)
+			sb.append(i == 0 ? "?" : ",?");
+		return sb.append(')').toString();
+	}
+
 	private void update0(Mail mail) throws SQLException
 	{
 		Connection con = null;
@@ -436,17 +551,42 @@ public class MailDAO implements JdbcDAO<Integer, Mail>
 		return mail;
 	}
 
+	/**
+	 * Загружает письма, отсутствующие в кэше, пакетными выборками в одном соединении.
+	 * Порядок результата соответствует порядку ключей.
+	 */
 	public List<Mail> load(Collection<Integer> messageIds)
 	{
 		if(messageIds.isEmpty())
 			return Collections.emptyList();
 
-		List<Mail> list = new ArrayList<Mail>(messageIds.size());
+		Map<Integer, Mail> mails = new HashMap<Integer, Mail>(messageIds.size());
+		List<Integer> missed = new ArrayList<Integer>();
 
 		Mail mail;
 		for(Integer messageId : messageIds)
 		{
-			mail = load(messageId);
+			Element ce = cache.get(messageId);
+			if(ce != null)
+				mails.put(messageId, (Mail) ce.getObjectValue());
+			else
+				missed.add(messageId);
+		}
+
+		if(!missed.isEmpty())
+			try
+			{
+				loadBatch0(missed, mails);
+			}
+			catch(SQLException e)
+			{
+				_log.error("Error while restoring mail, count: " + missed.size(), e);
+			}
+
+		List<Mail> list = new ArrayList<Mail>(messageIds.size());
+		for(Integer messageId : messageIds)
+		{
+			mail = mails.get(messageId);
 			if(mail != null)
 				list.add(mail);
 		}
@@ -2,6 +2,8 @@ package org.mmocore.gameserver.data.htm;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import net.sf.ehcache.Cache;
 import net.sf.ehcache.CacheManager;
@@ -43,11 +45,17 @@ public class HtmCache
 	}
 
 	private Cache[] _cache = new Cache[Language.VALUES.length];
+	/** подготовленные к подстановке диалоги, актуальны пока совпадают с текстом в кэше */
+	@SuppressWarnings("unchecked")
+	private ConcurrentMap<String, HtmTemplate>[] _templates = new ConcurrentMap[Language.VALUES.length];
 
 	private HtmCache()
 	{
 		for(int i = 0; i < _cache.length; i++)
+		{
 			_cache[i] = CacheManager.getInstance().getCache(getClass().getName() + "." + Language.VALUES[i].name());
+			_templates[i] = new ConcurrentHashMap<String, HtmTemplate>();
+		}
 	}
 
 	public void reload()
@@ -149,6 +157,32 @@ public class HtmCache
 		return getCache(fileName, lang);
 	}
 
+	/**
+	 * Получить html, подготовленный к подстановке значений.
+	 *
+	 * @param fileName путь до html относительно data/html-LANG
+	 * @param player
+	 * @return существующий диалог, либо null и сообщение об ошибке в лог, если диалога не существует
+	 */
+	public HtmTemplate getTemplate(String fileName, Player player)
+	{
+		String html = getHtml(fileName, player);
+		if(html == null)
+			return null;
+
+		Language lang = player == null ? Language.RUSSIAN : player.getLanguage();
+		ConcurrentMap<String, HtmTemplate> templates = _templates[lang.ordinal()];
+		String fileLower = fileName.toLowerCase();
+		HtmTemplate template = templates.get(fileLower);
+		// диалог перезагружен или кэш отключен
+		if(template == null || template.getText() != html)
+		{
+			template = HtmTemplate.compile(html);
+			templates.put(fileLower, template);
+		}
+		return template;
+	}
+
 	private String getCache(String file, Language lang)
 	{
 		if(file == null)
@@ -228,6 +262,9 @@ public class HtmCache
 	public void clear()
 	{
 		for(int i = 0; i < _cache.length; i++)
+		{
 			_cache[i].removeAll();
+			_templates[i].clear();
+		}
 	}
 }
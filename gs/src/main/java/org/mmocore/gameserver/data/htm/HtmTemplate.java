@@ -0,0 +1,87 @@
+package org.mmocore.gameserver.data.htm;
+
+import java.util.Map;
+
+/**
+ * Диалог, подготовленный к подстановке значений вида %name%.<BR>
+ * Позиции всех символов '%' и имена между соседними парами находятся один раз,
+ * подстановка выполняется за один проход по тексту без поиска по всему тексту для каждого имени.
+ */
+public final class HtmTemplate
+{
+	private static final int[] EMPTY_POSITIONS = new int[0];
+	private static final String[] EMPTY_NAMES = new String[0];
+
+	private final String _text;
+	/** позиции символов '%' */
+	private final int[] _positions;
+	/** _names[k] - текст от _positions[k] до _positions[k + 1] включительно */
+	private final String[] _names;
+
+	private HtmTemplate(String text, int[] positions, String[] names)
+	{
+		_text = text;
+		_positions = positions;
+		_names = names;
+	}
+
+	public static HtmTemplate compile(String text)
+	{
+		int count = 0;
+		for(int i = text.indexOf('%'); i >= 0; i = text.indexOf('%', i + 1))
+			count++;
+		if(count < 2)
+			return new HtmTemplate(text, EMPTY_POSITIONS, EMPTY_NAMES);
+
+		int[] positions = new int[count];
+		count = 0;
+		for(int i = text.indexOf('%'); i >= 0; i = text.indexOf('%', i + 1))
+			positions[count++] = i;
+
+		String[] names = new String[count - 1];
+		for(int k = 0; k < names.length; k++)
+			names[k] = text.substring(positions[k], positions[k + 1] + 1);
+
+		return new HtmTemplate(text, positions, names);
+	}
+
+	/**
+	 * @return исходный текст диалога
+	 */
+	public String getText()
+	{
+		return _text;
+	}
+
+	/**
+	 * Подставить значения. Подставленные значения повторно не просматриваются,
+	 * поэтому значения, которые сами содержат '%', нужно подставлять последовательной заменой.
+	 * @param replaces значения по именам вида %name%
+	 */
+	public String render(Map<String, String> replaces)
+	{
+		StringBuilder sb = null;
+		int from = 0;
+		for(int k = 0; k < _names.length;)
+		{
+			String value = replaces.get(_names[k]);
+			if(value == null)
+			{
+				k++;
+				continue;
+			}
+
+			if(sb == null)
+				sb = new StringBuilder(_text.length() + 64);
+			sb.append(_text, from, _positions[k]).append(value);
+			from = _positions[k + 1] + 1;
+			k += 2;
+		}
+
+		if(sb == null)
+			return _text;
+
+		sb.append(_text, from, _text.length());
+		return sb.toString();
+	}
+}
@@ -0,0 +1,524 @@
+package org.mmocore.gameserver.database;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.mmocore.gameserver.Config;
+import org.mmocore.gameserver.dao.ItemsDAO;
+import org.mmocore.gameserver.model.GameObjectsStorage;
+import org.mmocore.gameserver.model.Player;
+import org.mmocore.gameserver.model.items.ItemInstance;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Отложенная запись в базу (write-behind).<BR>
+ * Сохранение персонажей и обновление предметов ставятся в очередь и выполняются в отдельных потоках,
+ * повторные запросы для ожидающей записи сущности объединяются. Предметы обновляются пачками JDBC.<BR>
+ * Очереди ограничены, при переполнении запись выполняется в вызывающем потоке.
+ * Перед чтением персонажа из базы ожидающие записи сбрасываются, см. {@link #flush(int)}, перед чтением предметов
+ * владельца - ожидающие записи его предметов, см. {@link #flushItems(int)}.<BR>
+ * Персонаж, удаленный из мира, не сохраняется, при выходе ожидающее сохранение отменяется, см. {@link #cancel(int)}.
+ */
+public class PersistenceService
+{
+	private static final Logger _log = LoggerFactory.getLogger(PersistenceService.class);
+
+	private static final PersistenceService _instance = new PersistenceService();
+
+	public static final PersistenceService getInstance()
+	{
+		return _instance;
+	}
+
+	private final ConcurrentMap<Integer, PlayerStore> _players = new ConcurrentHashMap<Integer, PlayerStore>();
+	private final ConcurrentMap<Integer, PendingItem> _items = new ConcurrentHashMap<Integer, PendingItem>();
+	/** ожидающие и записываемые предметы по владельцу: текущему и записанному в базе */
+	private final Map<Integer, Set<PendingItem>> _itemsByOwner = new HashMap<Integer, Set<PendingItem>>();
+	private final PersistenceThread[] _threads;
+	private volatile boolean _shutdown;
+
+	//статистика
+	private final AtomicLong _playerRequests = new AtomicLong();
+	private final AtomicLong _playerStores = new AtomicLong();
+	private final AtomicLong _itemRequests = new AtomicLong();
+	private final AtomicLong _itemUpdates = new AtomicLong();
+	private final AtomicLong _itemBatches = new AtomicLong();
+	private final AtomicLong _overflows = new AtomicLong();
+	private final AtomicLong _flushes = new AtomicLong();
+
+	private PersistenceService()
+	{
+		_threads = new PersistenceThread[Config.ASYNC_PERSISTENCE ? Math.max(1, Config.ASYNC_PERSISTENCE_THREADS) : 0];
+		for(int i = 0; i < _threads.length; i++)
+		{
+			_threads[i] = new PersistenceThread(i);
+			_threads[i].start();
+		}
+	}
+
+	/**
+	 * Сохранить персонажа.
+	 * @param fast сохранять только основные данные, см. {@link Player#storeNow(boolean)}
+	 */
+	public void store(Player player, boolean fast)
+	{
+		if(_threads.length == 0 || _shutdown)
+		{
+			player.storeNow(fast);
+			return;
+		}
+
+		// персонаж уже удален из мира, его данные сохранены при выходе
+		if(GameObjectsStorage.getPlayer(player.getObjectId()) != player)
+			return;
+
+		_playerRequests.incrementAndGet();
+
+		Integer objectId = player.getObjectId();
+		PlayerStore store = new PlayerStore(player, fast);
+		PlayerStore old = _players.putIfAbsent(objectId, store);
+		if(old != null)
+		{
+			if(!fast)
+				old.fast = false;
+			// запись еще не начата, изменения попадут в нее
+			if(old.state.get() == PlayerStore.PENDING)
+				return;
+			_players.put(objectId, store);
+		}
+
+		if(!getThread(objectId).offer(store))
+		{
+			_overflows.incrementAndGet();
+			execute(store);
+		}
+	}
+
+	/**
+	 * Обновить предмет в базе.
+	 */
+	public void update(ItemInstance item)
+	{
+		if(!item.getJdbcState().isUpdatable())
+			return;
+
+		if(_threads.length == 0 || _shutdown)
+		{
+			ItemsDAO.getInstance().update(item);
+			return;
+		}
+
+		_itemRequests.incrementAndGet();
+
+		Integer objectId = item.getObjectId();
+		int ownerId = item.getOwnerId();
+		PendingItem pending;
+		for(;;)
+		{
+			PendingItem old = _items.get(objectId);
+			// предмет уже ждет записи
+			if(old != null && old.ownerId == ownerId)
+				return;
+
+			// пока запись не выполнена, в базе остается прежний владелец
+			pending = new PendingItem(item, ownerId, old == null ? item.getStoredOwnerId() : old.storedOwnerId);
+			// индекс заполняется до публикации, чтобы flushItems не пропустил предмет
+			index(pending);
+			if(old == null ? _items.putIfAbsent(objectId, pending) == null : _items.replace(objectId, old, pending))
+			{
+				if(old != null)
+					unindex(old);
+				break;
+			}
+			unindex(pending);
+		}
+
+		if(!getThread(ownerId).offer(pending))
+		{
+			_overflows.incrementAndGet();
+			if(_items.remove(objectId, pending))
+			{
+				List<PendingItem> list = new ArrayList<PendingItem>(1);
+				list.add(pending);
+				updateItems(list);
+			}
+		}
+	}
+
+	private void index(PendingItem pending)
+	{
+		synchronized (_itemsByOwner)
+		{
+			index(pending, pending.ownerId);
+			if(pending.storedOwnerId != pending.ownerId)
+				index(pending, pending.storedOwnerId);
+		}
+	}
+
+	private void index(PendingItem pending, int ownerId)
+	{
+		Set<PendingItem> set = _itemsByOwner.get(ownerId);
+		if(set == null)
+			_itemsByOwner.put(ownerId, set = new HashSet<PendingItem>());
+		set.add(pending);
+	}
+
+	private void unindex(PendingItem pending)
+	{
+		synchronized (_itemsByOwner)
+		{
+			unindex(pending, pending.ownerId);
+			unindex(pending, pending.storedOwnerId);
+		}
+	}
+
+	private void unindex(PendingItem pending, int ownerId)
+	{
+		Set<PendingItem> set = _itemsByOwner.get(ownerId);
+		if(set != null && set.remove(pending) && set.isEmpty())
+			_itemsByOwner.remove(ownerId);
+	}
+
+	/**
+	 * Синхронно записывает ожидающие изменения персонажа и его предметов.
+	 * Вызывается перед чтением персонажа из базы.
+	 */
+	public void flush(int objectId)
+	{
+		if(_threads.length == 0)
+			return;
+
+		PlayerStore store = _players.get(objectId);
+		if(store != null)
+		{
+			_flushes.incrementAndGet();
+			execute(store);
+		}
+
+		flushItems(objectId);
+	}
+
+	/**
+	 * Синхронно записывает ожидающие изменения предметов, которые принадлежат владельцу сейчас или по данным базы,
+	 * и дожидается записей, уже выполняемых в потоках записи. Вызывается перед чтением предметов владельца из базы.
+	 */
+	public void flushItems(int ownerId)
+	{
+		if(_threads.length == 0)
+			return;
+
+		List<PendingItem> pending;
+		synchronized (_itemsByOwner)
+		{
+			Set<PendingItem> set = _itemsByOwner.get(ownerId);
+			if(set == null)
+				return;
+			pending = new ArrayList<PendingItem>(set);
+		}
+
+		List<PendingItem> items = new ArrayList<PendingItem>(pending.size());
+		for(PendingItem p : pending)
+			if(_items.remove(p.item.getObjectId(), p))
+				items.add(p);
+			else
+				p.await();
+
+		updateItems(items);
+	}
+
+	/**
+	 * Отменяет ожидающее сохранение персонажа, если оно еще не начато, иначе дожидается его завершения.
+	 * Вызывается при выходе перед сохранением в текущем потоке, чтобы после удаления персонажа
+	 * из мира отложенная запись не затерла его данные.
+	 */
+	public void cancel(int objectId)
+	{
+		if(_threads.length == 0)
+			return;
+
+		PlayerStore store = _players.remove(objectId);
+		if(store == null)
+			return;
+
+		if(store.state.compareAndSet(PlayerStore.PENDING, PlayerStore.DONE))
+		{
+			synchronized(store)
+			{
+				store.notifyAll();
+			}
+			return;
+		}
+
+		// запись уже выполняется
+		execute(store);
+	}
+
+	/**
+	 * Синхронно записывает ожидающие изменения всех персонажей аккаунта.
+	 */
+	public void flushAccount(String accountName)
+	{
+		if(_threads.length == 0)
+			return;
+
+		for(PlayerStore store : _players.values())
+			if(accountName.equalsIgnoreCase(store.player.getAccountName()))
+				flush(store.player.getObjectId());
+	}
+
+	/**
+	 * Останавливает потоки записи и сбрасывает все ожидающие изменения.
+	 */
+	public void shutdown()
+	{
+		if(_shutdown)
+			return;
+		_shutdown = true;
+
+		for(PersistenceThread thread : _threads)
+			try
+			{
+				thread.join(60000L);
+			}
+			catch(InterruptedException e)
+			{
+				_log.error("", e);
+			}
+
+		// на случай, если потоки не успели
+		for(PlayerStore store : _players.values())
+			execute(store);
+		List<PendingItem> items = new ArrayList<PendingItem>();
+		for(PendingItem p : _items.values())
+			if(_items.remove(p.item.getObjectId(), p))
+				items.add(p);
+		updateItems(items);
+
+		_log.info("PersistenceService: stored " + _playerStores.get() + " player(s), " + _itemUpdates.get() + " item update(s).");
+	}
+
+	private PersistenceThread getThread(int key)
+	{
+		return _threads[(key & Integer.MAX_VALUE) % _threads.length];
+	}
+
+	private void execute(PlayerStore store)
+	{
+		if(!store.state.compareAndSet(PlayerStore.PENDING, PlayerStore.RUNNING))
+		{
+			// запись выполняется в другом потоке, ждем ее завершения
+			synchronized(store)
+			{
+				while(store.state.get() != PlayerStore.DONE)
+					try
+					{
+						store.wait();
+					}
+					catch(InterruptedException e)
+					{
+						return;
+					}
+			}
+			return;
+		}
+
+		try
+		{
+			// персонаж удален из мира после постановки в очередь
+			if(GameObjectsStorage.getPlayer(store.player.getObjectId()) == store.player)
+			{
+				store.player.storeNow(store.fast);
+				_playerStores.incrementAndGet();
+			}
+		}
+		catch(Exception e)
+		{
+			_log.error("Could not store char data: " + store.player + "!", e);
+		}
+		finally
+		{
+			_players.remove(store.player.getObjectId(), store);
+			synchronized(store)
+			{
+				store.state.set(PlayerStore.DONE);
+				store.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Записывает предметы, уже снятые с ожидания, и убирает их из индекса по владельцу.
+	 */
+	private void updateItems(List<PendingItem> pending)
+	{
+		if(pending.isEmpty())
+			return;
+
+		try
+		{
+			List<ItemInstance> items = new ArrayList<ItemInstance>(pending.size());
+			for(PendingItem p : pending)
+				items.add(p.item);
+			ItemsDAO.getInstance().updateBatch(items);
+			_itemUpdates.addAndGet(items.size());
+			_itemBatches.incrementAndGet();
+		}
+		catch(Exception e)
+		{
+			_log.error("Could not update items!", e);
+		}
+		finally
+		{
+			for(PendingItem p : pending)
+			{
+				unindex(p);
+				p.done();
+			}
+		}
+	}
+
+	public CharSequence getStats()
+	{
+		StringBuilder sb = new StringBuilder();
+		int queued = 0;
+		for(PersistenceThread thread : _threads)
+			queued += thread.queue.size();
+
+		sb.append("Write-behind").append("\n");
+		sb.append("     Threads: ..................... ").append(_threads.length).append("\n");
+		sb.append("     Queued: ...................... ").append(queued).append("\n");
+		sb.append("     Players pending: ............. ").append(_players.size()).append("\n");
+		sb.append("     Players requests/stores: ..... ").append(_playerRequests.get()).append(" / ").append(_playerStores.get()).append("\n");
+		sb.append("     Items pending: ............... ").append(_items.size()).append("\n");
+		sb.append("     Items requests/updates: ...... ").append(_itemRequests.get()).append(" / ").append(_itemUpdates.get()).append("\n");
+		sb.append("     Items batches: ............... ").append(_itemBatches.get()).append("\n");
+		sb.append("     Overflows: ................... ").append(_overflows.get()).append("\n");
+		sb.append("     Flushes: ..................... ").append(_flushes.get()).append("\n");
+		return sb;
+	}
+
+	private static class PlayerStore
+	{
+		static final int PENDING = 0;
+		static final int RUNNING = 1;
+		static final int DONE = 2;
+
+		final Player player;
+		final AtomicInteger state = new AtomicInteger(PENDING);
+		volatile boolean fast;
+
+		PlayerStore(Player player, boolean fast)
+		{
+			this.player = player;
+			this.fast = fast;
+		}
+	}
+
+	private static class PendingItem
+	{
+		final ItemInstance item;
+		final int ownerId;
+		/** владелец по данным базы */
+		final int storedOwnerId;
+		private boolean done;
+
+		PendingItem(ItemInstance item, int ownerId, int storedOwnerId)
+		{
+			this.item = item;
+			this.ownerId = ownerId;
+			this.storedOwnerId = storedOwnerId;
+		}
+
+		synchronized void done()
+		{
+			done = true;
+			notifyAll();
+		}
+
+		/**
+		 * Дождаться записи, выполняемой в другом потоке.
+		 */
+		synchronized void await()
+		{
+			while(!done)
+				try
+				{
+					wait();
+				}
+				catch(InterruptedException e)
+				{
+					return;
+				}
+		}
+	}
+
+	private class PersistenceThread extends Thread
+	{
+		final BlockingQueue<Object> queue = new LinkedBlockingQueue<Object>(Config.ASYNC_PERSISTENCE_QUEUE_SIZE);
+
+		PersistenceThread(int id)
+		{
+			super("PersistenceThread-" + id);
+		}
+
+		boolean offer(Object o)
+		{
+			return queue.offer(o);
+		}
+
+		@Override
+		public void run()
+		{
+			List<Object> tasks = new ArrayList<Object>(Config.ASYNC_PERSISTENCE_BATCH_SIZE);
+			List<PendingItem> items = new ArrayList<PendingItem>(Config.ASYNC_PERSISTENCE_BATCH_SIZE);
+			while(!_shutdown || !queue.isEmpty())
+				try
+				{
+					Object task = queue.poll(1000L, TimeUnit.MILLISECONDS);
+					if(task == null)
+						continue;
+
+					tasks.add(task);
+					queue.drainTo(tasks, Config.ASYNC_PERSISTENCE_BATCH_SIZE - 1);
+
+					for(Object o : tasks)
+						if(o instanceof PlayerStore)
+							execute((PlayerStore) o);
+						else
+						{
+							PendingItem p = (PendingItem) o;
+							// изменения после снятия с ожидания поставят предмет в очередь заново
+							if(_items.remove(p.item.getObjectId(), p))
+								items.add(p);
+						}
+
+					updateItems(items);
+				}
+				catch(InterruptedException e)
+				{
+					// ignore
+				}
+				catch(Exception e)
+				{
+					_log.error("", e);
+				}
+				finally
+				{
+					tasks.clear();
+					items.clear();
+				}
+		}
+	}
+}
@@ -14,6 +14,7 @@ import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.mmocore.commons.geometry.Shape;
 import org.mmocore.gameserver.Config;
@@ -21,6 +22,8 @@ import org.mmocore.gameserver.geodata.GeoOptimizer.BlockLink;
 import org.mmocore.gameserver.model.GameObject;
 import org.mmocore.gameserver.model.World;
 import org.mmocore.gameserver.utils.Location;
+import org.napile.primitive.maps.IntLongMap;
+import org.napile.primitive.maps.impl.CHashIntLongMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -41,22 +44,55 @@ public class GeoEngine
 
 	public static final int BLOCKS_IN_MAP = 256 * 256;
 
+	/**
+	 * Индекс для чтения эталонной геодаты, без дверей и прочих коллизий.
+	 */
+	static final int BASE_GEO_INDEX = -1;
+
 	public static int MAX_LAYERS = 1; // меньше 1 быть не должно, что бы создавались временные массивы как минимум short[2]
 
 	/**
-	 * Даный массив содержит эталонную геодату. <BR>
+	 * Даный массив содержит эталонную геодату, загруженную из файлов. <BR>
 	 * Первые 2 [][] (byte[*][*][][]) являются x и y региона.<BR>
+	 * Третий [] (byte[][][*][]) является блоком геодаты.<BR>
+	 * Блоки эталонной геодаты никогда не изменяются и разделяются всеми слоями geodata.<BR>
 	 */
-	private static final MappedByteBuffer[][] rawgeo = new MappedByteBuffer[World.WORLD_SIZE_X][World.WORLD_SIZE_Y];
+	private static final byte[][][][] basegeo = new byte[World.WORLD_SIZE_X][World.WORLD_SIZE_Y][][];
+
+	/**
+	 * Общие FLAT блоки, индекс - высота блока. Одинаковые плоские блоки хранятся в одном экземпляре.
+	 */
+	private static final byte[][] flatBlocks = new byte[0x10000][];
 
 	/**
 	 * Даный массив содержит всю геодату на сервере. <BR>
 	 * Первые 2 [][] (byte[*][*][][]) являются x и y региона.<BR>
-	 * Третий [] (byte[][][*][]) является блоком геодаты.<BR>
+	 * Третий [] (byte[][][*][]) является слоем геодаты: 0 - основной мир, остальные - рефлекты.<BR>
 	 * Четвертый [] (byte[][][][*]) является контейнером для всех блоков в регионе.<BR>
+	 * Слой ссылается на блоки basegeo и копирует блок только при его изменении (copy-on-write).<BR>
 	 */
 	private static final byte[][][][][] geodata = new byte[World.WORLD_SIZE_X][World.WORLD_SIZE_Y][1][][];
 
+	/**
+	 * Размер участка учета изменений геодаты основного мира, в клетках геодаты (2^7 = 128 клеток, 2048 точек).
+	 */
+	private static final int CHANGE_CHUNK_SHIFT = 7;
+
+	/**
+	 * Счетчик изменений геодаты. Кэши, построенные по геодате, запоминают его значение на момент построения.
+	 */
+	private static final AtomicLong changeCounter = new AtomicLong();
+
+	/**
+	 * Значение счетчика при последнем изменении участка геодаты основного мира.
+	 */
+	private static final long[][] changeStamps = new long[World.WORLD_SIZE_X << 11 - CHANGE_CHUNK_SHIFT][World.WORLD_SIZE_Y << 11 - CHANGE_CHUNK_SHIFT];
+
+	/**
+	 * Значение счетчика при последнем изменении геодаты рефлекта, по индексу геодаты.
+	 */
+	private static final IntLongMap indexChangeStamps = new CHashIntLongMap();
+
 	public static short getType(int x, int y, int geoIndex)
 	{
 		return NgetType(x - World.MAP_MIN_X >> 4, y - World.MAP_MIN_Y >> 4, geoIndex);
@@ -1400,6 +1436,50 @@ public class GeoEngine
 	 * @return текущий блок геодаты, или null если нет геодаты.
 	 */
 	private static byte[] getGeoBlockFromGeoCoords(int geoX, int geoY, int geoIndex)
+	{
+		byte[][] region = getGeoLayer(geoX, geoY, geoIndex);
+		if(region == null)
+			return null;
+
+		return region[getBlockIndex(getBlock(geoX), getBlock(geoY))];
+	}
+
+	/**
+	 * Возвращает блок геодаты для изменения.
+	 * Если блок разделяется с эталонной геодатой, в слое создается его копия.
+	 *
+	 * @param geoX геокоордината
+	 * @param geoY геокоордината
+	 *
+	 * @return блок геодаты слоя, который можно изменять, или null если нет геодаты.
+	 */
+	private static byte[] getGeoBlockForUpdate(int geoX, int geoY, int geoIndex)
+	{
+		byte[][] region = getGeoLayer(geoX, geoY, geoIndex);
+		if(region == null)
+			return null;
+
+		int ix = geoX >> 11;
+		int iy = geoY >> 11;
+		int blockIndex = getBlockIndex(getBlock(geoX), getBlock(geoY));
+
+		synchronized(region)
+		{
+			byte[] block = region[blockIndex];
+			// FLAT блоки коллизиями не изменяются
+			if(block != null && block[0] != BLOCKTYPE_FLAT && basegeo[ix][iy] != null && block == basegeo[ix][iy][blockIndex])
+				region[blockIndex] = block = block.clone();
+			return block;
+		}
+	}
+
+	/**
+	 * @param geoX геокоордината
+	 * @param geoY геокоордината
+	 *
+	 * @return слой геодаты региона для указанного индекса, или null если нет геодаты.
+	 */
+	private static byte[][] getGeoLayer(int geoX, int geoY, int geoIndex)
 	{
 		if(!Config.ALLOW_GEODATA)
 			return null;
@@ -1410,8 +1490,9 @@ public class GeoEngine
 		if(ix < 0 || ix >= World.WORLD_SIZE_X || iy < 0 || iy >= World.WORLD_SIZE_Y)
 			return null;
 
-		int blockX = getBlock(geoX);
-		int blockY = getBlock(geoY);
+		//Эталонная геодата
+		if(geoIndex == BASE_GEO_INDEX)
+			return basegeo[ix][iy];
 
 		int regIndex = 0;
 
@@ -1426,11 +1507,18 @@ public class GeoEngine
 				regIndex = (geoIndex & 0x000000ff);
 		}
 
-		byte[][] region = geodata[ix][iy][regIndex];
-		if (region == null)
-			return null;
+		return geodata[ix][iy][regIndex];
+	}
 
-		return region[getBlockIndex(blockX, blockY)];
+	/**
+	 * @param geoX геокоордината
+	 * @param geoY геокоордината
+	 *
+	 * @return есть ли геодата в регионе для указанного индекса.
+	 */
+	static boolean hasGeodata(int geoX, int geoY, int geoIndex)
+	{
+		return getGeoLayer(geoX, geoY, geoIndex) != null;
 	}
 
 	/**
@@ -1469,6 +1557,9 @@ public class GeoEngine
 
 		if(Config.COMPACT_GEO)
 			compact();
+
+		if(Config.PATHFIND_HIERARCHICAL)
+			PathFindGraph.load();
 	}
 
 	public static void DumpGeodata(String dir)
@@ -1551,41 +1642,51 @@ public class GeoEngine
 
 		_log.debug("GeoEngine: Loading: " + geoFile.getName());
 
+		FileChannel roChannel = null;
 		try
 		{
-			FileChannel roChannel = new RandomAccessFile(geoFile, "r").getChannel();
+			roChannel = new RandomAccessFile(geoFile, "r").getChannel();
 			long size = roChannel.size();
 			MappedByteBuffer buf = roChannel.map(FileChannel.MapMode.READ_ONLY, 0, size);
 			buf.order(ByteOrder.LITTLE_ENDIAN);
-			rawgeo[ix][iy] = buf;
 
 			if(size < BLOCKS_IN_MAP * 3)
 				throw new Error("Invalid geodata : " + geoFile.getName() + "!");
 
+			byte[][] blocks = readBlocks(rx, ry, buf);
+			synchronized(geodata)
+			{
+				basegeo[ix][iy] = blocks;
+			}
+
 			return true;
 		}
 		catch(IOException e)
 		{
 			throw new Error(e);
 		}
+		finally
+		{
+			if(roChannel != null)
+				try
+				{
+					roChannel.close();
+				}
+				catch(IOException e)
+				{
+					// ignore
+				}
+		}
 	}
 
-	public static void LoadGeodata(int rx, int ry, int regIndex)
+	/**
+	 * Разбирает файл геодаты на блоки эталонной геодаты.
+	 */
+	private static byte[][] readBlocks(int rx, int ry, MappedByteBuffer geo)
 	{
-		int ix = rx - Config.GEO_X_FIRST;
-		int iy = ry - Config.GEO_Y_FIRST;
-
-		MappedByteBuffer geo = rawgeo[ix][iy];
-
 		int index = 0, orgIndex, block = 0, floor = 0;
 
-		byte[][] blocks;
-
-		synchronized(geodata)
-		{
-			if((blocks = geodata[ix][iy][regIndex]) == null)
-				geodata[ix][iy][regIndex] = (blocks = new byte[BLOCKS_IN_MAP][]); // 256 * 256 блоков в регионе геодаты
-		}
+		byte[][] blocks = new byte[BLOCKS_IN_MAP][]; // 256 * 256 блоков в регионе геодаты
 
 		// Indexing geo files, so we will know where each block starts
 		for(block = 0; block < BLOCKS_IN_MAP; block++)
@@ -1598,13 +1699,23 @@ public class GeoEngine
 			{
 				case BLOCKTYPE_FLAT:
 
-					// Создаем блок геодаты
-					geoBlock = new byte[2 + 1];
+					// Плоские блоки с одинаковой высотой разделяются
+					int height = makeShort(geo.get(index + 1), geo.get(index)) & 0xffff;
+					synchronized(flatBlocks)
+					{
+						if((geoBlock = flatBlocks[height]) == null)
+						{
+							// Создаем блок геодаты
+							geoBlock = new byte[2 + 1];
 
-					// Читаем нужные даные с геодаты
-					geoBlock[0] = type;
-					geoBlock[1] = geo.get(index);
-					geoBlock[2] = geo.get(index + 1);
+							// Читаем нужные даные с геодаты
+							geoBlock[0] = type;
+							geoBlock[1] = geo.get(index);
+							geoBlock[2] = geo.get(index + 1);
+
+							flatBlocks[height] = geoBlock;
+						}
+					}
 
 					// Увеличиваем индекс
 					index += 2;
@@ -1664,6 +1775,27 @@ public class GeoEngine
 					throw new RuntimeException("Invalid geodata: " + rx + "_" + ry + "!");
 			}
 		}
+
+		return blocks;
+	}
+
+	/**
+	 * Создает слой геодаты региона. Слой ссылается на блоки эталонной геодаты, копии создаются только при изменении блоков.
+	 *
+	 * @param rx регион x
+	 * @param ry регион y
+	 * @param regIndex индекс слоя
+	 */
+	public static void LoadGeodata(int rx, int ry, int regIndex)
+	{
+		int ix = rx - Config.GEO_X_FIRST;
+		int iy = ry - Config.GEO_Y_FIRST;
+
+		synchronized(geodata)
+		{
+			byte[][] base = basegeo[ix][iy];
+			geodata[ix][iy][regIndex] = base == null ? null : base.clone();
+		}
 	}
 
 	public static int NextGeoIndex(int rx, int ry, int refId)
@@ -1702,7 +1834,9 @@ public class GeoEngine
 			LoadGeodata(rx, ry, regIndex);
 		}
 
-		return 0x0f000000 | (ix << 16) | (iy << 8) | regIndex;
+		int geoIndex = 0x0f000000 | (ix << 16) | (iy << 8) | regIndex;
+		markChanged(0, 0, 0, 0, geoIndex);
+		return geoIndex;
 	}
 
 	/**
@@ -1727,55 +1861,9 @@ public class GeoEngine
 		{
 			geodata[ix][iy][regIndex] = null;
 		}
-	}
 
-	/**
-	 * Преобразовывает FLAT блоки в COMPLEX<br>
-	 *
-	 * @param ix регион x
-	 * @param iy регион y
-	 * @param blockIndex индекс блока в регионе
-	 */
-	/* NOT USED
-	private static void copyBlock(int ix, int iy, int blockIndex)
-	{
-		byte[][][] region = geodata[ix][iy];
-
-		if(region == null)
-		{
-			Log.add("door at null region? [" + ix + "][" + iy + "]", "doors");
-			return;
-		}
-
-		byte[] block = region[blockIndex][0];
-		byte blockType = block[0];
-
-		switch(blockType)
-		{
-			case BLOCKTYPE_FLAT:
-				short height = makeShort(block[2], block[1]);
-				height &= 0x0fff0;
-				height <<= 1;
-				height |= NORTH;
-				height |= SOUTH;
-				height |= WEST;
-				height |= EAST;
-				byte[] newblock = new byte[129];
-				newblock[0] = BLOCKTYPE_COMPLEX;
-				for(int i = 1; i < 129; i += 2)
-				{
-					newblock[i + 1] = (byte) (height >> 8);
-					newblock[i] = (byte) (height & 0x00ff);
-				}
-				region[blockIndex][0] = newblock;
-				break;
-			default:
-				if(Config.COMPACT_GEO)
-					region[blockIndex][0] = region[blockIndex][0].clone();
-				break;
-		}
+		markChanged(0, 0, 0, 0, geoIndex);
 	}
-	*/
 
 	public static void removeGeoCollision(GeoCollision collision, int geoIndex)
 	{
@@ -1800,7 +1888,7 @@ public class GeoEngine
 				int geoX = minX + gX;
 				int geoY = minY + gY;
 
-				byte[] block = getGeoBlockFromGeoCoords(geoX, geoY, geoIndex);
+				byte[] block = getGeoBlockForUpdate(geoX, geoY, geoIndex);
 				if(block == null)
 					continue;
 
@@ -1894,6 +1982,8 @@ public class GeoEngine
 						break;
 				}
 			}
+
+		markChanged(minX, minY, minX + around.length - 1, minY + around[0].length - 1, geoIndex);
 	}
 
 	public static void applyGeoCollision(GeoCollision collision, int geoIndex)
@@ -1986,11 +2076,8 @@ public class GeoEngine
 				int geoX = minX + gX;
 				int geoY = minY + gY;
 
-				// Попытка скопировать блок геодаты, если уже существует, то не скопируется
-				//TODO: if(first_time)
-				//	copyBlock(ix, iy, blockIndex);
-
-				byte[] block = getGeoBlockFromGeoCoords(geoX, geoY, geoIndex);
+				// Блок, разделяемый с эталонной геодатой, копируется в слой в getGeoBlockForUpdate
+				byte[] block = getGeoBlockForUpdate(geoX, geoY, geoIndex);
 				if(block == null)
 					continue;
 
@@ -2107,36 +2194,103 @@ public class GeoEngine
 						break;
 				}
 			}
+
+		markChanged(minX, minY, maxX, maxY, geoIndex);
 	}
 
 	/**
-	 * загружает заранее сгенерированые карты соовпадений в блоках и благодаря им оптимизирует размещение геодаты в памяти
-	 * @return количество оптимизированых блоков
+	 * Отметить изменение геодаты в прямоугольнике клеток геодаты, для рефлекта - изменение всего слоя.
+	 */
+	private static void markChanged(int geoXmin, int geoYmin, int geoXmax, int geoYmax, int geoIndex)
+	{
+		long stamp = changeCounter.incrementAndGet();
+		if((geoIndex & 0x0f000000) == 0x0f000000)
+		{
+			indexChangeStamps.put(geoIndex, stamp);
+			return;
+		}
+
+		int cxMax = Math.min(geoXmax >> CHANGE_CHUNK_SHIFT, changeStamps.length - 1);
+		int cyMax = Math.min(geoYmax >> CHANGE_CHUNK_SHIFT, changeStamps[0].length - 1);
+		for(int cx = Math.max(0, geoXmin >> CHANGE_CHUNK_SHIFT); cx <= cxMax; cx++)
+			for(int cy = Math.max(0, geoYmin >> CHANGE_CHUNK_SHIFT); cy <= cyMax; cy++)
+				changeStamps[cx][cy] = stamp;
+	}
+
+	/**
+	 * @return текущее значение счетчика изменений геодаты, запоминается при построении кэша
+	 */
+	public static long getChangeStamp()
+	{
+		return changeCounter.get();
+	}
+
+	/**
+	 * @return значение счетчика при последнем изменении геодаты в прямоугольнике клеток геодаты.
+	 * Кэш, построенный при значении счетчика не меньше этого, актуален.
+	 */
+	public static long getLastChange(int geoXmin, int geoYmin, int geoXmax, int geoYmax, int geoIndex)
+	{
+		if((geoIndex & 0x0f000000) == 0x0f000000)
+			return indexChangeStamps.containsKey(geoIndex) ? indexChangeStamps.get(geoIndex) : 0;
+
+		long last = 0;
+		int cxMax = Math.min(geoXmax >> CHANGE_CHUNK_SHIFT, changeStamps.length - 1);
+		int cyMax = Math.min(geoYmax >> CHANGE_CHUNK_SHIFT, changeStamps[0].length - 1);
+		for(int cx = Math.max(0, geoXmin >> CHANGE_CHUNK_SHIFT); cx <= cxMax; cx++)
+			for(int cy = Math.max(0, geoYmin >> CHANGE_CHUNK_SHIFT); cy <= cyMax; cy++)
+				last = Math.max(last, changeStamps[cx][cy]);
+		return last;
+	}
+
+	/**
+	 * загружает заранее сгенерированые карты соовпадений в блоках и благодаря им оптимизирует размещение геодаты в памяти:
+	 * совпадающие блоки эталонной геодаты заменяются одним экземпляром, слои, еще не изменившие блок, переключаются на него.
 	 */
 	public static void compact()
 	{
 		long total = 0, optimized = 0;
 		BlockLink[] links;
-		byte[][][] link_region;
+		byte[][] link_region;
+		byte[] block, oldBlock;
+		byte[][][] layers;
 
-		for(int mapX = 0; mapX < World.WORLD_SIZE_X; mapX++)
-			for(int mapY = 0; mapY < World.WORLD_SIZE_Y; mapY++)
-			{
-				if(geodata[mapX][mapY] == null)
-					continue;
-				total += BLOCKS_IN_MAP;
-				links = GeoOptimizer.loadBlockMatches("geodata/matches/" + (mapX + Config.GEO_X_FIRST) + "_" + (mapY + Config.GEO_Y_FIRST) + ".matches");
-				if(links == null)
-					continue;
-				for(int i = 0; i < links.length; i++)
+		synchronized(geodata)
+		{
+			for(int mapX = 0; mapX < World.WORLD_SIZE_X; mapX++)
+				for(int mapY = 0; mapY < World.WORLD_SIZE_Y; mapY++)
 				{
-					link_region = geodata[links[i].linkMapX][links[i].linkMapY];
-					if(link_region == null)
+					if(basegeo[mapX][mapY] == null)
+						continue;
+					total += BLOCKS_IN_MAP;
+					links = GeoOptimizer.loadBlockMatches("geodata/matches/" + (mapX + Config.GEO_X_FIRST) + "_" + (mapY + Config.GEO_Y_FIRST) + ".matches");
+					if(links == null)
 						continue;
-					link_region[links[i].linkBlockIndex][0] = geodata[mapX][mapY][links[i].blockIndex][0];
-					optimized++;
+					for(int i = 0; i < links.length; i++)
+					{
+						link_region = basegeo[links[i].linkMapX][links[i].linkMapY];
+						if(link_region == null)
+							continue;
+
+						block = basegeo[mapX][mapY][links[i].blockIndex];
+						oldBlock = link_region[links[i].linkBlockIndex];
+						if(block == oldBlock)
+							continue;
+						// карта совпадений могла устареть
+						if(!equalsData(block, oldBlock))
+							continue;
+
+						link_region[links[i].linkBlockIndex] = block;
+
+						layers = geodata[links[i].linkMapX][links[i].linkMapY];
+						for(byte[][] layer : layers)
+							if(layer != null && layer[links[i].linkBlockIndex] == oldBlock)
+								layer[links[i].linkBlockIndex] = block;
+
+						optimized++;
+					}
 				}
-			}
+		}
 
 		_log.info(String.format("GeoEngine: - Compacted %d of %d blocks...", optimized, total));
 	}
@@ -2169,7 +2323,7 @@ public class GeoEngine
 	 */
 	public static boolean compareGeoBlocks(int mapX1, int mapY1, int blockIndex1, int mapX2, int mapY2, int blockIndex2)
 	{
-		return equalsData(geodata[mapX1][mapY1][blockIndex1][0], geodata[mapX2][mapY2][blockIndex2][0]);
+		return equalsData(basegeo[mapX1][mapY1][blockIndex1], basegeo[mapX2][mapY2][blockIndex2]);
 	}
 
 	private static void initChecksums()
@@ -2180,8 +2334,8 @@ public class GeoEngine
 		GeoOptimizer.checkSums = new int[World.WORLD_SIZE_X][World.WORLD_SIZE_Y][];
 		for(int mapX = 0; mapX < World.WORLD_SIZE_X; mapX++)
 			for(int mapY = 0; mapY < World.WORLD_SIZE_Y; mapY++)
-				if(geodata[mapX][mapY] != null)
-					executor.execute(new GeoOptimizer.CheckSumLoader(mapX, mapY, geodata[mapX][mapY]));
+				if(basegeo[mapX][mapY] != null)
+					executor.execute(new GeoOptimizer.CheckSumLoader(mapX, mapY, basegeo[mapX][mapY]));
 		try
 		{
 			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
@@ -2199,7 +2353,7 @@ public class GeoEngine
 		ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
 		for(int mapX = 0; mapX < World.WORLD_SIZE_X; mapX++)
 			for(int mapY = 0; mapY < World.WORLD_SIZE_Y; mapY++)
-				if(geodata[mapX][mapY] != null && GeoOptimizer.checkSums != null && GeoOptimizer.checkSums[mapX][mapY] != null)
+				if(basegeo[mapX][mapY] != null && GeoOptimizer.checkSums != null && GeoOptimizer.checkSums[mapX][mapY] != null)
 					executor.execute(new GeoOptimizer.GeoBlocksMatchFinder(mapX, mapY, maxScanRegions));
 		try
 		{
@@ -2216,7 +2370,7 @@ public class GeoEngine
 		for(int mapX = 0; mapX < World.WORLD_SIZE_X; mapX++)
 			for(int mapY = 0; mapY < World.WORLD_SIZE_Y; mapY++)
 			{
-				if(geodata[mapX][mapY] == null)
+				if(basegeo[mapX][mapY] == null)
 					continue;
 				new File(Config.DATAPACK_ROOT, "geodata/checksum/" + (mapX + Config.GEO_X_FIRST) + "_" + (mapY + Config.GEO_Y_FIRST) + ".crc").delete();
 			}
@@ -2232,6 +2386,11 @@ public class GeoEngine
 	{
 		for(int mapX = 0; mapX < World.WORLD_SIZE_X; mapX++)
 			for(int mapY = 0; mapY < World.WORLD_SIZE_Y; mapY++)
+			{
 				geodata[mapX][mapY] = null;
+				basegeo[mapX][mapY] = null;
+			}
+
+		PathFindGraph.unload();
 	}
 }
@@ -136,10 +136,10 @@ public class GeoOptimizer
 	public static class CheckSumLoader extends RunnableImpl
 	{
 		private final int geoX, geoY, rx, ry;
-		private final byte[][][] region;
+		private final byte[][] region;
 		private final String fileName;
 
-		public CheckSumLoader(int _geoX, int _geoY, byte[][][] _region)
+		public CheckSumLoader(int _geoX, int _geoY, byte[][] _region)
 		{
 			super();
 			geoX = _geoX;
@@ -211,7 +211,7 @@ public class GeoOptimizer
 			CRC32 crc32 = new CRC32();
 			for(int i = 0; i < GeoEngine.BLOCKS_IN_MAP; i++)
 			{
-				crc32.update(region[i][0]);
+				crc32.update(region[i]);
 				_checkSums[i] = (int) (crc32.getValue() ^ 0xFFFFFFFF);
 				crc32.reset();
 			}
@@ -60,28 +60,22 @@ public class PathFind
 		}
 
 		List<Location> path = null;
-		
-		int mapSize = Config.PATHFIND_MAP_MUL * Math.max(xdiff, ydiff);
-		
-		PathFindBuffer buff;
-		if((buff = PathFindBuffers.alloc(mapSize)) != null)
-		{
-			buff.offsetX = startPoint.x - buff.mapSize / 2;
-			buff.offsetY = startPoint.y - buff.mapSize / 2;
 
-			//статистика
-			buff.totalUses++;
-			if(isPlayable)
-				buff.playableUses++;
+		if(Config.PATHFIND_HIERARCHICAL && PathFindGraph.isHierarchical(startPoint, endPoint))
+			path = PathFindGraph.findPath(startPoint, endPoint, isPlayable, geoIndex);
 
-			PathFind n = new PathFind(startPoint, endPoint, buff, geoIndex);
-			path = n.findPath();
-
-			buff.free();
-
-			PathFindBuffers.recycle(buff);
+		// иерархический поиск не используется или не нашел путь, пробуем обычный
+		if(path == null)
+		{
+			long nanos = System.nanoTime();
+			PathFind n = search(startPoint, endPoint, isPlayable, geoIndex);
+			if(n != null)
+			{
+				path = n.path;
+				PathFindGraph.recordSearch(path != null, n.itr, System.nanoTime() - nanos);
+			}
 		}
-		
+
 		if(path == null || path.isEmpty())
 			return null;
 
@@ -102,6 +96,37 @@ public class PathFind
 		return targetRecorder;
 	}
 	
+	/**
+	 * Поиск пути A* между точками в геокоординатах.
+	 *
+	 * @return результат поиска, или null если под такое расстояние нет буффера
+	 */
+	static PathFind search(Location startPoint, Location endPoint, boolean isPlayable, int geoIndex)
+	{
+		int mapSize = Config.PATHFIND_MAP_MUL * Math.max(Math.abs(endPoint.x - startPoint.x), Math.abs(endPoint.y - startPoint.y));
+
+		PathFindBuffer buff;
+		if((buff = PathFindBuffers.alloc(mapSize)) == null)
+			return null;
+
+		buff.offsetX = startPoint.x - buff.mapSize / 2;
+		buff.offsetY = startPoint.y - buff.mapSize / 2;
+
+		//статистика
+		buff.totalUses++;
+		if(isPlayable)
+			buff.playableUses++;
+
+		PathFind n = new PathFind(startPoint, endPoint, buff, geoIndex);
+		n.path = n.findPath();
+
+		buff.free();
+
+		PathFindBuffers.recycle(buff);
+
+		return n;
+	}
+
 	/**
 	 * Очищает путь от ненужных точек.
 	 * @param path путь который следует очистить
@@ -162,6 +187,10 @@ public class PathFind
 	private final short[] hNSWE = new short[2];
 	private final Location startPoint, endPoint;
 	private GeoNode startNode, endNode, currentNode;
+	/** найденный путь без начальной точки */
+	List<Location> path;
+	/** количество раскрытых узлов */
+	int itr;
 	
 	public PathFind(Location startPoint, Location endPoint, PathFindBuffer buff, int geoIndex)
 	{
@@ -191,7 +220,6 @@ public class PathFind
 
 		long nanos = System.nanoTime();
 		long searhTime = 0;
-		int itr = 0;
 
 		List<Location> path = null;
 		while((searhTime = System.nanoTime() - nanos) < Config.PATHFIND_MAX_TIME && (currentNode = buff.open.poll()) != null)
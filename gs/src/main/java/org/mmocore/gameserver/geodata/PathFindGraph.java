@@ -0,0 +1,880 @@
+package org.mmocore.gameserver.geodata;
+
+import static org.mmocore.gameserver.geodata.GeoEngine.BASE_GEO_INDEX;
+import static org.mmocore.gameserver.geodata.GeoEngine.EAST;
+import static org.mmocore.gameserver.geodata.GeoEngine.NORTH;
+import static org.mmocore.gameserver.geodata.GeoEngine.NSWE_NONE;
+import static org.mmocore.gameserver.geodata.GeoEngine.SOUTH;
+import static org.mmocore.gameserver.geodata.GeoEngine.WEST;
+import gnu.trove.TLongObjectHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.mmocore.commons.text.StrTable;
+import org.mmocore.gameserver.Config;
+import org.mmocore.gameserver.model.World;
+import org.mmocore.gameserver.utils.Location;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Иерархический поиск пути (HPA*).<BR>
+ * Геодата делится на кластеры CLUSTER_SIZE x CLUSTER_SIZE клеток. На границах кластеров выделяются входы,
+ * стоимость переходов между входами одного кластера считается один раз и кешируется.
+ * Поиск идет по графу входов, найденные маршруты между кластерами кешируются,
+ * а A* по геодате запускается только на участках, которые нельзя пройти по прямой.<BR>
+ * Граф строится по эталонной геодате, поэтому двери и коллизии учитываются только при уточнении пути.
+ */
+public class PathFindGraph
+{
+	private static final Logger _log = LoggerFactory.getLogger(PathFindGraph.class);
+
+	private static final float UNREACHABLE = Float.MAX_VALUE;
+
+	public static final int CLUSTER_SIZE;
+	private static final int CLUSTER_SHIFT;
+
+	static
+	{
+		int size = Config.PATHFIND_CLUSTER_SIZE;
+		// кластер должен целиком лежать в регионе геодаты
+		if(size < 16 || size > 256 || Integer.bitCount(size) != 1)
+		{
+			_log.warn("PathFindGraph: invalid cluster size " + size + ", using 64.");
+			size = 64;
+		}
+		CLUSTER_SIZE = size;
+		CLUSTER_SHIFT = Integer.numberOfTrailingZeros(size);
+	}
+
+	/** кластеры по геокоординатам, создается только при загрузке графа */
+	private static volatile Cluster[][] clusters;
+
+	/** Кеш маршрутов между кластерами, ключ - идентификаторы начального и конечного кластера */
+	private static final Map<Long, Route> routes = new LinkedHashMap<Long, Route>(16, 0.75f, true)
+	{
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Long, Route> eldest)
+		{
+			return size() > Config.PATHFIND_ROUTE_CACHE_SIZE;
+		}
+	};
+
+	//статистика
+	private static final AtomicLong astarUses = new AtomicLong();
+	private static final AtomicLong astarSuccess = new AtomicLong();
+	private static final AtomicLong astarItr = new AtomicLong();
+	private static final AtomicLong astarTime = new AtomicLong();
+	private static final AtomicLong hpaUses = new AtomicLong();
+	private static final AtomicLong hpaSuccess = new AtomicLong();
+	private static final AtomicLong hpaItr = new AtomicLong();
+	private static final AtomicLong hpaTime = new AtomicLong();
+	private static final AtomicLong hpaRefines = new AtomicLong();
+	private static final AtomicLong routeHits = new AtomicLong();
+	private static final AtomicLong clustersBuilt = new AtomicLong();
+	private static final AtomicLong edgesBuilt = new AtomicLong();
+
+	/**
+	 * Строит входы кластеров для всех регионов с геодатой.
+	 */
+	public static void load()
+	{
+		long started = System.currentTimeMillis();
+		clusters = new Cluster[(World.WORLD_SIZE_X << 11) >> CLUSTER_SHIFT][(World.WORLD_SIZE_Y << 11) >> CLUSTER_SHIFT];
+		int regionClusters = 1 << (11 - CLUSTER_SHIFT);
+		int count = 0;
+		for(int rx = 0; rx < World.WORLD_SIZE_X; rx++)
+			for(int ry = 0; ry < World.WORLD_SIZE_Y; ry++)
+			{
+				if(!GeoEngine.hasGeodata(rx << 11, ry << 11, BASE_GEO_INDEX))
+					continue;
+
+				for(int cx = 0; cx < regionClusters; cx++)
+					for(int cy = 0; cy < regionClusters; cy++)
+						getCluster(rx * regionClusters + cx, ry * regionClusters + cy);
+
+				count++;
+			}
+
+		_log.info("PathFindGraph: Built " + clustersBuilt.get() + " cluster(s) for " + count + " map(s) in " + (System.currentTimeMillis() - started) + " ms.");
+	}
+
+	public static void unload()
+	{
+		clusters = null;
+
+		synchronized(routes)
+		{
+			routes.clear();
+		}
+	}
+
+	/**
+	 * @return стоит ли искать путь между точками по графу кластеров
+	 */
+	public static boolean isHierarchical(Location startPoint, Location endPoint)
+	{
+		int diff = Math.max(Math.abs(endPoint.x - startPoint.x), Math.abs(endPoint.y - startPoint.y));
+		return diff > CLUSTER_SIZE && diff <= Config.PATHFIND_HIERARCHICAL_MAX_DISTANCE;
+	}
+
+	/**
+	 * Учет поиска обычным A* для сравнения с иерархическим.
+	 */
+	static void recordSearch(boolean success, int itr, long time)
+	{
+		astarUses.incrementAndGet();
+		if(success)
+			astarSuccess.incrementAndGet();
+		astarItr.addAndGet(itr);
+		astarTime.addAndGet(time);
+	}
+
+	/**
+	 * Поиск пути по графу кластеров с уточнением по геодате.
+	 *
+	 * @param startPoint начальная точка в геокоординатах
+	 * @param endPoint конечная точка в геокоординатах
+	 * @return путь без начальной точки, или null если путь не найден
+	 */
+	static List<Location> findPath(Location startPoint, Location endPoint, boolean isPlayable, int geoIndex)
+	{
+		long nanos = System.nanoTime();
+
+		SearchContext ctx = new SearchContext(startPoint, endPoint, geoIndex);
+		List<Location> path = null;
+
+		if(ctx.init())
+		{
+			Route route = getRoute(ctx);
+			if(route != null)
+			{
+				path = refine(ctx, route, isPlayable);
+				// маршрут не удалось уточнить по актуальной геодате
+				if(path == null)
+					synchronized(routes)
+					{
+						routes.remove(ctx.routeKey());
+					}
+			}
+		}
+
+		hpaUses.incrementAndGet();
+		if(path != null)
+			hpaSuccess.incrementAndGet();
+		hpaItr.addAndGet(ctx.itr);
+		hpaTime.addAndGet(System.nanoTime() - nanos);
+
+		return path;
+	}
+
+	private static Route getRoute(SearchContext ctx)
+	{
+		Route route;
+		synchronized(routes)
+		{
+			route = routes.get(ctx.routeKey());
+		}
+
+		if(route != null && ctx.startCosts[route.first] != UNREACHABLE && ctx.endCosts[route.last] != UNREACHABLE)
+		{
+			routeHits.incrementAndGet();
+			return route;
+		}
+
+		route = ctx.search();
+		if(route != null)
+			synchronized(routes)
+			{
+				routes.put(ctx.routeKey(), route);
+			}
+
+		return route;
+	}
+
+	/**
+	 * Превращает маршрут по входам кластеров в путь по геодате.
+	 * Участки, которые проходятся по прямой, не ищутся.
+	 */
+	private static List<Location> refine(SearchContext ctx, Route route, boolean isPlayable)
+	{
+		List<Location> path = new ArrayList<Location>(route.points.length + 8);
+
+		Location prev = ctx.startPoint;
+		for(int i = 0; i <= route.points.length; i++)
+		{
+			Location next = i < route.points.length ? route.points[i] : ctx.endPoint;
+			if(canMove(prev, next, ctx.geoIndex))
+				path.add(new Location(next.x, next.y, next.z));
+			else
+			{
+				hpaRefines.incrementAndGet();
+
+				PathFind n = PathFind.search(prev, next, isPlayable, ctx.geoIndex);
+				if(n == null || n.path == null)
+					return null;
+
+				ctx.itr += n.itr;
+				path.addAll(n.path);
+			}
+			prev = next;
+		}
+
+		return path;
+	}
+
+	private static boolean canMove(Location from, Location to, int geoIndex)
+	{
+		Location f = new Location(from.x, from.y, from.z).geo2world();
+		Location t = new Location(to.x, to.y, to.z).geo2world();
+		return GeoEngine.canMoveWithCollision(f.x, f.y, f.z, t.x, t.y, t.z, geoIndex);
+	}
+
+	private static Cluster getCluster(int cx, int cy)
+	{
+		Cluster[][] clusters = PathFindGraph.clusters;
+		if(clusters == null || cx < 0 || cx >= clusters.length || cy < 0 || cy >= clusters[cx].length)
+			return null;
+
+		Cluster[] row = clusters[cx];
+		Cluster cluster = row[cy];
+		if(cluster == null)
+			synchronized(row)
+			{
+				cluster = row[cy];
+				if(cluster == null)
+				{
+					row[cy] = cluster = new Cluster(cx, cy);
+					clustersBuilt.incrementAndGet();
+				}
+			}
+
+		return cluster;
+	}
+
+	private static Cluster getClusterByGeo(int geoX, int geoY)
+	{
+		if(geoX < 0 || geoY < 0)
+			return null;
+		return getCluster(geoX >> CLUSTER_SHIFT, geoY >> CLUSTER_SHIFT);
+	}
+
+	public static StrTable getStats()
+	{
+		StrTable table = new StrTable("PathFind Stats");
+
+		long uses = astarUses.get();
+		table.set(1, "Mode", "A*");
+		table.set(1, "Uses", uses);
+		table.set(1, "Success%", String.format("%2.2f", uses > 0 ? astarSuccess.get() * 100. / uses : 0));
+		table.set(1, "Expansions, avg", uses > 0 ? astarItr.get() / uses : 0);
+		table.set(1, "Time, avg (ms)", String.format("%1.3f", uses > 0 ? astarTime.get() / 1000000. / uses : 0.));
+
+		uses = hpaUses.get();
+		table.set(2, "Mode", "HPA*");
+		table.set(2, "Uses", uses);
+		table.set(2, "Success%", String.format("%2.2f", uses > 0 ? hpaSuccess.get() * 100. / uses : 0));
+		table.set(2, "Expansions, avg", uses > 0 ? hpaItr.get() / uses : 0);
+		table.set(2, "Time, avg (ms)", String.format("%1.3f", uses > 0 ? hpaTime.get() / 1000000. / uses : 0.));
+
+		int cached;
+		synchronized(routes)
+		{
+			cached = routes.size();
+		}
+
+		table.addTitle("Hierarchical: " + Config.PATHFIND_HIERARCHICAL + ", cluster size: " + CLUSTER_SIZE);
+		table.addTitle("Clusters built / with edges : " + clustersBuilt.get() + " / " + edgesBuilt.get());
+		table.addTitle("Routes cached / hits        : " + cached + " / " + routeHits.get());
+		table.addTitle("Refined segments            : " + hpaRefines.get());
+
+		return table;
+	}
+
+	private static long nodeKey(Cluster cluster, int index)
+	{
+		return (long) cluster.id << 16 | index;
+	}
+
+	/**
+	 * Кластер геодаты с входами на его границах.
+	 */
+	private static class Cluster
+	{
+		final int id;
+		/** геокоординаты левого верхнего угла */
+		final int x, y;
+		/** входы внутри кластера */
+		final int[] ex, ey;
+		final short[] ez;
+		/** парные им клетки в соседних кластерах */
+		final int[] tx, ty;
+		final short[] tz;
+		/** стоимость переходов между входами, строится при первом использовании */
+		private volatile float[][] edges;
+
+		Cluster(int cx, int cy)
+		{
+			id = cx << 16 | cy;
+			x = cx << CLUSTER_SHIFT;
+			y = cy << CLUSTER_SHIFT;
+
+			EntranceList list = new EntranceList();
+			// каждая граница сканируется со стороны западного/северного кластера, чтобы входы соседей совпадали
+			scanBorder(list, x - 1, y, 1, 0, 0, 1, EAST, WEST, false);
+			scanBorder(list, x + CLUSTER_SIZE - 1, y, 1, 0, 0, 1, EAST, WEST, true);
+			scanBorder(list, x, y - 1, 0, 1, 1, 0, SOUTH, NORTH, false);
+			scanBorder(list, x, y + CLUSTER_SIZE - 1, 0, 1, 1, 0, SOUTH, NORTH, true);
+
+			int n = list.size;
+			ex = Arrays.copyOf(list.ex, n);
+			ey = Arrays.copyOf(list.ey, n);
+			ez = Arrays.copyOf(list.ez, n);
+			tx = Arrays.copyOf(list.tx, n);
+			ty = Arrays.copyOf(list.ty, n);
+			tz = Arrays.copyOf(list.tz, n);
+		}
+
+		/**
+		 * Ищет проходимые отрезки на границе между клетками (px, py) и (px + dx, py + dy), ставит по входу в середину каждого.
+		 *
+		 * @param sx шаг вдоль границы по x
+		 * @param sy шаг вдоль границы по y
+		 * @param dir направление перехода через границу
+		 * @param back обратное направление
+		 * @param lowerInside лежит ли (px, py) внутри этого кластера
+		 */
+		private void scanBorder(EntranceList list, int px, int py, int dx, int dy, int sx, int sy, byte dir, byte back, boolean lowerInside)
+		{
+			if(px < 0 || py < 0)
+				return;
+
+			short[] layers = new short[GeoEngine.MAX_LAYERS + 1];
+			short[] hNSWE = new short[2];
+			List<Segment> segments = new ArrayList<Segment>(2);
+
+			for(int i = 0; i <= CLUSTER_SIZE; i++)
+			{
+				// закрываем отрезки, которые не продолжились
+				for(int s = segments.size() - 1; s >= 0; s--)
+				{
+					Segment segment = segments.get(s);
+					if(segment.last < i - 1 || i == CLUSTER_SIZE)
+					{
+						addEntrance(list, segment, px, py, dx, dy, sx, sy, lowerInside);
+						segments.remove(s);
+					}
+				}
+
+				if(i == CLUSTER_SIZE)
+					break;
+
+				int ax = px + i * sx, ay = py + i * sy;
+				GeoEngine.NGetLayers(ax, ay, layers, BASE_GEO_INDEX);
+				for(int l = 1; l <= layers[0]; l++)
+				{
+					short az = (short) ((short) (layers[l] & 0x0fff0) >> 1);
+					if((layers[l] & dir) != dir)
+						continue;
+
+					GeoEngine.NgetHeightAndNSWE(ax + dx, ay + dy, az, hNSWE, BASE_GEO_INDEX);
+					if((hNSWE[1] & back) != back || Math.abs(hNSWE[0] - az) > Config.PATHFIND_MAX_Z_DIFF)
+						continue;
+
+					Segment segment = null;
+					for(Segment s : segments)
+						if(s.last == i - 1 && Math.abs(s.z - az) <= Config.PATHFIND_MAX_Z_DIFF)
+						{
+							segment = s;
+							break;
+						}
+					if(segment == null)
+						segments.add(segment = new Segment());
+					segment.add(i, az, hNSWE[0]);
+				}
+			}
+		}
+
+		private void addEntrance(EntranceList list, Segment segment, int px, int py, int dx, int dy, int sx, int sy, boolean lowerInside)
+		{
+			int m = segment.count / 2;
+			int ax = px + segment.index[m] * sx, ay = py + segment.index[m] * sy;
+			if(lowerInside)
+				list.add(ax, ay, segment.az[m], ax + dx, ay + dy, segment.bz[m]);
+			else
+				list.add(ax + dx, ay + dy, segment.bz[m], ax, ay, segment.az[m]);
+		}
+
+		int indexOf(int x, int y, short z)
+		{
+			for(int i = 0; i < ex.length; i++)
+				if(ex[i] == x && ey[i] == y && ez[i] == z)
+					return i;
+			return -1;
+		}
+
+		boolean contains(int x, int y)
+		{
+			return x >= this.x && x < this.x + CLUSTER_SIZE && y >= this.y && y < this.y + CLUSTER_SIZE;
+		}
+
+		float[][] getEdges()
+		{
+			float[][] result = edges;
+			if(result == null)
+				synchronized(this)
+				{
+					result = edges;
+					if(result == null)
+					{
+						result = new float[ex.length][];
+						for(int i = 0; i < ex.length; i++)
+							result[i] = new ClusterSearch(this, BASE_GEO_INDEX).search(ex[i], ey[i], ez[i]);
+						edges = result;
+						edgesBuilt.incrementAndGet();
+					}
+				}
+			return result;
+		}
+	}
+
+	/**
+	 * Проходимый отрезок границы кластера.
+	 */
+	private static class Segment
+	{
+		final int[] index = new int[CLUSTER_SIZE];
+		final short[] az = new short[CLUSTER_SIZE];
+		final short[] bz = new short[CLUSTER_SIZE];
+		int count;
+		int last;
+		short z;
+
+		void add(int i, short a, short b)
+		{
+			index[count] = i;
+			az[count] = a;
+			bz[count] = b;
+			count++;
+			last = i;
+			z = a;
+		}
+	}
+
+	private static class EntranceList
+	{
+		int[] ex = new int[8], ey = new int[8], tx = new int[8], ty = new int[8];
+		short[] ez = new short[8], tz = new short[8];
+		int size;
+
+		void add(int x, int y, short z, int twinX, int twinY, short twinZ)
+		{
+			if(size == ex.length)
+			{
+				int length = size * 2;
+				ex = Arrays.copyOf(ex, length);
+				ey = Arrays.copyOf(ey, length);
+				ez = Arrays.copyOf(ez, length);
+				tx = Arrays.copyOf(tx, length);
+				ty = Arrays.copyOf(ty, length);
+				tz = Arrays.copyOf(tz, length);
+			}
+			ex[size] = x;
+			ey[size] = y;
+			ez[size] = z;
+			tx[size] = twinX;
+			ty[size] = twinY;
+			tz[size] = twinZ;
+			size++;
+		}
+	}
+
+	/**
+	 * Маршрут по входам кластеров.
+	 */
+	private static class Route
+	{
+		/** индекс первого входа в начальном кластере */
+		final int first;
+		/** индекс последнего входа в конечном кластере */
+		final int last;
+		/** точки маршрута в геокоординатах */
+		final Location[] points;
+
+		Route(int first, int last, Location[] points)
+		{
+			this.first = first;
+			this.last = last;
+			this.points = points;
+		}
+	}
+
+	/**
+	 * Поиск Дейкстры внутри одного кластера: стоимость пути от точки до каждого входа кластера.
+	 * Правила перехода между клетками те же, что и в {@link PathFind}.
+	 */
+	private static class ClusterSearch
+	{
+		private final Cluster cluster;
+		private final int geoIndex;
+		private final float[] cost = new float[CLUSTER_SIZE * CLUSTER_SIZE];
+		private final short[] height = new short[CLUSTER_SIZE * CLUSTER_SIZE];
+		private final short[] nswe = new short[CLUSTER_SIZE * CLUSTER_SIZE];
+		private final boolean[] closed = new boolean[CLUSTER_SIZE * CLUSTER_SIZE];
+		private final short[] hNSWE = new short[2];
+		private int[] heap = new int[64];
+		private float[] keys = new float[64];
+		private int heapSize;
+		int itr;
+
+		ClusterSearch(Cluster cluster, int geoIndex)
+		{
+			this.cluster = cluster;
+			this.geoIndex = geoIndex;
+			Arrays.fill(cost, UNREACHABLE);
+			Arrays.fill(nswe, (short) -1);
+		}
+
+		float[] search(int x, int y, short z)
+		{
+			float[] result = new float[cluster.ex.length];
+			Arrays.fill(result, UNREACHABLE);
+			if(!cluster.contains(x, y) || result.length == 0)
+				return result;
+
+			int remaining = result.length;
+
+			int start = cell(x, y);
+			GeoEngine.NgetHeightAndNSWE(x, y, z, hNSWE, geoIndex);
+			height[start] = hNSWE[0];
+			nswe[start] = hNSWE[1];
+			cost[start] = 0f;
+			push(start, 0f);
+
+			while(heapSize > 0)
+			{
+				int c = pop();
+				if(closed[c])
+					continue;
+				closed[c] = true;
+				itr++;
+
+				int cx = cluster.x + c / CLUSTER_SIZE, cy = cluster.y + c % CLUSTER_SIZE;
+				for(int i = 0; i < result.length; i++)
+					if(result[i] == UNREACHABLE && cluster.ex[i] == cx && cluster.ey[i] == cy && Math.abs(cluster.ez[i] - height[c]) < Config.MAX_Z_DIFF)
+					{
+						result[i] = cost[c];
+						remaining--;
+					}
+				if(remaining == 0)
+					break;
+
+				expand(c, cx, cy);
+			}
+
+			return result;
+		}
+
+		private void expand(int c, int x, int y)
+		{
+			short z = height[c];
+			short NSWE = nswe[c];
+
+			if(Config.PATHFIND_DIAGONAL)
+			{
+				// Юго-восток
+				if((NSWE & SOUTH) == SOUTH && (NSWE & EAST) == EAST && (nswe(x + 1, y, z) & SOUTH) == SOUTH && (nswe(x, y + 1, z) & EAST) == EAST)
+					relax(c, x + 1, y + 1, 1.414f);
+				// Юго-запад
+				if((NSWE & SOUTH) == SOUTH && (NSWE & WEST) == WEST && (nswe(x - 1, y, z) & SOUTH) == SOUTH && (nswe(x, y + 1, z) & WEST) == WEST)
+					relax(c, x - 1, y + 1, 1.414f);
+				// Северо-восток
+				if((NSWE & NORTH) == NORTH && (NSWE & EAST) == EAST && (nswe(x + 1, y, z) & NORTH) == NORTH && (nswe(x, y - 1, z) & EAST) == EAST)
+					relax(c, x + 1, y - 1, 1.414f);
+				// Северо-запад
+				if((NSWE & NORTH) == NORTH && (NSWE & WEST) == WEST && (nswe(x - 1, y, z) & NORTH) == NORTH && (nswe(x, y - 1, z) & WEST) == WEST)
+					relax(c, x - 1, y - 1, 1.414f);
+			}
+
+			if((NSWE & EAST) == EAST)
+				relax(c, x + 1, y, 1f);
+			if((NSWE & WEST) == WEST)
+				relax(c, x - 1, y, 1f);
+			if((NSWE & SOUTH) == SOUTH)
+				relax(c, x, y + 1, 1f);
+			if((NSWE & NORTH) == NORTH)
+				relax(c, x, y - 1, 1f);
+		}
+
+		private void relax(int from, int x, int y, float step)
+		{
+			if(!cluster.contains(x, y))
+				return;
+
+			int n = cell(x, y);
+			touch(n, x, y, height[from]);
+			if(closed[n] || nswe[n] == NSWE_NONE || Math.abs(height[n] - height[from]) > Config.PATHFIND_MAX_Z_DIFF)
+				return;
+
+			float newCost = cost[from] + step;
+			if(newCost < cost[n])
+			{
+				cost[n] = newCost;
+				push(n, newCost);
+			}
+		}
+
+		private short nswe(int x, int y, short z)
+		{
+			if(!cluster.contains(x, y))
+				return NSWE_NONE;
+			int n = cell(x, y);
+			touch(n, x, y, z);
+			return nswe[n];
+		}
+
+		private void touch(int n, int x, int y, short z)
+		{
+			if(nswe[n] != -1)
+				return;
+			GeoEngine.NgetHeightAndNSWE(x, y, z, hNSWE, geoIndex);
+			height[n] = hNSWE[0];
+			nswe[n] = hNSWE[1];
+		}
+
+		private int cell(int x, int y)
+		{
+			return (x - cluster.x) * CLUSTER_SIZE + y - cluster.y;
+		}
+
+		private void push(int c, float key)
+		{
+			if(heapSize == heap.length)
+			{
+				heap = Arrays.copyOf(heap, heapSize * 2);
+				keys = Arrays.copyOf(keys, heapSize * 2);
+			}
+			int i = heapSize++;
+			while(i > 0)
+			{
+				int parent = (i - 1) >> 1;
+				if(keys[parent] <= key)
+					break;
+				heap[i] = heap[parent];
+				keys[i] = keys[parent];
+				i = parent;
+			}
+			heap[i] = c;
+			keys[i] = key;
+		}
+
+		private int pop()
+		{
+			int result = heap[0];
+			int c = heap[--heapSize];
+			float key = keys[heapSize];
+			int i = 0;
+			while(true)
+			{
+				int child = (i << 1) + 1;
+				if(child >= heapSize)
+					break;
+				if(child + 1 < heapSize && keys[child + 1] < keys[child])
+					child++;
+				if(key <= keys[child])
+					break;
+				heap[i] = heap[child];
+				keys[i] = keys[child];
+				i = child;
+			}
+			heap[i] = c;
+			keys[i] = key;
+			return result;
+		}
+	}
+
+	/**
+	 * Узел графа входов.
+	 */
+	private static class AbstractNode implements Comparable<AbstractNode>
+	{
+		final Cluster cluster;
+		final int index;
+		float costFromStart, totalCost;
+		boolean closed;
+		AbstractNode parent;
+
+		AbstractNode(Cluster cluster, int index)
+		{
+			this.cluster = cluster;
+			this.index = index;
+		}
+
+		@Override
+		public int compareTo(AbstractNode o)
+		{
+			if(totalCost > o.totalCost)
+				return 1;
+			if(totalCost < o.totalCost)
+				return -1;
+			return 0;
+		}
+	}
+
+	/**
+	 * Состояние одного поиска по графу входов.
+	 */
+	private static class SearchContext
+	{
+		final Location startPoint, endPoint;
+		final int geoIndex;
+		Cluster startCluster, endCluster;
+		float[] startCosts, endCosts;
+		int itr;
+		/** границы области поиска в геокоординатах */
+		int minX, minY, maxX, maxY;
+
+		SearchContext(Location startPoint, Location endPoint, int geoIndex)
+		{
+			this.startPoint = startPoint;
+			this.endPoint = endPoint;
+			this.geoIndex = geoIndex;
+		}
+
+		boolean init()
+		{
+			startCluster = getClusterByGeo(startPoint.x, startPoint.y);
+			endCluster = getClusterByGeo(endPoint.x, endPoint.y);
+			if(startCluster == null || endCluster == null || startCluster == endCluster)
+				return false;
+
+			// область поиска как у обычного A*: наименьший буфер под PATHFIND_MAP_MUL от расстояния с центром в начальной точке
+			int diff = Math.max(Math.abs(endPoint.x - startPoint.x), Math.abs(endPoint.y - startPoint.y));
+			int size = (Config.PATHFIND_MAP_MUL * diff + 2 * PathFindBuffers.STEP_MAP_SIZE - 1) / PathFindBuffers.STEP_MAP_SIZE * PathFindBuffers.STEP_MAP_SIZE;
+			int half = Math.max(size, PathFindBuffers.MIN_MAP_SIZE) / 2;
+			minX = startPoint.x - half;
+			minY = startPoint.y - half;
+			maxX = startPoint.x + half - 1;
+			maxY = startPoint.y + half - 1;
+
+			ClusterSearch search = new ClusterSearch(startCluster, geoIndex);
+			startCosts = search.search(startPoint.x, startPoint.y, (short) startPoint.z);
+			itr += search.itr;
+
+			search = new ClusterSearch(endCluster, geoIndex);
+			endCosts = search.search(endPoint.x, endPoint.y, (short) endPoint.z);
+			itr += search.itr;
+
+			return true;
+		}
+
+		Long routeKey()
+		{
+			return (long) startCluster.id << 32 | endCluster.id;
+		}
+
+		Route search()
+		{
+			TLongObjectHashMap<AbstractNode> nodes = new TLongObjectHashMap<AbstractNode>();
+			PriorityQueue<AbstractNode> open = new PriorityQueue<AbstractNode>();
+
+			for(int i = 0; i < startCosts.length; i++)
+				if(startCosts[i] != UNREACHABLE)
+				{
+					AbstractNode node = new AbstractNode(startCluster, i);
+					node.costFromStart = startCosts[i];
+					node.totalCost = node.costFromStart + estimate(startCluster, i);
+					nodes.put(nodeKey(startCluster, i), node);
+					open.add(node);
+				}
+
+			AbstractNode best = null;
+			float bestCost = UNREACHABLE;
+
+			AbstractNode node;
+			while((node = open.poll()) != null)
+			{
+				// дальше только более дорогие пути
+				if(node.totalCost >= bestCost)
+					break;
+				node.closed = true;
+				itr++;
+
+				Cluster cluster = node.cluster;
+				int i = node.index;
+
+				if(cluster == endCluster && endCosts[i] != UNREACHABLE && node.costFromStart + endCosts[i] < bestCost)
+				{
+					best = node;
+					bestCost = node.costFromStart + endCosts[i];
+				}
+
+				// переход через границу
+				Cluster twin = getClusterByGeo(cluster.tx[i], cluster.ty[i]);
+				if(twin != null)
+				{
+					int j = twin.indexOf(cluster.tx[i], cluster.ty[i], cluster.tz[i]);
+					if(j >= 0)
+						relax(nodes, open, node, twin, j, 1f);
+				}
+
+				// переходы внутри кластера
+				float[] edges = cluster.getEdges()[i];
+				for(int j = 0; j < edges.length; j++)
+					if(j != i && edges[j] != UNREACHABLE)
+						relax(nodes, open, node, cluster, j, edges[j]);
+			}
+
+			if(best == null)
+				return null;
+
+			LinkedList<Location> points = new LinkedList<Location>();
+			int last = best.index;
+			AbstractNode first = best;
+			for(AbstractNode n = best; n != null; n = n.parent)
+			{
+				points.addFirst(new Location(n.cluster.ex[n.index], n.cluster.ey[n.index], n.cluster.ez[n.index]));
+				first = n;
+			}
+
+			return new Route(first.index, last, points.toArray(new Location[points.size()]));
+		}
+
+		private void relax(TLongObjectHashMap<AbstractNode> nodes, PriorityQueue<AbstractNode> open, AbstractNode from, Cluster cluster, int index, float step)
+		{
+			if(cluster.ex[index] < minX || cluster.ex[index] > maxX || cluster.ey[index] < minY || cluster.ey[index] > maxY)
+				return;
+
+			long key = nodeKey(cluster, index);
+			AbstractNode n = nodes.get(key);
+			float newCost = from.costFromStart + step;
+			if(n == null)
+				nodes.put(key, n = new AbstractNode(cluster, index));
+			else if(n.closed || n.costFromStart <= newCost)
+				return;
+			else
+				open.remove(n);
+
+			n.parent = from;
+			n.costFromStart = newCost;
+			n.totalCost = newCost + estimate(cluster, index);
+			open.add(n);
+		}
+
+		private float estimate(Cluster cluster, int index)
+		{
+			int dx = endPoint.x - cluster.ex[index];
+			int dy = endPoint.y - cluster.ey[index];
+			return (float) Math.sqrt(dx * dx + dy * dy);
+		}
+	}
+}
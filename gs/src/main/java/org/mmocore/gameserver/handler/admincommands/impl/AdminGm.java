@@ -1,6 +1,7 @@
 package org.mmocore.gameserver.handler.admincommands.impl;
 
 import org.mmocore.gameserver.handler.admincommands.IAdminCommandHandler;
+import org.mmocore.gameserver.model.GameObjectsStorage;
 import org.mmocore.gameserver.model.Player;
 
 /**
@@ -53,5 +54,6 @@ public class AdminGm implements IAdminCommandHandler
 			activeChar.getPlayerAccess().IsGM = true;
 			activeChar.sendMessage("You have GM status now.");
 		}
+		GameObjectsStorage.updatePlayer(activeChar);
 	}
 }
\ No newline at end of file
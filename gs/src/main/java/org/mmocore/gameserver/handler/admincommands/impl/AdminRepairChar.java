@@ -6,6 +6,7 @@ import java.sql.ResultSet;
 
 import org.mmocore.commons.dbutils.DbUtils;
 import org.mmocore.gameserver.database.DatabaseFactory;
+import org.mmocore.gameserver.database.PersistenceService;
 import org.mmocore.gameserver.handler.admincommands.IAdminCommandHandler;
 import org.mmocore.gameserver.model.Player;
 
@@ -33,11 +34,6 @@ public class AdminRepairChar implements IAdminCommandHandler
 		try
 		{
 			con = DatabaseFactory.getInstance().getConnection();
-			statement = con.prepareStatement("UPDATE characters SET x=-84318, y=244579, z=-3730 WHERE char_name=?");
-			statement.setString(1, wordList[1]);
-			statement.execute();
-			DbUtils.close(statement);
-
 			statement = con.prepareStatement("SELECT obj_id FROM characters where char_name=?");
 			statement.setString(1, wordList[1]);
 			rset = statement.executeQuery();
@@ -50,6 +46,14 @@ public class AdminRepairChar implements IAdminCommandHandler
 			if(objId == 0)
 				return false;
 
+			// отложенная запись персонажа и предметов не должна затереть исправления
+			PersistenceService.getInstance().flush(objId);
+
+			statement = con.prepareStatement("UPDATE characters SET x=-84318, y=244579, z=-3730 WHERE obj_id=?");
+			statement.setInt(1, objId);
+			statement.execute();
+			DbUtils.close(statement);
+
 			// con = L2DatabaseFactory.getInstance().getConnection();
 			statement = con.prepareStatement("DELETE FROM character_shortcuts WHERE object_id=?");
 			statement.setInt(1, objId);
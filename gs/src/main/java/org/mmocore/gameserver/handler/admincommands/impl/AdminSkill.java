@@ -128,6 +128,10 @@ public class AdminSkill implements IAdminCommandHandler
 			str.append(calculator._stat.getValue().toString());
 			str.append(", prevValue: ");
 			str.append(calculator.getLast());
+			str.append(", cache hits/misses: ");
+			str.append(calculator.getCacheHits());
+			str.append("/");
+			str.append(calculator.getCacheMisses());
 			str.append("\r\n");
 			Func[] funcs = calculator.getFunctions();
 			for(int i = 0; i < funcs.length; i++)
@@ -0,0 +1,450 @@
+package org.mmocore.gameserver.instancemanager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.ArrayUtils;
+import org.mmocore.gameserver.data.xml.holder.ItemHolder;
+import org.mmocore.gameserver.data.xml.holder.RecipeHolder;
+import org.mmocore.gameserver.model.GameObject;
+import org.mmocore.gameserver.model.Player;
+import org.mmocore.gameserver.model.Recipe;
+import org.mmocore.gameserver.model.World;
+import org.mmocore.gameserver.model.WorldRegion;
+import org.mmocore.gameserver.model.items.ManufactureItem;
+import org.mmocore.gameserver.model.items.TradeItem;
+import org.mmocore.gameserver.templates.item.ItemTemplate;
+import org.napile.primitive.maps.IntObjectMap;
+import org.napile.primitive.maps.impl.CHashIntObjectMap;
+
+/**
+ * Индекс частных магазинов игроков.<BR>
+ * Обновляется при открытии, изменении и закрытии магазина, см. {@link #update(Player)}.
+ * Для каждого типа магазина (продажа, покупка, крафт) хранит по itemId предложения, упорядоченные по цене,
+ * магазины по регионам для выборки торговцев рядом с объектом,
+ * а также индекс слов из названий предметов, которые сейчас есть в магазинах, для поиска по началу слова.<BR>
+ * Изменения выполняются под блокировкой индекса, чтение без блокировок.
+ */
+public class PrivateStoreIndex
+{
+	public static final int SELL = 0;
+	public static final int BUY = 1;
+	public static final int MANUFACTURE = 2;
+
+	private static final Offer[] EMPTY_OFFERS = new Offer[0];
+
+	private static final Comparator<Offer> PRICE_ORDER = new Comparator<Offer>()
+	{
+		@Override
+		public int compare(Offer o1, Offer o2)
+		{
+			if(o1._price != o2._price)
+				return o1._price < o2._price ? -1 : 1;
+			return o1._id < o2._id ? -1 : o1._id == o2._id ? 0 : 1;
+		}
+	};
+
+	private static final PrivateStoreIndex _instance = new PrivateStoreIndex();
+
+	public static PrivateStoreIndex getInstance()
+	{
+		return _instance;
+	}
+
+	/** предложения по itemId для каждого типа магазина */
+	@SuppressWarnings("unchecked")
+	private final IntObjectMap<NavigableSet<Offer>>[] _books = new IntObjectMap[] { new CHashIntObjectMap<NavigableSet<Offer>>(), new CHashIntObjectMap<NavigableSet<Offer>>(), new CHashIntObjectMap<NavigableSet<Offer>>() };
+	/** предложения торговца по objectId */
+	private final IntObjectMap<Offer[]> _merchants = new CHashIntObjectMap<Offer[]>();
+	/** предложения торговцев по региону, в котором открыт магазин */
+	private final Map<WorldRegion, RegionOffers> _regions = new ConcurrentHashMap<WorldRegion, RegionOffers>();
+	/** регион, в котором проиндексирован магазин торговца */
+	private final IntObjectMap<RegionOffers> _merchantRegions = new CHashIntObjectMap<RegionOffers>();
+	/** увеличивается при появлении нового региона с магазинами */
+	private volatile long _regionsVersion;
+	/** слово из названия -> itemId, массивы не изменяются, а заменяются */
+	private final ConcurrentNavigableMap<String, int[]> _tokens = new ConcurrentSkipListMap<String, int[]>();
+
+	private final AtomicLong _offerId = new AtomicLong();
+
+	/**
+	 * Переиндексировать магазин игрока по текущему типу магазина и спискам.
+	 * Вызывается при открытии, закрытии магазина и после сделки.
+	 */
+	public synchronized void update(Player player)
+	{
+		Offer[] offers = createOffers(player);
+		Offer[] old = offers.length > 0 ? _merchants.put(player.getObjectId(), offers) : _merchants.remove(player.getObjectId());
+		if(old != null)
+			for(Offer offer : old)
+				removeOffer(offer);
+		for(Offer offer : offers)
+			addOffer(offer);
+		updateRegion(player, offers);
+	}
+
+	/**
+	 * Убрать магазин игрока из индекса. Вызывается при удалении игрока из мира.
+	 */
+	public synchronized void remove(Player player)
+	{
+		Offer[] old = _merchants.remove(player.getObjectId());
+		if(old != null)
+			for(Offer offer : old)
+				removeOffer(offer);
+		updateRegion(player, EMPTY_OFFERS);
+	}
+
+	/**
+	 * Перенести магазин торговца в индекс по регионам. Торговец не двигается, пока магазин открыт,
+	 * поэтому регион запоминается при индексации.
+	 */
+	private void updateRegion(Player player, Offer[] offers)
+	{
+		RegionOffers old = _merchantRegions.remove(player.getObjectId());
+		if(old != null)
+		{
+			old.merchants.remove(player.getObjectId());
+			old.version++;
+		}
+
+		WorldRegion region = player.getCurrentRegion();
+		if(offers.length == 0 || region == null)
+			return;
+
+		RegionOffers bucket = _regions.get(region);
+		if(bucket == null)
+		{
+			_regions.put(region, bucket = new RegionOffers(region));
+			_regionsVersion++;
+		}
+		bucket.merchants.put(player.getObjectId(), offers);
+		bucket.version++;
+		_merchantRegions.put(player.getObjectId(), bucket);
+	}
+
+	/**
+	 * @param book {@link #SELL}, {@link #BUY} или {@link #MANUFACTURE}
+	 * @return предложения по предмету в порядке возрастания цены
+	 */
+	public Collection<Offer> getOffers(int book, int itemId)
+	{
+		NavigableSet<Offer> offers = _books[book].get(itemId);
+		return offers == null ? Collections.<Offer> emptySet() : Collections.unmodifiableCollection(offers);
+	}
+
+	/**
+	 * @return предложения торговцев из регионов, соседних с регионом объекта, сгруппированные по торговцу.
+	 * Отражения не учитываются.
+	 */
+	public List<Offer[]> getNeighborOffers(GameObject object)
+	{
+		WorldRegion region = object.getCurrentRegion();
+		if(region == null)
+			return Collections.emptyList();
+
+		List<Offer[]> result = new ArrayList<Offer[]>();
+		for(RegionOffers bucket : _regions.values())
+			if(World.isNeighbors(region, bucket.region))
+				result.addAll(bucket.merchants.values());
+		return result;
+	}
+
+	/**
+	 * @return версия магазинов вокруг объекта, увеличивается при любом изменении магазинов в соседних регионах
+	 */
+	public long getNeighborVersion(GameObject object)
+	{
+		long version = _regionsVersion;
+		WorldRegion region = object.getCurrentRegion();
+		if(region != null)
+			for(RegionOffers bucket : _regions.values())
+				if(World.isNeighbors(region, bucket.region))
+					version += bucket.version;
+		return version;
+	}
+
+	/**
+	 * @return предложения магазина игрока, пустой массив, если игрок не торгует
+	 */
+	public Offer[] getOffers(Player player)
+	{
+		Offer[] offers = _merchants.get(player.getObjectId());
+		return offers == null ? EMPTY_OFFERS : offers;
+	}
+
+	/**
+	 * Найти предметы, которые есть в магазинах указанного типа, по началу слов в названии.
+	 * Каждый из поисковых запросов должен быть началом какого-либо слова названия.
+	 * @return itemId найденных предметов
+	 */
+	public int[] find(int book, String... search)
+	{
+		int[] result = null;
+		for(String line : search)
+			for(String token : tokenize(line))
+			{
+				int[] found = ArrayUtils.EMPTY_INT_ARRAY;
+				for(int[] ids : _tokens.subMap(token, true, token + Character.MAX_VALUE, true).values())
+					found = union(found, ids);
+				result = result == null ? found : intersect(result, found);
+				if(result.length == 0)
+					return result;
+			}
+
+		if(result == null)
+			return ArrayUtils.EMPTY_INT_ARRAY;
+
+		int size = 0;
+		for(int itemId : result)
+			if(_books[book].containsKey(itemId))
+				result[size++] = itemId;
+		return Arrays.copyOf(result, size);
+	}
+
+	private Offer[] createOffers(Player player)
+	{
+		List<Offer> offers = new ArrayList<Offer>();
+		switch(player.getPrivateStoreType())
+		{
+			case Player.STORE_PRIVATE_SELL:
+				for(TradeItem item : player.getSellList())
+					offers.add(new Offer(player, SELL, item.getItemId(), item.getOwnersPrice(), item.getCount(), item.getEnchantLevel(), item, false));
+				break;
+			case Player.STORE_PRIVATE_SELL_PACKAGE:
+				long packagePrice = 0;
+				for(TradeItem item : player.getSellList())
+					packagePrice += item.getOwnersPrice() * item.getCount();
+				for(TradeItem item : player.getSellList())
+					offers.add(new Offer(player, SELL, item.getItemId(), packagePrice, item.getCount(), item.getEnchantLevel(), item, true));
+				break;
+			case Player.STORE_PRIVATE_BUY:
+				for(TradeItem item : player.getBuyList())
+					offers.add(new Offer(player, BUY, item.getItemId(), item.getOwnersPrice(), item.getCount(), item.getEnchantLevel(), item, false));
+				break;
+			case Player.STORE_PRIVATE_MANUFACTURE:
+				for(ManufactureItem item : player.getCreateList())
+				{
+					Recipe recipe = RecipeHolder.getInstance().getRecipeByRecipeId(item.getRecipeId());
+					if(recipe != null)
+						offers.add(new Offer(player, MANUFACTURE, recipe.getItemId(), item.getCost(), recipe.getCount(), 0, null, false));
+				}
+				break;
+		}
+		return offers.isEmpty() ? EMPTY_OFFERS : offers.toArray(new Offer[offers.size()]);
+	}
+
+	private void addOffer(Offer offer)
+	{
+		ItemTemplate template = ItemHolder.getInstance().getTemplate(offer._itemId);
+		if(template == null)
+			return;
+
+		IntObjectMap<NavigableSet<Offer>> book = _books[offer._book];
+		NavigableSet<Offer> offers = book.get(offer._itemId);
+		if(offers == null)
+		{
+			if(!isListed(offer._itemId))
+				for(String token : tokenize(template.getName()))
+				{
+					int[] ids = _tokens.get(token);
+					_tokens.put(token, ids == null ? new int[] { offer._itemId } : ArrayUtils.add(ids, offer._itemId));
+				}
+			book.put(offer._itemId, offers = new ConcurrentSkipListSet<Offer>(PRICE_ORDER));
+		}
+		offers.add(offer);
+	}
+
+	private void removeOffer(Offer offer)
+	{
+		IntObjectMap<NavigableSet<Offer>> book = _books[offer._book];
+		NavigableSet<Offer> offers = book.get(offer._itemId);
+		if(offers == null || !offers.remove(offer) || !offers.isEmpty())
+			return;
+
+		book.remove(offer._itemId);
+		if(isListed(offer._itemId))
+			return;
+
+		ItemTemplate template = ItemHolder.getInstance().getTemplate(offer._itemId);
+		if(template != null)
+			for(String token : tokenize(template.getName()))
+			{
+				int[] ids = _tokens.get(token);
+				if(ids == null)
+					continue;
+				ids = ArrayUtils.removeElement(ids, offer._itemId);
+				if(ids.length == 0)
+					_tokens.remove(token);
+				else
+					_tokens.put(token, ids);
+			}
+	}
+
+	private boolean isListed(int itemId)
+	{
+		for(IntObjectMap<NavigableSet<Offer>> book : _books)
+			if(book.containsKey(itemId))
+				return true;
+		return false;
+	}
+
+	private static List<String> tokenize(String name)
+	{
+		List<String> tokens = new ArrayList<String>(4);
+		int start = -1;
+		for(int i = 0; i <= name.length(); i++)
+		{
+			boolean letter = i < name.length() && Character.isLetterOrDigit(name.charAt(i));
+			if(letter && start < 0)
+				start = i;
+			else if(!letter && start >= 0)
+			{
+				String token = name.substring(start, i).toLowerCase();
+				if(!tokens.contains(token))
+					tokens.add(token);
+				start = -1;
+			}
+		}
+		return tokens;
+	}
+
+	private static int[] union(int[] a, int[] b)
+	{
+		if(a.length == 0)
+			return b.clone();
+		for(int id : b)
+			if(!ArrayUtils.contains(a, id))
+				a = ArrayUtils.add(a, id);
+		return a;
+	}
+
+	private static int[] intersect(int[] a, int[] b)
+	{
+		int size = 0;
+		for(int id : a)
+			if(ArrayUtils.contains(b, id))
+				a[size++] = id;
+		return Arrays.copyOf(a, size);
+	}
+
+	public CharSequence getStats()
+	{
+		StringBuilder list = new StringBuilder();
+
+		int offers = 0;
+		for(Offer[] o : _merchants.values())
+			offers += o.length;
+
+		list.append("Merchants: ....... ").append(_merchants.size()).append("\n");
+		list.append("Offers: .......... ").append(offers).append("\n");
+		list.append("Items, sell: ..... ").append(_books[SELL].size()).append("\n");
+		list.append("Items, buy: ...... ").append(_books[BUY].size()).append("\n");
+		list.append("Items, craft: .... ").append(_books[MANUFACTURE].size()).append("\n");
+		list.append("Name tokens: ..... ").append(_tokens.size()).append("\n");
+		list.append("Regions: ......... ").append(_regions.size()).append("\n");
+
+		return list;
+	}
+
+	/**
+	 * Магазины одного региона. Изменяются под блокировкой индекса.
+	 */
+	private static class RegionOffers
+	{
+		private final WorldRegion region;
+		private final IntObjectMap<Offer[]> merchants = new CHashIntObjectMap<Offer[]>();
+		private volatile long version;
+
+		private RegionOffers(WorldRegion region)
+		{
+			this.region = region;
+		}
+	}
+
+	/**
+	 * Предложение в магазине. Значения зафиксированы на момент индексации магазина.
+	 */
+	public static class Offer
+	{
+		private final long _id;
+		private final Player _merchant;
+		private final int _book;
+		private final int _itemId;
+		private final long _price;
+		private final long _count;
+		private final int _enchant;
+		private final TradeItem _item;
+		private final boolean _package;
+
+		private Offer(Player merchant, int book, int itemId, long price, long count, int enchant, TradeItem item, boolean isPackage)
+		{
+			_id = getInstance()._offerId.incrementAndGet();
+			_merchant = merchant;
+			_book = book;
+			_itemId = itemId;
+			_price = price;
+			_count = count;
+			_enchant = enchant;
+			_item = item;
+			_package = isPackage;
+		}
+
+		public Player getMerchant()
+		{
+			return _merchant;
+		}
+
+		public int getBook()
+		{
+			return _book;
+		}
+
+		public int getItemId()
+		{
+			return _itemId;
+		}
+
+		/**
+		 * @return цена за единицу, для продажи упаковкой - цена всей упаковки
+		 */
+		public long getPrice()
+		{
+			return _price;
+		}
+
+		public long getCount()
+		{
+			return _count;
+		}
+
+		public int getEnchantLevel()
+		{
+			return _enchant;
+		}
+
+		/**
+		 * @return предмет из списка магазина, null для крафта
+		 */
+		public TradeItem getTradeItem()
+		{
+			return _item;
+		}
+
+		public boolean isPackage()
+		{
+			return _package;
+		}
+	}
+}
@@ -0,0 +1,273 @@
+package org.mmocore.gameserver.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.mmocore.commons.net.nio.impl.SelectorStats;
+import org.mmocore.commons.threading.RunnableImpl;
+import org.mmocore.gameserver.Config;
+import org.mmocore.gameserver.GameServer;
+import org.mmocore.gameserver.ThreadPoolManager;
+import org.mmocore.gameserver.network.l2.components.IBroadcastPacket;
+import org.mmocore.gameserver.network.l2.s2c.L2GameServerPacket;
+
+/**
+ * Рассылка окружающим с учетом удаления получателей от источника.<BR>
+ * Получатели делятся на кольца по {@link Config#BROADCAST_INTEREST_RINGS}. Ближайшее кольцо получает все пакеты сразу,
+ * дальние кольца получают пакеты перемещения и анимации не чаще интервала кольца из {@link Config#BROADCAST_INTEREST_INTERVALS}:
+ * <li>{@link #POSITION} - получателям, пропустившим последний пакет, он отправляется по истечении интервала их кольца.
+ * Кольцо получателя запоминается в момент откладывания пакета</li>
+ * <li>{@link #ANIMATION} - лишние пакеты не отправляются</li>
+ * <li>{@link #POSITION_RESET} - отправляется всем сразу и отменяет отложенные пакеты перемещения,
+ * как и пакет перемещения, разосланный всем обычным способом</li>
+ * <li>{@link #CRITICAL} - отправляется всем сразу</li>
+ * Включается только при количестве получателей не меньше {@link Config#BROADCAST_INTEREST_MIN_OBSERVERS}.
+ */
+public final class BroadcastInterest
+{
+	public static final int CRITICAL = 0;
+	public static final int POSITION = 1;
+	public static final int ANIMATION = 2;
+	public static final int POSITION_RESET = 3;
+
+	private final Creature _source;
+	/** время, раньше которого кольцу нельзя отправлять, по виду пакета и кольцу */
+	private final long[] _nextPosition;
+	private final long[] _nextAnimation;
+	/** последний пакет перемещения, который получили не все */
+	private IBroadcastPacket[] _pendingPackets;
+	/** получатели, пропустившие последний пакет перемещения, по кольцам на момент пропуска */
+	private final List<Player>[] _pendingPlayers;
+	/** номер последней рассылки перемещения или отмены, отложенные пакеты запоминает только последняя */
+	private long _positionSeq;
+	private boolean _flushScheduled;
+
+	@SuppressWarnings("unchecked")
+	BroadcastInterest(Creature source)
+	{
+		int rings = Config.BROADCAST_INTEREST_RINGS.length + 1;
+		_source = source;
+		_nextPosition = new long[rings];
+		_nextAnimation = new long[rings];
+		_pendingPlayers = new List[rings];
+	}
+
+	/**
+	 * Разослать пакеты окружающим с учетом удаления.
+	 * @return false, если пакеты нужно разослать всем обычным способом
+	 */
+	public static boolean broadcast(Creature source, List<Player> players, IBroadcastPacket[] packets)
+	{
+		int interest = getInterest(packets);
+		// пакет перемещения, разосланный всем, тоже отменяет отложенные, иначе они придут после него
+		if(interest == POSITION_RESET || interest == POSITION && players.size() < Config.BROADCAST_INTEREST_MIN_OBSERVERS)
+		{
+			BroadcastInterest state = source.getBroadcastInterest(false);
+			if(state != null)
+				state.clearPending();
+			return false;
+		}
+
+		if(interest == CRITICAL || players.size() < Config.BROADCAST_INTEREST_MIN_OBSERVERS)
+			return false;
+
+		source.getBroadcastInterest(true).broadcast(players, packets, interest);
+		return true;
+	}
+
+	/**
+	 * @return общий вид пакетов, {@link #CRITICAL}, если виды различаются
+	 */
+	private static int getInterest(IBroadcastPacket[] packets)
+	{
+		int interest = -1;
+		for(IBroadcastPacket p : packets)
+		{
+			int i = p instanceof L2GameServerPacket ? ((L2GameServerPacket) p).getBroadcastInterest() : CRITICAL;
+			if(i == POSITION_RESET)
+				return POSITION_RESET;
+			if(interest == -1)
+				interest = i;
+			else if(interest != i)
+				interest = CRITICAL;
+		}
+		return interest == -1 ? CRITICAL : interest;
+	}
+
+	/**
+	 * @return номер кольца, в котором находится получатель
+	 */
+	private int getRing(Player player)
+	{
+		long dx = player.getX() - _source.getX();
+		long dy = player.getY() - _source.getY();
+		long dist = dx * dx + dy * dy;
+		int[] rings = Config.BROADCAST_INTEREST_RINGS;
+		int ring = 0;
+		while(ring < rings.length && dist > (long) rings[ring] * rings[ring])
+			ring++;
+		return ring;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void broadcast(List<Player> players, IBroadcastPacket[] packets, int interest)
+	{
+		int rings = _pendingPlayers.length;
+		boolean[] allowed = new boolean[rings];
+		allowed[0] = true;
+
+		long now = System.currentTimeMillis();
+		long[] next = interest == POSITION ? _nextPosition : _nextAnimation;
+		long seq = 0;
+		synchronized (this)
+		{
+			for(int ring = 1; ring < rings; ring++)
+				if(now >= next[ring])
+				{
+					allowed[ring] = true;
+					next[ring] = now + Config.BROADCAST_INTEREST_INTERVALS[ring - 1];
+				}
+			if(interest == POSITION)
+				seq = ++_positionSeq;
+		}
+
+		for(IBroadcastPacket p : packets)
+			Creature.shareBroadcastPacket(p);
+
+		int[] sent = new int[rings];
+		int[] skipped = new int[rings];
+		List<Player>[] pending = interest == POSITION ? new List[rings] : null;
+		Player target;
+		for(int i = 0; i < players.size(); i++)
+		{
+			target = players.get(i);
+			int ring = getRing(target);
+			if(allowed[ring])
+			{
+				target.sendPacket(packets);
+				sent[ring]++;
+			}
+			else
+			{
+				skipped[ring]++;
+				if(pending != null)
+				{
+					if(pending[ring] == null)
+						pending[ring] = new ArrayList<Player>();
+					pending[ring].add(target);
+				}
+			}
+		}
+
+		if(pending != null)
+		{
+			boolean schedule = false;
+			synchronized (this)
+			{
+				// получатели последнего пакета перемещения определяют, кому и что досылать, прежние отложенные не нужны
+				if(seq == _positionSeq)
+				{
+					_pendingPackets = packets;
+					boolean found = false;
+					for(int ring = 1; ring < rings; ring++)
+					{
+						_pendingPlayers[ring] = pending[ring];
+						found |= pending[ring] != null;
+					}
+					if(found && !_flushScheduled)
+						schedule = _flushScheduled = true;
+				}
+			}
+
+			if(schedule)
+				scheduleFlush(now);
+		}
+
+		SelectorStats stats = GameServer.getInstance().getSelectorStats();
+		for(int ring = 0; ring < rings; ring++)
+			if(sent[ring] > 0 || skipped[ring] > 0)
+				stats.increaseInterestPackets(ring, sent[ring], interest == POSITION ? skipped[ring] : 0, interest == POSITION ? 0 : skipped[ring]);
+	}
+
+	private void scheduleFlush(long now)
+	{
+		long time = Long.MAX_VALUE;
+		synchronized (this)
+		{
+			for(int ring = 1; ring < _pendingPlayers.length; ring++)
+				if(_pendingPlayers[ring] != null)
+					time = Math.min(time, _nextPosition[ring]);
+			if(time == Long.MAX_VALUE)
+			{
+				_flushScheduled = false;
+				return;
+			}
+		}
+
+		ThreadPoolManager.getInstance().schedule(new FlushTask(), Math.max(0, time - now));
+	}
+
+	private synchronized void clearPending()
+	{
+		_positionSeq++;
+		_pendingPackets = null;
+		Arrays.fill(_pendingPlayers, null);
+	}
+
+	private class FlushTask extends RunnableImpl
+	{
+		@SuppressWarnings("unchecked")
+		@Override
+		public void runImpl() throws Exception
+		{
+			int rings = _pendingPlayers.length;
+			List<Player>[] flush = new List[rings];
+			IBroadcastPacket[] packets;
+			long now = System.currentTimeMillis();
+			boolean found = false;
+			boolean reschedule = false;
+			synchronized (BroadcastInterest.this)
+			{
+				_flushScheduled = false;
+				packets = _pendingPackets;
+				for(int ring = 1; ring < rings; ring++)
+					if(_pendingPlayers[ring] != null && now >= _nextPosition[ring])
+					{
+						flush[ring] = _pendingPlayers[ring];
+						_pendingPlayers[ring] = null;
+						_nextPosition[ring] = now + Config.BROADCAST_INTEREST_INTERVALS[ring - 1];
+						found = true;
+					}
+					else if(_pendingPlayers[ring] != null)
+						reschedule = _flushScheduled = true;
+			}
+
+			if(reschedule)
+				scheduleFlush(now);
+
+			if(!found || packets == null || !_source.isVisible())
+				return;
+
+			for(IBroadcastPacket p : packets)
+				Creature.shareBroadcastPacket(p);
+
+			SelectorStats stats = GameServer.getInstance().getSelectorStats();
+			for(int ring = 1; ring < rings; ring++)
+			{
+				if(flush[ring] == null)
+					continue;
+
+				int sent = 0;
+				for(Player target : flush[ring])
+					if(target.isOnline())
+					{
+						target.sendPacket(packets);
+						sent++;
+					}
+				if(sent > 0)
+					stats.increaseInterestPackets(ring, sent, 0, 0);
+			}
+		}
+	}
+}
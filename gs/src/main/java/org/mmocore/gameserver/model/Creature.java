@@ -13,6 +13,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -99,6 +100,7 @@ import org.mmocore.gameserver.stats.funcs.Func;
 import org.mmocore.gameserver.stats.triggers.TriggerInfo;
 import org.mmocore.gameserver.stats.triggers.TriggerType;
 import org.mmocore.gameserver.taskmanager.LazyPrecisionTaskManager;
+import org.mmocore.gameserver.taskmanager.MoveTaskManager;
 import org.mmocore.gameserver.taskmanager.RegenTaskManager;
 import org.mmocore.gameserver.templates.CharTemplate;
 import org.mmocore.gameserver.templates.item.WeaponTemplate;
@@ -247,7 +249,7 @@ public abstract class Creature extends GameObject
 
 				_previousSpeed = speed;
 				_startMoveTime = now;
-				_moveTask = ThreadPoolManager.getInstance().schedule(this, getMoveTickInterval());
+				_moveTask = MoveTaskManager.getInstance(Creature.this).schedule(this, getMoveTickInterval());
 			}
 			catch(Exception e)
 			{
@@ -376,6 +378,8 @@ public abstract class Creature extends GameObject
 	private int _heading;
 
 	private final Calculator[] _calculators;
+	/** Версия состояния владельцев функций, меняется при их включении/выключении */
+	private final AtomicInteger _funcOwnersVersion = new AtomicInteger();
 
 	protected CharTemplate _template;
 	protected CharTemplate _baseTemplate;
@@ -681,6 +685,19 @@ public abstract class Creature extends GameObject
 		return _calculators;
 	}
 
+	public int getFuncOwnersVersion()
+	{
+		return _funcOwnersVersion.get();
+	}
+
+	/**
+	 * Вызывается при включении/выключении владельца функций (см. FuncOwner), сбрасывает кеш калькуляторов.
+	 */
+	public void onFuncOwnerChanged()
+	{
+		_funcOwnersVersion.incrementAndGet();
+	}
+
 	public final void addStatFunc(Func f)
 	{
 		if(f == null)
@@ -864,6 +881,13 @@ public abstract class Creature extends GameObject
 			return;
 
 		List<Player> players = World.getAroundObservers(this);
+		if(Config.BROADCAST_INTEREST_MANAGEMENT && BroadcastInterest.broadcast(this, players, packets))
+			return;
+
+		if(players.size() > 1)
+			for(IBroadcastPacket p : packets)
+				shareBroadcastPacket(p);
+
 		Player target;
 		for(int i = 0; i < players.size(); i++)
 		{
@@ -878,6 +902,13 @@ public abstract class Creature extends GameObject
 			return;
 
 		List<Player> players = World.getAroundObservers(this);
+		if(Config.BROADCAST_INTEREST_MANAGEMENT && BroadcastInterest.broadcast(this, players, packets.toArray(new IBroadcastPacket[packets.size()])))
+			return;
+
+		if(players.size() > 1)
+			for(IBroadcastPacket p : packets)
+				shareBroadcastPacket(p);
+
 		Player target;
 		for(int i = 0; i < players.size(); i++)
 		{
@@ -886,6 +917,31 @@ public abstract class Creature extends GameObject
 		}
 	}
 
+	/**
+	 * Состояние рассылки с учетом удаления получателей, создается при первой прореженной рассылке.
+	 */
+	private volatile BroadcastInterest _broadcastInterest;
+
+	public BroadcastInterest getBroadcastInterest(boolean create)
+	{
+		if(_broadcastInterest == null && create)
+			synchronized (this)
+			{
+				if(_broadcastInterest == null)
+					_broadcastInterest = new BroadcastInterest(this);
+			}
+		return _broadcastInterest;
+	}
+
+	/**
+	 * Пакет, рассылаемый нескольким игрокам, сериализуется один раз для всех получателей
+	 */
+	protected static void shareBroadcastPacket(IBroadcastPacket p)
+	{
+		if(p instanceof L2GameServerPacket)
+			((L2GameServerPacket) p).share();
+	}
+
 	public void broadcastToStatusListeners(L2GameServerPacket... packets)
 	{
 		if(!isVisible() || packets.length == 0)
@@ -2538,7 +2594,7 @@ public abstract class Creature extends GameObject
 		_startMoveTime = _followTimestamp = System.currentTimeMillis();
 		if(_moveTaskRunnable == null)
 			_moveTaskRunnable = new MoveNextTask();
-		_moveTask = ThreadPoolManager.getInstance().schedule(_moveTaskRunnable.setDist(distance), getMoveTickInterval());
+		_moveTask = MoveTaskManager.getInstance(this).schedule(_moveTaskRunnable.setDist(distance), getMoveTickInterval());
 	}
 
 	public int getMoveTickInterval()
@@ -175,7 +175,10 @@ public abstract class Effect extends RunnableImpl implements Comparable<Effect>,
 
 	public void setInUse(boolean inUse)
 	{
+		if(_inUse == inUse)
+			return;
 		_inUse = inUse;
+		_effected.onFuncOwnerChanged();
 	}
 
 	public boolean isActive()
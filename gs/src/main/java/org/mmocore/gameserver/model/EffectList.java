@@ -4,8 +4,11 @@ import gnu.trove.TIntHashSet;
 import gnu.trove.TIntObjectHashMap;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -33,6 +36,109 @@ public class EffectList
 	private Creature _actor;
 	private List<Effect> _effects;
 	private Lock _lock = new ReentrantLock();
+	/** индексы эффектов, пересоздаются при изменении списка под _lock, читаются без блокировки */
+	private volatile EffectIndex _index = EffectIndex.EMPTY;
+
+	/**
+	 * Неизменяемый снимок списка эффектов с индексами по скиллу, типу стека, типу эффекта и слоту.
+	 * Массивы и списки снимка общие для всех читателей и не должны изменяться.
+	 */
+	private static class EffectIndex
+	{
+		static final EffectIndex EMPTY = new EffectIndex(Effect.EMPTY_L2EFFECT_ARRAY);
+
+		/** эффекты в порядке списка */
+		final Effect[] all;
+		final TIntObjectHashMap<List<Effect>> bySkill = new TIntObjectHashMap<List<Effect>>();
+		/** первый эффект по основному типу стека, с учетом регистра */
+		final Map<String, Effect> byStackType = new HashMap<String, Effect>();
+		/** позиции эффектов по обоим типам стека в нижнем регистре */
+		final Map<String, int[]> byStackKey = new HashMap<String, int[]>();
+		final Effect[][] byType = new Effect[EffectType.values().length][];
+		/** число разных скиллов по типу слота */
+		final int[] slotSkills = new int[DEBUFF_SLOT_TYPE + 1];
+		/** последний эффект каждого скилла */
+		final Effect[] firstEffects;
+
+		EffectIndex(Effect[] effects)
+		{
+			all = effects;
+
+			TIntObjectHashMap<Effect> first = new TIntObjectHashMap<Effect>();
+			Map<String, List<Integer>> keys = new HashMap<String, List<Integer>>();
+			@SuppressWarnings("unchecked")
+			List<Effect>[] types = new List[byType.length];
+			TIntObjectHashMap<List<Effect>> skills = new TIntObjectHashMap<List<Effect>>();
+			TIntHashSet[] slots = new TIntHashSet[slotSkills.length];
+
+			for(int i = 0; i < effects.length; i++)
+			{
+				Effect e = effects[i];
+				int skillId = e.getSkill().getId();
+
+				List<Effect> list = skills.get(skillId);
+				if(list == null)
+					skills.put(skillId, list = new ArrayList<Effect>(2));
+				list.add(e);
+				first.put(skillId, e);
+
+				if(!byStackType.containsKey(e.getStackType()))
+					byStackType.put(e.getStackType(), e);
+				addStackKey(keys, e.getStackType(), i);
+				if(!e.getStackType2().equalsIgnoreCase(e.getStackType()))
+					addStackKey(keys, e.getStackType2(), i);
+
+				int type = e.getEffectType().ordinal();
+				if(types[type] == null)
+					types[type] = new ArrayList<Effect>(1);
+				types[type].add(e);
+
+				int slot = getSlotType(e);
+				if(slot != NONE_SLOT_TYPE)
+				{
+					if(slots[slot] == null)
+						slots[slot] = new TIntHashSet();
+					slots[slot].add(skillId);
+				}
+			}
+
+			for(int skillId : skills.keys())
+			{
+				List<Effect> list = skills.get(skillId);
+				bySkill.put(skillId, Collections.unmodifiableList(Arrays.asList(list.toArray(new Effect[list.size()]))));
+			}
+			for(Map.Entry<String, List<Integer>> entry : keys.entrySet())
+				byStackKey.put(entry.getKey(), ArrayUtils.toPrimitive(entry.getValue().toArray(new Integer[entry.getValue().size()])));
+			for(int i = 0; i < types.length; i++)
+				if(types[i] != null)
+					byType[i] = types[i].toArray(new Effect[types[i].size()]);
+			for(int i = 0; i < slots.length; i++)
+				if(slots[i] != null)
+					slotSkills[i] = slots[i].size();
+
+			firstEffects = first.getValues(new Effect[first.size()]);
+		}
+
+		private static void addStackKey(Map<String, List<Integer>> keys, String stackType, int position)
+		{
+			if(stackType.equals(EffectTemplate.NO_STACK))
+				return;
+
+			String key = stackType.toLowerCase();
+			List<Integer> positions = keys.get(key);
+			if(positions == null)
+				keys.put(key, positions = new ArrayList<Integer>(1));
+			positions.add(position);
+		}
+	}
+
+	/**
+	 * Пересоздать индексы после изменения списка, вызывается под _lock.
+	 */
+	private void updateIndex()
+	{
+		_index = _effects.isEmpty() ? EffectIndex.EMPTY : new EffectIndex(_effects.toArray(new Effect[_effects.size()]));
+	}
 
 	public EffectList(Creature owner)
 	{
@@ -54,16 +160,8 @@ public class EffectList
 	 */
 	public int getEffectsCountForSkill(int skill_id)
 	{
-		if(isEmpty())
-			return 0;
-
-		int count = 0;
-
-		for(Effect e : _effects)
-			if(e.getSkill().getId() == skill_id)
-				count++;
-
-		return count;
+		List<Effect> list = _index.bySkill.get(skill_id);
+		return list == null ? 0 : list.size();
 	}
 
 	/**
@@ -87,14 +185,8 @@ public class EffectList
 
 	public Effect getEffectByType(EffectType et)
 	{
-		if(isEmpty())
-			return null;
-
-		for(Effect e : _effects)
-			if(e.getEffectType() == et)
-				return e;
-
-		return null;
+		Effect[] effects = _index.byType[et.ordinal()];
+		return effects == null ? null : effects[0];
 	}
 
 	public List<Effect> getEffectsBySkill(SkillEntry skill)
@@ -104,69 +196,43 @@ public class EffectList
 		return getEffectsBySkillId(skill.getId());
 	}
 
+	/**
+	 * @return неизменяемый список эффектов скилла в порядке наложения, null если эффектов нет
+	 */
 	public List<Effect> getEffectsBySkillId(int skillId)
 	{
-		if(isEmpty())
-			return null;
-
-		List<Effect> list = new ArrayList<Effect>(2);
-		for(Effect e : _effects)
-			if(e.getSkill().getId() == skillId)
-				list.add(e);
-
-		return list.isEmpty() ? null : list;
+		return _index.bySkill.get(skillId);
 	}
 
 	public Effect getEffectByIndexAndType(int skillId, EffectType type)
 	{
-		if(isEmpty())
+		List<Effect> list = _index.bySkill.get(skillId);
+		if(list == null)
 			return null;
-		for(Effect e : _effects)
-			if(e.getSkill().getId() == skillId && e.getEffectType() == type)
-				return e;
+
+		for(int i = 0; i < list.size(); i++)
+			if(list.get(i).getEffectType() == type)
+				return list.get(i);
 
 		return null;
 	}
 
 	public Effect getEffectByStackType(String type)
 	{
-		if(isEmpty())
-			return null;
-		for(Effect e : _effects)
-			if(e.getStackType().equals(type))
-				return e;
-
-		return null;
+		return _index.byStackType.get(type);
 	}
 
 	public boolean containEffectFromSkills(int skillId)
 	{
-		if(isEmpty())
-			return false;
-
-		int sId;
-		for(Effect e : _effects)
-		{
-			sId = e.getSkill().getId();
-			if(skillId == sId)
-				return true;
-		}
-
-		return false;
+		return _index.bySkill.containsKey(skillId);
 	}
 
 	public boolean containEffectFromSkills(int[] skillIds)
 	{
-		if(isEmpty())
-			return false;
-
-		int skillId;
-		for(Effect e : _effects)
-		{
-			skillId = e.getSkill().getId();
-			if(ArrayUtils.contains(skillIds, skillId))
+		EffectIndex index = _index;
+		for(int skillId : skillIds)
+			if(index.bySkill.containsKey(skillId))
 				return true;
-		}
 
 		return false;
 	}
@@ -189,15 +255,8 @@ public class EffectList
 	 */
 	public Effect[] getAllFirstEffects()
 	{
-		if(isEmpty())
-			return Effect.EMPTY_L2EFFECT_ARRAY;
-
-		TIntObjectHashMap<Effect> map = new TIntObjectHashMap<Effect>();
-
-		for(Effect e : _effects)
-			map.put(e.getSkill().getId(), e);
-
-		return map.getValues(new Effect[map.size()]);
+		Effect[] effects = _index.firstEffects;
+		return effects.length == 0 ? effects : effects.clone();
 	}
 
 	private boolean checkSlotLimit(Effect newEffect, int count)
@@ -223,7 +282,7 @@ public class EffectList
 				return true;
 		}
 
-		if (_effects.size() < limit) // количество эффектов меньше лимита, нет смысла их перебирать
+		if (_index.slotSkills[slotType] < limit) // скиллов в слоте меньше лимита, нет смысла их перебирать
 			return true;
 
 		Effect head = null; // эффект который будет вытеснен
@@ -300,10 +359,14 @@ public class EffectList
 			if(_effects == null)
 				_effects = new CopyOnWriteArrayList<Effect>();
 
+			EffectIndex index = _index;
 			if(stackType.equals(EffectTemplate.NO_STACK))
+			{
 				// Удаляем такие же эффекты
-				for(Effect e : _effects)
+				List<Effect> sameSkill = index.bySkill.get(effect.getSkill().getId());
+				for(int i = 0; sameSkill != null && i < sameSkill.size(); i++)
 				{
+					Effect e = sameSkill.get(i);
 					if(!e.isInUse())
 						continue;
 
@@ -314,12 +377,36 @@ public class EffectList
 						else
 							return;
 				}
+			}
 			else
+			{
 				// Проверяем, нужно ли накладывать эффект, при совпадении StackType.
 				// Новый эффект накладывается только в том случае, если у него больше StackOrder и больше длительность.
 				// Если условия подходят - удаляем старый.
-				for(Effect e : _effects)
+				// Кандидаты - эффекты с совпадающим типом стека, в порядке списка
+				int[] positions1 = index.byStackKey.get(stackType.toLowerCase());
+				int[] positions2 = index.byStackKey.get(effect.getStackType2().toLowerCase());
+				if(positions2 == positions1)
+					positions2 = null;
+				int i1 = 0, i2 = 0;
+				while(positions1 != null && i1 < positions1.length || positions2 != null && i2 < positions2.length)
 				{
+					int position;
+					if(positions2 == null || i2 >= positions2.length)
+						position = positions1[i1++];
+					else if(positions1 == null || i1 >= positions1.length)
+						position = positions2[i2++];
+					else if(positions1[i1] < positions2[i2])
+						position = positions1[i1++];
+					else if(positions1[i1] > positions2[i2])
+						position = positions2[i2++];
+					else
+					{
+						position = positions1[i1++];
+						i2++;
+					}
+
+					Effect e = index.all[position];
 					if(!e.isInUse())
 						continue;
 
@@ -336,6 +423,7 @@ public class EffectList
 					if(!e.maybeScheduleNext(effect))
 						return;
 				}
+			}
 
 			// Проверяем на лимиты бафов/дебафов
 			if (!checkSlotLimit(effect, 0))
@@ -344,7 +432,8 @@ public class EffectList
 			// Добавляем новый эффект
 			if(!_effects.add(effect))
 				return;
-			
+
+			updateIndex();
 			effect.setInUse(true);
 		}
 		finally
@@ -386,6 +475,8 @@ public class EffectList
 
 			if(!_effects.remove(effect))
 				return;
+
+			updateIndex();
 		}
 		finally
 		{
@@ -410,12 +501,12 @@ public class EffectList
 
 	public void stopEffect(int skillId)
 	{
-		if(isEmpty())
+		List<Effect> list = _index.bySkill.get(skillId);
+		if(list == null)
 			return;
 
-		for(Effect e : _effects)
-			if(e.getSkill().getId() == skillId)
-				e.exit();
+		for(int i = 0; i < list.size(); i++)
+			list.get(i).exit();
 	}
 
 	public void stopEffect(SkillEntry skill)
@@ -436,12 +527,12 @@ public class EffectList
 
 	public void stopEffects(EffectType type)
 	{
-		if(isEmpty())
+		Effect[] effects = _index.byType[type.ordinal()];
+		if(effects == null)
 			return;
 
-		for(Effect e : _effects)
-			if(e.getEffectType() == type)
-				e.exit();
+		for(Effect e : effects)
+			e.exit();
 	}
 
 	/**
@@ -449,14 +540,14 @@ public class EffectList
 	 */
 	public void stopAllSkillEffects(EffectType type)
 	{
-		if(isEmpty())
+		Effect[] effects = _index.byType[type.ordinal()];
+		if(effects == null)
 			return;
 
 		TIntHashSet skillIds = new TIntHashSet();
 
-		for(Effect e : _effects)
-			if(e.getEffectType() == type)
-				skillIds.add(e.getSkill().getId());
+		for(Effect e : effects)
+			skillIds.add(e.getSkill().getId());
 
 		for(int skillId : skillIds.toArray())
 			stopEffect(skillId);
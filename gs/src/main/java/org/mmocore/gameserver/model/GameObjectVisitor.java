@@ -0,0 +1,13 @@
+package org.mmocore.gameserver.model;
+
+/**
+ * Обработчик объектов для запросов World.forEach*, позволяет обходить объекты вокруг без создания списков.
+ */
+public interface GameObjectVisitor<T extends GameObject>
+{
+	/**
+	 * @param object найденный объект
+	 * @return false, чтобы прекратить обход
+	 */
+	public boolean visit(T object);
+}
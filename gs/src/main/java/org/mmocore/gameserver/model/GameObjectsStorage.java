@@ -1,16 +1,26 @@
 package org.mmocore.gameserver.model;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
-import org.apache.commons.lang3.ArrayUtils;
 import org.mmocore.gameserver.Config;
+import org.mmocore.gameserver.model.entity.events.Event;
 import org.mmocore.gameserver.model.instances.NpcInstance;
 import org.napile.primitive.maps.IntObjectMap;
 import org.napile.primitive.maps.impl.CHashIntObjectMap;
 
 /**
+ * Хранилище всех объектов мира.<BR>
+ * Кроме основных таблиц поддерживаются индексы: NPC по npcId, игроки по клану, альянсу, событию и GM.
+ * Индексы возвращают неизменяемые списки, которые при изменении заменяются целиком, поэтому
+ * их можно обходить без блокировок и копирования. Индексы игроков обновляются через {@link #updatePlayer(Player)}
+ * при смене клана, альянса, прав доступа и событий.
+ *
  * @author VISTALL
  */
 public class GameObjectsStorage
@@ -19,6 +29,88 @@ public class GameObjectsStorage
 	private static IntObjectMap<NpcInstance> _npcs = new CHashIntObjectMap<NpcInstance>(60000 * Config.RATE_MOB_SPAWN);
 	private static IntObjectMap<Player> _players = new CHashIntObjectMap<Player>(Config.MAXIMUM_ONLINE_USERS);
 
+	private static final Event[] NO_EVENTS = new Event[0];
+
+	private static IntIndex<NpcInstance> _npcsByNpcId = new IntIndex<NpcInstance>();
+	private static IntIndex<Player> _playersByClan = new IntIndex<Player>();
+	private static IntIndex<Player> _playersByAlly = new IntIndex<Player>();
+	private static ConcurrentMap<Event, List<Player>> _playersByEvent = new ConcurrentHashMap<Event, List<Player>>();
+	private static volatile List<Player> _gms = Collections.emptyList();
+	/** ключи, по которым игрок сейчас находится в индексах */
+	private static IntObjectMap<PlayerKeys> _playerKeys = new CHashIntObjectMap<PlayerKeys>(Config.MAXIMUM_ONLINE_USERS);
+
+	private static class PlayerKeys
+	{
+		private int clanId;
+		private int allyId;
+		private boolean gm;
+		private Event[] events = NO_EVENTS;
+		private boolean removed;
+	}
+
+	/**
+	 * Индекс по целочисленному ключу. Чтение без блокировок, изменения последовательны.
+	 */
+	private static class IntIndex<T>
+	{
+		private final IntObjectMap<List<T>> _map = new CHashIntObjectMap<List<T>>();
+
+		public List<T> get(int key)
+		{
+			List<T> list = _map.get(key);
+			return list == null ? Collections.<T> emptyList() : list;
+		}
+
+		public synchronized void add(int key, T o)
+		{
+			_map.put(key, added(_map.get(key), o));
+		}
+
+		public synchronized void remove(int key, T o)
+		{
+			List<T> list = removed(_map.get(key), o);
+			if(list == null)
+				_map.remove(key);
+			else
+				_map.put(key, list);
+		}
+	}
+
+	/**
+	 * @return новый неизменяемый список с добавленным объектом
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T> List<T> added(List<T> list, T o)
+	{
+		int size = list == null ? 0 : list.size();
+		Object[] array = new Object[size + 1];
+		for(int i = 0; i < size; i++)
+			array[i] = list.get(i);
+		array[size] = o;
+		return Collections.unmodifiableList(Arrays.asList((T[]) array));
+	}
+
+	/**
+	 * @return новый неизменяемый список без объекта, null если список стал пустым
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T> List<T> removed(List<T> list, T o)
+	{
+		if(list == null)
+			return null;
+		int index = list.indexOf(o);
+		if(index < 0)
+			return list;
+		if(list.size() == 1)
+			return null;
+
+		Object[] array = new Object[list.size() - 1];
+		for(int i = 0, j = 0; i < list.size(); i++)
+			if(i != index)
+				array[j++] = list.get(i);
+		return Collections.unmodifiableList(Arrays.asList((T[]) array));
+	}
+
 	public static Player getPlayer(String name)
 	{
 		for(Player player : _players.values())
@@ -47,38 +139,97 @@ public class GameObjectsStorage
 		return _npcs.values();
 	}
 
+	/**
+	 * @return неизменяемый список всех NPC с указанным npcId, включая мертвых
+	 */
+	public static List<NpcInstance> getNpcsByNpcId(int npcId)
+	{
+		return _npcsByNpcId.get(npcId);
+	}
+
 	public static NpcInstance getByNpcId(int npcId)
 	{
 		NpcInstance result = null;
-		for(NpcInstance temp : getNpcs())
-			if(temp.getNpcId() == npcId)
-			{
-				if(!temp.isDead())
-					return temp;
-				result = temp;
-			}
+		List<NpcInstance> npcs = _npcsByNpcId.get(npcId);
+		for(int i = 0; i < npcs.size(); i++)
+		{
+			NpcInstance temp = npcs.get(i);
+			if(!temp.isDead())
+				return temp;
+			result = temp;
+		}
 		return result;
 	}
 
 	public static List<NpcInstance> getAllByNpcId(int npcId, boolean justAlive)
 	{
-		List<NpcInstance> result = new ArrayList<NpcInstance>();
-		for(NpcInstance temp : getNpcs())
-			if(temp.getNpcId() == npcId && (!justAlive || !temp.isDead()))
+		List<NpcInstance> npcs = _npcsByNpcId.get(npcId);
+		List<NpcInstance> result = new ArrayList<NpcInstance>(npcs.size());
+		for(int i = 0; i < npcs.size(); i++)
+		{
+			NpcInstance temp = npcs.get(i);
+			if(!justAlive || !temp.isDead())
 				result.add(temp);
+		}
 		return result;
 	}
 
 	public static List<NpcInstance> getAllByNpcId(int[] npcIds, boolean justAlive)
 	{
 		List<NpcInstance> result = new ArrayList<NpcInstance>();
-		for(NpcInstance temp : getNpcs())
-			if(!justAlive || !temp.isDead())
-				if(ArrayUtils.contains(npcIds, temp.getNpcId()))
+		for(int i = 0; i < npcIds.length; i++)
+		{
+			// повторяющиеся npcId не должны давать повторов в результате
+			boolean duplicate = false;
+			for(int j = 0; j < i && !duplicate; j++)
+				duplicate = npcIds[j] == npcIds[i];
+			if(duplicate)
+				continue;
+
+			List<NpcInstance> npcs = _npcsByNpcId.get(npcIds[i]);
+			for(int n = 0; n < npcs.size(); n++)
+			{
+				NpcInstance temp = npcs.get(n);
+				if(!justAlive || !temp.isDead())
 					result.add(temp);
+			}
+		}
 		return result;
 	}
 
+	/**
+	 * @return неизменяемый список игроков клана
+	 */
+	public static List<Player> getPlayersByClan(int clanId)
+	{
+		return _playersByClan.get(clanId);
+	}
+
+	/**
+	 * @return неизменяемый список игроков альянса
+	 */
+	public static List<Player> getPlayersByAlly(int allyId)
+	{
+		return _playersByAlly.get(allyId);
+	}
+
+	/**
+	 * @return неизменяемый список игроков, участвующих в событии
+	 */
+	public static List<Player> getPlayersByEvent(Event event)
+	{
+		List<Player> list = _playersByEvent.get(event);
+		return list == null ? Collections.<Player> emptyList() : list;
+	}
+
+	/**
+	 * @return неизменяемый список игроков с правами GM
+	 */
+	public static List<Player> getGMs()
+	{
+		return _gms;
+	}
+
 	public static NpcInstance getNpc(int objId)
 	{
 		return _npcs.get(objId);
@@ -91,6 +242,15 @@ public class GameObjectsStorage
 			map.put(o.getObjectId(), o);
 
 		_objects.put(o.getObjectId(), o);
+
+		if(o.isNpc())
+			_npcsByNpcId.add(((NpcInstance) o).getNpcId(), (NpcInstance) o);
+		else if(o.isPlayer())
+		{
+			// вызывается из конструктора, поля игрока еще не заполнены, ключи добавятся через updatePlayer
+			_playerKeys.put(o.getObjectId(), new PlayerKeys());
+			updatePlayer((Player) o);
+		}
 	}
 
 	public static <T extends GameObject> void remove(T o)
@@ -100,6 +260,98 @@ public class GameObjectsStorage
 			map.remove(o.getObjectId());
 
 		_objects.remove(o.getObjectId());
+
+		if(o.isNpc())
+			_npcsByNpcId.remove(((NpcInstance) o).getNpcId(), (NpcInstance) o);
+		else if(o.isPlayer())
+		{
+			PlayerKeys keys = _playerKeys.remove(o.getObjectId());
+			if(keys != null)
+				synchronized (keys)
+				{
+					keys.removed = true;
+					reindex((Player) o, keys, 0, 0, false, NO_EVENTS);
+				}
+		}
+	}
+
+	/**
+	 * Обновить индексы игрока. Вызывается при смене клана, альянса клана, прав доступа и событий.
+	 */
+	public static void updatePlayer(Player player)
+	{
+		PlayerKeys keys = _playerKeys.get(player.getObjectId());
+		if(keys == null)
+			return;
+
+		synchronized (keys)
+		{
+			if(keys.removed)
+				return;
+
+			Collection<Event> events = player.getEvents();
+			reindex(player, keys, player.getClanId(), player.getAllyId(), player.isGM(), events.isEmpty() ? NO_EVENTS : events.toArray(new Event[events.size()]));
+		}
+	}
+
+	private static void reindex(Player player, PlayerKeys keys, int clanId, int allyId, boolean gm, Event[] events)
+	{
+		if(keys.clanId != clanId)
+		{
+			if(keys.clanId != 0)
+				_playersByClan.remove(keys.clanId, player);
+			if(clanId != 0)
+				_playersByClan.add(clanId, player);
+			keys.clanId = clanId;
+		}
+
+		if(keys.allyId != allyId)
+		{
+			if(keys.allyId != 0)
+				_playersByAlly.remove(keys.allyId, player);
+			if(allyId != 0)
+				_playersByAlly.add(allyId, player);
+			keys.allyId = allyId;
+		}
+
+		if(keys.gm != gm)
+		{
+			synchronized (GameObjectsStorage.class)
+			{
+				List<Player> list = gm ? added(_gms, player) : removed(_gms, player);
+				_gms = list == null ? Collections.<Player> emptyList() : list;
+			}
+			keys.gm = gm;
+		}
+
+		if(!Arrays.equals(keys.events, events))
+		{
+			for(Event event : keys.events)
+				if(!contains(events, event))
+					synchronized (_playersByEvent)
+					{
+						List<Player> list = removed(_playersByEvent.get(event), player);
+						if(list == null)
+							_playersByEvent.remove(event);
+						else
+							_playersByEvent.put(event, list);
+					}
+			for(Event event : events)
+				if(!contains(keys.events, event))
+					synchronized (_playersByEvent)
+					{
+						_playersByEvent.put(event, added(_playersByEvent.get(event), player));
+					}
+			keys.events = events;
+		}
+	}
+
+	private static boolean contains(Event[] events, Event event)
+	{
+		for(Event e : events)
+			if(e == event)
+				return true;
+		return false;
 	}
 
 	@SuppressWarnings("unchecked")
@@ -16,11 +16,13 @@ import java.sql.Statement;
 import java.time.chrono.ThaiBuddhistChronology;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -55,6 +57,7 @@ import org.mmocore.gameserver.data.xml.holder.RecipeHolder;
 import org.mmocore.gameserver.data.xml.holder.ResidenceHolder;
 import org.mmocore.gameserver.data.xml.holder.SkillAcquireHolder;
 import org.mmocore.gameserver.database.DatabaseFactory;
+import org.mmocore.gameserver.database.PersistenceService;
 import org.mmocore.gameserver.database.mysql;
 import org.mmocore.gameserver.handler.items.IItemHandler;
 import org.mmocore.gameserver.handler.onshiftaction.OnShiftActionHolder;
@@ -62,6 +65,7 @@ import org.mmocore.gameserver.idfactory.IdFactory;
 import org.mmocore.gameserver.instancemanager.CursedWeaponsManager;
 import org.mmocore.gameserver.instancemanager.DimensionalRiftManager;
 import org.mmocore.gameserver.instancemanager.MatchingRoomManager;
+import org.mmocore.gameserver.instancemanager.PrivateStoreIndex;
 import org.mmocore.gameserver.instancemanager.QuestManager;
 import org.mmocore.gameserver.instancemanager.ReflectionManager;
 import org.mmocore.gameserver.instancemanager.games.HandysBlockCheckerManager;
@@ -159,6 +163,7 @@ import org.mmocore.gameserver.tables.SkillTable;
 import org.mmocore.gameserver.tables.SkillTreeTable;
 import org.mmocore.gameserver.taskmanager.AutoSaveManager;
 import org.mmocore.gameserver.taskmanager.LazyPrecisionTaskManager;
+import org.mmocore.gameserver.taskmanager.ReplicationManager;
 import org.mmocore.gameserver.templates.FishTemplate;
 import org.mmocore.gameserver.templates.Henna;
 import org.mmocore.gameserver.templates.PlayerTemplate;
@@ -776,12 +781,16 @@ public final class Player extends Playable implements PlayerGroup
 
 		try
 		{
-			store(false);
+			// отложенное сохранение не должно выполниться после удаления персонажа из мира
+			PersistenceService.getInstance().cancel(getObjectId());
+			storeNow(false);
 		}
 		catch(Throwable t)
 		{
 			_log.error("", t);
 		}
+
+		CharacterQuestDAO.getInstance().flush(getObjectId());
 	}
 
 	/**
@@ -953,12 +962,16 @@ public final class Player extends Playable implements PlayerGroup
 
 		try
 		{
-			store(false);
+			// отложенное сохранение не должно выполниться после удаления персонажа из мира
+			PersistenceService.getInstance().cancel(getObjectId());
+			storeNow(false);
 		}
 		catch(Throwable t)
 		{
 			_log.error("", t);
 		}
+
+		CharacterQuestDAO.getInstance().flush(getObjectId());
 	}
 
 	/**
@@ -1475,16 +1488,32 @@ public final class Player extends Playable implements PlayerGroup
 			return (int) calcStat(Stats.MAX_LOAD, Math.pow(1.029993928, con) * 30495.627366 * Config.MAXLOAD_MODIFIER, this, null);
 	}
 
-	private Future<?> _updateEffectIconsTask;
+	/** помеченные к отправке части состояния, см. {@link ReplicationManager} */
+	private final AtomicInteger _replicationState = new AtomicInteger();
 
-	private class UpdateEffectIcons extends RunnableImpl
+	public AtomicInteger getReplicationState()
 	{
-		@Override
-		public void runImpl() throws Exception
-		{
+		return _replicationState;
+	}
+
+	/**
+	 * Отправить помеченные части состояния, вызывается из {@link ReplicationManager}.
+	 * @param flags битовая маска из (1 << вид обновления)
+	 */
+	public void flushReplication(int flags)
+	{
+		if((flags & 1 << ReplicationManager.STATUS) != 0)
+			broadcastStatusUpdateImpl();
+		if((flags & 1 << ReplicationManager.CHAR_INFO) != 0)
+			broadcastCharInfoImpl();
+
+		if(entering || isLogoutStarted())
+			return;
+
+		if((flags & 1 << ReplicationManager.USER_INFO) != 0 && isVisible())
+			sendUserInfoImpl();
+		if((flags & 1 << ReplicationManager.EFFECT_ICONS) != 0)
 			updateEffectIconsImpl();
-			_updateEffectIconsTask = null;
-		}
 	}
 
 	@Override
@@ -1495,19 +1524,12 @@ public final class Player extends Playable implements PlayerGroup
 
 		if(Config.USER_INFO_INTERVAL == 0)
 		{
-			if(_updateEffectIconsTask != null)
-			{
-				_updateEffectIconsTask.cancel(false);
-				_updateEffectIconsTask = null;
-			}
+			ReplicationManager.cancel(this, ReplicationManager.EFFECT_ICONS);
 			updateEffectIconsImpl();
 			return;
 		}
 
-		if(_updateEffectIconsTask != null)
-			return;
-
-		_updateEffectIconsTask = ThreadPoolManager.getInstance().schedule(new UpdateEffectIcons(), Config.USER_INFO_INTERVAL);
+		ReplicationManager.getInstance(this).update(this, ReplicationManager.EFFECT_ICONS);
 	}
 
 	private void updateEffectIconsImpl()
@@ -2622,6 +2644,18 @@ public final class Player extends Playable implements PlayerGroup
 
 	@Override
 	public void broadcastStatusUpdate()
+	{
+		if(Config.STATUS_UPDATE_INTERVAL == 0)
+		{
+			broadcastStatusUpdateImpl();
+			return;
+		}
+
+		// needStatusUpdate() запоминает отправленные значения, поэтому проверяется только при отправке
+		ReplicationManager.getInstance(this).update(this, ReplicationManager.STATUS);
+	}
+
+	private void broadcastStatusUpdateImpl()
 	{
 		if(!needStatusUpdate()) //По идее еше должно срезать траффик. Будут глюки с отображением - убрать это условие.
 			return;
@@ -2645,18 +2679,6 @@ public final class Player extends Playable implements PlayerGroup
 		}
 	}
 
-	private ScheduledFuture<?> _broadcastCharInfoTask;
-
-	public class BroadcastCharInfoTask extends RunnableImpl
-	{
-		@Override
-		public void runImpl() throws Exception
-		{
-			broadcastCharInfoImpl();
-			_broadcastCharInfoTask = null;
-		}
-	}
-
 	@Override
 	public void broadcastCharInfo()
 	{
@@ -2690,19 +2712,12 @@ public final class Player extends Playable implements PlayerGroup
 
 		if(force)
 		{
-			if(_broadcastCharInfoTask != null)
-			{
-				_broadcastCharInfoTask.cancel(false);
-				_broadcastCharInfoTask = null;
-			}
+			ReplicationManager.cancel(this, ReplicationManager.CHAR_INFO);
 			broadcastCharInfoImpl();
 			return;
 		}
 
-		if(_broadcastCharInfoTask != null)
-			return;
-
-		_broadcastCharInfoTask = ThreadPoolManager.getInstance().schedule(new BroadcastCharInfoTask(), Config.BROADCAST_CHAR_INFO_INTERVAL);
+		ReplicationManager.getInstance(this).update(this, ReplicationManager.CHAR_INFO);
 	}
 
 	private int _polyNpcId;
@@ -2755,18 +2770,6 @@ public final class Player extends Playable implements PlayerGroup
 		sendPacket(new EtcStatusUpdate(this));
 	}
 
-	private Future<?> _userInfoTask;
-
-	private class UserInfoTask extends RunnableImpl
-	{
-		@Override
-		public void runImpl() throws Exception
-		{
-			sendUserInfoImpl();
-			_userInfoTask = null;
-		}
-	}
-
 	private void sendUserInfoImpl()
 	{
 		sendPacket(new UserInfo(this), new ExBR_ExtraUserInfo(this));
@@ -2787,19 +2790,12 @@ public final class Player extends Playable implements PlayerGroup
 
 		if(Config.USER_INFO_INTERVAL == 0 || force)
 		{
-			if(_userInfoTask != null)
-			{
-				_userInfoTask.cancel(false);
-				_userInfoTask = null;
-			}
+			ReplicationManager.cancel(this, ReplicationManager.USER_INFO);
 			sendUserInfoImpl();
 			return;
 		}
 
-		if(_userInfoTask != null)
-			return;
-
-		_userInfoTask = ThreadPoolManager.getInstance().schedule(new UserInfoTask(), Config.USER_INFO_INTERVAL);
+		ReplicationManager.getInstance(this).update(this, ReplicationManager.USER_INFO);
 	}
 
 	@Override
@@ -4007,6 +4003,8 @@ public final class Player extends Playable implements PlayerGroup
 		//Send friendlists to friends that this player has logged off
 		_friendList.notifyFriends(false);
 
+		PrivateStoreIndex.getInstance().remove(this);
+
 		_tpBookMarks.clear();
 		_inventory.clear();
 		_warehouse.clear();
@@ -4104,6 +4102,7 @@ public final class Player extends Playable implements PlayerGroup
 			setVar(STOREMODE_VAR, String.valueOf(type), -1);
 		else
 			unsetVar(STOREMODE_VAR);
+		PrivateStoreIndex.getInstance().update(this);
 	}
 
 	public boolean isInStoreMode()
@@ -4174,6 +4173,7 @@ public final class Player extends Playable implements PlayerGroup
 					removeSkill(skill, false);
 
 		_clan = clan;
+		GameObjectsStorage.updatePlayer(this);
 
 		if(clan == null)
 		{
@@ -4343,6 +4343,28 @@ public final class Player extends Playable implements PlayerGroup
 			_playerAccess = new PlayerAccess();
 
 		setAccessLevel(isGM() || _playerAccess.Menu ? 100 : 0);
+		GameObjectsStorage.updatePlayer(this);
+	}
+
+	@Override
+	public void addEvent(Event event)
+	{
+		super.addEvent(event);
+		GameObjectsStorage.updatePlayer(this);
+	}
+
+	@Override
+	public void removeEvent(Event event)
+	{
+		super.removeEvent(event);
+		GameObjectsStorage.updatePlayer(this);
+	}
+
+	@Override
+	public void removeEvents(Class<? extends Event> eventClass)
+	{
+		super.removeEvents(eventClass);
+		GameObjectsStorage.updatePlayer(this);
 	}
 
 	public PlayerAccess getPlayerAccess()
@@ -4512,12 +4534,16 @@ public final class Player extends Playable implements PlayerGroup
 	 */
 	public static Player restore(final int objectId)
 	{
+		// незаписанные изменения должны попасть в базу до чтения
+		PersistenceService.getInstance().flush(objectId);
+
+		final long restoreStarted = System.nanoTime();
+		long started = restoreStarted;
+
 		Player player = null;
 		Connection con = null;
 		Statement statement = null;
-		PreparedStatement statement3 = null;
 		ResultSet rset = null;
-		ResultSet rset3 = null;
 		try
 		{
 			// Retrieve the L2Player from the characters table of the database
@@ -4534,20 +4560,107 @@ public final class Player extends Playable implements PlayerGroup
 				final boolean female = rset.getInt("sex") == 1;
 				final PlayerTemplate template = CharTemplateTable.getInstance().getTemplate(classId, female);
 
-				player = new Player(objectId, template);
+				final Player p = player = new Player(objectId, template);
+				final String login = rset.getString("account_name");
+
+				RestorePipeline.Phase.CHARACTER.record(started);
+
+				// независимые выборки запускаем параллельно, результаты забираем по мере надобности
+				FutureTask<MultiValueSet<String>> varsTask = RestorePipeline.submit(RestorePipeline.Phase.VARIABLES, new Callable<MultiValueSet<String>>()
+				{
+					@Override
+					public MultiValueSet<String> call()
+					{
+						MultiValueSet<String> vars = new MultiValueSet<String>();
+						CharacterVariablesDAO.getInstance().loadVariables(objectId, vars);
+						return vars;
+					}
+				});
+				FutureTask<List<TpBookMark>> bookmarksTask = RestorePipeline.submit(RestorePipeline.Phase.BOOKMARKS, new Callable<List<TpBookMark>>()
+				{
+					@Override
+					public List<TpBookMark> call()
+					{
+						return CharacterTPBookmarkDAO.getInstance().select(p);
+					}
+				});
+				FutureTask<IntObjectMap<String>> postFriendsTask = RestorePipeline.submit(RestorePipeline.Phase.POST_FRIENDS, new Callable<IntObjectMap<String>>()
+				{
+					@Override
+					public IntObjectMap<String> call()
+					{
+						return CharacterPostFriendDAO.getInstance().select(p);
+					}
+				});
+				FutureTask<List<int[]>> servitorsTask = RestorePipeline.submit(RestorePipeline.Phase.SERVITORS, new Callable<List<int[]>>()
+				{
+					@Override
+					public List<int[]> call()
+					{
+						return CharacterServitorDAO.getInstance().select(p);
+					}
+				});
+				FutureTask<IntObjectMap<AccountPlayerInfo>> accountTask = RestorePipeline.submit(RestorePipeline.Phase.ACCOUNT, new Callable<IntObjectMap<AccountPlayerInfo>>()
+				{
+					@Override
+					public IntObjectMap<AccountPlayerInfo> call() throws SQLException
+					{
+						return restorePlayersOnAccount(objectId, login);
+					}
+				});
+				FutureTask<Integer> lectureMarkTask = RestorePipeline.submit(RestorePipeline.Phase.ACCOUNT, new Callable<Integer>()
+				{
+					@Override
+					public Integer call()
+					{
+						return Config.EX_LECTURE_MARK ? AccountLectureMarkDAO.getInstance().select(login) : 0;
+					}
+				});
+				FutureTask<Object> warehouseTask = RestorePipeline.submit(RestorePipeline.Phase.WAREHOUSE, new Callable<Object>()
+				{
+					@Override
+					public Object call()
+					{
+						p.getWarehouse().restore();
+						return null;
+					}
+				});
+				FutureTask<Object> freightTask = RestorePipeline.submit(RestorePipeline.Phase.FREIGHT, new Callable<Object>()
+				{
+					@Override
+					public Object call()
+					{
+						p.getFreight().restore();
+						return null;
+					}
+				});
+
+				player.getVars().putAll(RestorePipeline.get(varsTask));
 
-				CharacterVariablesDAO.getInstance().loadVariables(objectId, player.getVars());
+				started = System.nanoTime();
 				player.loadInstanceReuses();
+				RestorePipeline.Phase.INSTANCE_REUSES.record(started);
+
+				started = System.nanoTime();
 				player.loadPremiumItemList();
+				RestorePipeline.Phase.PREMIUM_ITEMS.record(started);
+
 				player.setTpBookmarkSize(rset.getInt("bookmarks"));
-				player._tpBookMarks = CharacterTPBookmarkDAO.getInstance().select(player);
+				player._tpBookMarks = RestorePipeline.get(bookmarksTask);
+
+				started = System.nanoTime();
 				player._friendList.restore();
-				player._postFriends = CharacterPostFriendDAO.getInstance().select(player);
-				player._savedServitors = CharacterServitorDAO.getInstance().select(player);
+				RestorePipeline.Phase.FRIENDS.record(started);
+
+				player._postFriends = RestorePipeline.get(postFriendsTask);
+				player._savedServitors = RestorePipeline.get(servitorsTask);
+
+				started = System.nanoTime();
 				CharacterGroupReuseDAO.getInstance().select(player);
+				RestorePipeline.Phase.GROUP_REUSE.record(started);
 
 				player.setBaseClass(classId);
-				player._login = rset.getString("account_name");
+				player._login = login;
 				player.setName(rset.getString("char_name"));
 
 				player.setFace(rset.getInt("face"));
@@ -4625,7 +4738,9 @@ public final class Player extends Playable implements PlayerGroup
 
 				player.setFame(rset.getInt("fame"));
 
+				started = System.nanoTime();
 				player.restoreRecipeBook();
+				RestorePipeline.Phase.RECIPES.record(started);
 
 				if(Config.ENABLE_OLYMPIAD)
 				{
@@ -4671,11 +4786,17 @@ public final class Player extends Playable implements PlayerGroup
 				EventHolder.getInstance().findEvent(player);
 
 				//TODO [G1ta0] запускать на входе
+				started = System.nanoTime();
 				CharacterQuestDAO.getInstance().select(player);
+				RestorePipeline.Phase.QUESTS.record(started);
 
+				started = System.nanoTime();
 				player.getInventory().restore();
+				RestorePipeline.Phase.INVENTORY.record(started);
 
+				started = System.nanoTime();
 				restoreCharSubClasses(player);
+				RestorePipeline.Phase.SUBCLASSES.record(started);
 
 				// Активируем CW после загрузки сабов, иначе скиллы будут удалены
 				for (ItemInstance item : player.getInventory().getItems())
@@ -4751,16 +4872,8 @@ public final class Player extends Playable implements PlayerGroup
 					_log.error("", e);
 				}
 
-				statement3 = con.prepareStatement("SELECT obj_Id, char_name, createtime FROM characters WHERE account_name=? AND obj_Id!=?");
-				statement3.setString(1, player._login);
-				statement3.setInt(2, objectId);
-				rset3 = statement3.executeQuery();
-				while(rset3.next())
-					player._playersOnAccount.put(rset3.getInt("obj_Id"), new AccountPlayerInfo(rset3.getInt("createtime"), rset3.getString("char_name")));
-
-				DbUtils.close(statement3, rset3);
-
-				player.setLectureMark(Config.EX_LECTURE_MARK ? AccountLectureMarkDAO.getInstance().select(player.getAccountName()) : 0, false);
+				player._playersOnAccount.putAll(RestorePipeline.get(accountTask));
+				player.setLectureMark(RestorePipeline.get(lectureMarkTask), false);
 
 				//if(!player.isGM())
 				{
@@ -4796,17 +4909,24 @@ public final class Player extends Playable implements PlayerGroup
 						player.setLoc(DimensionalRiftManager.getInstance().getRoom(0, 0).getTeleportCoords());
 				}
 
+				started = System.nanoTime();
 				player.restoreBlockList();
+				RestorePipeline.Phase.BLOCK_LIST.record(started);
+
+				started = System.nanoTime();
 				player._macroses.restore();
+				RestorePipeline.Phase.MACROS.record(started);
 
 				//FIXME [VISTALL] нужно ли?
 				player.refreshExpertisePenalty();
 				player.refreshOverloaded();
 
-				player.getWarehouse().restore();
-				player.getFreight().restore();
+				RestorePipeline.get(warehouseTask);
+				RestorePipeline.get(freightTask);
 
+				started = System.nanoTime();
 				player.restoreTradeList();
+				RestorePipeline.Phase.TRADE_LIST.record(started);
 				if(player.getVar(STOREMODE_VAR) != null)
 				{
 					player.setPrivateStoreType(Integer.parseInt(player.getVar(STOREMODE_VAR)));
@@ -4833,12 +4953,39 @@ public final class Player extends Playable implements PlayerGroup
 		}
 		finally
 		{
-			DbUtils.closeQuietly(statement3, rset3);
 			DbUtils.closeQuietly(con, statement, rset);
 		}
+
+		RestorePipeline.Phase.TOTAL.record(restoreStarted);
+
 		return player;
 	}
 
+	private static IntObjectMap<AccountPlayerInfo> restorePlayersOnAccount(int objectId, String login) throws SQLException
+	{
+		IntObjectMap<AccountPlayerInfo> players = new HashIntObjectMap<AccountPlayerInfo>(6);
+
+		Connection con = null;
+		PreparedStatement statement = null;
+		ResultSet rset = null;
+		try
+		{
+			con = DatabaseFactory.getInstance().getConnection();
+			statement = con.prepareStatement("SELECT obj_Id, char_name, createtime FROM characters WHERE account_name=? AND obj_Id!=?");
+			statement.setString(1, login);
+			statement.setInt(2, objectId);
+			rset = statement.executeQuery();
+			while(rset.next())
+				players.put(rset.getInt("obj_Id"), new AccountPlayerInfo(rset.getInt("createtime"), rset.getString("char_name")));
+		}
+		finally
+		{
+			DbUtils.closeQuietly(con, statement, rset);
+		}
+
+		return players;
+	}
+
 	private void loadPremiumItemList()
 	{
 		Connection con = null;
@@ -4922,8 +5069,18 @@ public final class Player extends Playable implements PlayerGroup
 
 	/**
 	 * Update L2Player stats in the characters table of the database.
+	 * Запись выполняется асинхронно, см. {@link PersistenceService}.
 	 */
 	public void store(boolean fast)
+	{
+		PersistenceService.getInstance().store(this, fast);
+	}
+
+	/**
+	 * Update L2Player stats in the characters table of the database.
+	 * Запись выполняется в текущем потоке.
+	 */
+	public void storeNow(boolean fast)
 	{
 		if(!_storeLock.tryLock())
 			return;
@@ -1,6 +1,7 @@
 package org.mmocore.gameserver.model;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.mmocore.commons.geometry.Point3D;
@@ -9,6 +10,8 @@ import org.mmocore.commons.util.Rnd;
 import org.mmocore.gameserver.geodata.GeoEngine;
 import org.mmocore.gameserver.templates.spawn.SpawnRange;
 import org.mmocore.gameserver.utils.Location;
+import org.napile.primitive.maps.IntObjectMap;
+import org.napile.primitive.maps.impl.HashIntObjectMap;
 
 /**
  * Описание территории мира.
@@ -24,6 +27,14 @@ public class Territory implements Shape, SpawnRange
 	private final List<Shape> include = new ArrayList<Shape>(1);
 	private final List<Shape> exclude = new ArrayList<Shape>(1);
 
+	/**
+	 * Наибольший размер территории в клетках геодаты, для которой строится кэш точек спауна.
+	 */
+	private static final int MAX_SPAWN_CELLS = 1 << 18;
+
+	/** Кэш точек спауна по индексу геодаты, создается при первом обращении */
+	private IntObjectMap<SpawnCells> spawnCells;
+
 	public Territory()
 	{
 
@@ -31,6 +42,7 @@ public class Territory implements Shape, SpawnRange
 
 	public Territory add(Shape shape)
 	{
+		spawnCells = null;
 		if(include.isEmpty())
 		{
 			max.x = shape.getXmax();
@@ -56,6 +68,7 @@ public class Territory implements Shape, SpawnRange
 
 	public Territory addBanned(Shape shape)
 	{
+		spawnCells = null;
 		exclude.add(shape);
 		return this;
 	}
@@ -166,11 +179,16 @@ public class Territory implements Shape, SpawnRange
 
 	public static Location getRandomLoc(Territory territory, int geoIndex)
 	{
-		Location pos = new Location();
+		Location pos = territory.getCachedRandomLoc(geoIndex);
+		if(pos != null)
+			return pos;
+
+		pos = new Location();
 		
 		List<Shape> territories = territory.getTerritories();
 		
-		loop: for(int i = 0; i < 100; i++)
+		int i = 0;
+		loop: for(; i < 100; i++)
 		{
 			Shape shape = territories.get(Rnd.get(territories.size()));
 
@@ -201,13 +219,174 @@ public class Territory implements Shape, SpawnRange
 						if(GeoEngine.NgetNSWE(x, y, tempz, geoIndex) != GeoEngine.NSWE_ALL)
 							continue loop;
 
-				return pos;
+				break;
 			}
 		}
 
+		territory.addSpawnWork(geoIndex, Math.min(i + 1, 100));
+		return pos;
+	}
+
+	/**
+	 * Точки спауна территории: клетки геодаты внутри территории, прошедшие те же проверки, что и случайная выборка в {@link #getRandomLoc(Territory, int)}.<BR>
+	 * Кэш строится не сразу: сначала учитывается работа, потраченная на случайную выборку, и только когда она сравняется с размером
+	 * территории в клетках, клетки перебираются один раз. Так территории, где спаун редкий или выборка удачная, не тратят время и память на кэш,
+	 * а общая работа не превышает двойной работы лучшего из двух способов.
+	 */
+	private static class SpawnCells
+	{
+		/** работа случайной выборки, в проверенных точках */
+		int work;
+		/** значение счетчика изменений геодаты при построении */
+		long stamp;
+		/** клетки геодаты, geoX << 16 | geoY, null - кэш не построен */
+		int[] cells;
+		short[] heights;
+		int size;
+	}
+
+	private int getGeoXmin()
+	{
+		return getXmin() - World.MAP_MIN_X >> 4;
+	}
+
+	private int getGeoXmax()
+	{
+		return getXmax() - World.MAP_MIN_X >> 4;
+	}
+
+	private int getGeoYmin()
+	{
+		return getYmin() - World.MAP_MIN_Y >> 4;
+	}
+
+	private int getGeoYmax()
+	{
+		return getYmax() - World.MAP_MIN_Y >> 4;
+	}
+
+	private int getCellsCount()
+	{
+		return (getGeoXmax() - getGeoXmin() + 1) * (getGeoYmax() - getGeoYmin() + 1);
+	}
+
+	private synchronized void addSpawnWork(int geoIndex, int work)
+	{
+		if(include.isEmpty() || getCellsCount() > MAX_SPAWN_CELLS)
+			return;
+
+		if(spawnCells == null)
+			spawnCells = new HashIntObjectMap<SpawnCells>(1);
+
+		SpawnCells cells = spawnCells.get(geoIndex);
+		if(cells == null)
+			spawnCells.put(geoIndex, cells = new SpawnCells());
+		cells.work += work;
+	}
+
+	/**
+	 * @return случайная точка спауна из кэша, null если кэш не построен или в территории нет подходящих клеток
+	 */
+	private synchronized Location getCachedRandomLoc(int geoIndex)
+	{
+		if(spawnCells == null)
+			return null;
+
+		SpawnCells cells = spawnCells.get(geoIndex);
+		if(cells == null)
+			return null;
+
+		// двери или геодата рефлекта изменились
+		if(cells.cells != null && GeoEngine.getLastChange(getGeoXmin() - 1, getGeoYmin() - 1, getGeoXmax() + 1, getGeoYmax() + 1, geoIndex) > cells.stamp)
+		{
+			cells.cells = null;
+			cells.heights = null;
+			cells.work = 0;
+		}
+
+		if(cells.cells == null)
+		{
+			if(cells.work < getCellsCount())
+				return null;
+			buildSpawnCells(cells, geoIndex);
+		}
+
+		if(cells.size == 0)
+			return null;
+
+		int i = Rnd.get(cells.size);
+		int geoX = cells.cells[i] >>> 16;
+		int geoY = cells.cells[i] & 0xffff;
+
+		Location pos = new Location();
+		pos.x = (geoX << 4) + World.MAP_MIN_X + Rnd.get(16);
+		pos.y = (geoY << 4) + World.MAP_MIN_Y + Rnd.get(16);
+		pos.z = cells.heights[i];
+		// центр клетки внутри территории, а случайная точка клетки может оказаться снаружи
+		if(!isInside(pos.x, pos.y))
+		{
+			pos.x = (geoX << 4) + World.MAP_MIN_X + 8;
+			pos.y = (geoY << 4) + World.MAP_MIN_Y + 8;
+		}
 		return pos;
 	}
 
+	private void buildSpawnCells(SpawnCells cells, int geoIndex)
+	{
+		cells.stamp = GeoEngine.getChangeStamp();
+		cells.size = 0;
+		cells.cells = new int[64];
+		cells.heights = new short[64];
+
+		for(int geoX = Math.max(0, getGeoXmin()); geoX <= getGeoXmax(); geoX++)
+			for(int geoY = Math.max(0, getGeoYmin()); geoY <= getGeoYmax(); geoY++)
+			{
+				int x = (geoX << 4) + World.MAP_MIN_X + 8;
+				int y = (geoY << 4) + World.MAP_MIN_Y + 8;
+				if(isExcluded(x, y))
+					continue;
+
+				int last = Integer.MIN_VALUE;
+				// в многоуровневой территории клетка может подходить для нескольких фигур на разной высоте
+				loop: for(int s = 0; s < include.size(); s++)
+				{
+					Shape shape = include.get(s);
+					if(!shape.isInside(x, y))
+						continue;
+
+					int tempz = GeoEngine.getHeight(x, y, shape.getZmin() + (shape.getZmax() - shape.getZmin()) / 2, geoIndex);
+					if(shape.getZmin() != shape.getZmax())
+					{
+						if(tempz < shape.getZmin() || tempz > shape.getZmax())
+							continue;
+					}
+					else if(tempz < shape.getZmin() - 200 || tempz > shape.getZmin() + 200)
+						continue;
+
+					if(tempz == last)
+						continue;
+
+					for(int nx = geoX - 1; nx <= geoX + 1; nx++)
+						for(int ny = geoY - 1; ny <= geoY + 1; ny++)
+							if(GeoEngine.NgetNSWE(nx, ny, tempz, geoIndex) != GeoEngine.NSWE_ALL)
+								continue loop;
+
+					if(cells.size == cells.cells.length)
+					{
+						cells.cells = Arrays.copyOf(cells.cells, cells.size * 2);
+						cells.heights = Arrays.copyOf(cells.heights, cells.size * 2);
+					}
+					cells.cells[cells.size] = geoX << 16 | geoY;
+					cells.heights[cells.size] = (short) tempz;
+					cells.size++;
+					last = tempz;
+				}
+			}
+
+		cells.cells = Arrays.copyOf(cells.cells, cells.size);
+		cells.heights = Arrays.copyOf(cells.heights, cells.size);
+	}
+
 	@Override
 	public Location getRandomLoc(int geoIndex)
 	{
@@ -315,36 +315,242 @@ public class World
 		return null;
 	}
 
-	public static List<GameObject> getAroundObjects(GameObject object)
+	/**
+	 * Собирает найденные объекты в список
+	 */
+	private static class ListCollector<T extends GameObject> implements GameObjectVisitor<T>
+	{
+		private final List<T> _list;
+
+		public ListCollector(List<T> list)
+		{
+			_list = list;
+		}
+
+		@Override
+		public boolean visit(T object)
+		{
+			_list.add(object);
+			return true;
+		}
+	}
+
+	/**
+	 * @return регион по координатам на карте регионов, или null, если в нем еще не было объектов
+	 */
+	private static WorldRegion getRegionIfExists(int x, int y, int z)
+	{
+		return getRegions()[x][y][z];
+	}
+
+	/**
+	 * Обходит объекты указанного типа в цилиндре радиуса radius и высоты 2 * height с центром в (ox, oy, oz).
+	 * Просматриваются только регионы, пересекающие ограничивающий параллелепипед.
+	 *
+	 * @param type тип объектов из WorldRegion
+	 * @param oid objectId объекта, который нужно исключить
+	 * @param rid отражение, в котором ищутся объекты
+	 * @return false, если обход был прерван обработчиком
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T extends GameObject> boolean visitAround(int type, int oid, int rid, int ox, int oy, int oz, int radius, int height, GameObjectVisitor<T> visitor)
+	{
+		final long sqrad = (long) radius * radius;
+
+		final int x1 = validX(regionX(ox + radius));
+		final int y0 = validY(regionY(oy - radius));
+		final int y1 = validY(regionY(oy + radius));
+		final int z0 = validZ(regionZ(oz - height));
+		final int z1 = validZ(regionZ(oz + height));
+
+		WorldRegion region;
+		GameObject[] objects;
+		GameObject obj;
+		long dx, dy;
+		for(int x = validX(regionX(ox - radius)); x <= x1; x++)
+			for(int y = y0; y <= y1; y++)
+				for(int z = z0; z <= z1; z++)
+				{
+					if((region = getRegionIfExists(x, y, z)) == null)
+						continue;
+
+					objects = region.getObjects(type);
+					for(int i = 0; i < objects.length; i++)
+					{
+						obj = objects[i];
+						if(obj.getObjectId() == oid || obj.getReflectionId() != rid)
+							continue;
+						if(Math.abs(obj.getZ() - oz) > height)
+							continue;
+						dx = Math.abs(obj.getX() - ox);
+						if(dx > radius)
+							continue;
+						dy = Math.abs(obj.getY() - oy);
+						if(dy > radius)
+							continue;
+						if(dx * dx + dy * dy > sqrad)
+							continue;
+
+						if(!visitor.visit((T) obj))
+							return false;
+					}
+				}
+
+		return true;
+	}
+
+	/**
+	 * Обходит объекты указанного типа внутри параллелепипеда [minX, maxX] x [minY, maxY] x [minZ, maxZ].
+	 *
+	 * @return false, если обход был прерван обработчиком
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T extends GameObject> boolean visitBox(int type, int rid, int minX, int minY, int minZ, int maxX, int maxY, int maxZ, GameObjectVisitor<T> visitor)
+	{
+		final int x1 = validX(regionX(maxX));
+		final int y0 = validY(regionY(minY));
+		final int y1 = validY(regionY(maxY));
+		final int z0 = validZ(regionZ(minZ));
+		final int z1 = validZ(regionZ(maxZ));
+
+		WorldRegion region;
+		GameObject[] objects;
+		GameObject obj;
+		for(int x = validX(regionX(minX)); x <= x1; x++)
+			for(int y = y0; y <= y1; y++)
+				for(int z = z0; z <= z1; z++)
+				{
+					if((region = getRegionIfExists(x, y, z)) == null)
+						continue;
+
+					objects = region.getObjects(type);
+					for(int i = 0; i < objects.length; i++)
+					{
+						obj = objects[i];
+						if(obj.getReflectionId() != rid)
+							continue;
+						if(obj.getX() < minX || obj.getX() > maxX || obj.getY() < minY || obj.getY() > maxY || obj.getZ() < minZ || obj.getZ() > maxZ)
+							continue;
+
+						if(!visitor.visit((T) obj))
+							return false;
+					}
+				}
+
+		return true;
+	}
+
+	/**
+	 * Обходит объекты в радиусе от объекта без создания списка, сам объект не включается.
+	 *
+	 * @return false, если обход был прерван обработчиком
+	 */
+	public static boolean forEachAroundObjects(GameObject object, int radius, int height, GameObjectVisitor<GameObject> visitor)
+	{
+		if(object.getCurrentRegion() == null)
+			return true;
+		return visitAround(WorldRegion.OBJECTS, object.getObjectId(), object.getReflectionId(), object.getX(), object.getY(), object.getZ(), radius, height, visitor);
+	}
+
+	/**
+	 * Обходит персонажей в текущем и соседних регионах объекта без создания списка, как {@link #getAroundCharacters(GameObject)}.
+	 *
+	 * @return false, если обход был прерван обработчиком
+	 */
+	public static boolean forEachAroundCharacters(GameObject object, GameObjectVisitor<Creature> visitor)
 	{
 		final WorldRegion currentRegion = object.getCurrentRegion();
 		if(currentRegion == null)
-			return Collections.emptyList();
+			return true;
 
 		final int oid = object.getObjectId();
 		final int rid = object.getReflectionId();
 
-		final List<GameObject> result = new LazyArrayList<GameObject>(128);
-
 		final int x1 = validX(currentRegion.getX() + 1);
 		final int y0 = validY(currentRegion.getY() - 1);
 		final int y1 = validY(currentRegion.getY() + 1);
 		final int z0 = validZ(currentRegion.getZ() - 1);
 		final int z1 = validZ(currentRegion.getZ() + 1);
+		WorldRegion region;
 		for(int x = validX(currentRegion.getX() - 1); x <= x1; x++)
 			for(int y = y0; y <= y1; y++)
 				for(int z = z0; z <= z1; z++)
-					for(GameObject obj : getRegion(x, y, z))
+				{
+					if((region = getRegionIfExists(x, y, z)) == null)
+						continue;
+
+					for(GameObject obj : region.getObjects(WorldRegion.CREATURES))
 					{
 						if(obj.getObjectId() == oid || obj.getReflectionId() != rid)
 							continue;
 
-						result.add(obj);
-					}			
-		return result;
+						if(!visitor.visit((Creature)obj))
+							return false;
+					}
+				}
+
+		return true;
 	}
 
-	public static List<GameObject> getAroundObjects(GameObject object, int radius, int height)
+	public static boolean forEachAroundCharacters(GameObject object, int radius, int height, GameObjectVisitor<Creature> visitor)
+	{
+		if(object.getCurrentRegion() == null)
+			return true;
+		return visitAround(WorldRegion.CREATURES, object.getObjectId(), object.getReflectionId(), object.getX(), object.getY(), object.getZ(), radius, height, visitor);
+	}
+
+	public static boolean forEachAroundPlayables(GameObject object, int radius, int height, GameObjectVisitor<Playable> visitor)
+	{
+		if(object.getCurrentRegion() == null)
+			return true;
+		return visitAround(WorldRegion.PLAYABLES, object.getObjectId(), object.getReflectionId(), object.getX(), object.getY(), object.getZ(), radius, height, visitor);
+	}
+
+	public static boolean forEachAroundPlayers(GameObject object, int radius, int height, GameObjectVisitor<Player> visitor)
+	{
+		if(object.getCurrentRegion() == null)
+			return true;
+		return visitAround(WorldRegion.PLAYERS, object.getObjectId(), object.getReflectionId(), object.getX(), object.getY(), object.getZ(), radius, height, visitor);
+	}
+
+	public static boolean forEachAroundNpc(GameObject object, int radius, int height, GameObjectVisitor<NpcInstance> visitor)
+	{
+		if(object.getCurrentRegion() == null)
+			return true;
+		return visitAround(WorldRegion.NPCS, object.getObjectId(), object.getReflectionId(), object.getX(), object.getY(), object.getZ(), radius, height, visitor);
+	}
+
+	/**
+	 * Обходит персонажей в радиусе от точки в указанном отражении.
+	 *
+	 * @return false, если обход был прерван обработчиком
+	 */
+	public static boolean forEachAroundCharacters(Location loc, int reflectionId, int radius, int height, GameObjectVisitor<Creature> visitor)
+	{
+		return visitAround(WorldRegion.CREATURES, 0, reflectionId, loc.x, loc.y, loc.z, radius, height, visitor);
+	}
+
+	public static boolean forEachAroundPlayers(Location loc, int reflectionId, int radius, int height, GameObjectVisitor<Player> visitor)
+	{
+		return visitAround(WorldRegion.PLAYERS, 0, reflectionId, loc.x, loc.y, loc.z, radius, height, visitor);
+	}
+
+	/**
+	 * Обходит персонажей внутри параллелепипеда в указанном отражении.
+	 *
+	 * @return false, если обход был прерван обработчиком
+	 */
+	public static boolean forEachCharactersInBox(int reflectionId, int minX, int minY, int minZ, int maxX, int maxY, int maxZ, GameObjectVisitor<Creature> visitor)
+	{
+		return visitBox(WorldRegion.CREATURES, reflectionId, minX, minY, minZ, maxX, maxY, maxZ, visitor);
+	}
+
+	public static boolean forEachPlayersInBox(int reflectionId, int minX, int minY, int minZ, int maxX, int maxY, int maxZ, GameObjectVisitor<Player> visitor)
+	{
+		return visitBox(WorldRegion.PLAYERS, reflectionId, minX, minY, minZ, maxX, maxY, maxZ, visitor);
+	}
+
+	public static List<GameObject> getAroundObjects(GameObject object)
 	{
 		final WorldRegion currentRegion = object.getCurrentRegion();
 		if(currentRegion == null)
@@ -352,41 +558,34 @@ public class World
 
 		final int oid = object.getObjectId();
 		final int rid = object.getReflectionId();
-		final int ox = object.getX();
-		final int oy = object.getY();
-		final int oz = object.getZ();
-		final int sqrad = radius * radius;
-		final int numOfRegions = (radius >> SHIFT_BY) > 0 ? 2 : 1;
-		final int numOfRegionsZ = (height >> SHIFT_BY_Z) > 0 ? 2 : 1;
 
 		final List<GameObject> result = new LazyArrayList<GameObject>(128);
 
-		final int x1 = validX(currentRegion.getX() + numOfRegions);
-		final int y0 = validY(currentRegion.getY() - numOfRegions);
-		final int y1 = validY(currentRegion.getY() + numOfRegions);
-		final int z0 = validZ(currentRegion.getZ() - numOfRegionsZ);
-		final int z1 = validZ(currentRegion.getZ() + numOfRegionsZ);
-		for(int x = validX(currentRegion.getX() - numOfRegions); x <= x1; x++)
+		final int x1 = validX(currentRegion.getX() + 1);
+		final int y0 = validY(currentRegion.getY() - 1);
+		final int y1 = validY(currentRegion.getY() + 1);
+		final int z0 = validZ(currentRegion.getZ() - 1);
+		final int z1 = validZ(currentRegion.getZ() + 1);
+		for(int x = validX(currentRegion.getX() - 1); x <= x1; x++)
 			for(int y = y0; y <= y1; y++)
 				for(int z = z0; z <= z1; z++)
 					for(GameObject obj : getRegion(x, y, z))
 					{
 						if(obj.getObjectId() == oid || obj.getReflectionId() != rid)
 							continue;
-						if(Math.abs(obj.getZ() - oz) > height)
-							continue;
-						int dx = Math.abs(obj.getX() - ox);
-						if(dx > radius)
-							continue;
-						int dy = Math.abs(obj.getY() - oy);
-						if(dy > radius)
-							continue;
-						if(dx * dx + dy * dy > sqrad)
-							continue;
 
 						result.add(obj);
-					}
+					}			
+		return result;
+	}
+
+	public static List<GameObject> getAroundObjects(GameObject object, int radius, int height)
+	{
+		if(object.getCurrentRegion() == null)
+			return Collections.emptyList();
 
+		final List<GameObject> result = new LazyArrayList<GameObject>(128);
+		visitAround(WorldRegion.OBJECTS, object.getObjectId(), object.getReflectionId(), object.getX(), object.getY(), object.getZ(), radius, height, new ListCollector<GameObject>(result));
 		return result;
 	}
 
@@ -409,9 +608,9 @@ public class World
 		for(int x = validX(currentRegion.getX() - 1); x <= x1; x++)
 			for(int y = y0; y <= y1; y++)
 				for(int z = z0; z <= z1; z++)
-					for(GameObject obj : getRegion(x, y, z))
+					for(GameObject obj : getRegion(x, y, z).getObjects(WorldRegion.CREATURES))
 					{
-						if(!obj.isCreature() || obj.getObjectId() == oid || obj.getReflectionId() != rid)
+						if(obj.getObjectId() == oid || obj.getReflectionId() != rid)
 							continue;
 
 						result.add((Creature)obj);
@@ -422,46 +621,11 @@ public class World
 
 	public static List<Creature> getAroundCharacters(GameObject object, int radius, int height)
 	{
-		final WorldRegion currentRegion = object.getCurrentRegion();
-		if(currentRegion == null)
+		if(object.getCurrentRegion() == null)
 			return Collections.emptyList();
 
-		final int oid = object.getObjectId();
-		final int rid = object.getReflectionId();
-		final int ox = object.getX();
-		final int oy = object.getY();
-		final int oz = object.getZ();
-		final int sqrad = radius * radius;
-		final int numOfRegions = (radius >> SHIFT_BY) > 0 ? 2 : 1;
-		final int numOfRegionsZ = (height >> SHIFT_BY_Z) > 0 ? 2 : 1;
-
 		final List<Creature> result = new LazyArrayList<Creature>(64);
-
-		final int x1 = validX(currentRegion.getX() + numOfRegions);
-		final int y0 = validY(currentRegion.getY() - numOfRegions);
-		final int y1 = validY(currentRegion.getY() + numOfRegions);
-		final int z0 = validZ(currentRegion.getZ() - numOfRegionsZ);
-		final int z1 = validZ(currentRegion.getZ() + numOfRegionsZ);
-		for(int x = validX(currentRegion.getX() - numOfRegions); x <= x1; x++)
-			for(int y = y0; y <= y1; y++)
-				for(int z = z0; z <= z1; z++)
-					for(GameObject obj : getRegion(x, y, z))
-					{
-						if(!obj.isCreature() || obj.getObjectId() == oid || obj.getReflectionId() != rid)
-							continue;
-						if(Math.abs(obj.getZ() - oz) > height)
-							continue;
-						int dx = Math.abs(obj.getX() - ox);
-						if(dx > radius)
-							continue;
-						int dy = Math.abs(obj.getY() - oy);
-						if(dy > radius)
-							continue;
-						if(dx * dx + dy * dy > sqrad)
-							continue;
-
-						result.add((Creature)obj);
-					}
+		visitAround(WorldRegion.CREATURES, object.getObjectId(), object.getReflectionId(), object.getX(), object.getY(), object.getZ(), radius, height, new ListCollector<Creature>(result));
 		return result;
 	}
 
@@ -484,9 +648,9 @@ public class World
 		for(int x = validX(currentRegion.getX() - 1); x <= x1; x++)
 			for(int y = y0; y <= y1; y++)
 				for(int z = z0; z <= z1; z++)
-					for(GameObject obj : getRegion(x, y, z))
+					for(GameObject obj : getRegion(x, y, z).getObjects(WorldRegion.NPCS))
 					{
-						if(!obj.isNpc() || obj.getObjectId() == oid || obj.getReflectionId() != rid)
+						if(obj.getObjectId() == oid || obj.getReflectionId() != rid)
 							continue;
 
 						result.add((NpcInstance)obj);
@@ -496,46 +660,11 @@ public class World
 
 	public static List<NpcInstance> getAroundNpc(GameObject object, int radius, int height)
 	{
-		final WorldRegion currentRegion = object.getCurrentRegion();
-		if(currentRegion == null)
+		if(object.getCurrentRegion() == null)
 			return Collections.emptyList();
 
-		final int oid = object.getObjectId();
-		final int rid = object.getReflectionId();
-		final int ox = object.getX();
-		final int oy = object.getY();
-		final int oz = object.getZ();
-		final int sqrad = radius * radius;
-		final int numOfRegions = (radius >> SHIFT_BY) > 0 ? 2 : 1;
-		final int numOfRegionsZ = (height >> SHIFT_BY_Z) > 0 ? 2 : 1;
-
 		final List<NpcInstance> result = new LazyArrayList<NpcInstance>(64);
-
-		final int x1 = validX(currentRegion.getX() + numOfRegions);
-		final int y0 = validY(currentRegion.getY() - numOfRegions);
-		final int y1 = validY(currentRegion.getY() + numOfRegions);
-		final int z0 = validZ(currentRegion.getZ() - numOfRegionsZ);
-		final int z1 = validZ(currentRegion.getZ() + numOfRegionsZ);
-		for(int x = validX(currentRegion.getX() - numOfRegions); x <= x1; x++)
-			for(int y = y0; y <= y1; y++)
-				for(int z = z0; z <= z1; z++)
-					for(GameObject obj : getRegion(x, y, z))
-					{
-						if(!obj.isNpc() || obj.getObjectId() == oid || obj.getReflectionId() != rid)
-							continue;
-						if(Math.abs(obj.getZ() - oz) > height)
-							continue;
-						int dx = Math.abs(obj.getX() - ox);
-						if(dx > radius)
-							continue;
-						int dy = Math.abs(obj.getY() - oy);
-						if(dy > radius)
-							continue;
-						if(dx * dx + dy * dy > sqrad)
-							continue;
-
-						result.add((NpcInstance)obj);
-					}
+		visitAround(WorldRegion.NPCS, object.getObjectId(), object.getReflectionId(), object.getX(), object.getY(), object.getZ(), radius, height, new ListCollector<NpcInstance>(result));
 		return result;
 	}
 
@@ -558,9 +687,9 @@ public class World
 		for(int x = validX(currentRegion.getX() - 1); x <= x1; x++)
 			for(int y = y0; y <= y1; y++)
 				for(int z = z0; z <= z1; z++)
-					for(GameObject obj : getRegion(x, y, z))
+					for(GameObject obj : getRegion(x, y, z).getObjects(WorldRegion.PLAYABLES))
 					{
-						if(!obj.isPlayable() || obj.getObjectId() == oid || obj.getReflectionId() != rid)
+						if(obj.getObjectId() == oid || obj.getReflectionId() != rid)
 							continue;
 
 						result.add((Playable)obj);
@@ -570,46 +699,11 @@ public class World
 
 	public static List<Playable> getAroundPlayables(GameObject object, int radius, int height)
 	{
-		final WorldRegion currentRegion = object.getCurrentRegion();
-		if(currentRegion == null)
+		if(object.getCurrentRegion() == null)
 			return Collections.emptyList();
 
-		final int oid = object.getObjectId();
-		final int rid = object.getReflectionId();
-		final int ox = object.getX();
-		final int oy = object.getY();
-		final int oz = object.getZ();
-		final int sqrad = radius * radius;
-		final int numOfRegions = (radius >> SHIFT_BY) > 0 ? 2 : 1;
-		final int numOfRegionsZ = (height >> SHIFT_BY_Z) > 0 ? 2 : 1;
-
 		final List<Playable> result = new LazyArrayList<Playable>(64);
-
-		final int x1 = validX(currentRegion.getX() + numOfRegions);
-		final int y0 = validY(currentRegion.getY() - numOfRegions);
-		final int y1 = validY(currentRegion.getY() + numOfRegions);
-		final int z0 = validZ(currentRegion.getZ() - numOfRegionsZ);
-		final int z1 = validZ(currentRegion.getZ() + numOfRegionsZ);
-		for(int x = validX(currentRegion.getX() - numOfRegions); x <= x1; x++)
-			for(int y = y0; y <= y1; y++)
-				for(int z = z0; z <= z1; z++)
-					for(GameObject obj : getRegion(x, y, z))
-					{
-						if(!obj.isPlayable() || obj.getObjectId() == oid || obj.getReflectionId() != rid)
-							continue;
-						if(Math.abs(obj.getZ() - oz) > height)
-							continue;
-						int dx = Math.abs(obj.getX() - ox);
-						if(dx > radius)
-							continue;
-						int dy = Math.abs(obj.getY() - oy);
-						if(dy > radius)
-							continue;
-						if(dx * dx + dy * dy > sqrad)
-							continue;
-
-						result.add((Playable)obj);
-					}
+		visitAround(WorldRegion.PLAYABLES, object.getObjectId(), object.getReflectionId(), object.getX(), object.getY(), object.getZ(), radius, height, new ListCollector<Playable>(result));
 		return result;
 	}
 
@@ -632,9 +726,9 @@ public class World
 		for(int x = validX(currentRegion.getX() - 1); x <= x1; x++)
 			for(int y = y0; y <= y1; y++)
 				for(int z = z0; z <= z1; z++)
-					for(GameObject obj : getRegion(x, y, z))
+					for(GameObject obj : getRegion(x, y, z).getObjects(WorldRegion.PLAYERS))
 					{
-						if(!obj.isPlayer() || obj.getObjectId() == oid || obj.getReflectionId() != rid)
+						if(obj.getObjectId() == oid || obj.getReflectionId() != rid)
 							continue;
 
 						result.add((Player)obj);
@@ -644,46 +738,11 @@ public class World
 
 	public static List<Player> getAroundPlayers(GameObject object, int radius, int height)
 	{
-		final WorldRegion currentRegion = object.getCurrentRegion();
-		if(currentRegion == null)
+		if(object.getCurrentRegion() == null)
 			return Collections.emptyList();
 
-		final int oid = object.getObjectId();
-		final int rid = object.getReflectionId();
-		final int ox = object.getX();
-		final int oy = object.getY();
-		final int oz = object.getZ();
-		final int sqrad = radius * radius;
-		final int numOfRegions = (radius >> SHIFT_BY) > 0 ? 2 : 1;
-		final int numOfRegionsZ = (height >> SHIFT_BY_Z) > 0 ? 2 : 1;
-
 		final List<Player> result = new LazyArrayList<Player>(64);
-
-		final int x1 = validX(currentRegion.getX() + numOfRegions);
-		final int y0 = validY(currentRegion.getY() - numOfRegions);
-		final int y1 = validY(currentRegion.getY() + numOfRegions);
-		final int z0 = validZ(currentRegion.getZ() - numOfRegionsZ);
-		final int z1 = validZ(currentRegion.getZ() + numOfRegionsZ);
-		for(int x = validX(currentRegion.getX() - numOfRegions); x <= x1; x++)
-			for(int y = y0; y <= y1; y++)
-				for(int z = z0; z <= z1; z++)
-					for(GameObject obj : getRegion(x, y, z))
-					{
-						if(!obj.isPlayer() || obj.getObjectId() == oid || obj.getReflectionId() != rid)
-							continue;
-						if(Math.abs(obj.getZ() - oz) > height)
-							continue;
-						int dx = Math.abs(obj.getX() - ox);
-						if(dx > radius)
-							continue;
-						int dy = Math.abs(obj.getY() - oy);
-						if(dy > radius)
-							continue;
-						if(dx * dx + dy * dy > sqrad)
-							continue;
-
-						result.add((Player)obj);
-					}
+		visitAround(WorldRegion.PLAYERS, object.getObjectId(), object.getReflectionId(), object.getX(), object.getY(), object.getZ(), radius, height, new ListCollector<Player>(result));
 		return result;
 	}
 
@@ -709,7 +768,7 @@ public class World
 		for(int x = validX(currentRegion.getX() - 1); x <= x1; x++)
 			for(int y = y0; y <= y1; y++)
 				for(int z = z0; z <= z1; z++)
-					for(GameObject obj : getRegion(x, y, z))
+					for(GameObject obj : getRegion(x, y, z).getObjects(WorldRegion.OBSERVERS))
 						if(obj.isObservePoint() || obj.isPlayer())
 						{
 							if(obj.isPlayer() && ((Player)obj).isInObserverMode())
@@ -744,7 +803,7 @@ public class World
 		for(int x = validX(currentRegion.getX() - 1); x <= x1; x++)
 			for(int y = y0; y <= y1; y++)
 				for(int z = z0; z <= z1; z++)
-					for(GameObject obj : getRegion(x, y, z))
+					for(GameObject obj : getRegion(x, y, z).getObjects(WorldRegion.OBSERVERS))
 					{
 						if(obj.getObjectId() == oid || obj.getReflectionId() != rid)
 							continue;
@@ -778,6 +837,26 @@ public class World
 		return true;
 	}
 
+	/**
+	 * Проверить, находится ли объект в соседних регионах от другого объекта, включая текущий, т.е. попадает ли он в getAround*(object)
+	 */
+	public static boolean isNeighbors(GameObject object, GameObject other)
+	{
+		final WorldRegion region = object.getCurrentRegion();
+		final WorldRegion otherRegion = other.getCurrentRegion();
+		if(region == null || otherRegion == null || object.getReflectionId() != other.getReflectionId())
+			return false;
+		return isNeighbors(region, otherRegion);
+	}
+
+	/**
+	 * Проверить, являются ли регионы соседними или совпадающими
+	 */
+	public static boolean isNeighbors(WorldRegion region, WorldRegion other)
+	{
+		return Math.abs(region.getX() - other.getX()) <= 1 && Math.abs(region.getY() - other.getY()) <= 1 && Math.abs(region.getZ() - other.getZ()) <= 1;
+	}
+
 	public static void activate(WorldRegion currentRegion)
 	{
 		final int x1 = validX(currentRegion.getX() + 1);
@@ -23,6 +23,15 @@ public final class WorldRegion implements Iterable<GameObject>
 {
 	public final static WorldRegion[] EMPTY_L2WORLDREGION_ARRAY = new WorldRegion[0];
 
+	/** Типы объектов, для которых регион хранит отдельные списки */
+	static final int OBJECTS = 0;
+	static final int CREATURES = 1;
+	static final int PLAYABLES = 2;
+	static final int PLAYERS = 3;
+	static final int NPCS = 4;
+	/** Игроки и точки наблюдения */
+	static final int OBSERVERS = 5;
+
 	/**
 	 * Активация/деактивация соседних регионов
 	 */
@@ -51,6 +60,12 @@ public final class WorldRegion implements Iterable<GameObject>
 	private volatile GameObject[] _objects = GameObject.EMPTY_L2OBJECT_ARRAY;
 	/** Количество объектов в регионе */
 	private int _objectsCount = 0;
+	/** Объекты в регионе по типам, обновляются вместе с _objects */
+	private volatile GameObject[] _creatures = GameObject.EMPTY_L2OBJECT_ARRAY;
+	private volatile GameObject[] _playables = GameObject.EMPTY_L2OBJECT_ARRAY;
+	private volatile GameObject[] _players = GameObject.EMPTY_L2OBJECT_ARRAY;
+	private volatile GameObject[] _npcs = GameObject.EMPTY_L2OBJECT_ARRAY;
+	private volatile GameObject[] _observers = GameObject.EMPTY_L2OBJECT_ARRAY;
 	/** Зоны пересекающие этот регион */
 	private volatile Zone[] _zones = Zone.EMPTY_L2ZONE_ARRAY;
 	/** Количество игроков в регионе */
@@ -207,6 +222,17 @@ public final class WorldRegion implements Iterable<GameObject>
 
 			_objects = resizedObjects;
 
+			if(obj.isCreature())
+				_creatures = ArrayUtils.add(_creatures, obj);
+			if(obj.isPlayable())
+				_playables = ArrayUtils.add(_playables, obj);
+			if(obj.isPlayer())
+				_players = ArrayUtils.add(_players, obj);
+			if(obj.isNpc())
+				_npcs = ArrayUtils.add(_npcs, obj);
+			if(obj.isPlayer() || obj.isObservePoint())
+				_observers = ArrayUtils.add(_observers, obj);
+
 			if(obj.isPlayer())
 				if(_playersCount++ == 0)
 				{
@@ -254,6 +280,17 @@ public final class WorldRegion implements Iterable<GameObject>
 
 			_objects = resizedObjects;
 
+			if(obj.isCreature())
+				_creatures = ArrayUtils.remove(_creatures, obj);
+			if(obj.isPlayable())
+				_playables = ArrayUtils.remove(_playables, obj);
+			if(obj.isPlayer())
+				_players = ArrayUtils.remove(_players, obj);
+			if(obj.isNpc())
+				_npcs = ArrayUtils.remove(_npcs, obj);
+			if(obj.isPlayer() || obj.isObservePoint())
+				_observers = ArrayUtils.remove(_observers, obj);
+
 			if(obj.isPlayer())
 				if(--_playersCount == 0)
 				{
@@ -269,6 +306,30 @@ public final class WorldRegion implements Iterable<GameObject>
 		}
 	}
 
+	/**
+	 * Снимок объектов региона указанного типа, массив не изменяется и может обходиться без блокировки.
+	 *
+	 * @param type OBJECTS, CREATURES, PLAYABLES, PLAYERS, NPCS или OBSERVERS
+	 */
+	GameObject[] getObjects(int type)
+	{
+		switch(type)
+		{
+			case CREATURES:
+				return _creatures;
+			case PLAYABLES:
+				return _playables;
+			case PLAYERS:
+				return _players;
+			case NPCS:
+				return _npcs;
+			case OBSERVERS:
+				return _observers;
+			default:
+				return _objects;
+		}
+	}
+
 	public int getObjectsSize()
 	{
 		return _objectsCount;
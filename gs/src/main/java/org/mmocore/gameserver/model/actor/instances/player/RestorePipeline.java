@@ -0,0 +1,147 @@
+package org.mmocore.gameserver.model.actor.instances.player;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.mmocore.commons.threading.PriorityThreadFactory;
+import org.mmocore.gameserver.Config;
+
+/**
+ * Параллельная загрузка персонажа при входе в игру.<BR>
+ * Независимые друг от друга выборки запускаются в отдельном пуле сразу после чтения строки персонажа,
+ * а результаты забираются потоком, собирающим персонажа, в момент, когда они нужны.
+ * Если задача к этому моменту еще не начата, она выполняется в самом собирающем потоке,
+ * поэтому перегруженный пул не блокирует вход.<BR>
+ * Также собирается статистика времени по каждой фазе загрузки.
+ */
+public class RestorePipeline
+{
+	public static enum Phase
+	{
+		CHARACTER,
+		VARIABLES,
+		INSTANCE_REUSES,
+		PREMIUM_ITEMS,
+		BOOKMARKS,
+		FRIENDS,
+		POST_FRIENDS,
+		SERVITORS,
+		GROUP_REUSE,
+		RECIPES,
+		QUESTS,
+		INVENTORY,
+		SUBCLASSES,
+		ACCOUNT,
+		BLOCK_LIST,
+		MACROS,
+		WAREHOUSE,
+		FREIGHT,
+		TRADE_LIST,
+		TOTAL;
+
+		private final AtomicLong _count = new AtomicLong();
+		private final AtomicLong _time = new AtomicLong();
+		private final AtomicLong _maxTime = new AtomicLong();
+
+		/**
+		 * Учесть время выполнения фазы.
+		 * @param started время начала в наносекундах
+		 */
+		public void record(long started)
+		{
+			long time = System.nanoTime() - started;
+			_count.incrementAndGet();
+			_time.addAndGet(time);
+			long max;
+			while(time > (max = _maxTime.get()))
+				if(_maxTime.compareAndSet(max, time))
+					break;
+		}
+	}
+
+	private static final ThreadPoolExecutor _executor = Config.LOGIN_RESTORE_THREADS > 0 ? new ThreadPoolExecutor(Config.LOGIN_RESTORE_THREADS, Config.LOGIN_RESTORE_THREADS, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new PriorityThreadFactory("LoginRestore", Thread.NORM_PRIORITY)) : null;
+	static
+	{
+		if(_executor != null)
+			_executor.allowCoreThreadTimeOut(true);
+	}
+
+	private static final AtomicLong _submitted = new AtomicLong();
+	private static final AtomicLong _stolen = new AtomicLong();
+
+	/**
+	 * Запустить загрузку в пуле.
+	 * @return задача, результат которой нужно забирать через {@link #get(FutureTask)}
+	 */
+	public static <V> FutureTask<V> submit(final Phase phase, final Callable<V> callable)
+	{
+		FutureTask<V> task = new FutureTask<V>(new Callable<V>()
+		{
+			@Override
+			public V call() throws Exception
+			{
+				long started = System.nanoTime();
+				try
+				{
+					return callable.call();
+				}
+				finally
+				{
+					phase.record(started);
+				}
+			}
+		});
+
+		_submitted.incrementAndGet();
+		if(_executor != null)
+			_executor.execute(task);
+		return task;
+	}
+
+	/**
+	 * Получить результат загрузки. Не начатая задача выполняется в текущем потоке.
+	 */
+	public static <V> V get(FutureTask<V> task)
+	{
+		if(_executor == null || _executor.remove(task))
+		{
+			_stolen.incrementAndGet();
+			task.run();
+		}
+
+		try
+		{
+			return task.get();
+		}
+		catch(InterruptedException e)
+		{
+			throw new RuntimeException(e);
+		}
+		catch(ExecutionException e)
+		{
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	public static CharSequence getStats()
+	{
+		StringBuilder list = new StringBuilder();
+
+		list.append("Threads: .............. ").append(_executor == null ? 0 : _executor.getPoolSize()).append("\n");
+		list.append("Tasks, submitted: ..... ").append(_submitted.get()).append("\n");
+		list.append("Tasks, run inline: .... ").append(_stolen.get()).append("\n");
+		list.append("Phase                 count    avg (ms)    max (ms)\n");
+		for(Phase phase : Phase.values())
+		{
+			long count = phase._count.get();
+			list.append(String.format("%-18s %8d %11.3f %11.3f", phase, count, count > 0 ? phase._time.get() / 1000000. / count : 0., phase._maxTime.get() / 1000000.)).append("\n");
+		}
+
+		return list;
+	}
+}
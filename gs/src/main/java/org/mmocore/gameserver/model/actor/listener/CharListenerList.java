@@ -49,147 +49,107 @@ public class CharListenerList extends ListenerList<Creature>
 
 	public void onAiIntention(CtrlIntention intention, Object arg0, Object arg1)
 	{
-		if(!getListeners().isEmpty())
-			for(Listener<Creature> listener : getListeners())
-				if(OnAiIntentionListener.class.isInstance(listener))
-					((OnAiIntentionListener) listener).onAiIntention(getActor(), intention, arg0, arg1);
+		for(Listener<Creature> listener : getListeners(OnAiIntentionListener.class))
+			((OnAiIntentionListener) listener).onAiIntention(getActor(), intention, arg0, arg1);
 	}
 
 	public void onAiEvent(CtrlEvent evt, Object[] args)
 	{
-		if(!getListeners().isEmpty())
-			for(Listener<Creature> listener : getListeners())
-				if(OnAiEventListener.class.isInstance(listener))
-					((OnAiEventListener) listener).onAiEvent(getActor(), evt, args);
+		for(Listener<Creature> listener : getListeners(OnAiEventListener.class))
+			((OnAiEventListener) listener).onAiEvent(getActor(), evt, args);
 	}
 	
 	public void onAttack(Creature target)
 	{
-		if(!global.getListeners().isEmpty())
-			for(Listener<Creature> listener : global.getListeners())
-				if(OnAttackListener.class.isInstance(listener))
-					((OnAttackListener) listener).onAttack(getActor(), target);
+		for(Listener<Creature> listener : global.getListeners(OnAttackListener.class))
+			((OnAttackListener) listener).onAttack(getActor(), target);
 
-		if(!getListeners().isEmpty())
-			for(Listener<Creature> listener : getListeners())
-				if(OnAttackListener.class.isInstance(listener))
-					((OnAttackListener) listener).onAttack(getActor(), target);
+		for(Listener<Creature> listener : getListeners(OnAttackListener.class))
+			((OnAttackListener) listener).onAttack(getActor(), target);
 	}
 
 	public void onAttackHit(Creature attacker)
 	{
-		if(!global.getListeners().isEmpty())
-			for(Listener<Creature> listener : global.getListeners())
-				if(OnAttackHitListener.class.isInstance(listener))
-					((OnAttackHitListener) listener).onAttackHit(getActor(), attacker);
+		for(Listener<Creature> listener : global.getListeners(OnAttackHitListener.class))
+			((OnAttackHitListener) listener).onAttackHit(getActor(), attacker);
 
-		if(!getListeners().isEmpty())
-			for(Listener<Creature> listener : getListeners())
-				if(OnAttackHitListener.class.isInstance(listener))
-					((OnAttackHitListener) listener).onAttackHit(getActor(), attacker);
+		for(Listener<Creature> listener : getListeners(OnAttackHitListener.class))
+			((OnAttackHitListener) listener).onAttackHit(getActor(), attacker);
 	}
 
 	public void onMagicUse(SkillEntry skill, Creature target, boolean alt)
 	{
-		if(!global.getListeners().isEmpty())
-			for(Listener<Creature> listener : global.getListeners())
-				if(OnMagicUseListener.class.isInstance(listener))
-					((OnMagicUseListener) listener).onMagicUse(getActor(), skill, target, alt);
+		for(Listener<Creature> listener : global.getListeners(OnMagicUseListener.class))
+			((OnMagicUseListener) listener).onMagicUse(getActor(), skill, target, alt);
 
-		if(!getListeners().isEmpty())
-			for(Listener<Creature> listener : getListeners())
-				if(OnMagicUseListener.class.isInstance(listener))
-					((OnMagicUseListener) listener).onMagicUse(getActor(), skill, target, alt);
+		for(Listener<Creature> listener : getListeners(OnMagicUseListener.class))
+			((OnMagicUseListener) listener).onMagicUse(getActor(), skill, target, alt);
 	}
 
 	public void onMagicHit(SkillEntry skill, Creature caster)
 	{
-		if(!global.getListeners().isEmpty())
-			for(Listener<Creature> listener : global.getListeners())
-				if(OnMagicHitListener.class.isInstance(listener))
-					((OnMagicHitListener) listener).onMagicHit(getActor(), skill, caster);
+		for(Listener<Creature> listener : global.getListeners(OnMagicHitListener.class))
+			((OnMagicHitListener) listener).onMagicHit(getActor(), skill, caster);
 
-		if(!getListeners().isEmpty())
-			for(Listener<Creature> listener : getListeners())
-				if(OnMagicHitListener.class.isInstance(listener))
-					((OnMagicHitListener) listener).onMagicHit(getActor(), skill, caster);
+		for(Listener<Creature> listener : getListeners(OnMagicHitListener.class))
+			((OnMagicHitListener) listener).onMagicHit(getActor(), skill, caster);
 	}
 
 	public void onDeath(Creature killer)
 	{
-		if(!global.getListeners().isEmpty())
-			for(Listener<Creature> listener : global.getListeners())
-				if(OnDeathListener.class.isInstance(listener))
-					((OnDeathListener) listener).onDeath(getActor(), killer);
+		for(Listener<Creature> listener : global.getListeners(OnDeathListener.class))
+			((OnDeathListener) listener).onDeath(getActor(), killer);
 
-		if(!getListeners().isEmpty())
-			for(Listener<Creature> listener : getListeners())
-				if(OnDeathListener.class.isInstance(listener))
-					((OnDeathListener) listener).onDeath(getActor(), killer);
+		for(Listener<Creature> listener : getListeners(OnDeathListener.class))
+			((OnDeathListener) listener).onDeath(getActor(), killer);
 	}
 
 	public void onKill(Creature victim)
 	{
-		if(!global.getListeners().isEmpty())
-			for(Listener<Creature> listener : global.getListeners())
-				if(OnKillListener.class.isInstance(listener) && !((OnKillListener) listener).ignorePetOrSummon())
-					((OnKillListener) listener).onKill(getActor(), victim);
+		for(Listener<Creature> listener : global.getListeners(OnKillListener.class))
+			if(!((OnKillListener) listener).ignorePetOrSummon())
+				((OnKillListener) listener).onKill(getActor(), victim);
 
-		if(!getListeners().isEmpty())
-			for(Listener<Creature> listener : getListeners())
-				if(OnKillListener.class.isInstance(listener) && !((OnKillListener) listener).ignorePetOrSummon())
-					((OnKillListener) listener).onKill(getActor(), victim);
+		for(Listener<Creature> listener : getListeners(OnKillListener.class))
+			if(!((OnKillListener) listener).ignorePetOrSummon())
+				((OnKillListener) listener).onKill(getActor(), victim);
 	}
 
 	public void onKillIgnorePetOrSummon(Creature victim)
 	{
-		if(!global.getListeners().isEmpty())
-			for(Listener<Creature> listener : global.getListeners())
-				if(OnKillListener.class.isInstance(listener) && ((OnKillListener) listener).ignorePetOrSummon())
-					((OnKillListener) listener).onKill(getActor(), victim);
+		for(Listener<Creature> listener : global.getListeners(OnKillListener.class))
+			if(((OnKillListener) listener).ignorePetOrSummon())
+				((OnKillListener) listener).onKill(getActor(), victim);
 
-		if(!getListeners().isEmpty())
-			for(Listener<Creature> listener : getListeners())
-				if(OnKillListener.class.isInstance(listener) && ((OnKillListener) listener).ignorePetOrSummon())
-					((OnKillListener) listener).onKill(getActor(), victim);
+		for(Listener<Creature> listener : getListeners(OnKillListener.class))
+			if(((OnKillListener) listener).ignorePetOrSummon())
+				((OnKillListener) listener).onKill(getActor(), victim);
 	}
 
 	public void onCurrentHpDamage(double damage, Creature attacker, SkillEntry skill, boolean crit)
 	{
-		if(!global.getListeners().isEmpty())
-			for(Listener<Creature> listener : global.getListeners())
-				if(OnCurrentHpDamageListener.class.isInstance(listener))
-					((OnCurrentHpDamageListener) listener).onCurrentHpDamage(getActor(), damage, attacker, skill, crit);
+		for(Listener<Creature> listener : global.getListeners(OnCurrentHpDamageListener.class))
+			((OnCurrentHpDamageListener) listener).onCurrentHpDamage(getActor(), damage, attacker, skill, crit);
 
-		if(!getListeners().isEmpty())
-			for(Listener<Creature> listener : getListeners())
-				if(OnCurrentHpDamageListener.class.isInstance(listener))
-					((OnCurrentHpDamageListener) listener).onCurrentHpDamage(getActor(), damage, attacker, skill, crit);
+		for(Listener<Creature> listener : getListeners(OnCurrentHpDamageListener.class))
+			((OnCurrentHpDamageListener) listener).onCurrentHpDamage(getActor(), damage, attacker, skill, crit);
 	}
 
 	public void onDeathFromUndying(Creature killer)
 	{
-		if(!global.getListeners().isEmpty())
-			for(Listener<Creature> listener : global.getListeners())
-				if(OnDeathFromUndyingListener.class.isInstance(listener))
-					((OnDeathFromUndyingListener) listener).onDeathFromUndying(getActor(), killer);
+		for(Listener<Creature> listener : global.getListeners(OnDeathFromUndyingListener.class))
+			((OnDeathFromUndyingListener) listener).onDeathFromUndying(getActor(), killer);
 
-		if(!getListeners().isEmpty())
-			for(Listener<Creature> listener : getListeners())
-				if(OnDeathFromUndyingListener.class.isInstance(listener))
-					((OnDeathFromUndyingListener) listener).onDeathFromUndying(getActor(), killer);
+		for(Listener<Creature> listener : getListeners(OnDeathFromUndyingListener.class))
+			((OnDeathFromUndyingListener) listener).onDeathFromUndying(getActor(), killer);
 	}
 
 	public void onRevive()
 	{
-		if(!global.getListeners().isEmpty())
-			for(Listener<Creature> listener : global.getListeners())
-				if(listener instanceof OnReviveListener)
-					((OnReviveListener) listener).onRevive(getActor());
+		for(Listener<Creature> listener : global.getListeners(OnReviveListener.class))
+			((OnReviveListener) listener).onRevive(getActor());
 
-		if(!getListeners().isEmpty())
-			for(Listener<Creature> listener : getListeners())
-				if(listener instanceof OnReviveListener)
-					((OnReviveListener) listener).onRevive(getActor());
+		for(Listener<Creature> listener : getListeners(OnReviveListener.class))
+			((OnReviveListener) listener).onRevive(getActor());
 	}
 }
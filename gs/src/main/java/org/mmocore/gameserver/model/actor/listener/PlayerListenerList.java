@@ -32,92 +32,64 @@ public class PlayerListenerList extends CharListenerList
 
 	public void onEnter()
 	{
-		if(!global.getListeners().isEmpty())
-			for(Listener<Creature> listener : global.getListeners())
-				if(OnPlayerEnterListener.class.isInstance(listener))
-					((OnPlayerEnterListener) listener).onPlayerEnter(getActor());
-
-		if(!getListeners().isEmpty())
-			for(Listener<Creature> listener : getListeners())
-				if(OnPlayerEnterListener.class.isInstance(listener))
-					((OnPlayerEnterListener) listener).onPlayerEnter(getActor());
+		for(Listener<Creature> listener : global.getListeners(OnPlayerEnterListener.class))
+			((OnPlayerEnterListener) listener).onPlayerEnter(getActor());
+
+		for(Listener<Creature> listener : getListeners(OnPlayerEnterListener.class))
+			((OnPlayerEnterListener) listener).onPlayerEnter(getActor());
 	}
 
 	public void onExit()
 	{
-		if(!global.getListeners().isEmpty())
-			for(Listener<Creature> listener : global.getListeners())
-				if(OnPlayerExitListener.class.isInstance(listener))
-					((OnPlayerExitListener) listener).onPlayerExit(getActor());
-
-		if(!getListeners().isEmpty())
-			for(Listener<Creature> listener : getListeners())
-				if(OnPlayerExitListener.class.isInstance(listener))
-					((OnPlayerExitListener) listener).onPlayerExit(getActor());
+		for(Listener<Creature> listener : global.getListeners(OnPlayerExitListener.class))
+			((OnPlayerExitListener) listener).onPlayerExit(getActor());
+
+		for(Listener<Creature> listener : getListeners(OnPlayerExitListener.class))
+			((OnPlayerExitListener) listener).onPlayerExit(getActor());
 	}
 
 	public void onTeleport(int x, int y, int z, Reflection reflection)
 	{
-		if(!global.getListeners().isEmpty())
-			for(Listener<Creature> listener : global.getListeners())
-				if(OnTeleportListener.class.isInstance(listener))
-					((OnTeleportListener) listener).onTeleport(getActor(), x, y, z, reflection);
-
-		if(!getListeners().isEmpty())
-			for(Listener<Creature> listener : getListeners())
-				if(OnTeleportListener.class.isInstance(listener))
-					((OnTeleportListener) listener).onTeleport(getActor(), x, y, z, reflection);
+		for(Listener<Creature> listener : global.getListeners(OnTeleportListener.class))
+			((OnTeleportListener) listener).onTeleport(getActor(), x, y, z, reflection);
+
+		for(Listener<Creature> listener : getListeners(OnTeleportListener.class))
+			((OnTeleportListener) listener).onTeleport(getActor(), x, y, z, reflection);
 	}
 
 	public void onPartyInvite()
 	{
-		if(!global.getListeners().isEmpty())
-			for(Listener<Creature> listener : global.getListeners())
-				if(OnPlayerPartyInviteListener.class.isInstance(listener))
-					((OnPlayerPartyInviteListener) listener).onPartyInvite(getActor());
-
-		if(!getListeners().isEmpty())
-			for(Listener<Creature> listener : getListeners())
-				if(OnPlayerPartyInviteListener.class.isInstance(listener))
-					((OnPlayerPartyInviteListener) listener).onPartyInvite(getActor());
+		for(Listener<Creature> listener : global.getListeners(OnPlayerPartyInviteListener.class))
+			((OnPlayerPartyInviteListener) listener).onPartyInvite(getActor());
+
+		for(Listener<Creature> listener : getListeners(OnPlayerPartyInviteListener.class))
+			((OnPlayerPartyInviteListener) listener).onPartyInvite(getActor());
 	}
 
 	public void onPartyLeave()
 	{
-		if(!global.getListeners().isEmpty())
-			for(Listener<Creature> listener : global.getListeners())
-				if(OnPlayerPartyLeaveListener.class.isInstance(listener))
-					((OnPlayerPartyLeaveListener) listener).onPartyLeave(getActor());
-
-		if(!getListeners().isEmpty())
-			for(Listener<Creature> listener : getListeners())
-				if(OnPlayerPartyLeaveListener.class.isInstance(listener))
-					((OnPlayerPartyLeaveListener) listener).onPartyLeave(getActor());
+		for(Listener<Creature> listener : global.getListeners(OnPlayerPartyLeaveListener.class))
+			((OnPlayerPartyLeaveListener) listener).onPartyLeave(getActor());
+
+		for(Listener<Creature> listener : getListeners(OnPlayerPartyLeaveListener.class))
+			((OnPlayerPartyLeaveListener) listener).onPartyLeave(getActor());
 	}
 
 	public void onSummonServitor(Servitor servitor)
 	{
-		if(!global.getListeners().isEmpty())
-			for(Listener<Creature> listener : global.getListeners())
-				if(OnPlayerSummonServitorListener.class.isInstance(listener))
-					((OnPlayerSummonServitorListener) listener).onSummonServitor(getActor(), servitor);
-
-		if(!getListeners().isEmpty())
-			for(Listener<Creature> listener : getListeners())
-				if(OnPlayerSummonServitorListener.class.isInstance(listener))
-					((OnPlayerSummonServitorListener) listener).onSummonServitor(getActor(), servitor);
+		for(Listener<Creature> listener : global.getListeners(OnPlayerSummonServitorListener.class))
+			((OnPlayerSummonServitorListener) listener).onSummonServitor(getActor(), servitor);
+
+		for(Listener<Creature> listener : getListeners(OnPlayerSummonServitorListener.class))
+			((OnPlayerSummonServitorListener) listener).onSummonServitor(getActor(), servitor);
 	}
 
 	public void onSay(ChatType type, String target, String text)
 	{
-		if(!global.getListeners().isEmpty())
-			for(Listener<Creature> listener : global.getListeners())
-				if(OnPlayerSayListener.class.isInstance(listener))
-					((OnPlayerSayListener) listener).onSay(getActor(), type, target, text);
-
-		if(!getListeners().isEmpty())
-			for(Listener<Creature> listener : getListeners())
-				if(OnPlayerSayListener.class.isInstance(listener))
-					((OnPlayerSayListener) listener).onSay(getActor(), type, target, text);
+		for(Listener<Creature> listener : global.getListeners(OnPlayerSayListener.class))
+			((OnPlayerSayListener) listener).onSay(getActor(), type, target, text);
+
+		for(Listener<Creature> listener : getListeners(OnPlayerSayListener.class))
+			((OnPlayerSayListener) listener).onSay(getActor(), type, target, text);
 	}
 }
@@ -225,7 +225,12 @@ public abstract class Boat extends Creature
 	@Override
 	public void broadcastPacket(IBroadcastPacket... packets)
 	{
-		for(Player player : World.getAroundObservers(this))
+		List<Player> players = World.getAroundObservers(this);
+		if(players.size() > 1)
+			for(IBroadcastPacket p : packets)
+				shareBroadcastPacket(p);
+
+		for(Player player : players)
 			player.sendPacket(packets);
 	}
 
@@ -74,6 +74,7 @@ import org.mmocore.gameserver.templates.StatsSet;
 import org.mmocore.gameserver.templates.item.ItemTemplate;
 import org.mmocore.gameserver.templates.item.WeaponTemplate;
 import org.mmocore.gameserver.templates.npc.Faction;
+import org.mmocore.gameserver.templates.npc.NpcAIParams;
 import org.mmocore.gameserver.templates.npc.NpcTemplate;
 import org.mmocore.gameserver.templates.spawn.SpawnRange;
 import org.mmocore.gameserver.utils.CertificationFunctions;
@@ -144,6 +145,8 @@ public class NpcInstance extends Creature
 	private MinionList _minionList = null;
 
 	private MultiValueSet<String> _parameters = StatsSet.EMPTY;
+	/** разобранные параметры, null - нужно разобрать заново после изменения параметров */
+	private volatile NpcAIParams _typedParameters;
 	private boolean _itemDropEnabled = true;
 
 	public NpcInstance(int objectId, NpcTemplate template)
@@ -155,6 +158,7 @@ public class NpcInstance extends Creature
 
 		setUndying(SpecialEffectState.TRUE);
 		setParameters(template.getAIParams());
+		_typedParameters = template.getTypedAIParams();
 
 		_hasRandomAnimation = !getParameter(NO_RANDOM_ANIMATION, false) && Config.MAX_NPC_ANIMATION > 0;
 		_hasRandomWalk = !getParameter(NO_RANDOM_WALK, false);
@@ -1921,6 +1925,7 @@ public class NpcInstance extends Creature
 			_parameters = new StatsSet();
 
 		_parameters.set(str, val);
+		_typedParameters = null;
 	}
 
 	public void setParameters(MultiValueSet<String> set)
@@ -1932,6 +1937,7 @@ public class NpcInstance extends Creature
 			_parameters = new MultiValueSet<String>(set.size());
 
 		_parameters.putAll(set);
+		_typedParameters = null;
 	}
 
 	public int getParameter(String str, int val)
@@ -1959,6 +1965,17 @@ public class NpcInstance extends Creature
 		return _parameters;
 	}
 
+	/**
+	 * @return параметры AI в типизированном виде, для NPC без собственных параметров - общие для шаблона
+	 */
+	public NpcAIParams getTypedAIParams()
+	{
+		NpcAIParams params = _typedParameters;
+		if(params == null)
+			_typedParameters = params = new NpcAIParams(_parameters, getNpcId());
+		return params;
+	}
+
 	public boolean isHasChatWindow()
 	{
 		return _hasChatWindow;
@@ -11,6 +11,7 @@ import org.mmocore.gameserver.Config;
 import org.mmocore.gameserver.ai.CtrlIntention;
 import org.mmocore.gameserver.dao.ItemsDAO;
 import org.mmocore.gameserver.data.xml.holder.ItemHolder;
+import org.mmocore.gameserver.database.PersistenceService;
 import org.mmocore.gameserver.geodata.GeoEngine;
 import org.mmocore.gameserver.handler.onshiftaction.OnShiftActionHolder;
 import org.mmocore.gameserver.instancemanager.CursedWeaponsManager;
@@ -90,6 +91,8 @@ public final class ItemInstance extends GameObject implements JdbcEntity
 
 	/** ID of the owner */
 	private int _ownerId = 0;
+	/** владелец, последним записанный в базу */
+	private int _storedOwnerId = 0;
 	/** ID of the item */
 	private int itemId;
 	/** Quantity of the item */
@@ -168,6 +171,16 @@ public final class ItemInstance extends GameObject implements JdbcEntity
 		_ownerId = ownerId;
 	}
 
+	public int getStoredOwnerId()
+	{
+		return _storedOwnerId;
+	}
+
+	public void setStoredOwnerId(int storedOwnerId)
+	{
+		_storedOwnerId = storedOwnerId;
+	}
+
 	public int getItemId()
 	{
 		return itemId;
@@ -1162,7 +1175,7 @@ public final class ItemInstance extends GameObject implements JdbcEntity
 	@Override
 	public void update()
 	{
-		_itemsDAO.update(this);
+		PersistenceService.getInstance().update(this);
 	}
 
 	@Override
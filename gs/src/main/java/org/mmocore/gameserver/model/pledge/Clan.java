@@ -19,6 +19,7 @@ import org.mmocore.gameserver.network.l2.components.SystemMsg;
 import org.mmocore.gameserver.data.xml.holder.ResidenceHolder;
 import org.mmocore.gameserver.database.DatabaseFactory;
 import org.mmocore.gameserver.database.mysql;
+import org.mmocore.gameserver.model.GameObjectsStorage;
 import org.mmocore.gameserver.model.Player;
 import org.mmocore.gameserver.model.entity.boat.ClanAirShip;
 import org.mmocore.gameserver.model.entity.residence.Castle;
@@ -391,6 +392,9 @@ public class Clan implements Iterable<UnitMember>
 	public void setAllyId(int allyId)
 	{
 		_allyId = allyId;
+
+		for(Player player : GameObjectsStorage.getPlayersByClan(getClanId()))
+			GameObjectsStorage.updatePlayer(player);
 	}
 
 	/**
@@ -16,6 +16,8 @@ public class RewardGroup implements Cloneable
 	private boolean _notRate = false; // Рейты вообще не применяются
 	private List<RewardData> _items = new ArrayList<RewardData>();
 	private double _chanceSum;
+	/** таблица выбора вещи, строится при первом броске */
+	private volatile RewardTable _table;
 
 	public RewardGroup(double chance)
 	{
@@ -59,6 +61,7 @@ public class RewardGroup implements Cloneable
 		_chanceSum += item.getChance();
 		item.setChanceInGroup(_chanceSum);
 		_items.add(item);
+		_table = null;
 	}
 
 	/**
@@ -119,26 +122,28 @@ public class RewardGroup implements Cloneable
 		else
 			rate = baseRewardRate * mod;
 
-		double mult = Math.ceil(rate);
+		long mult = (long) Math.ceil(rate);
 
-		boolean firstPass = true;
 		List<RewardItem> ret = new ArrayList<RewardItem>(_items.size() * 3 / 2);
-		for(long n = 0; n < mult; n++)
-		{
-			//double gmult = rate - n;
-                        double gmult = rate;
-			if(Rnd.get(1, RewardList.MAX_CHANCE) <= _chance * Math.min(gmult, 1.0))
-				if(Config.ALT_MULTI_DROP)
-				{
-					rollFinal(_items, ret, 1.0, firstPass);
-				}
-				else
-				{
-					rollFinal(_items, ret, Math.max(gmult, 1.0), firstPass);
-					break;
-				}
+		if(mult <= 0)
+			return ret;
 
-			firstPass = false;
+		// ceil(rate) проходов с одинаковым шансом: первый проход бросается как есть,
+		// для остальных сразу выбирается число удачных проходов или наличие хотя бы одного
+		double chance = _chance * Math.min(rate, 1.0);
+		if(Config.ALT_MULTI_DROP)
+		{
+			if(Rnd.get(1, RewardList.MAX_CHANCE) <= chance)
+				rollFinal(ret, 1.0, true);
+			rollFinal(ret, Rnd.binomial(mult - 1, getPassChance(chance)));
+		}
+		else
+		{
+			// выпадение только в первом удачном проходе
+			if(Rnd.get(1, RewardList.MAX_CHANCE) <= chance)
+				rollFinal(ret, Math.max(rate, 1.0), true);
+			else if(mult > 1 && Rnd.get() < 1. - Math.pow(1. - getPassChance(chance), mult - 1))
+				rollFinal(ret, Math.max(rate, 1.0), false);
 		}
 		return ret;
 	}
@@ -154,21 +159,34 @@ public class RewardGroup implements Cloneable
 		else
 			rate = baseRate * playerRate * mod;
 
-		double mult = Math.ceil(rate);
+		long mult = (long) Math.ceil(rate);
 
-		boolean firstPass = true;
 		List<RewardItem> ret = new ArrayList<RewardItem>(_items.size() * 3 / 2);
-		for(long n = 0; n < mult; n++)
-		{
-			if(Rnd.get(1, RewardList.MAX_CHANCE) <= _chance * Math.min(rate - n, 1.0))
-				rollFinal(_items, ret, 1.0, firstPass);
+		if(mult <= 0)
+			return ret;
 
-			firstPass = false;
+		// первый проход, полные промежуточные проходы и последний, с остатком рейта
+		if(Rnd.get(1, RewardList.MAX_CHANCE) <= _chance * Math.min(rate, 1.0))
+			rollFinal(ret, 1.0, true);
+		if(mult > 1)
+		{
+			long passes = Rnd.binomial(mult - 2, getPassChance(_chance));
+			if(Rnd.get(1, RewardList.MAX_CHANCE) <= _chance * Math.min(rate - (mult - 1), 1.0))
+				passes++;
+			rollFinal(ret, passes);
 		}
 
 		return ret;
 	}
 
+	/**
+	 * @return вероятность условия Rnd.get(1, MAX_CHANCE) <= chance
+	 */
+	private static double getPassChance(double chance)
+	{
+		return Math.max(0., Math.min(Math.floor(chance), RewardList.MAX_CHANCE)) / RewardList.MAX_CHANCE;
+	}
+
 	private List<RewardItem> rollAdena(double baseRate, double playerRate, double mod)
 	{
 		double chance = _chance;
@@ -187,54 +205,212 @@ public class RewardGroup implements Cloneable
 		double rate = baseRate * playerRate * mod;
 
 		List<RewardItem> ret = new ArrayList<RewardItem>(_items.size());
-		rollFinal(_items, ret, rate, true);
+		rollFinal(ret, rate, true);
 		for(RewardItem i : ret)
 			i.isAdena = true;
 
 		return ret;
 	}
 
-	private void rollFinal(List<RewardData> items, List<RewardItem> ret, double mult, boolean firstPass)
+	private RewardTable getTable()
+	{
+		RewardTable table = _table;
+		if(table == null)
+			_table = table = new RewardTable(_items);
+		return table;
+	}
+
+	/**
+	 * Один проход: выбор не более одной вещи из группы.
+	 */
+	private void rollFinal(List<RewardItem> ret, double mult, boolean firstPass)
+	{
+		RewardData i = getTable().roll();
+		if(i == null)
+			return;
+		if(!firstPass && i.onePassOnly()) // для нерейтующихся итемов делается только первый проход
+			return;
+
+		double imult = i.notRate() ? 1.0 : mult;
+
+		long count = (long) Math.floor(i.getMinDrop() * imult);
+		long max = (long) Math.ceil(i.getMaxDrop() * imult);
+		if(count != max)
+			count = Rnd.get(count, max);
+
+		addItem(ret, i, count);
+	}
+
+	/**
+	 * Несколько проходов, кроме первого, с множителем 1.0. Результат тот же, что у passes вызовов {@link #rollFinal(List, double, boolean)}.
+	 */
+	private void rollFinal(List<RewardItem> ret, long passes)
 	{
-		// перебираем все вещи в группе и проверяем шанс
-		int chance = Rnd.get(0, RewardList.MAX_CHANCE);
-		long count, max;
+		if(passes <= 0)
+			return;
+
+		RewardTable table = getTable();
+		// мало проходов - выбираем вещь на каждый проход
+		if(passes <= table.items.length)
+		{
+			for(long n = 0; n < passes; n++)
+				rollFinal(ret, 1.0, false);
+			return;
+		}
 
-		for(RewardData i : items)
+		// много проходов - сразу раскладываем их по вещам (полиномиальное распределение)
+		double rest = 1.;
+		for(int k = 0; k < table.items.length && passes > 0 && rest > 0; k++)
 		{
-			if (!firstPass && i.onePassOnly()) // для нерейтующихся итемов делается только первый проход 
+			double p = table.chances[k];
+			long hits = Rnd.binomial(passes, Math.min(p / rest, 1.));
+			passes -= hits;
+			rest -= p;
+
+			RewardData i = table.items[k];
+			if(hits == 0 || i.onePassOnly())
 				continue;
 
-			if(chance < i.getChanceInGroup() && chance > i.getChanceInGroup() - i.getChance())
-			{
-				double imult = i.notRate() ? 1.0 : mult;
-                                
-				count = (long)Math.floor(i.getMinDrop() * imult);
-				max = (long)Math.ceil(i.getMaxDrop() * imult);                               
-				if (count != max)
-					count = Rnd.get(count, max);
-                                
-				RewardItem t = null;
-
-				for(RewardItem r : ret)
-					if(i.getItemId() == r.itemId)
-					{
-						t = r;
-						break;
-					}
-
-				if(t == null)
-				{
-					ret.add(t = new RewardItem(i.getItemId()));
-					t.count = count;
-				}
-				else if(!i.notRate())
-				{
-					t.count = SafeMath.addAndLimit(t.count, count);
-				}
+			if(i.notRate())
+				addItem(ret, i, Rnd.get(i.getMinDrop(), i.getMaxDrop()));
+			else
+				addItem(ret, i, rollCount(i.getMinDrop(), i.getMaxDrop(), hits));
+		}
+	}
 
+	private static void addItem(List<RewardItem> ret, RewardData i, long count)
+	{
+		RewardItem t = null;
+
+		for(RewardItem r : ret)
+			if(i.getItemId() == r.itemId)
+			{
+				t = r;
 				break;
 			}
+
+		if(t == null)
+		{
+			ret.add(t = new RewardItem(i.getItemId()));
+			t.count = count;
+		}
+		else if(!i.notRate())
+		{
+			t.count = SafeMath.addAndLimit(t.count, count);
+		}
+	}
+
+	/**
+	 * @return сумма times случайных чисел от min до max, при большом times - нормальным приближением
+	 */
+	private static long rollCount(long min, long max, long times)
+	{
+		if(min == max)
+			return SafeMath.mulAndLimit(min, times);
+
+		if(times <= 16)
+		{
+			long count = 0;
+			for(long n = 0; n < times; n++)
+				count = SafeMath.addAndLimit(count, Rnd.get(min, max));
+			return count;
+		}
+
+		double width = max - min + 1.;
+		double mean = times * (min + max) / 2.;
+		double sigma = Math.sqrt(times * (width * width - 1.) / 12.);
+		double count = Math.rint(mean + sigma * Rnd.nextGaussian());
+		return (long) Math.max(times * (double) min, Math.min(times * (double) max, count));
+	}
+
+	/**
+	 * Таблица выбора вещи группы.<BR>
+	 * Проход выбирает целое chance от 0 до MAX_CHANCE и берет вещь, для которой chanceInGroup - chance < значение < chanceInGroup.
+	 * Для каждой вещи заранее считается число подходящих значений, выбор делается по таблице псевдонимов (метод Уолкера)
+	 * за постоянное время с теми же вероятностями, включая вероятность не выбрать ничего.
+	 */
+	private static class RewardTable
+	{
+		private static final int TOTAL = RewardList.MAX_CHANCE + 1;
+
+		private final RewardData[] items;
+		/** вероятность выбора вещи за проход */
+		private final double[] chances;
+		/** порог и псевдоним для каждой ячейки, последняя ячейка - ничего не выбрано */
+		private final int[] thresholds;
+		private final int[] aliases;
+
+		private RewardTable(List<RewardData> list)
+		{
+			items = list.toArray(new RewardData[list.size()]);
+			chances = new double[items.length];
+
+			int n = items.length + 1;
+			long[] weights = new long[n];
+			long sum = 0;
+			for(int k = 0; k < items.length; k++)
+			{
+				RewardData i = items[k];
+				long lo = Math.max(0, (long) Math.floor(i.getChanceInGroup() - i.getChance()) + 1);
+				long hi = Math.min(RewardList.MAX_CHANCE, (long) Math.ceil(i.getChanceInGroup()) - 1);
+				weights[k] = Math.max(0, Math.min(hi - lo + 1, TOTAL - sum));
+				sum += weights[k];
+				chances[k] = (double) weights[k] / TOTAL;
+			}
+			weights[n - 1] = TOTAL - sum;
+
+			// после умножения на n средний вес равен TOTAL
+			thresholds = new int[n];
+			aliases = new int[n];
+			int[] small = new int[n];
+			int[] large = new int[n];
+			int smallSize = 0, largeSize = 0;
+			for(int k = 0; k < n; k++)
+			{
+				weights[k] *= n;
+				if(weights[k] < TOTAL)
+					small[smallSize++] = k;
+				else
+					large[largeSize++] = k;
+			}
+
+			while(smallSize > 0 && largeSize > 0)
+			{
+				int l = small[--smallSize];
+				int g = large[--largeSize];
+				thresholds[l] = (int) weights[l];
+				aliases[l] = g;
+				weights[g] -= TOTAL - weights[l];
+				if(weights[g] < TOTAL)
+					small[smallSize++] = g;
+				else
+					large[largeSize++] = g;
+			}
+			while(largeSize > 0)
+			{
+				int g = large[--largeSize];
+				thresholds[g] = TOTAL;
+				aliases[g] = g;
+			}
+			while(smallSize > 0)
+			{
+				int l = small[--smallSize];
+				thresholds[l] = TOTAL;
+				aliases[l] = l;
+			}
+		}
+
+		/**
+		 * @return выбранная вещь, null если ничего не выбрано
+		 */
+		private RewardData roll()
+		{
+			// одно случайное число дает и ячейку, и значение для сравнения с порогом
+			int r = Rnd.get(thresholds.length * TOTAL);
+			int k = r / TOTAL;
+			if(r - k * TOTAL >= thresholds[k])
+				k = aliases[k];
+			return k < items.length ? items[k] : null;
 		}
 	}
-}
\ No newline at end of file
+}
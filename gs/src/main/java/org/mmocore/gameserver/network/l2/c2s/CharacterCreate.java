@@ -143,7 +143,7 @@ public class CharacterCreate extends L2GameClientPacket
 		newChar.setCurrentCp(0); // retail
 		newChar.setIsOnline(false);
 
-		newChar.store(false);
+		newChar.storeNow(false);
 		newChar.getInventory().store();
 		newChar.deleteMe();
 
@@ -5,6 +5,7 @@ import java.util.List;
 
 import org.apache.commons.lang3.ArrayUtils;
 import org.mmocore.commons.math.SafeMath;
+import org.mmocore.gameserver.instancemanager.PrivateStoreIndex;
 import org.mmocore.gameserver.model.Creature;
 import org.mmocore.gameserver.model.Player;
 import org.mmocore.gameserver.model.items.ItemInstance;
@@ -221,6 +222,7 @@ public class RequestPrivateStoreBuySellList extends L2GameClientPacket
 
 				seller.addAdena(totalCost);
 				buyer.saveTradeList();
+				PrivateStoreIndex.getInstance().update(buyer);
 			}
 			finally
 			{
@@ -417,7 +417,7 @@ public class Say2C extends L2GameClientPacket
 
 				identifierForLog = siegeEvent.getId();
 
-				for(Player player : GameObjectsStorage.getPlayers())
+				for(Player player : GameObjectsStorage.getPlayersByEvent(siegeEvent))
 					if(!player.isInBlockList(activeChar) && !player.isBlockAll() && activeChar.canTalkWith(player) && player.getEvent(DominionSiegeEvent.class) == siegeEvent)
 						player.sendPacket(cs);
 				break;
@@ -8,6 +8,7 @@ import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.text.StrBuilder;
 import org.mmocore.gameserver.data.htm.HtmCache;
+import org.mmocore.gameserver.data.htm.HtmTemplate;
 import org.mmocore.gameserver.model.Player;
 import org.mmocore.gameserver.model.instances.NpcInstance;
 import org.mmocore.gameserver.network.l2.s2c.ActionFail;
@@ -120,15 +121,14 @@ public class HtmlMessage implements IBroadcastPacket
 
 		if(!StringUtils.isEmpty(_html))
 		{
-			content = make(_html);
+			content = make(HtmTemplate.compile(_html));
 		}
 		else if(!StringUtils.isEmpty(_filename))
 		{
 			if(player.isGM())
 				player.sendMessage("HTML: " + _filename);
 
-			String htmCache = HtmCache.getInstance().getHtml(_filename, player);
-			content = make(htmCache);
+			content = make(HtmCache.getInstance().getTemplate(_filename, player));
 		}
 		else
 		{
@@ -151,34 +151,50 @@ public class HtmlMessage implements IBroadcastPacket
 		return _variables;
 	}
 
-	private CharSequence make(String content)
+	private CharSequence make(HtmTemplate template)
 	{
-		if(content == null)
+		if(template == null)
 			return StringUtils.EMPTY;
 
+		String content = template.getText();
 		StrBuilder sb = null;
 
-		if(_replaces != null)
+		if(_replaces != null || _npcObjId != 0)
 		{
-			sb = new StrBuilder(content);
-			for(Map.Entry<String, String> e : _replaces.entrySet())
-				sb.replaceAll(e.getKey(), e.getValue());
-		}
-		if(_npcObjId != 0)
-		{
-			if(sb == null)
-				sb = new StrBuilder(content);
-			sb.replaceAll("%objectId%", String.valueOf(_npcObjId));
-			if(_npc != null)
+			Map<String, String> replaces = new HashMap<String, String>();
+			if(_npcObjId != 0)
 			{
-				sb.replaceAll("%npcId%", String.valueOf(_npc.getNpcId()));
+				replaces.put("%objectId%", String.valueOf(_npcObjId));
+				if(_npc != null)
+					replaces.put("%npcId%", String.valueOf(_npc.getNpcId()));
 			}
-		}
 
-		if(sb != null)
-		{
-			content = sb.toString();
-			sb.clear();
+			boolean chained = false;
+			if(_replaces != null)
+				for(Map.Entry<String, String> e : _replaces.entrySet())
+				{
+					// замены, заданные явно, выполняются раньше %objectId% и %npcId% и имеют приоритет
+					replaces.put(e.getKey(), e.getValue());
+					chained |= e.getValue().indexOf('%') >= 0;
+				}
+
+			if(!chained)
+				content = template.render(replaces);
+			else
+			{
+				// подставленные значения сами содержат имена для замены, заменяем по очереди
+				sb = new StrBuilder(content);
+				for(Map.Entry<String, String> e : _replaces.entrySet())
+					sb.replaceAll(e.getKey(), e.getValue());
+				if(_npcObjId != 0)
+				{
+					sb.replaceAll("%objectId%", String.valueOf(_npcObjId));
+					if(_npc != null)
+						sb.replaceAll("%npcId%", String.valueOf(_npc.getNpcId()));
+				}
+				content = sb.toString();
+				sb.clear();
+			}
 		}
 
 		content = VelocityUtils.evaluate(content, _variables);
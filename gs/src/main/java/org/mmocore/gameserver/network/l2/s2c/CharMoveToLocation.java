@@ -1,6 +1,7 @@
 package org.mmocore.gameserver.network.l2.s2c;
 
 import org.mmocore.gameserver.Config;
+import org.mmocore.gameserver.model.BroadcastInterest;
 import org.mmocore.gameserver.model.Creature;
 import org.mmocore.gameserver.utils.Location;
 import org.mmocore.gameserver.utils.Log;
@@ -50,4 +51,10 @@ public class CharMoveToLocation extends L2GameServerPacket
 		writeD(_current.y);
 		writeD(_current.z + _client_z_shift);
 	}
+
+	@Override
+	public int getBroadcastInterest()
+	{
+		return BroadcastInterest.POSITION;
+	}
 }
\ No newline at end of file
@@ -11,6 +11,7 @@ import org.mmocore.gameserver.Config;
 import org.mmocore.gameserver.dao.CharacterAccessDAO;
 import org.mmocore.gameserver.dao.CharacterDAO;
 import org.mmocore.gameserver.database.DatabaseFactory;
+import org.mmocore.gameserver.database.PersistenceService;
 import org.mmocore.gameserver.model.CharSelectInfo;
 import org.mmocore.gameserver.model.base.Experience;
 import org.mmocore.gameserver.model.items.Inventory;
@@ -146,6 +147,8 @@ public class CharacterSelectionInfo extends L2GameServerPacket
 		CharSelectInfo charInfopackage;
 		List<CharSelectInfo> characterList = new ArrayList<CharSelectInfo>();
 
+		PersistenceService.getInstance().flushAccount(loginName);
+
 		Connection con = null;
 		PreparedStatement statement = null;
 		ResultSet rset = null;
@@ -3,6 +3,7 @@ package org.mmocore.gameserver.network.l2.s2c;
 
 import org.mmocore.commons.net.nio.impl.SendablePacket;
 import org.mmocore.gameserver.data.xml.holder.ItemHolder;
+import org.mmocore.gameserver.model.BroadcastInterest;
 import org.mmocore.gameserver.model.Player;
 import org.mmocore.gameserver.model.base.Element;
 import org.mmocore.gameserver.model.items.ItemInfo;
@@ -177,6 +178,14 @@ public abstract class L2GameServerPacket extends SendablePacket<GameClient> impl
 		writeH(0x00); // светлая стихия (dark pdef)
 	}
 
+	/**
+	 * @return вид пакета для рассылки окружающим, см. {@link BroadcastInterest}
+	 */
+	public int getBroadcastInterest()
+	{
+		return BroadcastInterest.CRITICAL;
+	}
+
 	public String getType()
 	{
 		return "[S] " + getClass().getSimpleName();
@@ -1,5 +1,6 @@
 package org.mmocore.gameserver.network.l2.s2c;
 
+import org.mmocore.gameserver.model.BroadcastInterest;
 import org.mmocore.gameserver.model.Creature;
 
 public class MoveToPawn extends L2GameServerPacket
@@ -37,4 +38,10 @@ public class MoveToPawn extends L2GameServerPacket
 		writeD(_ty);
 		writeD(_tz);
 	}
+
+	@Override
+	public int getBroadcastInterest()
+	{
+		return BroadcastInterest.POSITION;
+	}
 }
\ No newline at end of file
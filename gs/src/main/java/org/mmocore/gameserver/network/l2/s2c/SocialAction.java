@@ -1,5 +1,7 @@
 package org.mmocore.gameserver.network.l2.s2c;
 
+import org.mmocore.gameserver.model.BroadcastInterest;
+
 public class SocialAction extends L2GameServerPacket
 {
 	private int _playerId;
@@ -39,4 +41,10 @@ public class SocialAction extends L2GameServerPacket
 		writeD(_playerId);
 		writeD(_actionId);
 	}
+
+	@Override
+	public int getBroadcastInterest()
+	{
+		return BroadcastInterest.ANIMATION;
+	}
 }
\ No newline at end of file
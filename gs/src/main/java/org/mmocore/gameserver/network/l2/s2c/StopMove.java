@@ -1,5 +1,6 @@
 package org.mmocore.gameserver.network.l2.s2c;
 
+import org.mmocore.gameserver.model.BroadcastInterest;
 import org.mmocore.gameserver.model.Creature;
 
 /**
@@ -32,4 +33,10 @@ public class StopMove extends L2GameServerPacket
 		writeD(_z);
 		writeD(_heading);
 	}
+
+	@Override
+	public int getBroadcastInterest()
+	{
+		return BroadcastInterest.POSITION_RESET;
+	}
 }
\ No newline at end of file
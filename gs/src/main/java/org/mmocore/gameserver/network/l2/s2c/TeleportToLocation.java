@@ -1,6 +1,7 @@
 package org.mmocore.gameserver.network.l2.s2c;
 
 import org.mmocore.gameserver.Config;
+import org.mmocore.gameserver.model.BroadcastInterest;
 import org.mmocore.gameserver.model.GameObject;
 import org.mmocore.gameserver.utils.Location;
 
@@ -39,4 +40,10 @@ public class TeleportToLocation extends L2GameServerPacket
 		writeD(0x00); //IsValidation
 		writeD(_loc.h);
 	}
+
+	@Override
+	public int getBroadcastInterest()
+	{
+		return BroadcastInterest.POSITION_RESET;
+	}
 }
\ No newline at end of file
@@ -1,5 +1,6 @@
 package org.mmocore.gameserver.network.l2.s2c;
 
+import org.mmocore.gameserver.model.BroadcastInterest;
 import org.mmocore.gameserver.model.Creature;
 import org.mmocore.gameserver.utils.Location;
 
@@ -28,4 +29,10 @@ public class ValidateLocation extends L2GameServerPacket
 		writeD(_loc.z);
 		writeD(_loc.h);
 	}
+
+	@Override
+	public int getBroadcastInterest()
+	{
+		return BroadcastInterest.POSITION;
+	}
 }
\ No newline at end of file
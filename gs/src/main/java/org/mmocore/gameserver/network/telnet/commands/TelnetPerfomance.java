@@ -21,11 +21,17 @@ import org.mmocore.gameserver.ThreadPoolManager;
 import org.mmocore.gameserver.dao.ItemsDAO;
 import org.mmocore.gameserver.dao.MailDAO;
 import org.mmocore.gameserver.database.DatabaseFactory;
+import org.mmocore.gameserver.database.PersistenceService;
 import org.mmocore.gameserver.geodata.PathFindBuffers;
+import org.mmocore.gameserver.geodata.PathFindGraph;
+import org.mmocore.gameserver.instancemanager.PrivateStoreIndex;
+import org.mmocore.gameserver.model.actor.instances.player.RestorePipeline;
 import org.mmocore.gameserver.network.telnet.TelnetCommand;
 import org.mmocore.gameserver.network.telnet.TelnetCommandHolder;
 import org.mmocore.gameserver.taskmanager.AiTaskManager;
 import org.mmocore.gameserver.taskmanager.EffectTaskManager;
+import org.mmocore.gameserver.taskmanager.MoveTaskManager;
+import org.mmocore.gameserver.taskmanager.ReplicationManager;
 import org.mmocore.gameserver.utils.GameStats;
 
 public class TelnetPerfomance implements TelnetCommandHolder
@@ -53,8 +59,7 @@ public class TelnetPerfomance implements TelnetCommandHolder
 				else if(args[0].equals("dump") || args[0].equals("d"))
 					try
 					{
-						new File("stats").mkdir();
-						FileUtils.writeStringToFile(new File("stats/RunnableStats-" + new SimpleDateFormat("MMddHHmmss").format(System.currentTimeMillis()) + ".txt"), RunnableStatsManager.getInstance().getStats().toString());
+						RunnableStatsManager.getInstance().dump(new File(Config.RUNNABLE_STATS_DUMP_DIR), Config.RUNNABLE_STATS_DUMP_KEEP);
 						sb.append("Runnable stats saved.\n");
 					}
 					catch(IOException e)
@@ -69,6 +74,46 @@ public class TelnetPerfomance implements TelnetCommandHolder
 
 		});
 
+		_commands.add(new TelnetCommand("latency", "lat"){
+			@Override
+			public String getUsage()
+			{
+				return "latency [tasks|packets] [count]";
+			}
+
+			@Override
+			public String handle(String[] args)
+			{
+				if(!Config.ENABLE_RUNNABLE_STATS)
+					return "Runnable stats disabled.\n";
+
+				boolean packets = false;
+				int limit = 20;
+				if(args.length > 0 && !args[0].isEmpty())
+				{
+					if(args[0].equals("packets") || args[0].equals("p"))
+						packets = true;
+					else if(!args[0].equals("tasks") && !args[0].equals("t"))
+						return null;
+				}
+				if(args.length > 1)
+					try
+					{
+						limit = Integer.parseInt(args[1]);
+					}
+					catch(NumberFormatException e)
+					{
+						return null;
+					}
+
+				StringBuilder sb = new StringBuilder();
+				sb.append(packets ? "Packets" : "Tasks").append(" latency, microseconds:\n");
+				sb.append(RunnableStatsManager.getInstance().getSummary(packets, limit));
+
+				return sb.toString();
+			}
+		});
+
 		_commands.add(new TelnetCommand("mem", "m"){
 			@Override
 			public String getUsage()
@@ -161,6 +206,31 @@ public class TelnetPerfomance implements TelnetCommandHolder
 				sb.append("getOutgoingPacketsTotal:  ").append(sts.getOutgoingPacketsTotal()).append("\n");
 				sb.append("getMaxBytesPerRead: ..... ").append(sts.getMaxBytesPerRead()).append("\n");
 				sb.append("getMaxBytesPerWrite: .... ").append(sts.getMaxBytesPerWrite()).append("\n");
+				sb.append("getSharedPacketsSerialized: ").append(sts.getSharedPacketsSerialized()).append("\n");
+				sb.append("getSharedPacketsReused: . ").append(sts.getSharedPacketsReused()).append("\n");
+				sb.append("=================================================\n");
+				if(Config.BROADCAST_INTEREST_MANAGEMENT)
+				{
+					for(int ring = 0; ring <= Config.BROADCAST_INTEREST_RINGS.length; ring++)
+					{
+						sb.append("ring ").append(ring);
+						sb.append(ring < Config.BROADCAST_INTEREST_RINGS.length ? " (<= " + Config.BROADCAST_INTEREST_RINGS[ring] + ")" : " (far)");
+						sb.append(" sent: ").append(sts.getInterestSent(ring));
+						sb.append(" deferred: ").append(sts.getInterestDeferred(ring));
+						sb.append(" dropped: ").append(sts.getInterestDropped(ring)).append("\n");
+					}
+					sb.append("=================================================\n");
+				}
+				for(SelectorStats.SelectorLoad load : sts.getSelectorLoads())
+				{
+					sb.append(load.getName()).append(":\n");
+					sb.append("\tconnections: ").append(load.getCurrentConnections());
+					sb.append(" loops: ").append(load.getLoops());
+					sb.append(" keys: ").append(load.getSelectedKeys());
+					sb.append(" wakeups: ").append(load.getWakeups());
+					sb.append(" busy: ").append(load.getBusyTime()).append(" ms");
+					sb.append(" load: ").append(String.format("%.2f", load.getLoad())).append("%\n");
+				}
 				sb.append("=================================================\n");
 
 				return sb.toString();
@@ -182,6 +252,7 @@ public class TelnetPerfomance implements TelnetCommandHolder
 				StringBuilder sb = new StringBuilder();
 
 				sb.append(PathFindBuffers.getStats());
+				sb.append(PathFindGraph.getStats());
 
 				return sb.toString();
 			}
@@ -216,6 +287,11 @@ public class TelnetPerfomance implements TelnetCommandHolder
 
 				sb.append("Players").append("\n");
 				sb.append("     Update: ...................... ").append(GameStats.getUpdatePlayerBase()).append("\n");
+				sb.append(PersistenceService.getInstance().getStats());
+				sb.append("Quest states").append("\n");
+				sb.append("     Changes: ..................... ").append(GameStats.getQuestWritesRequested()).append("\n");
+				sb.append("     Written: ..................... ").append(GameStats.getQuestWritesFlushed()).append("\n");
+				sb.append("     Avoided: ..................... ").append(GameStats.getQuestWritesAvoided()).append("\n");
 
 				double cacheHitCount, cacheMissCount, cacheHitRatio;
 				Cache cache;
@@ -235,6 +311,9 @@ public class TelnetPerfomance implements TelnetCommandHolder
 				sb.append("     getInsertCount: .............. ").append(entityStats.getInsertCount()).append("\n");
 				sb.append("     getUpdateCount: .............. ").append(entityStats.getUpdateCount()).append("\n");
 				sb.append("     getDeleteCount: .............. ").append(entityStats.getDeleteCount()).append("\n");
+				sb.append("     getBatchLoadCount: ........... ").append(entityStats.getBatchLoadCount()).append("\n");
+				sb.append("     getBatchLoadEntityCount: ..... ").append(entityStats.getBatchLoadEntityCount()).append("\n");
+				sb.append("     getBatchLoadMaxSize: ......... ").append(entityStats.getBatchLoadMaxSize()).append("\n");
 				sb.append("Cache").append("\n");
 				sb.append("     getPutCount: ................. ").append(cacheStats.getPutCount()).append("\n");
 				sb.append("     getUpdateCount: .............. ").append(cacheStats.getUpdateCount()).append("\n");
@@ -260,6 +339,9 @@ public class TelnetPerfomance implements TelnetCommandHolder
 				sb.append("     getInsertCount: .............. ").append(entityStats.getInsertCount()).append("\n");
 				sb.append("     getUpdateCount: .............. ").append(entityStats.getUpdateCount()).append("\n");
 				sb.append("     getDeleteCount: .............. ").append(entityStats.getDeleteCount()).append("\n");
+				sb.append("     getBatchLoadCount: ........... ").append(entityStats.getBatchLoadCount()).append("\n");
+				sb.append("     getBatchLoadEntityCount: ..... ").append(entityStats.getBatchLoadEntityCount()).append("\n");
+				sb.append("     getBatchLoadMaxSize: ......... ").append(entityStats.getBatchLoadMaxSize()).append("\n");
 				sb.append("Cache").append("\n");
 				sb.append("     getPutCount: ................. ").append(cacheStats.getPutCount()).append("\n");
 				sb.append("     getUpdateCount: .............. ").append(cacheStats.getUpdateCount()).append("\n");
@@ -327,6 +409,100 @@ public class TelnetPerfomance implements TelnetCommandHolder
 			}
 
 		});
+		_commands.add(new TelnetCommand("movestats", "ms"){
+
+			@Override
+			public String getUsage()
+			{
+				return "movestats";
+			}
+
+			@Override
+			public String handle(String[] args)
+			{
+				StringBuilder sb = new StringBuilder();
+
+				for(int i = 0; i < Config.MOVE_TASK_MANAGER_COUNT; i++)
+				{
+					sb.append("MoveTaskManager #").append(i + 1).append("\n");
+					sb.append("=================================================\n");
+					sb.append(MoveTaskManager.getInstance(i).getStats());
+					sb.append("=================================================\n");
+				}
+
+				return sb.toString();
+			}
+
+		});
+		_commands.add(new TelnetCommand("replstats", "rps"){
+
+			@Override
+			public String getUsage()
+			{
+				return "replstats";
+			}
+
+			@Override
+			public String handle(String[] args)
+			{
+				StringBuilder sb = new StringBuilder();
+
+				for(int i = 0; i < Config.REPLICATION_MANAGER_COUNT; i++)
+				{
+					sb.append("ReplicationManager #").append(i + 1).append("\n");
+					sb.append("=================================================\n");
+					sb.append(ReplicationManager.getInstance(i).getStats());
+					sb.append("=================================================\n");
+				}
+
+				return sb.toString();
+			}
+
+		});
+		_commands.add(new TelnetCommand("restorestats", "rs"){
+
+			@Override
+			public String getUsage()
+			{
+				return "restorestats";
+			}
+
+			@Override
+			public String handle(String[] args)
+			{
+				StringBuilder sb = new StringBuilder();
+
+				sb.append("Player restore\n");
+				sb.append("=================================================\n");
+				sb.append(RestorePipeline.getStats());
+				sb.append("=================================================\n");
+
+				return sb.toString();
+			}
+
+		});
+		_commands.add(new TelnetCommand("storestats", "ss"){
+
+			@Override
+			public String getUsage()
+			{
+				return "storestats";
+			}
+
+			@Override
+			public String handle(String[] args)
+			{
+				StringBuilder sb = new StringBuilder();
+
+				sb.append("Private stores\n");
+				sb.append("=================================================\n");
+				sb.append(PrivateStoreIndex.getInstance().getStats());
+				sb.append("=================================================\n");
+
+				return sb.toString();
+			}
+
+		});
 	}
 
 	@Override
@@ -0,0 +1,419 @@
+package org.mmocore.gameserver.scripts;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.mmocore.commons.compiler.Compiler;
+import org.mmocore.commons.compiler.MemoryByteCode;
+import org.mmocore.commons.compiler.MemoryClassLoader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Кэш скомпилированных скриптов на диске.<BR>
+ * Для каждого исходника хранится хэш содержимого и список полученных из него классов.
+ * Неизмененные исходники не компилируются, их классы загружаются из кэша. Измененные исходники,
+ * а также исходники, упоминающие классы из измененных, компилируются заново, при этом остальные
+ * классы доступны компилятору из каталога кэша.<BR>
+ * При изменении classpath сервера кэш сбрасывается целиком.
+ */
+class ScriptCache
+{
+	private static final Logger _log = LoggerFactory.getLogger(ScriptCache.class);
+
+	private static final String INDEX_FILE = "index.properties";
+	private static final String CLASSES_DIR = "classes";
+	private static final String ENV_KEY = "env";
+	private static final String HASH_PREFIX = "hash.";
+	private static final String CLASSES_PREFIX = "classes.";
+	private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_$][A-Za-z_$0-9]*");
+
+	private final File _sourceRoot;
+	private final File _classesDir;
+	private final File _indexFile;
+
+	// статистика последней загрузки
+	private int _cached;
+	private int _compiled;
+	private long _compileTime;
+
+	ScriptCache(File sourceRoot, File cacheDir)
+	{
+		_sourceRoot = sourceRoot;
+		_classesDir = new File(cacheDir, CLASSES_DIR);
+		_indexFile = new File(cacheDir, INDEX_FILE);
+	}
+
+	/**
+	 * Загружает скрипты, компилируя только измененные.
+	 * @return загрузчик со всеми классами скриптов или null, если компиляция не удалась
+	 */
+	MemoryClassLoader load(Collection<File> files)
+	{
+		Properties index = loadIndex();
+		String env = getEnvironmentHash();
+		if(!env.equals(index.getProperty(ENV_KEY)))
+		{
+			index.clear();
+			FileUtils.deleteQuietly(_classesDir);
+		}
+
+		Map<String, File> sources = new HashMap<String, File>(files.size());
+		Map<String, String> hashes = new HashMap<String, String>(files.size());
+		Set<String> changed = new HashSet<String>();
+		for(File file : files)
+		{
+			String name = getRelativeName(file);
+			String hash = hash(file);
+			sources.put(name, file);
+			hashes.put(name, hash);
+			if(hash == null || !hash.equals(index.getProperty(HASH_PREFIX + name)) || !isCached(index, name))
+				changed.add(name);
+		}
+
+		// удаленные исходники
+		for(String key : index.stringPropertyNames())
+			if(key.startsWith(HASH_PREFIX) && !sources.containsKey(key.substring(HASH_PREFIX.length())))
+				changed.add(key.substring(HASH_PREFIX.length()));
+
+		addDependents(index, sources, changed);
+
+		// устаревшие классы не должны быть видны компилятору
+		for(String name : changed)
+		{
+			for(String className : getClassNames(index, name))
+				getClassFile(className).delete();
+			index.remove(HASH_PREFIX + name);
+			index.remove(CLASSES_PREFIX + name);
+		}
+
+		List<File> compile = new ArrayList<File>(changed.size());
+		for(String name : changed)
+			if(sources.containsKey(name))
+				compile.add(sources.get(name));
+
+		Compiler compiler = new Compiler();
+		MemoryClassLoader classLoader = compiler.getClassLoader();
+
+		_compiled = compile.size();
+		_compileTime = 0;
+		if(!compile.isEmpty())
+		{
+			long started = System.currentTimeMillis();
+			boolean success = compiler.compile(_classesDir.isDirectory() ? _classesDir : null, compile);
+			_compileTime = System.currentTimeMillis() - started;
+			if(!success)
+				return null;
+
+			Map<String, List<String>> produced = new HashMap<String, List<String>>();
+			for(String className : classLoader.getLoadedClasses())
+			{
+				MemoryByteCode mbc = classLoader.getClass(className);
+				String name = getSourceName(mbc);
+				if(name == null || !hashes.containsKey(name))
+					continue;
+				List<String> list = produced.get(name);
+				if(list == null)
+					produced.put(name, list = new ArrayList<String>());
+				list.add(className);
+				writeClass(className, mbc.getBytes());
+			}
+
+			for(File file : compile)
+			{
+				String name = getRelativeName(file);
+				List<String> list = produced.get(name);
+				if(list == null || hashes.get(name) == null)
+					continue;
+				index.setProperty(HASH_PREFIX + name, hashes.get(name));
+				index.setProperty(CLASSES_PREFIX + name, StringUtils.join(list, ','));
+			}
+		}
+
+		_cached = 0;
+		for(String name : sources.keySet())
+			if(!changed.contains(name))
+				for(String className : getClassNames(index, name))
+				{
+					byte[] bytes = readClass(className);
+					if(bytes == null)
+						return null;
+					classLoader.addClass(new MemoryByteCode(className, bytes));
+					_cached++;
+				}
+
+		index.setProperty(ENV_KEY, env);
+		storeIndex(index);
+
+		return classLoader;
+	}
+
+	/**
+	 * @return количество классов, загруженных из кэша при последней загрузке
+	 */
+	int getCachedCount()
+	{
+		return _cached;
+	}
+
+	/**
+	 * @return количество исходников, скомпилированных при последней загрузке
+	 */
+	int getCompiledCount()
+	{
+		return _compiled;
+	}
+
+	/**
+	 * @return время компиляции при последней загрузке, мс
+	 */
+	long getCompileTime()
+	{
+		return _compileTime;
+	}
+
+	/**
+	 * Исходники, в которых встречаются простые имена классов из измененных исходников, тоже считаются измененными.
+	 */
+	private void addDependents(Properties index, Map<String, File> sources, Set<String> changed)
+	{
+		if(changed.isEmpty() || changed.size() == sources.size())
+			return;
+
+		Map<String, Set<String>> identifiers = new HashMap<String, Set<String>>();
+		Set<String> names = new HashSet<String>();
+		List<String> queue = new ArrayList<String>(changed);
+		while(!queue.isEmpty())
+		{
+			names.clear();
+			for(String name : queue)
+				names.addAll(getSimpleNames(index, name));
+			queue.clear();
+
+			for(Map.Entry<String, File> e : sources.entrySet())
+			{
+				if(changed.contains(e.getKey()))
+					continue;
+
+				Set<String> ids = identifiers.get(e.getKey());
+				if(ids == null)
+					identifiers.put(e.getKey(), ids = readIdentifiers(e.getValue()));
+
+				for(String id : names)
+					if(ids.contains(id))
+					{
+						changed.add(e.getKey());
+						queue.add(e.getKey());
+						break;
+					}
+			}
+		}
+	}
+
+	private Set<String> getSimpleNames(Properties index, String name)
+	{
+		Set<String> names = new HashSet<String>();
+		names.add(StringUtils.substringBefore(new File(name).getName(), "."));
+		for(String className : getClassNames(index, name))
+		{
+			String simpleName = className.substring(className.lastIndexOf('.') + 1);
+			names.add(StringUtils.substringBefore(simpleName, "$"));
+		}
+		return names;
+	}
+
+	private static Set<String> readIdentifiers(File file)
+	{
+		Set<String> ids = new HashSet<String>();
+		try
+		{
+			Matcher m = IDENTIFIER.matcher(FileUtils.readFileToString(file));
+			while(m.find())
+				ids.add(m.group());
+		}
+		catch(IOException e)
+		{
+			_log.error("ScriptCache: can't read " + file, e);
+		}
+		return ids;
+	}
+
+	private boolean isCached(Properties index, String name)
+	{
+		String[] classNames = getClassNames(index, name);
+		if(classNames.length == 0)
+			return false;
+		for(String className : classNames)
+			if(!getClassFile(className).isFile())
+				return false;
+		return true;
+	}
+
+	private static String[] getClassNames(Properties index, String name)
+	{
+		String value = index.getProperty(CLASSES_PREFIX + name);
+		return value == null ? new String[0] : StringUtils.split(value, ',');
+	}
+
+	private String getSourceName(MemoryByteCode mbc)
+	{
+		if(mbc.getSourceName() != null)
+			return getRelativeName(new File(mbc.getSourceName()));
+
+		// компилятор не сообщил исходник, считаем, что он назван по внешнему классу
+		String className = StringUtils.substringBefore(mbc.getName(), "$");
+		return className.replace('.', '/') + ".java";
+	}
+
+	private String getRelativeName(File file)
+	{
+		try
+		{
+			String root = _sourceRoot.getCanonicalPath();
+			String path = file.getCanonicalPath();
+			if(path.startsWith(root))
+				path = path.substring(root.length() + 1);
+			return path.replace(File.separatorChar, '/');
+		}
+		catch(IOException e)
+		{
+			return file.getPath().replace(File.separatorChar, '/');
+		}
+	}
+
+	private File getClassFile(String className)
+	{
+		return new File(_classesDir, className.replace('.', File.separatorChar) + ".class");
+	}
+
+	private void writeClass(String className, byte[] bytes)
+	{
+		try
+		{
+			FileUtils.writeByteArrayToFile(getClassFile(className), bytes);
+		}
+		catch(IOException e)
+		{
+			_log.error("ScriptCache: can't write class " + className, e);
+		}
+	}
+
+	private byte[] readClass(String className)
+	{
+		try
+		{
+			return FileUtils.readFileToByteArray(getClassFile(className));
+		}
+		catch(IOException e)
+		{
+			_log.error("ScriptCache: can't read class " + className, e);
+			return null;
+		}
+	}
+
+	private Properties loadIndex()
+	{
+		Properties index = new Properties();
+		if(!_indexFile.isFile())
+			return index;
+
+		InputStream is = null;
+		try
+		{
+			is = new FileInputStream(_indexFile);
+			index.load(is);
+		}
+		catch(IOException e)
+		{
+			_log.error("ScriptCache: can't read index " + _indexFile, e);
+			index.clear();
+		}
+		finally
+		{
+			IOUtils.closeQuietly(is);
+		}
+		return index;
+	}
+
+	private void storeIndex(Properties index)
+	{
+		OutputStream os = null;
+		try
+		{
+			_indexFile.getParentFile().mkdirs();
+			os = new FileOutputStream(_indexFile);
+			index.store(os, "Compiled scripts cache");
+		}
+		catch(IOException e)
+		{
+			_log.error("ScriptCache: can't write index " + _indexFile, e);
+		}
+		finally
+		{
+			IOUtils.closeQuietly(os);
+		}
+	}
+
+	/**
+	 * Скрипты зависят от ядра, поэтому любое изменение classpath делает кэш недействительным.
+	 */
+	private static String getEnvironmentHash()
+	{
+		StringBuilder sb = new StringBuilder();
+		sb.append(System.getProperty("java.version"));
+		for(String path : StringUtils.split(System.getProperty("java.class.path", ""), File.pathSeparatorChar))
+		{
+			File file = new File(path);
+			sb.append(';').append(file.getAbsolutePath()).append(':').append(file.length()).append(':').append(file.lastModified());
+		}
+		return hash(sb.toString().getBytes());
+	}
+
+	private static String hash(File file)
+	{
+		try
+		{
+			return hash(FileUtils.readFileToByteArray(file));
+		}
+		catch(IOException e)
+		{
+			_log.error("ScriptCache: can't read " + file, e);
+			return null;
+		}
+	}
+
+	private static String hash(byte[] data)
+	{
+		try
+		{
+			MessageDigest md = MessageDigest.getInstance("MD5");
+			byte[] digest = md.digest(data);
+			StringBuilder sb = new StringBuilder(digest.length * 2);
+			for(byte b : digest)
+				sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			return sb.toString();
+		}
+		catch(Exception e)
+		{
+			throw new Error(e);
+		}
+	}
+}
@@ -65,7 +65,19 @@ public class Scripts
 	{
 		_log.info("Scripts: Loading...");
 
-		List<Class<?>> classes = load(new File(Config.DATAPACK_ROOT, "data/scripts"));
+		File root = new File(Config.DATAPACK_ROOT, "data/scripts");
+		List<Class<?>> classes;
+		if(Config.SCRIPTS_CACHE)
+		{
+			ScriptCache cache = new ScriptCache(root, new File(Config.DATAPACK_ROOT, Config.SCRIPTS_CACHE_DIR));
+			Collection<File> scriptFiles = root.isDirectory() ? FileUtils.listFiles(root, FileFilterUtils.suffixFileFilter(".java"), FileFilterUtils.directoryFileFilter()) : Collections.<File> emptyList();
+			MemoryClassLoader classLoader = scriptFiles.isEmpty() ? null : cache.load(scriptFiles);
+			classes = classLoader == null ? Collections.<Class<?>> emptyList() : getClasses(classLoader);
+			_log.info("Scripts: " + cache.getCachedCount() + " classes from cache, " + cache.getCompiledCount() + " files compiled in " + cache.getCompileTime() + " ms.");
+		}
+		else
+			classes = load(root);
+
 		if(classes.isEmpty())
 		{
 			throw new Error("Failed loading scripts!");
@@ -115,31 +127,41 @@ public class Scripts
 		if(scriptFiles.isEmpty())
 			return Collections.emptyList();
 
-		List<Class<?>> classes = new ArrayList<Class<?>>();
 		Compiler compiler = new Compiler();
 
 		if(compiler.compile(scriptFiles))
+			return getClasses(compiler.getClassLoader());
+
+		return new ArrayList<Class<?>>();
+	}
+
+	/**
+	 * Загрузить все не абстрактные внешние классы из загрузчика
+	 *
+	 * @return список загруженых скриптов, пустой при ошибке
+	 */
+	private List<Class<?>> getClasses(MemoryClassLoader classLoader)
+	{
+		List<Class<?>> classes = new ArrayList<Class<?>>();
+
+		for(String name : classLoader.getLoadedClasses())
 		{
-			MemoryClassLoader classLoader = compiler.getClassLoader();
-			for(String name : classLoader.getLoadedClasses())
+			//Вложенные класс
+			if(name.contains(ClassUtils.INNER_CLASS_SEPARATOR))
+				continue;
+
+			try
 			{
-				//Вложенные класс
-				if(name.contains(ClassUtils.INNER_CLASS_SEPARATOR))
+				Class<?> clazz = classLoader.loadClass(name);
+				if(Modifier.isAbstract(clazz.getModifiers()))
 					continue;
-
-				try
-				{
-					Class<?> clazz = classLoader.loadClass(name);
-					if(Modifier.isAbstract(clazz.getModifiers()))
-						continue;
-					classes.add(clazz);
-				}
-				catch(ClassNotFoundException e)
-				{
-					_log.error("Scripts: Can't load script class: " + name, e);
-					classes.clear();
-					break;
-				}
+				classes.add(clazz);
+			}
+			catch(ClassNotFoundException e)
+			{
+				_log.error("Scripts: Can't load script class: " + name, e);
+				classes.clear();
+				break;
 			}
 		}
 
@@ -1,5 +1,8 @@
 package org.mmocore.gameserver.stats;
 
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.mmocore.commons.lang.ArrayUtils;
 import org.mmocore.gameserver.model.Creature;
 import org.mmocore.gameserver.stats.funcs.Func;
@@ -21,10 +24,17 @@ import org.mmocore.gameserver.stats.funcs.FuncOwner;
 public final class Calculator
 {
 	private Func[] _functions;
+	/** Версия набора функций, меняется при добавлении/удалении */
+	private volatile int _version;
+	private volatile CalcCache _cache;
 
 	private double _base;
 	private double _last;
 
+	/** Статистика кеша, для отладки */
+	private final AtomicLong _hits = new AtomicLong();
+	private final AtomicLong _misses = new AtomicLong();
+
 	public final Stats _stat;
 	public final Creature _character;
 
@@ -50,6 +60,7 @@ public final class Calculator
 	{
 		_functions = ArrayUtils.add(_functions, f);
 		ArrayUtils.eqSort(_functions);
+		_version++;
 	}
 
 	/**
@@ -62,6 +73,7 @@ public final class Calculator
 			_functions = Func.EMPTY_FUNC_ARRAY;
 		else
 			ArrayUtils.eqSort(_functions);
+		_version++;
 	}
 
 	/**
@@ -80,9 +92,59 @@ public final class Calculator
 	 */
 	public void calc(Env env)
 	{
-		Func[] funcs = _functions;
+		CalcCache cache = getCache();
 		_base = env.value;
 
+		Func[] funcs = cache.functions;
+		int i = 0;
+		if(cache.cached > 0)
+		{
+			if(cache.get(env))
+				_hits.incrementAndGet();
+			else
+			{
+				double init = env.value;
+				for(; i < cache.cached; i++)
+					funcs[i].calc(env);
+				cache.set(init, env.value);
+				_misses.incrementAndGet();
+			}
+			i = cache.cached;
+		}
+
+		for(; i < funcs.length; i++)
+		{
+			Func func = funcs[i];
+			if(func.getCondition() == null || func.getCondition().test(env))
+				func.calc(env);
+		}
+
+		if(!cache.overrideLimits)
+			env.value = _stat.validate(env.value);
+
+		if (env.value != _last)
+		{
+			double last = _last; //TODO [G1ta0] найти приминение в StatsChangeRecorder
+			_last = env.value;
+		}
+	}
+
+	/**
+	 * Возвращает актуальный кеш, при изменении набора функций или состояния их владельцев строит новый.
+	 */
+	private CalcCache getCache()
+	{
+		int version = _version;
+		int ownersVersion = _character.getFuncOwnersVersion();
+
+		CalcCache cache = _cache;
+		if(cache != null && cache.version == version && cache.ownersVersion == ownersVersion)
+			return cache;
+
+		Func[] funcs = _functions;
+		Func[] enabled = new Func[funcs.length];
+		int size = 0;
+		int cached = 0;
 		boolean overrideLimits = false;
 		for(Func func : funcs)
 		{
@@ -96,18 +158,15 @@ public final class Calculator
 				if(((FuncOwner) func.owner).overrideLimits())
 					overrideLimits = true;
 			}
-			if(func.getCondition() == null || func.getCondition().test(env))
-				func.calc(env);
-		}
-
-		if(!overrideLimits)
-			env.value = _stat.validate(env.value);
 
-		if (env.value != _last)
-		{
-			double last = _last; //TODO [G1ta0] найти приминение в StatsChangeRecorder
-			_last = env.value;
+			// кешируется только начало цепочки из безусловных функций, зависящих лишь от входного значения
+			if(size == cached && func.getCondition() == null && func.isValueOnly())
+				cached++;
+			enabled[size++] = func;
 		}
+
+		_cache = cache = new CalcCache(version, ownersVersion, size == enabled.length ? enabled : Arrays.copyOf(enabled, size), cached, overrideLimits);
+		return cache;
 	}
 
 	/**
@@ -127,4 +186,65 @@ public final class Calculator
 	{
 		return _last;
 	}
+
+	public long getCacheHits()
+	{
+		return _hits.get();
+	}
+
+	public long getCacheMisses()
+	{
+		return _misses.get();
+	}
+
+	/**
+	 * Включенные функции калькулятора на момент построения.
+	 */
+	private static final class CalcCache
+	{
+		final int version;
+		final int ownersVersion;
+		final Func[] functions;
+		/** количество функций с начала массива, результат которых кешируется */
+		final int cached;
+		final boolean overrideLimits;
+		/** входное значение и результат кешируемых функций, нечетный _seq - идет запись */
+		private volatile int _seq;
+		private volatile double _input = Double.NaN;
+		private volatile double _result;
+
+		CalcCache(int version, int ownersVersion, Func[] functions, int cached, boolean overrideLimits)
+		{
+			this.version = version;
+			this.ownersVersion = ownersVersion;
+			this.functions = functions;
+			this.cached = cached;
+			this.overrideLimits = overrideLimits;
+		}
+
+		/**
+		 * Подставить результат кешируемых функций, если он посчитан для того же входного значения.
+		 * @return false если результата нет или он перезаписывается
+		 */
+		boolean get(Env env)
+		{
+			int seq = _seq;
+			if((seq & 1) != 0)
+				return false;
+			double input = _input;
+			double result = _result;
+			if(seq != _seq || input != env.value)
+				return false;
+			env.value = result;
+			return true;
+		}
+
+		synchronized void set(double input, double result)
+		{
+			_seq++;
+			_input = input;
+			_result = result;
+			_seq++;
+		}
+	}
 }
\ No newline at end of file
@@ -71,6 +71,14 @@ public abstract class Func implements Comparable<Func>
 
 	public abstract void calc(Env env);
 
+	/**
+	 * @return true, если результат функции зависит только от входного значения, и его можно кешировать
+	 */
+	public boolean isValueOnly()
+	{
+		return false;
+	}
+
 	@Override
 	public int compareTo(Func f) throws NullPointerException
 	{
@@ -15,4 +15,10 @@ public class FuncSub extends Func
 	{
 		env.value -= value;
 	}
+
+	@Override
+	public boolean isValueOnly()
+	{
+		return true;
+	}
 }
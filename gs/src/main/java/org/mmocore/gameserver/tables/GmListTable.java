@@ -14,19 +14,14 @@ public class GmListTable
 {
 	public static List<Player> getAllGMs()
 	{
-		List<Player> gmList = new ArrayList<Player>();
-		for(Player player : GameObjectsStorage.getPlayers())
-			if(player.isGM())
-				gmList.add(player);
-
-		return gmList;
+		return new ArrayList<Player>(GameObjectsStorage.getGMs());
 	}
 
 	public static List<Player> getAllVisibleGMs()
 	{
 		List<Player> gmList = new ArrayList<Player>();
-		for(Player player : GameObjectsStorage.getPlayers())
-			if(player.isGM() && !player.isInvisible())
+		for(Player player : GameObjectsStorage.getGMs())
+			if(!player.isInvisible())
 				gmList.add(player);
 
 		return gmList;
@@ -0,0 +1,211 @@
+package org.mmocore.gameserver.taskmanager;
+
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.mmocore.commons.util.Rnd;
+import org.mmocore.gameserver.Config;
+import org.mmocore.gameserver.ThreadPoolManager;
+import org.mmocore.gameserver.model.Creature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Менеджер задач передвижения. Вместо отдельной задачи в общем планировщике на каждый шаг движения
+ * все движущиеся объекты продвигаются пачкой раз в тик. Объект всегда обслуживается одним и тем же менеджером,
+ * менеджер выбирается по objectId.
+ */
+public class MoveTaskManager implements Runnable
+{
+	private static final Logger _log = LoggerFactory.getLogger(MoveTaskManager.class);
+
+	private final static MoveTaskManager[] _instances = new MoveTaskManager[Config.MOVE_TASK_MANAGER_COUNT];
+	static
+	{
+		for(int i = 0; i < _instances.length; i++)
+			_instances[i] = new MoveTaskManager();
+	}
+
+	public final static MoveTaskManager getInstance(Creature cha)
+	{
+		return _instances[cha.getObjectId() & (_instances.length - 1)];
+	}
+
+	public final static MoveTaskManager getInstance(int num)
+	{
+		return _instances[num];
+	}
+
+	/** новые задачи, добавляются из любых потоков */
+	private final Queue<MoveFuture> _pending = new ConcurrentLinkedQueue<MoveFuture>();
+	/** задачи, ожидающие выполнения, изменяются только в потоке тика */
+	private MoveFuture[] _tasks = new MoveFuture[256];
+	private int _size;
+	private final AtomicBoolean isRunning = new AtomicBoolean();
+
+	//статистика
+	private long _ticks;
+	private long _totalTime;
+	private long _maxTime;
+	private long _lastTime;
+	private long _totalExecuted;
+	private int _lastExecuted;
+	private int _maxExecuted;
+
+	private MoveTaskManager()
+	{
+		ThreadPoolManager.getInstance().scheduleAtFixedRate(this, Rnd.get(Config.MOVE_TASK_MANAGER_TICK), Config.MOVE_TASK_MANAGER_TICK);
+	}
+
+	/**
+	 * Запланировать шаг движения.
+	 * @param r задача для выполнения
+	 * @param delay задержка в миллисекундах, задача выполнится в первом тике после ее истечения
+	 * @return управляющий объект для отмены задачи
+	 */
+	public Future<?> schedule(Runnable r, long delay)
+	{
+		MoveFuture f = new MoveFuture(r, System.currentTimeMillis() + delay);
+		_pending.add(f);
+		return f;
+	}
+
+	@Override
+	public void run()
+	{
+		if(!isRunning.compareAndSet(false, true))
+		{
+			_log.warn("Slow running queue, managed by " + this + ", queue size : " + _size + "!");
+			return;
+		}
+
+		try
+		{
+			long started = System.nanoTime();
+			long now = System.currentTimeMillis();
+
+			MoveFuture f;
+			while((f = _pending.poll()) != null)
+			{
+				if(_size == _tasks.length)
+					_tasks = Arrays.copyOf(_tasks, _size * 2);
+				_tasks[_size++] = f;
+			}
+
+			// задачи, добавленные во время выполнения, попадут в следующий тик
+			int executed = 0;
+			int size = 0;
+			for(int i = 0; i < _size; i++)
+			{
+				f = _tasks[i];
+				_tasks[i] = null;
+				if(f.isDone())
+					continue;
+				if(f.time <= now)
+				{
+					f.run();
+					executed++;
+					continue;
+				}
+				_tasks[size++] = f;
+			}
+			_size = size;
+
+			long time = System.nanoTime() - started;
+			_ticks++;
+			_totalTime += time;
+			_lastTime = time;
+			if(time > _maxTime)
+				_maxTime = time;
+			_totalExecuted += executed;
+			_lastExecuted = executed;
+			if(executed > _maxExecuted)
+				_maxExecuted = executed;
+		}
+		finally
+		{
+			isRunning.set(false);
+		}
+	}
+
+	public CharSequence getStats()
+	{
+		StringBuilder list = new StringBuilder();
+
+		long ticks = _ticks;
+		list.append("Tick: ............ ").append(Config.MOVE_TASK_MANAGER_TICK).append(" ms\n");
+		list.append("Scheduled: ....... ").append(_size + _pending.size()).append("\n");
+		list.append("Ticks: ........... ").append(ticks).append("\n");
+		list.append("Moves, total: .... ").append(_totalExecuted).append("\n");
+		list.append("Moves, avg/max: .. ").append(ticks > 0 ? _totalExecuted / ticks : 0).append(" / ").append(_maxExecuted).append("\n");
+		list.append("Moves, last: ..... ").append(_lastExecuted).append("\n");
+		list.append("Time, avg (ms): .. ").append(String.format("%1.3f", ticks > 0 ? _totalTime / 1000000. / ticks : 0.)).append("\n");
+		list.append("Time, max (ms): .. ").append(String.format("%1.3f", _maxTime / 1000000.)).append("\n");
+		list.append("Time, last (ms): . ").append(String.format("%1.3f", _lastTime / 1000000.)).append("\n");
+
+		return list;
+	}
+
+	private static class MoveFuture implements Future<Object>
+	{
+		private final Runnable r;
+		private final long time;
+		private volatile boolean isCancelled;
+		private boolean isDone;
+
+		public MoveFuture(Runnable r, long time)
+		{
+			this.r = r;
+			this.time = time;
+		}
+
+		public void run()
+		{
+			isDone = true;
+			try
+			{
+				r.run();
+			}
+			catch(Exception e)
+			{
+				_log.error("MoveFuture.run():" + e, e);
+			}
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning)
+		{
+			return isCancelled = true;
+		}
+
+		@Override
+		public boolean isCancelled()
+		{
+			return isCancelled;
+		}
+
+		@Override
+		public boolean isDone()
+		{
+			return isCancelled || isDone;
+		}
+
+		@Override
+		public Object get() throws InterruptedException, ExecutionException
+		{
+			return null;
+		}
+
+		@Override
+		public Object get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException
+		{
+			return null;
+		}
+	}
+}
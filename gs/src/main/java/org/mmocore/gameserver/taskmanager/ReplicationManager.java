@@ -0,0 +1,237 @@
+package org.mmocore.gameserver.taskmanager;
+
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.mmocore.commons.util.Rnd;
+import org.mmocore.gameserver.Config;
+import org.mmocore.gameserver.ThreadPoolManager;
+import org.mmocore.gameserver.model.Player;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Менеджер отложенной рассылки состояния игроков. Вместо отправки пакетов при каждом изменении
+ * у игрока помечаются измененные части состояния, а раз в тик по каждой помеченной части отправляется одно
+ * объединенное обновление всем получателям. Повторные изменения до отправки не порождают новых пакетов.<BR>
+ * Каждая часть отправляется не чаще своего интервала, интервал округляется вверх до целого числа тиков.
+ * Игрок всегда обслуживается одним и тем же менеджером, менеджер выбирается по objectId.
+ */
+public class ReplicationManager implements Runnable
+{
+	private static final Logger _log = LoggerFactory.getLogger(ReplicationManager.class);
+
+	/** StatusUpdate себе, PartySmallWindowUpdate группе, информация для дуэли и олимпиады */
+	public static final int STATUS = 0;
+	/** UserInfo себе */
+	public static final int USER_INFO = 1;
+	/** CharInfo окружающим */
+	public static final int CHAR_INFO = 2;
+	/** AbnormalStatusUpdate себе, PartySpelled группе, ExOlympiadSpelledInfo команде */
+	public static final int EFFECT_ICONS = 3;
+
+	private static final int KINDS = 4;
+	private static final String[] KIND_NAMES = { "StatusUpdate", "UserInfo", "CharInfo", "EffectIcons" };
+	/** игрок находится в очереди менеджера */
+	private static final int QUEUED = 1 << 31;
+
+	private final static ReplicationManager[] _instances = new ReplicationManager[Config.REPLICATION_MANAGER_COUNT];
+	static
+	{
+		for(int i = 0; i < _instances.length; i++)
+			_instances[i] = new ReplicationManager();
+	}
+
+	public final static ReplicationManager getInstance(Player player)
+	{
+		return _instances[player.getObjectId() & (_instances.length - 1)];
+	}
+
+	public final static ReplicationManager getInstance(int num)
+	{
+		return _instances[num];
+	}
+
+	/**
+	 * @return интервал отправки части состояния в миллисекундах, 0 - отправлять сразу
+	 */
+	public static long getInterval(int kind)
+	{
+		switch(kind)
+		{
+			case STATUS:
+				return Config.STATUS_UPDATE_INTERVAL;
+			case CHAR_INFO:
+				return Config.BROADCAST_CHAR_INFO_INTERVAL;
+			default:
+				return Config.USER_INFO_INTERVAL;
+		}
+	}
+
+	/** игроки, впервые помеченные с прошлого тика, добавляются из любых потоков */
+	private final Queue<Player> _pending = new ConcurrentLinkedQueue<Player>();
+	/** игроки с неотправленными изменениями, изменяются только в потоке тика */
+	private Player[] _players = new Player[256];
+	private int _size;
+	private final AtomicBoolean isRunning = new AtomicBoolean();
+	/** через сколько тиков отправляется каждая часть */
+	private final int[] _periods = new int[KINDS];
+
+	//статистика
+	private long _ticks;
+	private long _totalTime;
+	private long _maxTime;
+	private long _lastTime;
+	private final long[] _sent = new long[KINDS];
+	private final AtomicLongArray _suppressed = new AtomicLongArray(KINDS);
+
+	private ReplicationManager()
+	{
+		for(int kind = 0; kind < KINDS; kind++)
+			_periods[kind] = (int) Math.max(1, (getInterval(kind) + Config.REPLICATION_MANAGER_TICK - 1) / Config.REPLICATION_MANAGER_TICK);
+		ThreadPoolManager.getInstance().scheduleAtFixedRate(this, Rnd.get(Config.REPLICATION_MANAGER_TICK), Config.REPLICATION_MANAGER_TICK);
+	}
+
+	/**
+	 * Пометить часть состояния игрока как измененную, она будет отправлена в ближайшем подходящем тике.
+	 * @param kind {@link #STATUS}, {@link #USER_INFO}, {@link #CHAR_INFO} или {@link #EFFECT_ICONS}
+	 */
+	public void update(Player player, int kind)
+	{
+		AtomicInteger state = player.getReplicationState();
+		int flag = 1 << kind;
+		for(;;)
+		{
+			int old = state.get();
+			if((old & flag) != 0)
+			{
+				_suppressed.incrementAndGet(kind);
+				return;
+			}
+			if(state.compareAndSet(old, old | flag | QUEUED))
+			{
+				if((old & QUEUED) == 0)
+					_pending.add(player);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Снять пометку, если часть состояния уже отправлена в обход менеджера.
+	 */
+	public static void cancel(Player player, int kind)
+	{
+		AtomicInteger state = player.getReplicationState();
+		int flag = 1 << kind;
+		for(;;)
+		{
+			int old = state.get();
+			if((old & flag) == 0 || state.compareAndSet(old, old & ~flag))
+				return;
+		}
+	}
+
+	@Override
+	public void run()
+	{
+		if(!isRunning.compareAndSet(false, true))
+		{
+			_log.warn("Slow running queue, managed by " + this + ", queue size : " + _size + "!");
+			return;
+		}
+
+		try
+		{
+			long started = System.nanoTime();
+
+			Player player;
+			while((player = _pending.poll()) != null)
+			{
+				if(_size == _players.length)
+					_players = Arrays.copyOf(_players, _size * 2);
+				_players[_size++] = player;
+			}
+
+			int due = 0;
+			for(int kind = 0; kind < KINDS; kind++)
+				if(_ticks % _periods[kind] == 0)
+					due |= 1 << kind;
+
+			int size = 0;
+			for(int i = 0; i < _size; i++)
+			{
+				player = _players[i];
+				_players[i] = null;
+
+				AtomicInteger state = player.getReplicationState();
+				int flags, rest;
+				for(;;)
+				{
+					int old = state.get();
+					flags = old & due;
+					rest = old & ~due & ~QUEUED;
+					// после снятия QUEUED игрок снова попадет в очередь при следующем изменении
+					if(state.compareAndSet(old, rest == 0 ? 0 : rest | QUEUED))
+						break;
+				}
+
+				if(flags != 0)
+				{
+					for(int kind = 0; kind < KINDS; kind++)
+						if((flags & 1 << kind) != 0)
+							_sent[kind]++;
+					try
+					{
+						player.flushReplication(flags);
+					}
+					catch(Exception e)
+					{
+						_log.error("ReplicationManager.run(): " + e, e);
+					}
+				}
+
+				if(rest != 0)
+					_players[size++] = player;
+			}
+			_size = size;
+
+			long time = System.nanoTime() - started;
+			_ticks++;
+			_totalTime += time;
+			_lastTime = time;
+			if(time > _maxTime)
+				_maxTime = time;
+		}
+		finally
+		{
+			isRunning.set(false);
+		}
+	}
+
+	public CharSequence getStats()
+	{
+		StringBuilder list = new StringBuilder();
+
+		long ticks = _ticks;
+		list.append("Tick: ............ ").append(Config.REPLICATION_MANAGER_TICK).append(" ms\n");
+		list.append("Scheduled: ....... ").append(_size + _pending.size()).append("\n");
+		list.append("Ticks: ........... ").append(ticks).append("\n");
+		list.append("Time, avg (ms): .. ").append(String.format("%1.3f", ticks > 0 ? _totalTime / 1000000. / ticks : 0.)).append("\n");
+		list.append("Time, max (ms): .. ").append(String.format("%1.3f", _maxTime / 1000000.)).append("\n");
+		list.append("Time, last (ms): . ").append(String.format("%1.3f", _lastTime / 1000000.)).append("\n");
+		list.append(String.format("%-14s %8s %12s %12s %8s", "Update", "interval", "sent", "suppressed", "ratio")).append("\n");
+		for(int kind = 0; kind < KINDS; kind++)
+		{
+			long sent = _sent[kind];
+			long suppressed = _suppressed.get(kind);
+			list.append(String.format("%-14s %8d %12d %12d %7.1f%%", KIND_NAMES[kind], getInterval(kind) == 0 ? 0 : _periods[kind] * Config.REPLICATION_MANAGER_TICK, sent, suppressed, sent + suppressed > 0 ? suppressed * 100. / (sent + suppressed) : 0.)).append("\n");
+		}
+
+		return list;
+	}
+}
@@ -0,0 +1,100 @@
+package org.mmocore.gameserver.templates.npc;
+
+import org.mmocore.commons.collections.MultiValueSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Параметры AI, используемые базовыми AI, разобранные из aiParams в типизированные поля.<BR>
+ * Для шаблона разбираются один раз при загрузке, ошибки в значениях выводятся в лог при загрузке датапака,
+ * вместо значения с ошибкой используется значение по умолчанию. Для NPC с собственными параметрами
+ * (например, заданными в спавне) разбираются один раз при первом обращении, см. {@link org.mmocore.gameserver.model.instances.NpcInstance#getTypedAIParams()}.<BR>
+ * Значение -1 означает, что параметр не задан и AI использует свое значение по умолчанию.
+ */
+public final class NpcAIParams
+{
+	private static final Logger _log = LoggerFactory.getLogger(NpcAIParams.class);
+
+	/** шанс агрессии, -1 - по типу AI */
+	public final int selfAggressive;
+	public final boolean canSeeInSilentMove;
+	public final boolean noRandomAnimation;
+	public final boolean noRandomWalk;
+	public final boolean isImmobilized;
+	public final long globalAggro;
+	/** шанс выбора случайной цели из списка агрессии */
+	public final int madnessChance;
+	public final int transformOnDead;
+	public final int transformOnUnderAttack;
+	/** шанс трансформации, -1 - по умолчанию для типа трансформации */
+	public final int transformChance;
+	/** -1 - из конфига по типу NPC */
+	public final int maxPursueRange;
+	public final int factionNotifyInterval;
+	public final boolean globalAI;
+	public final int longRangeGuardRate;
+	public final boolean searchingMaster;
+	public final boolean evilGuard;
+
+	public NpcAIParams(MultiValueSet<String> set, int npcId)
+	{
+		selfAggressive = set.containsKey("SelfAggressive") ? Math.max(0, getInteger(set, "SelfAggressive", 0, npcId)) : -1;
+		canSeeInSilentMove = getBool(set, "canSeeInSilentMove", false, npcId);
+		noRandomAnimation = getBool(set, "noRandomAnimation", false, npcId);
+		noRandomWalk = getBool(set, "noRandomWalk", false, npcId);
+		isImmobilized = getBool(set, "isImmobilized", false, npcId);
+		globalAggro = getLong(set, "globalAggro", 10000L, npcId);
+		madnessChance = getInteger(set, "isMadness", 0, npcId);
+		transformOnDead = getInteger(set, "transformOnDead", 0, npcId);
+		transformOnUnderAttack = getInteger(set, "transformOnUnderAttack", 0, npcId);
+		transformChance = set.containsKey("transformChance") ? Math.max(0, getInteger(set, "transformChance", 0, npcId)) : -1;
+		maxPursueRange = set.containsKey("MaxPursueRange") ? getInteger(set, "MaxPursueRange", -1, npcId) : -1;
+		factionNotifyInterval = getInteger(set, "FactionNotifyInterval", 10000, npcId);
+		globalAI = getBool(set, "GlobalAI", false, npcId);
+		longRangeGuardRate = getInteger(set, "LongRangeGuardRate", 0, npcId);
+		searchingMaster = getBool(set, "searchingMaster", false, npcId);
+		evilGuard = getBool(set, "evilGuard", false, npcId);
+	}
+
+	private static boolean getBool(MultiValueSet<String> set, String name, boolean defaultValue, int npcId)
+	{
+		Object val = set.get(name);
+		if(val instanceof String)
+		{
+			String str = ((String) val).trim();
+			if(str.equalsIgnoreCase("true"))
+				return true;
+			if(str.equalsIgnoreCase("false"))
+				return false;
+			_log.error("NpcAIParams: invalid value of " + name + " for npc " + npcId + ": " + val);
+			return defaultValue;
+		}
+		return set.getBool(name, defaultValue);
+	}
+
+	private static int getInteger(MultiValueSet<String> set, String name, int defaultValue, int npcId)
+	{
+		try
+		{
+			return set.getInteger(name, defaultValue);
+		}
+		catch(NumberFormatException e)
+		{
+			_log.error("NpcAIParams: invalid value of " + name + " for npc " + npcId + ": " + set.get(name));
+			return defaultValue;
+		}
+	}
+
+	private static long getLong(MultiValueSet<String> set, String name, long defaultValue, int npcId)
+	{
+		try
+		{
+			return set.getLong(name, defaultValue);
+		}
+		catch(NumberFormatException e)
+		{
+			_log.error("NpcAIParams: invalid value of " + name + " for npc " + npcId + ": " + set.get(name));
+			return defaultValue;
+		}
+	}
+}
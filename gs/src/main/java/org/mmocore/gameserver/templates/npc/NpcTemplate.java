@@ -63,6 +63,7 @@ public final class NpcTemplate extends CharTemplate
 
 	public final boolean isRaid;
 	private final StatsSet _AIParams;
+	private final NpcAIParams _typedAIParams;
 
 	/** fixed skills*/
 	private int race = 0;
@@ -115,6 +116,7 @@ public final class NpcTemplate extends CharTemplate
 		_soulShotCount = set.getInteger("soulshot_count", 0);
 		_spiritShotCount = set.getInteger("spiritshot_count", 0);
 		_AIParams = (StatsSet) set.getObject("aiParams", StatsSet.EMPTY);
+		_typedAIParams = new NpcAIParams(_AIParams, npcId);
 
 		setType(set.getString("type", null));
 		setAI(set.getString("ai_type", null));
@@ -486,6 +488,14 @@ public final class NpcTemplate extends CharTemplate
 		return _AIParams;
 	}
 
+	/**
+	 * @return параметры AI, разобранные при загрузке шаблона
+	 */
+	public final NpcAIParams getTypedAIParams()
+	{
+		return _typedAIParams;
+	}
+
 	public List<AbsorbInfo> getAbsorbInfo()
 	{
 		return _absorbInfo;
@@ -6,6 +6,9 @@ public class GameStats
 {
 	/* database statistics */
 	private static AtomicLong _updatePlayerBase = new AtomicLong(0L);
+	private static AtomicLong _questWritesRequested = new AtomicLong(0L);
+	private static AtomicLong _questWritesAvoided = new AtomicLong(0L);
+	private static AtomicLong _questWritesFlushed = new AtomicLong(0L);
 
 	/* in-game statistics */
 	private static AtomicLong _playerEnterGameCounter = new AtomicLong(0L);
@@ -20,6 +23,39 @@ public class GameStats
 		return _updatePlayerBase.get();
 	}
 
+	public static void increaseQuestWritesRequested()
+	{
+		_questWritesRequested.incrementAndGet();
+	}
+
+	public static long getQuestWritesRequested()
+	{
+		return _questWritesRequested.get();
+	}
+
+	/**
+	 * Изменение переменной квеста перекрыло еще не записанное изменение
+	 */
+	public static void increaseQuestWritesAvoided()
+	{
+		_questWritesAvoided.incrementAndGet();
+	}
+
+	public static long getQuestWritesAvoided()
+	{
+		return _questWritesAvoided.get();
+	}
+
+	public static void increaseQuestWritesFlushed(int count)
+	{
+		_questWritesFlushed.addAndGet(count);
+	}
+
+	public static long getQuestWritesFlushed()
+	{
+		return _questWritesFlushed.get();
+	}
+
 	public static void incrementPlayerEnterGame()
 	{
 		_playerEnterGameCounter.incrementAndGet();
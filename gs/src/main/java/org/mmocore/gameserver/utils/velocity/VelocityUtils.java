@@ -1,19 +1,24 @@
 package org.mmocore.gameserver.utils.velocity;
 
+import java.io.StringReader;
 import java.io.Writer;
 import java.lang.reflect.Field;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import org.apache.commons.io.output.StringBuilderWriter;
-import org.apache.commons.lang3.StringUtils;
+import org.apache.velocity.Template;
 import org.apache.velocity.VelocityContext;
 import org.apache.velocity.app.Velocity;
+import org.apache.velocity.exception.ParseErrorException;
 import org.apache.velocity.runtime.RuntimeConstants;
+import org.apache.velocity.runtime.RuntimeServices;
+import org.apache.velocity.runtime.RuntimeSingleton;
+import org.apache.velocity.runtime.parser.ParseException;
 import org.apache.velocity.slf4j.Slf4jLogChute;
 import org.mmocore.gameserver.Config;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 /**
  * @author VISTALL
@@ -21,8 +26,6 @@ import org.slf4j.LoggerFactory;
  */
 public class VelocityUtils
 {
-	private static final Logger _log = LoggerFactory.getLogger(VelocityUtils.class);
-
 	public static final Map<String, Object> GLOBAL_VARIABLES = new HashMap<String, Object>();
 
 	public static void init()
@@ -47,6 +50,108 @@ public class VelocityUtils
 			}
 	}
 
+	/**
+	 * Разобранные шаблоны по тексту диалога. Текст включает уже подставленные значения %name%,
+	 * поэтому для диалога с %objectId% хранится по шаблону на каждого NPC, к которому обращаются.
+	 */
+	private static final Map<String, Template> _templates = new LinkedHashMap<String, Template>(16, 0.75f, true)
+	{
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Template> eldest)
+		{
+			return size() > Config.HTM_TEMPLATE_CACHE_SIZE;
+		}
+	};
+
+	/**
+	 * Готовые диалоги, которые зависят только от текста и неизменяемых переменных.
+	 */
+	private static final Map<RenderKey, String> _rendered = new LinkedHashMap<RenderKey, String>(16, 0.75f, true)
+	{
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<RenderKey, String> eldest)
+		{
+			return size() > Config.HTM_TEMPLATE_CACHE_SIZE;
+		}
+	};
+
+	private static class RenderKey
+	{
+		private final String _text;
+		private final Map<String, Object> _variables;
+		private final int _hashCode;
+
+		private RenderKey(String text, Map<String, Object> variables)
+		{
+			_text = text;
+			_variables = variables;
+			_hashCode = text.hashCode() * 31 + variables.hashCode();
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return _hashCode;
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			if(o == this)
+				return true;
+			if(!(o instanceof RenderKey))
+				return false;
+			RenderKey k = (RenderKey) o;
+			return _hashCode == k._hashCode && _text.equals(k._text) && _variables.equals(k._variables);
+		}
+	}
+
+	/**
+	 * @return true, если результат зависит только от текста и значений переменных, но не от состояния объектов
+	 */
+	private static boolean isStatic(Map<String, Object> variables)
+	{
+		for(Object value : variables.values())
+			if(!(value instanceof String || value instanceof Number || value instanceof Boolean || value instanceof Character || value instanceof Enum))
+				return false;
+		return true;
+	}
+
+	private static Template getTemplate(String text)
+	{
+		Template template;
+		synchronized(_templates)
+		{
+			template = _templates.get(text);
+		}
+		if(template != null)
+			return template;
+
+		RuntimeServices rsvc = RuntimeSingleton.getRuntimeServices();
+		template = new Template();
+		template.setRuntimeServices(rsvc);
+		template.setName("");
+		try
+		{
+			template.setData(rsvc.parse(new StringReader(text), ""));
+		}
+		catch(ParseException e)
+		{
+			throw new ParseErrorException(e, "");
+		}
+		template.initDocument();
+
+		synchronized(_templates)
+		{
+			_templates.put(text, template);
+		}
+		return template;
+	}
+
 	/**
 	 * Запускает диалог в Velocity - использует ток указаные переменные
 	 * @param text
@@ -58,14 +163,14 @@ public class VelocityUtils
 		if(variables.isEmpty())
 			return text;
 
+		// без ссылок и директив Velocity выводит текст как есть
+		if(text.indexOf('$') < 0 && text.indexOf('#') < 0)
+			return text;
+
 		VelocityContext velocityContext = new VelocityContext(variables);
 		Writer writer = new StringBuilderWriter(new StringBuilder(text.length() + 32));
 
-		if(!Velocity.evaluate(velocityContext, writer, "", text))
-		{
-			_log.warn("Fail to evaluate: \n" + text);
-			return StringUtils.EMPTY;
-		}
+		getTemplate(text).merge(velocityContext, writer);
 
 		return writer.toString();
 	}
@@ -78,11 +183,33 @@ public class VelocityUtils
 	 */
 	public static String evaluate(String text, Map<String, Object> variables)
 	{
+		RenderKey key = null;
+		// глобальные переменные не меняются после запуска, в ключ не входят
+		if(variables == null || isStatic(variables))
+		{
+			key = new RenderKey(text, variables == null ? Collections.<String, Object> emptyMap() : new HashMap<String, Object>(variables));
+			String result;
+			synchronized(_rendered)
+			{
+				result = _rendered.get(key);
+			}
+			if(result != null)
+				return result;
+		}
+
 		if(variables != null)
 			variables.putAll(GLOBAL_VARIABLES);
 		else
 			variables = GLOBAL_VARIABLES;
 
-		return evaluate0(text, variables);
+		String result = evaluate0(text, variables);
+
+		if(key != null)
+			synchronized(_rendered)
+			{
+				_rendered.put(key, result);
+			}
+
+		return result;
 	}
 }
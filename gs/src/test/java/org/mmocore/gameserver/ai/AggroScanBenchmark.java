@@ -0,0 +1,110 @@
+package org.mmocore.gameserver.ai;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Замер выбора целей для агрессии в толпе: прежний перебор (ближайший из списка и удаление из списка, не более 1000 шагов)
+ * против двоичной кучи {@link AggroScan}.<BR>
+ * Случайные точки в квадрате 4000x4000 вокруг NPC, ни одна цель не проходит проверку, т.е. просматриваются все кандидаты.
+ * Перед замером порядок выдачи проверяется {@link AggroScanCheck}.<BR>
+ * Запуск: ant benchmark, либо напрямую, аргументы - количество повторов и размеры толпы.
+ */
+public class AggroScanBenchmark
+{
+	private static long[] _distances;
+
+	private static final AggroScan _scan = new AggroScan();
+
+	public static void main(String[] args)
+	{
+		int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		int[] crowds = { 50, 200, 500, 1000 };
+		if(args.length > 1)
+		{
+			crowds = new int[args.length - 1];
+			for(int i = 1; i < args.length; i++)
+				crowds[i - 1] = Integer.parseInt(args[i]);
+		}
+
+		System.out.println("java " + System.getProperty("java.version") + ", iterations " + iterations);
+
+		Random rnd = new Random(42);
+		long sink = 0;
+		for(int n : crowds)
+		{
+			_distances = new long[n];
+			for(int i = 0; i < n; i++)
+			{
+				long x = rnd.nextInt(4000) - 2000;
+				long y = rnd.nextInt(4000) - 2000;
+				_distances[i] = x * x + y * y;
+			}
+
+			AggroScanCheck.checkOrder(_scan, _distances);
+
+			// прогрев
+			for(int k = 0; k < iterations; k++)
+				sink += scanList(n) + scanHeap(n);
+
+			long t0 = System.nanoTime();
+			for(int k = 0; k < iterations; k++)
+				sink += scanList(n);
+			long t1 = System.nanoTime();
+			for(int k = 0; k < iterations; k++)
+				sink += scanHeap(n);
+			long t2 = System.nanoTime();
+
+			System.out.println(String.format("n=%-6d list %10.1f us   heap %10.1f us", n, (t1 - t0) / 1000. / iterations, (t2 - t1) / 1000. / iterations));
+		}
+
+		// чтобы результат не был выброшен оптимизатором
+		if(sink == 42)
+			System.out.println();
+	}
+
+	/**
+	 * Прежний перебор: каждый раз ищется ближайший из оставшихся и удаляется из списка.
+	 */
+	private static int scanList(int n)
+	{
+		List<Integer> targets = new ArrayList<Integer>(n);
+		for(int i = 0; i < n; i++)
+			targets.add(i);
+
+		int count = 0;
+		while(!targets.isEmpty())
+		{
+			if(++count > 1000)
+				break;
+
+			Integer nearest = null;
+			long min = Long.MAX_VALUE;
+			for(int i = 0; i < targets.size(); i++)
+			{
+				long d = _distances[targets.get(i)];
+				if(d < min)
+				{
+					min = d;
+					nearest = targets.get(i);
+				}
+			}
+			targets.remove(nearest);
+		}
+		return count;
+	}
+
+	private static int scanHeap(int n)
+	{
+		for(int i = 0; i < n; i++)
+			_scan.add(null, _distances[i]);
+		_scan.heapify();
+
+		int count = 0;
+		while(_scan.nextIndex() >= 0)
+			count++;
+		_scan.finish();
+		return count;
+	}
+}
@@ -0,0 +1,81 @@
+package org.mmocore.gameserver.ai;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Проверка порядка выдачи кандидатов {@link AggroScan}: по неубыванию расстояния, каждый ровно один раз,
+ * в том числе с повторами расстояний, после расширения буферов и при повторном использовании после {@link AggroScan#finish()}.<BR>
+ * Запуск: ant check.
+ */
+public class AggroScanCheck
+{
+	public static void main(String[] args)
+	{
+		Random rnd = new Random(42);
+		AggroScan scan = new AggroScan();
+		int[] sizes = { 0, 1, 2, 3, 7, 64, 65, 200, 1000 };
+		for(int n : sizes)
+		{
+			long[] distances = new long[n];
+			for(int i = 0; i < n; i++)
+			{
+				long x = rnd.nextInt(4000) - 2000;
+				long y = rnd.nextInt(4000) - 2000;
+				distances[i] = x * x + y * y;
+			}
+			checkOrder(scan, distances);
+
+			// много одинаковых расстояний
+			for(int i = 0; i < n; i++)
+				distances[i] = rnd.nextInt(4);
+			checkOrder(scan, distances);
+		}
+
+		// вложенный перебор не должен портить внешний
+		long[] outer = { 5, 1, 4, 2, 3 };
+		for(int i = 0; i < outer.length; i++)
+			scan.add(null, outer[i]);
+		scan.heapify();
+		if(scan.nextIndex() != 1)
+			throw new IllegalStateException("Wrong first index");
+		checkOrder(new AggroScan(), new long[] { 3, 2, 1 });
+		int[] expected = { 3, 4, 2, 0, -1 };
+		for(int i = 0; i < expected.length; i++)
+		{
+			int index = scan.nextIndex();
+			if(index != expected[i])
+				throw new IllegalStateException("Outer scan index " + index + " at " + i + ", expected " + expected[i]);
+		}
+		scan.finish();
+
+		System.out.println("OK");
+	}
+
+	static void checkOrder(AggroScan scan, long[] distances)
+	{
+		int n = distances.length;
+		for(int i = 0; i < n; i++)
+			scan.add(null, distances[i]);
+		scan.heapify();
+
+		long[] sorted = Arrays.copyOf(distances, n);
+		Arrays.sort(sorted);
+		boolean[] seen = new boolean[n];
+		int index;
+		int i = 0;
+		for(; (index = scan.nextIndex()) >= 0; i++)
+		{
+			if(i >= n || index >= n || seen[index])
+				throw new IllegalStateException("Index " + index + " repeated or out of range at " + i + " for n=" + n);
+			seen[index] = true;
+			if(distances[index] != sorted[i])
+				throw new IllegalStateException("Order broken at " + i + " for n=" + n);
+		}
+		if(i != n)
+			throw new IllegalStateException("Returned " + i + " of " + n + " candidates");
+		if(scan.next() != null)
+			throw new IllegalStateException("Candidates after the end for n=" + n);
+		scan.finish();
+	}
+}
@@ -0,0 +1,327 @@
+package org.mmocore.gameserver.geodata;
+
+import static org.mmocore.gameserver.geodata.GeoEngine.EAST;
+import static org.mmocore.gameserver.geodata.GeoEngine.NORTH;
+import static org.mmocore.gameserver.geodata.GeoEngine.SOUTH;
+import static org.mmocore.gameserver.geodata.GeoEngine.WEST;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.mmocore.gameserver.Config;
+import org.mmocore.gameserver.utils.Location;
+
+/**
+ * Сравнение иерархического поиска {@link PathFindGraph} с обычным A* {@link PathFind} на синтетической геодате.<BR>
+ * Геодата одного региона: плоская, кроме участка AREA x AREA клеток, окруженного непроходимой рамкой. Внутри участка
+ * стены с проходами, случайные препятствия и замкнутый карман, в который нельзя попасть снаружи.<BR>
+ * Для случайных пар точек проверяется, что HPA* находит путь везде, где его находит A*, что ни один поиск не находит путь
+ * в карман, что каждый шаг пути HPA* проходим, и что путь после очистки длиннее пути A* не более чем в MAX_RATIO раз или на MAX_DETOUR.<BR>
+ * Запуск: ant check, либо напрямую, аргумент - количество пар точек.
+ */
+public class PathFindGraphCheck
+{
+	/** участок со стенами, в клетках, начинается с блока AREA_OFFSET / 8 */
+	private static final int AREA = 128;
+	private static final int AREA_OFFSET = 64;
+	private static final int CLUSTER_SIZE = 16;
+	private static final double MAX_RATIO = 1.2;
+	/** допустимый крюк на коротких путях: входы стоят в середине проходимых участков границы, до половины кластера на каждом */
+	private static final double MAX_DETOUR = CLUSTER_SIZE * 16;
+
+	private static final boolean[][] open = new boolean[AREA][AREA];
+
+	public static void main(String[] args) throws IOException
+	{
+		int pairs = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+
+		// настройки геодаты по умолчанию, один регион 20_18 с началом мира в (0, 0)
+		Config.GEO_X_FIRST = Config.GEO_X_LAST = 20;
+		Config.GEO_Y_FIRST = Config.GEO_Y_LAST = 18;
+		Config.SHIFT_BY = 12;
+		Config.SHIFT_BY_Z = 11;
+		Config.MAP_MIN_Z = -32768;
+		Config.MAP_MAX_Z = 32767;
+		Config.ALLOW_GEODATA = true;
+		Config.PATHFIND_DIAGONAL = true;
+		Config.PATHFIND_MAP_MUL = 2;
+		Config.PATHFIND_MAX_Z_DIFF = 32;
+		Config.MAX_Z_DIFF = 64;
+		Config.MIN_LAYER_HEIGHT = 64;
+		Config.REGION_EDGE_MAX_Z_DIFF = 128;
+		// без ограничения по времени, чтобы результат не зависел от прогрева
+		Config.PATHFIND_MAX_TIME = Long.MAX_VALUE / 2;
+		// буферы всех размеров, чтобы область A* не зависела от округления размера буфера
+		Config.PATHFIND_BUFFERS = "2x64;2x96;2x128;2x160;2x192;2x224;2x256;2x288;2x320;2x352;2x384";
+		Config.PATHFIND_HIERARCHICAL = true;
+		Config.PATHFIND_BOOST = PathFind.BOOST_NONE;
+		Config.PATH_CLEAN = true;
+		Config.PATHFIND_CLUSTER_SIZE = CLUSTER_SIZE;
+		Config.PATHFIND_HIERARCHICAL_MAX_DISTANCE = 2048;
+		Config.PATHFIND_ROUTE_CACHE_SIZE = 64;
+
+		Random rnd = new Random(42);
+		buildArea(rnd);
+
+		File file = File.createTempFile("pathfind", ".l2j");
+		try
+		{
+			writeGeodata(file);
+			GeoEngine.LoadGeodataFile(20, 18, file);
+			GeoEngine.LoadGeodata(20, 18, 0);
+		}
+		finally
+		{
+			file.delete();
+		}
+		PathFindGraph.load();
+
+		List<String> errors = new ArrayList<String>();
+		int found = 0, hpaOnly = 0, unreachable = 0, outOfArea = 0;
+		double worst = 0., ratioSum = 0.;
+		for(int k = 0; k < pairs; k++)
+		{
+			Location start, end;
+			do
+			{
+				start = randomCell(rnd, k % 10 == 0);
+				end = randomCell(rnd, k % 10 == 5);
+			}
+			while(!PathFindGraph.isHierarchical(start, end));
+
+			PathFind astar = PathFind.search(start, end, false, 0);
+			if(astar == null)
+				throw new IllegalStateException("No A* buffer for " + start + " -> " + end);
+			List<Location> hpa = PathFindGraph.findPath(start, end, false, 0);
+
+			boolean reachable = isReachable(start, end);
+			if(!reachable && (astar.path != null || hpa != null))
+			{
+				errors.add((astar.path != null ? "A*" : "HPA*") + " found path to unreachable point " + start + " -> " + end);
+				continue;
+			}
+			if(astar.path != null && hpa == null)
+			{
+				errors.add("HPA* missed path found by A* " + start + " -> " + end);
+				continue;
+			}
+			if(hpa == null)
+			{
+				if(reachable)
+					outOfArea++;
+				else
+					unreachable++;
+				continue;
+			}
+
+			String broken = checkSteps(start, end, hpa);
+			if(broken != null)
+			{
+				errors.add("HPA* path " + start + " -> " + end + ": " + broken);
+				continue;
+			}
+			// A* не выходит за пределы буфера, а уточнение HPA* ищет только участки между входами
+			if(astar.path == null)
+			{
+				hpaOnly++;
+				continue;
+			}
+
+			found++;
+			double hpaLength = cleanLength(start, end, true);
+			double astarLength = cleanLength(start, end, false);
+			double ratio = hpaLength / astarLength;
+			ratioSum += ratio;
+			worst = Math.max(worst, ratio);
+			if(hpaLength - astarLength > Math.max(astarLength * (MAX_RATIO - 1.), MAX_DETOUR))
+				errors.add(String.format("HPA* path %s -> %s: length %.1f, A* %.1f", start, end, hpaLength / 16., astarLength / 16.));
+		}
+
+		System.out.println(String.format("pairs %d: found %d, only by HPA* %d, unreachable %d, out of search area %d, HPA*/A* length avg %.3f, max %.3f", pairs, found, hpaOnly, unreachable, outOfArea, found > 0 ? ratioSum / found : 0., worst));
+		System.out.println(PathFindGraph.getStats());
+
+		if(!errors.isEmpty())
+		{
+			for(String error : errors)
+				System.out.println("FAIL " + error);
+			throw new IllegalStateException(errors.size() + " path mismatch(es)");
+		}
+		System.out.println("OK");
+	}
+
+	/**
+	 * Рамка, три стены с проходами, случайные препятствия и замкнутый карман 20x20 клеток.
+	 */
+	private static void buildArea(Random rnd)
+	{
+		for(int x = 1; x < AREA - 1; x++)
+			for(int y = 1; y < AREA - 1; y++)
+				open[x][y] = rnd.nextInt(100) >= 8;
+
+		// вертикальные стены с двумя проходами
+		for(int wall : new int[] { 30, 70 })
+			for(int y = 0; y < AREA; y++)
+				open[wall][y] = false;
+		for(int gap = 0; gap < 3; gap++)
+		{
+			open[30][20 + gap] = true;
+			open[30][100 + gap] = true;
+			open[70][60 + gap] = true;
+			open[70][110 + gap] = true;
+		}
+
+		// горизонтальная стена с одним проходом
+		for(int x = 70; x < AREA; x++)
+			open[x][50] = false;
+		for(int gap = 0; gap < 4; gap++)
+			open[100 + gap][50] = true;
+
+		// карман
+		for(int i = 0; i <= 20; i++)
+		{
+			open[90 + i][75] = open[90 + i][95] = false;
+			open[90][75 + i] = open[110][75 + i] = false;
+		}
+	}
+
+	private static Location randomCell(Random rnd, boolean pocket)
+	{
+		int x, y;
+		do
+		{
+			x = pocket ? 91 + rnd.nextInt(19) : rnd.nextInt(AREA);
+			y = pocket ? 76 + rnd.nextInt(19) : rnd.nextInt(AREA);
+		}
+		while(!open[x][y]);
+		return new Location(AREA_OFFSET + x, AREA_OFFSET + y, 0);
+	}
+
+	private static boolean isOpen(int x, int y)
+	{
+		return x >= 0 && x < AREA && y >= 0 && y < AREA && open[x][y];
+	}
+
+	/**
+	 * Эталонная достижимость: заливка по четырем направлениям (диагональные шаги возможны только через открытые соседние клетки).
+	 */
+	private static boolean isReachable(Location start, Location end)
+	{
+		boolean[][] seen = new boolean[AREA][AREA];
+		int[] queue = new int[AREA * AREA];
+		int head = 0, tail = 0;
+		int sx = start.x - AREA_OFFSET, sy = start.y - AREA_OFFSET;
+		seen[sx][sy] = true;
+		queue[tail++] = sx * AREA + sy;
+		while(head < tail)
+		{
+			int c = queue[head++];
+			int x = c / AREA, y = c % AREA;
+			if(x == end.x - AREA_OFFSET && y == end.y - AREA_OFFSET)
+				return true;
+			int[][] steps = { { 1, 0 }, { -1, 0 }, { 0, 1 }, { 0, -1 } };
+			for(int[] step : steps)
+			{
+				int nx = x + step[0], ny = y + step[1];
+				if(isOpen(nx, ny) && !seen[nx][ny])
+				{
+					seen[nx][ny] = true;
+					queue[tail++] = nx * AREA + ny;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return описание первого непроходимого шага пути, null если путь проходим и заканчивается в конечной точке
+	 */
+	private static String checkSteps(Location start, Location end, List<Location> path)
+	{
+		Location prev = start;
+		for(Location next : path)
+		{
+			Location from = new Location(prev.x, prev.y, prev.z).geo2world();
+			Location to = new Location(next.x, next.y, next.z).geo2world();
+			if(!GeoEngine.canMoveToCoord(from.x, from.y, from.z, to.x, to.y, to.z, 0))
+				return "step " + prev + " -> " + next;
+			prev = next;
+		}
+		if(prev.x != end.x || prev.y != end.y)
+			return "ends at " + prev;
+		return null;
+	}
+
+	/**
+	 * Длина пути, который {@link PathFind#findPath(int, int, int, int, int, int, boolean, int)} отдает движению, т.е. после очистки.
+	 */
+	private static double cleanLength(Location start, Location end, boolean hierarchical)
+	{
+		Config.PATHFIND_HIERARCHICAL = hierarchical;
+		Location from = new Location(start.x, start.y, start.z).geo2world();
+		Location to = new Location(end.x, end.y, end.z).geo2world();
+		List<Location> path = PathFind.findPath(from.x, from.y, from.z, to.x, to.y, to.z, false, 0);
+		Config.PATHFIND_HIERARCHICAL = true;
+
+		double length = 0.;
+		for(int i = 1; i < path.size(); i++)
+		{
+			Location prev = path.get(i - 1), next = path.get(i);
+			length += Math.sqrt((double) (next.x - prev.x) * (next.x - prev.x) + (double) (next.y - prev.y) * (next.y - prev.y));
+		}
+		return length;
+	}
+
+	/**
+	 * Файл геодаты региона: плоские блоки высоты 0, участок - сложные блоки с NSWE по соседним открытым клеткам.
+	 */
+	private static void writeGeodata(File file) throws IOException
+	{
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try
+		{
+			for(int bx = 0; bx < 256; bx++)
+				for(int by = 0; by < 256; by++)
+				{
+					int ax = (bx << 3) - AREA_OFFSET, ay = (by << 3) - AREA_OFFSET;
+					if(ax < 0 || ax >= AREA || ay < 0 || ay >= AREA)
+					{
+						out.writeByte(GeoEngine.BLOCKTYPE_FLAT);
+						out.writeShort(0);
+						continue;
+					}
+
+					out.writeByte(GeoEngine.BLOCKTYPE_COMPLEX);
+					for(int cx = 0; cx < 8; cx++)
+						for(int cy = 0; cy < 8; cy++)
+						{
+							int x = ax + cx, y = ay + cy;
+							int nswe = 0;
+							if(isOpen(x, y))
+							{
+								if(isOpen(x + 1, y))
+									nswe |= EAST;
+								if(isOpen(x - 1, y))
+									nswe |= WEST;
+								if(isOpen(x, y + 1))
+									nswe |= SOUTH;
+								if(isOpen(x, y - 1))
+									nswe |= NORTH;
+							}
+							// высота 0, little-endian
+							out.writeByte(nswe);
+							out.writeByte(0);
+						}
+				}
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+}
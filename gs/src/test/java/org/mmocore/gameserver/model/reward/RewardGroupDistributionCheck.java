@@ -0,0 +1,336 @@
+package org.mmocore.gameserver.model.reward;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.mmocore.commons.math.SafeMath;
+import org.mmocore.commons.util.Rnd;
+import org.mmocore.gameserver.Config;
+
+/**
+ * Сравнение распределений результата {@link RewardGroup} с прежним алгоритмом (проход за проходом, выбор вещи перебором),
+ * который приведен здесь же в {@link OldRewardGroup}.<BR>
+ * Для каждого сценария оба варианта бросаются одинаковое число раз на одной и той же группе, сравниваются вероятность пустого
+ * результата, а по каждой вещи - вероятность выпадения, среднее и дисперсия количества. Расхождение больше пяти стандартных
+ * ошибок считается ошибкой. Сценарии подобраны так, чтобы пройти все ветки: таблицу псевдонимов, три режима Rnd.binomial,
+ * раскладку проходов по вещам и нормальное приближение суммы количеств.<BR>
+ * Запуск: ant check, либо напрямую, аргумент - множитель числа бросков.
+ */
+public class RewardGroupDistributionCheck
+{
+	private static final double SIGMAS = 5.;
+
+	public static void main(String[] args) throws Exception
+	{
+		double scale = args.length > 0 ? Double.parseDouble(args[0]) : 1.;
+
+		List<String> errors = new ArrayList<String>();
+		// первый проход и таблица псевдонимов, рейт меньше 1
+		check(errors, "items x0.4", groupA(1000000), false, 0.4, true, scale * 400000);
+		// Rnd.binomial по одному испытанию (n <= 16)
+		check(errors, "items x10", groupA(300000), false, 10, true, scale * 200000);
+		// Rnd.binomial точно по функции распределения, раскладка проходов по вещам
+		check(errors, "items x50", groupA(300000), false, 50, true, scale * 200000);
+		// Rnd.binomial и сумма количеств нормальным приближением
+		check(errors, "items x300", groupA(300000), false, 300, true, scale * 50000);
+		// AltMultiDrop выключен: одна проверка наличия удачного прохода
+		check(errors, "items x50 single", groupA(300000), false, 50, false, scale * 200000);
+		// спойл: дробный последний проход
+		check(errors, "spoil x7.3", groupA(500000), true, 7.3, true, scale * 200000);
+		// редкая группа из одной вещи
+		check(errors, "rare x300", groupB(20000), false, 300, true, scale * 100000);
+		// много вещей, тысячи проходов
+		check(errors, "wide x2000", groupC(1000000), false, 2000, true, scale * 10000);
+
+		if(!errors.isEmpty())
+		{
+			for(String error : errors)
+				System.out.println("FAIL " + error);
+			throw new IllegalStateException(errors.size() + " distribution mismatch(es)");
+		}
+		System.out.println("OK");
+	}
+
+	/**
+	 * Пять вещей, в том числе notRate, onePassOnly, дробный шанс и повтор itemId. Шанс ничего не выбрать около 13%.
+	 */
+	private static RewardGroup groupA(double chance)
+	{
+		RewardGroup group = new RewardGroup(chance);
+		add(group, new RewardData(1, 1, 3, 300000.), false, false);
+		add(group, new RewardData(2, 5, 10, 100000.5), true, false);
+		add(group, new RewardData(3, 1, 1, 50000.), false, true);
+		add(group, new RewardData(4, 2, 2, 400000.), false, false);
+		add(group, new RewardData(1, 1, 1, 20000.), false, false);
+		return group;
+	}
+
+	/**
+	 * Одна вещь на всю группу.
+	 */
+	private static RewardGroup groupB(double chance)
+	{
+		RewardGroup group = new RewardGroup(chance);
+		add(group, new RewardData(1, 10, 20, RewardList.MAX_CHANCE), false, false);
+		return group;
+	}
+
+	/**
+	 * Двенадцать вещей с разными шансами и количествами.
+	 */
+	private static RewardGroup groupC(double chance)
+	{
+		RewardGroup group = new RewardGroup(chance);
+		for(int k = 1; k <= 12; k++)
+			add(group, new RewardData(k, k, 3 * k, 12000. * k), false, false);
+		return group;
+	}
+
+	/**
+	 * В обход {@link RewardGroup#addData(RewardData)}: шаблоны предметов в проверке не загружены.
+	 */
+	private static void add(RewardGroup group, RewardData data, boolean notRate, boolean onePassOnly)
+	{
+		data.setNotRate(notRate, onePassOnly);
+		List<RewardData> items = group.getItems();
+		double sum = items.isEmpty() ? 0. : items.get(items.size() - 1).getChanceInGroup();
+		data.setChanceInGroup(sum + data.getChance());
+		items.add(data);
+	}
+
+	private static void check(List<String> errors, String name, RewardGroup group, boolean spoil, double rate, boolean multiDrop, double rolls) throws Exception
+	{
+		int n = (int) rolls;
+		Config.ALT_MULTI_DROP = multiDrop;
+
+		// закрытый метод, у спойла рейт берется из игрока
+		Method rollSpoil = RewardGroup.class.getDeclaredMethod("rollSpoil", double.class, double.class, double.class);
+		rollSpoil.setAccessible(true);
+
+		OldRewardGroup old = new OldRewardGroup(group.getChance(), group.getItems());
+		Sample before = new Sample(n);
+		Sample after = new Sample(n);
+
+		long t0 = System.nanoTime();
+		for(int i = 0; i < n; i++)
+			before.add(i, spoil ? old.rollSpoil(rate, 1., 1.) : old.rollItems(rate, 1.));
+		long t1 = System.nanoTime();
+		for(int i = 0; i < n; i++)
+		{
+			@SuppressWarnings("unchecked")
+			List<RewardItem> items = spoil ? (List<RewardItem>) rollSpoil.invoke(group, rate, 1., 1.) : group.roll(RewardType.RATED_GROUPED, null, rate, 1.);
+			after.add(i, items);
+		}
+		long t2 = System.nanoTime();
+
+		System.out.println(String.format("%s (multidrop %s, %d rolls): old %.2f us, new %.2f us", name, multiDrop, n, (t1 - t0) / 1000. / n, (t2 - t1) / 1000. / n));
+
+		compare(errors, name + " empty", before.empty / (double) n, after.empty / (double) n, n);
+		for(int itemId : before.counts.keySet())
+			if(!after.counts.containsKey(itemId))
+				errors.add(name + " item " + itemId + " never dropped by new roll");
+		for(Map.Entry<Integer, long[]> e : after.counts.entrySet())
+		{
+			int itemId = e.getKey();
+			long[] a = before.counts.get(itemId);
+			long[] b = e.getValue();
+			if(a == null)
+			{
+				errors.add(name + " item " + itemId + " never dropped by old roll");
+				continue;
+			}
+
+			Moments ma = new Moments(a);
+			Moments mb = new Moments(b);
+			System.out.println(String.format("  item %-3d P %.5f / %.5f   mean %10.4f / %10.4f   sd %9.4f / %9.4f", itemId, ma.hits, mb.hits, ma.mean, mb.mean, Math.sqrt(ma.var), Math.sqrt(mb.var)));
+
+			compare(errors, name + " item " + itemId + " P", ma.hits, mb.hits, n);
+			if(Math.abs(ma.mean - mb.mean) > SIGMAS * Math.sqrt((ma.var + mb.var) / n) + 1e-9)
+				errors.add(String.format("%s item %d mean %.4f / %.4f", name, itemId, ma.mean, mb.mean));
+			double se = Math.sqrt((Math.max(0., ma.m4 - ma.var * ma.var) + Math.max(0., mb.m4 - mb.var * mb.var)) / n);
+			if(Math.abs(ma.var - mb.var) > SIGMAS * se + 1e-9)
+				errors.add(String.format("%s item %d variance %.4f / %.4f", name, itemId, ma.var, mb.var));
+		}
+	}
+
+	private static void compare(List<String> errors, String name, double p1, double p2, int n)
+	{
+		double se = Math.sqrt((p1 * (1. - p1) + p2 * (1. - p2)) / n);
+		if(Math.abs(p1 - p2) > SIGMAS * se + 1e-6)
+			errors.add(String.format("%s %.5f / %.5f", name, p1, p2));
+	}
+
+	/**
+	 * Количества по каждой вещи для каждого броска, 0 - не выпала.
+	 */
+	private static class Sample
+	{
+		private final int size;
+		private final Map<Integer, long[]> counts = new TreeMap<Integer, long[]>();
+		private long empty;
+
+		private Sample(int size)
+		{
+			this.size = size;
+		}
+
+		private void add(int roll, List<RewardItem> items)
+		{
+			if(items.isEmpty())
+				empty++;
+			for(RewardItem item : items)
+			{
+				long[] c = counts.get(item.itemId);
+				if(c == null)
+					counts.put(item.itemId, c = new long[size]);
+				c[roll] += item.count;
+			}
+		}
+	}
+
+	private static class Moments
+	{
+		private final double hits;
+		private final double mean;
+		private final double var;
+		/** четвертый центральный момент, для стандартной ошибки дисперсии */
+		private final double m4;
+
+		private Moments(long[] counts)
+		{
+			int n = counts.length;
+			long nonZero = 0;
+			double sum = 0;
+			for(long c : counts)
+			{
+				if(c != 0)
+					nonZero++;
+				sum += c;
+			}
+			mean = sum / n;
+
+			double s2 = 0, s4 = 0;
+			for(long c : counts)
+			{
+				double d = c - mean;
+				s2 += d * d;
+				s4 += d * d * d * d;
+			}
+			hits = nonZero / (double) n;
+			var = s2 / n;
+			m4 = s4 / n;
+		}
+	}
+
+	/**
+	 * Прежний алгоритм RewardGroup: ceil(rate) проходов, в каждом проверка шанса группы и выбор вещи перебором.
+	 */
+	private static class OldRewardGroup
+	{
+		private final double _chance;
+		private final List<RewardData> _items;
+
+		private OldRewardGroup(double chance, List<RewardData> items)
+		{
+			_chance = chance;
+			_items = items;
+		}
+
+		private List<RewardItem> rollItems(double baseRewardRate, double mod)
+		{
+			if(mod <= 0)
+				return Collections.emptyList();
+
+			double rate = baseRewardRate * mod;
+			double mult = Math.ceil(rate);
+
+			boolean firstPass = true;
+			List<RewardItem> ret = new ArrayList<RewardItem>(_items.size() * 3 / 2);
+			for(long n = 0; n < mult; n++)
+			{
+				double gmult = rate;
+				if(Rnd.get(1, RewardList.MAX_CHANCE) <= _chance * Math.min(gmult, 1.0))
+					if(Config.ALT_MULTI_DROP)
+					{
+						rollFinal(_items, ret, 1.0, firstPass);
+					}
+					else
+					{
+						rollFinal(_items, ret, Math.max(gmult, 1.0), firstPass);
+						break;
+					}
+
+				firstPass = false;
+			}
+			return ret;
+		}
+
+		private List<RewardItem> rollSpoil(double baseRate, double playerRate, double mod)
+		{
+			if(mod <= 0)
+				return Collections.emptyList();
+
+			double rate = baseRate * playerRate * mod;
+			double mult = Math.ceil(rate);
+
+			boolean firstPass = true;
+			List<RewardItem> ret = new ArrayList<RewardItem>(_items.size() * 3 / 2);
+			for(long n = 0; n < mult; n++)
+			{
+				if(Rnd.get(1, RewardList.MAX_CHANCE) <= _chance * Math.min(rate - n, 1.0))
+					rollFinal(_items, ret, 1.0, firstPass);
+
+				firstPass = false;
+			}
+
+			return ret;
+		}
+
+		private void rollFinal(List<RewardData> items, List<RewardItem> ret, double mult, boolean firstPass)
+		{
+			int chance = Rnd.get(0, RewardList.MAX_CHANCE);
+			long count, max;
+
+			for(RewardData i : items)
+			{
+				if(!firstPass && i.onePassOnly())
+					continue;
+
+				if(chance < i.getChanceInGroup() && chance > i.getChanceInGroup() - i.getChance())
+				{
+					double imult = i.notRate() ? 1.0 : mult;
+
+					count = (long) Math.floor(i.getMinDrop() * imult);
+					max = (long) Math.ceil(i.getMaxDrop() * imult);
+					if(count != max)
+						count = Rnd.get(count, max);
+
+					RewardItem t = null;
+
+					for(RewardItem r : ret)
+						if(i.getItemId() == r.itemId)
+						{
+							t = r;
+							break;
+						}
+
+					if(t == null)
+					{
+						ret.add(t = new RewardItem(i.getItemId()));
+						t.count = count;
+					}
+					else if(!i.notRate())
+					{
+						t.count = SafeMath.addAndLimit(t.count, count);
+					}
+
+					break;
+				}
+			}
+		}
+	}
+}
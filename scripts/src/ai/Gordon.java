@@ -71,6 +71,15 @@ public class Gordon extends Fighter
 		return super.checkAggression(target);
 	}
 
+	/**
+	 * Агрессия на носителей проклятого оружия по всему окружению.
+	 */
+	@Override
+	protected int getAggroScanRange(boolean aggressive)
+	{
+		return AGGRO_SCAN_REGION;
+	}
+
 	@Override
 	protected boolean thinkActive()
 	{
@@ -63,6 +63,15 @@ public class Typhoon extends Fighter
 		return true;
 	}
 
+	/**
+	 * Агрессия без ограничения дальности.
+	 */
+	@Override
+	protected int getAggroScanRange(boolean aggressive)
+	{
+		return AGGRO_SCAN_REGION;
+	}
+
 	@Override
 	public boolean thinkActive()
 	{
@@ -213,6 +213,26 @@ public class MoveRoutDefaultAI extends DefaultAI
 		return true;
 	}
 
+	/**
+	 * Радиус поиска от NPC должен покрывать {@link #isInAggroRange(Creature)}: агрессия считается от NPC,
+	 * преследование - от текущей точки маршрута.
+	 */
+	@Override
+	protected int getAggroScanRange(boolean aggressive)
+	{
+		if (_moveRoute == null)
+			return super.getAggroScanRange(aggressive);
+
+		final NpcInstance actor = getActor();
+		int range = aggressive ? actor.getAggroRange() : 0;
+		if (!actor.getAggroList().isEmpty())
+		{
+			final Location loc = _destination != null ? _destination : actor.getSpawnedLoc();
+			range = Math.max(range, MAX_PURSUE_RANGE + (int) Math.sqrt(actor.getXYZDeltaSq(loc)));
+		}
+		return range;
+	}
+
 	@Override
 	protected void onEvtSpawn()
 	{
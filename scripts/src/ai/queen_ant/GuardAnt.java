@@ -24,6 +24,15 @@ public class GuardAnt extends Fighter
 		return !checkAndParalyze(target) && super.checkAggression(target);
 	}
 
+	/**
+	 * Паралич проверяется по всему окружению, а не только в пределах дальности агрессии.
+	 */
+	@Override
+	protected int getAggroScanRange(boolean aggressive)
+	{
+		return AGGRO_SCAN_REGION;
+	}
+
 	@Override
 	protected void thinkAttack()
 	{
@@ -88,19 +88,16 @@ public class Catapult extends DefaultAI
 			actor.setParameter("dominion_first_attack", false);
 			NpcString msg = MESSAGES.get(siegeEvent.getId())[0];
 			Quest q = QuestManager.getQuest(729);
-			for(Player player : GameObjectsStorage.getPlayers())
+			for(Player player : GameObjectsStorage.getPlayersByEvent(siegeEvent))
 			{
-				if(player.getEvent(DominionSiegeEvent.class) == siegeEvent)
+				player.sendPacket(new ExShowScreenMessage(msg, 5000, ExShowScreenMessage.ScreenMessageAlign.TOP_CENTER));
+
+				QuestState questState = player.getQuestState(729);
+				if(questState == null)
 				{
-					player.sendPacket(new ExShowScreenMessage(msg, 5000, ExShowScreenMessage.ScreenMessageAlign.TOP_CENTER));
-
-					QuestState questState = player.getQuestState(729);
-					if(questState == null)
-					{
-						questState = q.newQuestStateAndNotSave(player, Quest.CREATED);
-						questState.setCond(1, false);
-						questState.setStateAndNotSave(Quest.STARTED);
-					}
+					questState = q.newQuestStateAndNotSave(player, Quest.CREATED);
+					questState.setCond(1, false);
+					questState.setStateAndNotSave(Quest.STARTED);
 				}
 			}
 		}
@@ -122,16 +119,13 @@ public class Catapult extends DefaultAI
 			return;
 
 		NpcString msg = MESSAGES.get(siegeEvent.getId())[1];
-		for(Player player : GameObjectsStorage.getPlayers())
+		for(Player player : GameObjectsStorage.getPlayersByEvent(siegeEvent))
 		{
-			if(player.getEvent(DominionSiegeEvent.class) == siegeEvent)
-			{
-				player.sendPacket(new ExShowScreenMessage(msg, 5000, ExShowScreenMessage.ScreenMessageAlign.TOP_CENTER));
+			player.sendPacket(new ExShowScreenMessage(msg, 5000, ExShowScreenMessage.ScreenMessageAlign.TOP_CENTER));
 
-				QuestState questState = player.getQuestState(729);
-				if(questState != null)
-					questState.abortQuest();
-			}
+			QuestState questState = player.getQuestState(729);
+			if(questState != null)
+				questState.abortQuest();
 		}
 
 		siegeEvent.doorAction(DominionSiegeEvent.CATAPULT_DOORS, true);
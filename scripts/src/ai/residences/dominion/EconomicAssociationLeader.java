@@ -85,16 +85,13 @@ public class EconomicAssociationLeader extends SiegeGuardFighter
 			actor.setParameter("dominion_first_attack", false);
 			NpcString msg = MESSAGES.get(siegeEvent.getId())[0];
 			Quest q = QuestManager.getQuest(733);
-			for(Player player : GameObjectsStorage.getPlayers())
+			for(Player player : GameObjectsStorage.getPlayersByEvent(siegeEvent))
 			{
-				if(player.getEvent(DominionSiegeEvent.class) == siegeEvent)
-				{
-					player.sendPacket(new ExShowScreenMessage(msg, 5000, ExShowScreenMessage.ScreenMessageAlign.TOP_CENTER));
+				player.sendPacket(new ExShowScreenMessage(msg, 5000, ExShowScreenMessage.ScreenMessageAlign.TOP_CENTER));
 
-					QuestState questState = q.newQuestStateAndNotSave(player, Quest.CREATED);
-					questState.setCond(1, false);
-					questState.setStateAndNotSave(Quest.STARTED);
-				}
+				QuestState questState = q.newQuestStateAndNotSave(player, Quest.CREATED);
+				questState.setCond(1, false);
+				questState.setStateAndNotSave(Quest.STARTED);
 			}
 			PlayerListenerList.addGlobal(_listener);
 		}
@@ -112,16 +109,13 @@ public class EconomicAssociationLeader extends SiegeGuardFighter
 			return;
 
 		NpcString msg = MESSAGES.get(siegeEvent.getId())[1];
-		for(Player player : GameObjectsStorage.getPlayers())
+		for(Player player : GameObjectsStorage.getPlayersByEvent(siegeEvent))
 		{
-			if(player.getEvent(DominionSiegeEvent.class) == siegeEvent)
-			{
-				player.sendPacket(new ExShowScreenMessage(msg, 5000, ExShowScreenMessage.ScreenMessageAlign.TOP_CENTER));
+			player.sendPacket(new ExShowScreenMessage(msg, 5000, ExShowScreenMessage.ScreenMessageAlign.TOP_CENTER));
 
-				QuestState questState = player.getQuestState(733);
-				if(questState != null)
-					questState.abortQuest();
-			}
+			QuestState questState = player.getQuestState(733);
+			if(questState != null)
+				questState.abortQuest();
 		}
 
 		Player player = killer.getPlayer();
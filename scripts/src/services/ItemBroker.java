@@ -1,25 +1,24 @@
 package services;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.NavigableMap;
 import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.mmocore.gameserver.Config;
 import org.mmocore.gameserver.data.xml.holder.ItemHolder;
-import org.mmocore.gameserver.data.xml.holder.RecipeHolder;
 import org.mmocore.gameserver.handler.bypass.Bypass;
+import org.mmocore.gameserver.instancemanager.PrivateStoreIndex;
 import org.mmocore.gameserver.model.GameObjectsStorage;
 import org.mmocore.gameserver.model.Player;
-import org.mmocore.gameserver.model.Recipe;
 import org.mmocore.gameserver.model.World;
 import org.mmocore.gameserver.model.base.Element;
 import org.mmocore.gameserver.model.instances.NpcInstance;
-import org.mmocore.gameserver.model.items.ManufactureItem;
 import org.mmocore.gameserver.model.items.TradeItem;
 import org.mmocore.gameserver.network.l2.components.HtmlMessage;
 import org.mmocore.gameserver.network.l2.s2c.CharInfo;
@@ -38,12 +37,23 @@ public class ItemBroker
 
 	private static Map<Integer, NpcInfo> _npcInfos = new ConcurrentHashMap<Integer, NpcInfo>();
 
-	public class NpcInfo
+	/**
+	 * Предложения вокруг брокера, после сборки не изменяются.
+	 */
+	private class NpcInfo
 	{
-		public long lastUpdate;
-		public TreeMap<String, TreeMap<Long, Item>> bestSellItems;
-		public TreeMap<String, TreeMap<Long, Item>> bestBuyItems;
-		public TreeMap<String, TreeMap<Long, Item>> bestCraftItems;
+		/** версия магазинов вокруг брокера, см. {@link PrivateStoreIndex#getNeighborVersion} */
+		private final long version;
+		/** когда появятся торговцы, которые сейчас сидят слишком мало */
+		private long expire = Long.MAX_VALUE;
+		/** по книге индекса: itemId -> предложения по возрастанию цены */
+		@SuppressWarnings("unchecked")
+		private final Map<Integer, TreeMap<Long, Item>>[] books = new Map[] { new HashMap<Integer, TreeMap<Long, Item>>(), new HashMap<Integer, TreeMap<Long, Item>>(), new HashMap<Integer, TreeMap<Long, Item>>() };
+
+		private NpcInfo(long version)
+		{
+			this.version = version;
+		}
 	}
 
 	public class Item
@@ -181,24 +191,89 @@ public class ItemBroker
 		}
 	}
 
-	private TreeMap<String, TreeMap<Long, Item>> getItems(Player player, NpcInstance npc, int type)
+	/**
+	 * @return книга индекса магазинов по типу магазина, -1 для неизвестного типа
+	 */
+	private static int getBook(int type)
 	{
-		if(player == null || npc == null)
-			return null;
-		updateInfo(player, npc);
-		NpcInfo info = _npcInfos.get(npc.getObjectId());
-		if(info == null)
-			return null;
 		switch(type)
 		{
 			case Player.STORE_PRIVATE_SELL:
-				return info.bestSellItems;
+				return PrivateStoreIndex.SELL;
 			case Player.STORE_PRIVATE_BUY:
-				return info.bestBuyItems;
+				return PrivateStoreIndex.BUY;
 			case Player.STORE_PRIVATE_MANUFACTURE:
-				return info.bestCraftItems;
+				return PrivateStoreIndex.MANUFACTURE;
+		}
+		return -1;
+	}
+
+	/**
+	 * Предложения по предмету от торговцев в соседних с брокером регионах, по возрастанию цены.
+	 */
+	private TreeMap<Long, Item> getItems(NpcInstance npc, int book, int itemId)
+	{
+		TreeMap<Long, Item> items = getInfo(npc).books[book].get(itemId);
+		return items == null ? new TreeMap<Long, Item>() : items;
+	}
+
+	/**
+	 * @return itemId предметов, которые есть в магазинах указанного типа вокруг брокера
+	 */
+	private Collection<Integer> getItemIds(NpcInstance npc, int book)
+	{
+		return getInfo(npc).books[book].keySet();
+	}
+
+	/**
+	 * Предложения вокруг брокера. Собираются заново только после изменения магазинов в соседних регионах
+	 * или когда торговец, сидящий слишком мало, должен появиться в списке.
+	 */
+	private NpcInfo getInfo(NpcInstance npc)
+	{
+		long version = PrivateStoreIndex.getInstance().getNeighborVersion(npc);
+		NpcInfo info = _npcInfos.get(npc.getObjectId());
+		if(info != null && info.version == version && info.expire > System.currentTimeMillis())
+			return info;
+
+		info = new NpcInfo(version);
+		long now = System.currentTimeMillis();
+		long delay = 60000L * Config.SERVICES_ITEM_BROKER_REFRESH_DELAY;
+		for(PrivateStoreIndex.Offer[] offers : PrivateStoreIndex.getInstance().getNeighborOffers(npc))
+		{
+			Player pl = offers[0].getMerchant();
+			if (!World.isNeighbors(npc, pl))
+				continue;
+			if (pl.getPrivateStoreStartTime() > now - delay) // торгаш сидит слишком мало
+			{
+				info.expire = Math.min(info.expire, pl.getPrivateStoreStartTime() + delay);
+				continue;
+			}
+
+			for(PrivateStoreIndex.Offer offer : offers)
+			{
+				ItemTemplate temp = ItemHolder.getInstance().getTemplate(offer.getItemId());
+				if(temp == null)
+					continue;
+
+				Map<Integer, TreeMap<Long, Item>> book = info.books[offer.getBook()];
+				TreeMap<Long, Item> items = book.get(offer.getItemId());
+				if(items == null)
+					book.put(offer.getItemId(), items = new TreeMap<Long, Item>());
+
+				TradeItem item = offer.getTradeItem();
+				// Обычный objId не подходит для покупаемых предметов, вместо него берется торговец
+				int objectId = offer.getBook() == PrivateStoreIndex.SELL ? item.getObjectId() : pl.getObjectId();
+				Item newItem = new Item(offer.getItemId(), pl.getPrivateStoreType(), offer.getPrice(), offer.getCount(), offer.getEnchantLevel(), temp.getName(), pl.getObjectId(), pl.getName(), pl.getLoc(), objectId, item, offer.isPackage());
+				long key = newItem.price * 100;
+				while(key < newItem.price * 100 + 100 && items.containsKey(key))
+					// До 100 предметов с одинаковыми ценами
+					key++;
+				items.put(key, newItem);
+			}
 		}
-		return null;
+		_npcInfos.put(npc.getObjectId(), info);
+		return info;
 	}
 
 	@Bypass("services.ItemBroker:main")
@@ -271,41 +346,40 @@ public class ItemBroker
 
 		ItemClass itemClass = itemType >= ItemClass.values().length ? null : ItemClass.values()[itemType];
 
-		TreeMap<String, TreeMap<Long, Item>> allItems = getItems(player, npc, type);
-		if(allItems == null)
+		int book = getBook(type);
+		if(book < 0)
 		{
 			Functions.show("Ошибка - предметов такого типа не найдено", player, npc);
 			return;
 		}
 
-		List<Item> items = new ArrayList<Item>(allItems.size() * 10);
-		for(TreeMap<Long, Item> tempItems : allItems.values())
+		// лучшее предложение по каждому названию, в порядке названий
+		TreeMap<String, Item> bestItems = new TreeMap<String, Item>();
+		for(int itemId : getItemIds(npc, book))
 		{
-			TreeMap<Long, Item> tempItems2 = new TreeMap<Long, Item>();
-			for(Entry<Long, Item> entry : tempItems.entrySet())
+			ItemTemplate temp = ItemHolder.getInstance().getTemplate(itemId);
+			if(temp == null)
+				continue;
+			if(itemClass == null ? !temp.isCommonItem() : temp.isCommonItem())
+				continue;
+			if(itemClass != null && itemClass != ItemClass.ALL && temp.getItemClass() != itemClass)
+				continue;
+
+			TreeMap<Long, Item> tempItems = getItems(npc, book, itemId);
+			NavigableMap<Long, Item> sortedItems = type == Player.STORE_PRIVATE_BUY ? tempItems.descendingMap() : tempItems;
+			for(Item tempItem : sortedItems.values())
 			{
-				Item tempItem = entry.getValue();
-				if(tempItem == null)
-					continue;
-				if(tempItem.enchant < minEnchant)
-					continue;
-				ItemTemplate temp = tempItem.item != null ? tempItem.item.getItem() : ItemHolder.getInstance().getTemplate(tempItem.itemId);
-				if(temp == null || (rare > 0 && !tempItem.rare))
-					continue;
-				if(itemClass == null ? !temp.isCommonItem() : temp.isCommonItem())
-					continue;
-				if(itemClass != null && itemClass != ItemClass.ALL && temp.getItemClass() != itemClass)
+				if(tempItem.enchant < minEnchant || (rare > 0 && !tempItem.rare))
 					continue;
-				tempItems2.put(entry.getKey(), tempItem);
+				Item best = bestItems.get(temp.getName());
+				if(best == null || (type == Player.STORE_PRIVATE_BUY ? tempItem.price > best.price : tempItem.price < best.price))
+					bestItems.put(temp.getName(), tempItem);
+				break;
 			}
-			if(tempItems2.isEmpty())
-				continue;
-
-			Item item = type == Player.STORE_PRIVATE_BUY ? tempItems2.lastEntry().getValue() : tempItems2.firstEntry().getValue();
-			if(item != null)
-				items.add(item);
 		}
 
+		List<Item> items = new ArrayList<Item>(bestItems.values());
+
 		StringBuilder out = new StringBuilder(200);
 		out.append("[npc_%objectId%_services.ItemBroker:main ");
 		out.append(type);
@@ -465,15 +539,15 @@ public class ItemBroker
 			return;
 		}
 
-		TreeMap<String, TreeMap<Long, Item>> tmpItems = getItems(player, npc, type);
-		if(tmpItems == null)
+		int book = getBook(type);
+		if(book < 0)
 		{
 			Functions.show("Ошибка - такой тип предмета отсутствует.", player, npc);
 			return;
 		}
 
-		TreeMap<Long, Item> allItems = tmpItems.get(template.getName());
-		if(allItems == null)
+		TreeMap<Long, Item> allItems = getItems(npc, book, itemId);
+		if(allItems.isEmpty())
 		{
 			Functions.show("Ошибка - предметов с таким названием не найдено.", player, npc);
 			return;
@@ -487,12 +561,6 @@ public class ItemBroker
 		out.append("&nbsp;&nbsp;");
 
 		NavigableMap<Long, Item> sortedItems = type == Player.STORE_PRIVATE_BUY ? allItems.descendingMap() : allItems;
-		if(sortedItems == null)
-		{
-			Functions.show("Ошибка - ничего не найдено.", player, npc);
-			return;
-		}
-
 		List<Item> items = new ArrayList<Item>(sortedItems.size());
 		for (Item item : sortedItems.values())
 		{
@@ -646,15 +714,15 @@ public class ItemBroker
 			return;
 		}
 
-		TreeMap<String, TreeMap<Long, Item>> allItems = getItems(player, npc, type);
-		if(allItems == null)
+		int book = getBook(type);
+		if(book < 0)
 		{
 			Functions.show("Ошибка - предметов такого типа не найдено.", player, npc);
 			return;
 		}
 
-		TreeMap<Long, Item> items = allItems.get(temp.getName());
-		if(items == null)
+		TreeMap<Long, Item> items = getItems(npc, book, itemId);
+		if(items.isEmpty())
 		{
 			Functions.show("Ошибка - предметов с таким именем не найдено.", player, npc);
 			return;
@@ -754,147 +822,6 @@ public class ItemBroker
 		player.setTarget(trader);
 	}
 
-	public void updateInfo(Player player, NpcInstance npc)
-	{
-		NpcInfo info = _npcInfos.get(npc.getObjectId());
-		if(info == null || info.lastUpdate < System.currentTimeMillis() - 100000)
-		{
-			info = new NpcInfo();
-			info.lastUpdate = System.currentTimeMillis();
-			info.bestBuyItems = new TreeMap<String, TreeMap<Long, Item>>();
-			info.bestSellItems = new TreeMap<String, TreeMap<Long, Item>>();
-			info.bestCraftItems = new TreeMap<String, TreeMap<Long, Item>>();
-
-			int itemObjId = 0; // Обычный objId не подходит для покупаемых предметов
-
-			long refresh = System.currentTimeMillis() - 60000L * Config.SERVICES_ITEM_BROKER_REFRESH_DELAY;
-
-			for(Player pl : World.getAroundPlayers(npc))
-			{
-				if (pl.getPrivateStoreStartTime() > refresh) // торгаш сидит слишком мало
-					continue;
-
-				TreeMap<String, TreeMap<Long, Item>> items = null;
-				List<TradeItem> tradeList = null;
-
-				int type = pl.getPrivateStoreType();
-				switch(type)
-				{
-					case Player.STORE_PRIVATE_SELL:
-						items = info.bestSellItems;
-						tradeList = pl.getSellList();
-
-						for(TradeItem item : tradeList)
-						{
-							ItemTemplate temp = item.getItem();
-							if(temp == null)
-								continue;
-							TreeMap<Long, Item> oldItems = items.get(temp.getName());
-							if(oldItems == null)
-							{
-								oldItems = new TreeMap<Long, Item>();
-								items.put(temp.getName(), oldItems);
-							}
-							Item newItem = new Item(item.getItemId(), type, item.getOwnersPrice(), item.getCount(), item.getEnchantLevel(), temp.getName(), pl.getObjectId(), pl.getName(), pl.getLoc(), item.getObjectId(), item, false);
-							long key = newItem.price * 100;
-							while(key < newItem.price * 100 + 100 && oldItems.containsKey(key))
-								// До 100 предметов с одинаковыми ценами
-								key++;
-							oldItems.put(key, newItem);
-						}
-
-						break;
-					case Player.STORE_PRIVATE_SELL_PACKAGE:
-						items = info.bestSellItems;
-						tradeList = pl.getSellList();
-
-						long packagePrice = 0;
-						for(TradeItem item : tradeList)
-							packagePrice += item.getOwnersPrice() * item.getCount();
-
-						for(TradeItem item : tradeList)
-						{
-							ItemTemplate temp = item.getItem();
-							if(temp == null)
-								continue;
-							TreeMap<Long, Item> oldItems = items.get(temp.getName());
-							if(oldItems == null)
-							{
-								oldItems = new TreeMap<Long, Item>();
-								items.put(temp.getName(), oldItems);
-							}
-							Item newItem = new Item(item.getItemId(), type, packagePrice, item.getCount(), item.getEnchantLevel(), temp.getName(), pl.getObjectId(), pl.getName(), pl.getLoc(), item.getObjectId(), item, true);
-							long key = newItem.price * 100;
-							while(key < newItem.price * 100 + 100 && oldItems.containsKey(key))
-								// До 100 предметов с одинаковыми ценами
-								key++;
-							oldItems.put(key, newItem);
-						}
-
-						break;
-					case Player.STORE_PRIVATE_BUY:
-						items = info.bestBuyItems;
-						tradeList = pl.getBuyList();
-
-						for(TradeItem item : tradeList)
-						{
-							ItemTemplate temp = item.getItem();
-							if(temp == null)
-								continue;
-							TreeMap<Long, Item> oldItems = items.get(temp.getName());
-							if(oldItems == null)
-							{
-								oldItems = new TreeMap<Long, Item>();
-								items.put(temp.getName(), oldItems);
-							}
-							Item newItem = new Item(item.getItemId(), type, item.getOwnersPrice(), item.getCount(), item.getEnchantLevel(), temp.getName(), pl.getObjectId(), pl.getName(), pl.getLoc(), itemObjId++, item, false);
-							long key = newItem.price * 100;
-							while(key < newItem.price * 100 + 100 && oldItems.containsKey(key))
-								// До 100 предметов с одинаковыми ценами
-								key++;
-							oldItems.put(key, newItem);
-						}
-
-						break;
-					case Player.STORE_PRIVATE_MANUFACTURE:
-						items = info.bestCraftItems;
-						List<ManufactureItem> createList = pl.getCreateList();
-						if(createList == null)
-							continue;
-
-						for(ManufactureItem mitem : createList)
-						{
-							int recipeId = mitem.getRecipeId();
-							Recipe recipe = RecipeHolder.getInstance().getRecipeByRecipeId(recipeId);
-							if(recipe == null)
-								continue;
-
-							ItemTemplate temp = ItemHolder.getInstance().getTemplate(recipe.getItemId());
-							if(temp == null)
-								continue;
-							TreeMap<Long, Item> oldItems = items.get(temp.getName());
-							if(oldItems == null)
-							{
-								oldItems = new TreeMap<Long, Item>();
-								items.put(temp.getName(), oldItems);
-							}
-							Item newItem = new Item(recipe.getItemId(), type, mitem.getCost(), recipe.getCount(), 0, temp.getName(), pl.getObjectId(), pl.getName(), pl.getLoc(), itemObjId++, null, false);
-							long key = newItem.price * 100;
-							while(key < newItem.price * 100 + 100 && oldItems.containsKey(key))
-								// До 100 предметов с одинаковыми ценами
-								key++;
-							oldItems.put(key, newItem);
-						}
-
-						break;
-					default:
-						continue;
-				}
-			}
-			_npcInfos.put(npc.getObjectId(), info);
-		}
-	}
-
 	@Bypass("services.ItemBroker:find")
 	public void find(Player player, NpcInstance npc, String[] var)
 	{
@@ -935,41 +862,55 @@ public class ItemBroker
 			return;
 		}
 
-		TreeMap<String, TreeMap<Long, Item>> allItems = getItems(player, npc, type);
-		if(allItems == null)
+		int book = getBook(type);
+		if(book < 0)
 		{
 			Functions.show("Ошибка - предметов с таким типом не найдено.", player, npc);
 			return;
 		}
 
-		List<Item> items = new ArrayList<Item>();
-		String line;
-		TreeMap<Long, Item> itemMap;
+		List<String> words = new ArrayList<String>(search.length);
+		for (String line : search)
+			if (!line.startsWith("+"))
+				words.add(line);
+
+		// поиск по началу слов в названии через индекс магазинов
+		Collection<Integer> itemIds;
+		if (words.isEmpty())
+			itemIds = getItemIds(npc, book);
+		else
+		{
+			itemIds = new ArrayList<Integer>();
+			for(int itemId : PrivateStoreIndex.getInstance().find(book, words.toArray(new String[words.size()])))
+				itemIds.add(itemId);
+		}
+
+		// результат в порядке названий, как и в полном списке
+		TreeMap<String, Item> foundItems = new TreeMap<String, Item>();
 		Item item;
-		mainLoop: for(Entry<String, TreeMap<Long, Item>> entry : allItems.entrySet())
+		for(int itemId : itemIds)
 		{
-			for(int i = 0; i < search.length; i++)
-			{
-				line = search[i];
-				if (line.startsWith("+"))
-					continue;
-				if(entry.getKey().toLowerCase().indexOf(line) == -1)
-					continue mainLoop;
-			}
+			ItemTemplate temp = ItemHolder.getInstance().getTemplate(itemId);
+			if(temp == null)
+				continue;
 
-			itemMap = entry.getValue();
 			item = null;
-			for (Item itm : itemMap.values()) // Ищем первый подходящий предмет
-				if (itm != null && itm.enchant >= minEnchant)
+			for (Item itm : getItems(npc, book, itemId).values()) // Ищем первый подходящий предмет
+				if (itm.enchant >= minEnchant)
 				{
 					item = itm;
 					break;
 				}
 
-			if(item != null)
-				items.add(item);
+			if(item == null)
+				continue;
+			Item old = foundItems.get(temp.getName());
+			if(old == null || item.price < old.price)
+				foundItems.put(temp.getName(), item);
 		}
 
+		List<Item> items = new ArrayList<Item>(foundItems.values());
+
 		StringBuilder out = new StringBuilder(200);
 		out.append("[npc_%objectId%_services.ItemBroker:main ");
 		out.append(type);